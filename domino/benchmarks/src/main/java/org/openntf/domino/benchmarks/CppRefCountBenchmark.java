@@ -0,0 +1,95 @@
+package org.openntf.domino.benchmarks;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openntf.domino.impl.CppRefCountMap;
+
+/**
+ * Many threads wrap and release objects with shared C++ ids: Every operation counts an id up (wrap) and down again (release), as the
+ * DominoReferenceCache does. Compares the old synchronized HashMap&lt;Long, AtomicInteger&gt; with the {@link CppRefCountMap}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class CppRefCountBenchmark {
+
+	/** number of different C++ ids (e.g. the documents of a view, that are open in several threads) */
+	private static final int IDS = 4096;
+
+	@State(Scope.Benchmark)
+	public static class SharedMaps {
+		final Map<Long, AtomicInteger> synchronizedMap = Collections.synchronizedMap(new HashMap<Long, AtomicInteger>(2048));
+		final CppRefCountMap refCountMap = new CppRefCountMap(2048);
+	}
+
+	@State(Scope.Thread)
+	public static class Ids {
+		long[] ids;
+		int next;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			Random rnd = new Random(Thread.currentThread().getId());
+			ids = new long[1024];
+			for (int i = 0; i < ids.length; i++) {
+				// C++ pointers are 16 byte aligned
+				ids[i] = 0x7f0000000000L + (rnd.nextInt(IDS) + 1) * 16L;
+			}
+		}
+
+		long next() {
+			return ids[next++ & (ids.length - 1)];
+		}
+	}
+
+	/**
+	 * The code that was used in DominoReferenceCache before
+	 */
+	@Benchmark
+	public int synchronizedMap(final SharedMaps maps, final Ids ids) {
+		Map<Long, AtomicInteger> cppMap = maps.synchronizedMap;
+		long cppId = ids.next();
+		synchronized (cppMap) {
+			if (!cppMap.containsKey(cppId)) {
+				cppMap.put(cppId, new AtomicInteger(1));
+			} else {
+				cppMap.get(cppId).incrementAndGet();
+			}
+		}
+		int ret;
+		synchronized (cppMap) {
+			ret = cppMap.get(cppId).decrementAndGet();
+			if (ret < 1) {
+				cppMap.remove(cppId);
+			}
+		}
+		return ret;
+	}
+
+	@Benchmark
+	public int refCountMap(final SharedMaps maps, final Ids ids) {
+		long cppId = ids.next();
+		maps.refCountMap.increment(cppId);
+		return maps.refCountMap.decrement(cppId);
+	}
+}
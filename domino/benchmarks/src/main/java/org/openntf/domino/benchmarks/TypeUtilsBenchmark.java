@@ -0,0 +1,100 @@
+package org.openntf.domino.benchmarks;
+
+import java.util.Date;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openntf.domino.utils.TypeUtils;
+
+import com.ibm.icu.text.SimpleDateFormat;
+
+/**
+ * Measures the conversions of {@link TypeUtils}, that are used when items are read with a target class. Only plain java values (as
+ * returned by getItemValue) are converted, so no Domino session is needed. Notes.jar must be on the classpath, as TypeUtils references
+ * the lotus.domino classes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TypeUtilsBenchmark {
+
+	/** the same seed as the formula dataset, so the values are reproducible */
+	private static final long SEED = 20141017L;
+
+	private static final int VALUES = 32;
+
+	private Vector<Object> numbers;
+	private Vector<Object> strings;
+	private Vector<Object> mixed;
+	private Vector<Object> isoDates;
+	private Vector<Object> millis;
+
+	@Setup
+	public void setup() {
+		Random rnd = new Random(SEED);
+		SimpleDateFormat iso = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+		numbers = new Vector<Object>();
+		strings = new Vector<Object>();
+		mixed = new Vector<Object>();
+		isoDates = new Vector<Object>();
+		millis = new Vector<Object>();
+		for (int i = 0; i < VALUES; i++) {
+			double d = rnd.nextInt(100000) / 100.0;
+			long time = 1262304000000L + (rnd.nextLong() & 0xFFFFFFFFFL);
+			numbers.add(d);
+			strings.add(Integer.toString(rnd.nextInt(100000)));
+			mixed.add(i % 3 == 0 ? (Object) d : i % 3 == 1 ? (Object) ("Value " + i) : (Object) Integer.valueOf(i));
+			isoDates.add(iso.format(new Date(time)));
+			millis.add(Long.valueOf(time));
+		}
+	}
+
+	@Benchmark
+	public Object convertNumbersToIntArray() {
+		return TypeUtils.convertToTarget(numbers, int[].class, null);
+	}
+
+	@Benchmark
+	public Object convertNumbersToDoubleObjects() {
+		return TypeUtils.convertToTarget(numbers, Double[].class, null);
+	}
+
+	@Benchmark
+	public Object convertStringsToInteger() {
+		return TypeUtils.convertToTarget(strings, Integer.class, null);
+	}
+
+	@Benchmark
+	public Object convertMixedToStringArray() {
+		return TypeUtils.convertToTarget(mixed, String[].class, null);
+	}
+
+	@Benchmark
+	public String[] toStrings() {
+		return TypeUtils.toStrings(mixed);
+	}
+
+	@Benchmark
+	public Date[] toDatesFromIsoStrings() {
+		return TypeUtils.toDates(isoDates);
+	}
+
+	@Benchmark
+	public Date[] toDatesFromMillis() {
+		return TypeUtils.toDates(millis);
+	}
+}
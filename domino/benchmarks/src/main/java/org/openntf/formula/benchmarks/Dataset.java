@@ -0,0 +1,145 @@
+/*
+ * © Copyright FOCONIS AG, 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ * 
+ */
+package org.openntf.formula.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import org.openntf.formula.Formatter;
+import org.openntf.formula.Formulas;
+
+/**
+ * The dataset of the benchmarks: The formulas are read from <code>formulas.txt</code>, the documents are generated with a fixed seed, so
+ * every run (and every machine) works on the same data.
+ * 
+ * @author Roland Praml, Foconis AG
+ * 
+ */
+public class Dataset {
+
+	/** the seed for the documents. Do not change it, otherwise the results are not comparable with the baseline */
+	public static final long SEED = 20141017L;
+
+	private static final String[] FORMS = { "Memo", "Reply", "Task", "Appointment" };
+	private static final String[] WORDS = { "order", "invoice", "the", "meeting", "and", "delivery", "a", "customer", "project", "status",
+			"update", "request", "offer", "contract", "review" };
+	private static final String[] FIRST_NAMES = { "Anna", "Peter", "Maria", "Thomas", "Julia", "Michael", "Laura", "Stefan" };
+	private static final String[] LAST_NAMES = { "Miller", "Schmidt", "Meyer", "Wagner", "Becker", "Hoffmann", "Koch", "Praml" };
+	private static final String[] CATEGORIES = { "Sales/Europe", "Sales/Asia", "Support", "Development/Core", "Development/UI",
+			"Marketing" };
+
+	private static Map<String, String> formulas;
+
+	private Dataset() {
+	}
+
+	/**
+	 * Returns the formatter for the benchmarks. A fixed locale is used, so that the date values can be parsed on every machine
+	 */
+	public static Formatter getFormatter() {
+		return Formulas.getFormatter(Locale.US);
+	}
+
+	/**
+	 * Returns all formulas (name -&gt; formula) in the order of the file
+	 */
+	public static synchronized Map<String, String> getFormulas() {
+		if (formulas == null) {
+			Map<String, String> ret = new LinkedHashMap<String, String>();
+			InputStream is = Dataset.class.getResourceAsStream("formulas.txt");
+			if (is == null)
+				throw new IllegalStateException("formulas.txt not found");
+			try {
+				BufferedReader reader = new BufferedReader(new InputStreamReader(is, "UTF-8"));
+				try {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						if (line.length() == 0 || line.startsWith("#"))
+							continue;
+						int pos = line.indexOf('\t');
+						ret.put(line.substring(0, pos), line.substring(pos + 1));
+					}
+				} finally {
+					reader.close();
+				}
+			} catch (IOException e) {
+				throw new IllegalStateException("Cannot read formulas.txt", e);
+			}
+			formulas = ret;
+		}
+		return formulas;
+	}
+
+	/**
+	 * Returns the formula with the given name
+	 */
+	public static String getFormula(final String name) {
+		String ret = getFormulas().get(name);
+		if (ret == null)
+			throw new IllegalArgumentException("Unknown formula: " + name);
+		return ret;
+	}
+
+	/**
+	 * Creates <code>count</code> documents. The same count returns always the same documents.
+	 */
+	public static List<Map<String, Object>> createDocuments(final int count) {
+		Random rnd = new Random(SEED);
+		List<Map<String, Object>> ret = new ArrayList<Map<String, Object>>(count);
+		for (int i = 0; i < count; i++) {
+			Map<String, Object> doc = new HashMap<String, Object>();
+			doc.put("Form", FORMS[rnd.nextInt(FORMS.length)]);
+			doc.put("Subject", words(rnd, 3 + rnd.nextInt(5)) + " - " + (1000 + rnd.nextInt(9000)));
+			doc.put("Body", words(rnd, 20 + rnd.nextInt(40)));
+			double[] amount = new double[1 + rnd.nextInt(5)];
+			for (int j = 0; j < amount.length; j++) {
+				amount[j] = rnd.nextInt(10000) / 100.0;
+			}
+			doc.put("Amount", amount);
+			doc.put("Qty", 1 + rnd.nextInt(100));
+			String[] cat = new String[1 + rnd.nextInt(3)];
+			for (int j = 0; j < cat.length; j++) {
+				cat[j] = CATEGORIES[rnd.nextInt(CATEGORIES.length)];
+			}
+			doc.put("Categories", Arrays.asList(cat));
+			doc.put("Due", String.format(Locale.US, "%02d/%02d/%04d", 1 + rnd.nextInt(12), 1 + rnd.nextInt(28), 2010 + rnd.nextInt(8)));
+			doc.put("Author", FIRST_NAMES[rnd.nextInt(FIRST_NAMES.length)] + " " + LAST_NAMES[rnd.nextInt(LAST_NAMES.length)]);
+			ret.add(doc);
+		}
+		return ret;
+	}
+
+	private static String words(final Random rnd, final int count) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			if (i > 0)
+				sb.append(' ');
+			sb.append(WORDS[rnd.nextInt(WORDS.length)]);
+		}
+		return sb.toString();
+	}
+}
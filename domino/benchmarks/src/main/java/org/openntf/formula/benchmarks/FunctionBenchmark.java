@@ -0,0 +1,153 @@
+/*
+ * © Copyright FOCONIS AG, 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ * 
+ */
+package org.openntf.formula.benchmarks;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openntf.formula.FormulaContext;
+import org.openntf.formula.Formulas;
+import org.openntf.formula.ValueHolder;
+import org.openntf.formula.function.DateTimeFunctions;
+import org.openntf.formula.function.TextFunctions;
+
+/**
+ * Measures some hot functions of {@link TextFunctions} and {@link DateTimeFunctions}. The functions are called directly (without parser
+ * and AST-tree), every call uses the values of the next document of the {@link Dataset}.
+ * 
+ * @author Roland Praml, Foconis AG
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FunctionBenchmark {
+
+	private static final int DOCUMENTS = 256;
+
+	private FormulaContext ctx;
+	private ValueHolder[] subject = new ValueHolder[DOCUMENTS];
+	private ValueHolder[] body = new ValueHolder[DOCUMENTS];
+	private ValueHolder[] author = new ValueHolder[DOCUMENTS];
+	private ValueHolder[] categories = new ValueHolder[DOCUMENTS];
+	private ValueHolder[] qty = new ValueHolder[DOCUMENTS];
+	private ValueHolder[] due = new ValueHolder[DOCUMENTS];
+	private ValueHolder[] dueTime = new ValueHolder[DOCUMENTS];
+
+	private ValueHolder matchPattern;
+	private ValueHolder likePattern;
+	private ValueHolder replaceFrom;
+	private ValueHolder replaceTo;
+	private ValueHolder space;
+	private ValueHolder slash;
+	private ValueHolder zero;
+	private ValueHolder one;
+	private ValueHolder two;
+	private ValueHolder seven;
+
+	private int doc;
+
+	@Setup
+	public void setup() {
+		ctx = Formulas.createContext(null, Dataset.getFormatter(), Formulas.getParser(Dataset.getFormatter(), Formulas
+				.getFunctionFactory()));
+		List<Map<String, Object>> documents = Dataset.createDocuments(DOCUMENTS);
+		for (int i = 0; i < DOCUMENTS; i++) {
+			Map<String, Object> document = documents.get(i);
+			subject[i] = ValueHolder.valueOf(document.get("Subject"));
+			body[i] = ValueHolder.valueOf(document.get("Body"));
+			author[i] = ValueHolder.valueOf(document.get("Author"));
+			categories[i] = ValueHolder.valueOf(document.get("Categories"));
+			qty[i] = ValueHolder.valueOf(document.get("Qty"));
+			due[i] = ValueHolder.valueOf(document.get("Due"));
+			dueTime[i] = TextFunctions.atTextToTime(ctx, new ValueHolder[] { due[i] });
+		}
+		matchPattern = ValueHolder.valueOf("*order*");
+		likePattern = ValueHolder.valueOf("%Miller%");
+		replaceFrom = ValueHolder.valueOf(new String[] { "the", "a", "and" });
+		replaceTo = ValueHolder.valueOf(new String[] { "THE", "A", "AND" });
+		space = ValueHolder.valueOf(" ");
+		slash = ValueHolder.valueOf("/");
+		zero = ValueHolder.valueOf(0);
+		one = ValueHolder.valueOf(1);
+		two = ValueHolder.valueOf(2);
+		seven = ValueHolder.valueOf(7);
+	}
+
+	private int next() {
+		return doc = (doc + 1) & (DOCUMENTS - 1);
+	}
+
+	@Benchmark
+	public ValueHolder matches() {
+		return TextFunctions.atMatches(ctx, new ValueHolder[] { subject[next()], matchPattern });
+	}
+
+	@Benchmark
+	public ValueHolder like() {
+		return TextFunctions.atLike(ctx, new ValueHolder[] { author[next()], likePattern });
+	}
+
+	@Benchmark
+	public ValueHolder replaceSubstring() {
+		return TextFunctions.atReplaceSubstring(new ValueHolder[] { body[next()], replaceFrom, replaceTo });
+	}
+
+	@Benchmark
+	public ValueHolder word() {
+		return TextFunctions.atWord(new ValueHolder[] { author[next()], space, two });
+	}
+
+	@Benchmark
+	public ValueHolder explode() {
+		return TextFunctions.atExplode(ctx, new ValueHolder[] { categories[next()], slash });
+	}
+
+	@Benchmark
+	public ValueHolder text() {
+		return TextFunctions.atText(ctx, new ValueHolder[] { qty[next()] });
+	}
+
+	@Benchmark
+	public ValueHolder textToTime() {
+		return TextFunctions.atTextToTime(ctx, new ValueHolder[] { due[next()] });
+	}
+
+	@Benchmark
+	public ValueHolder adjust() {
+		return DateTimeFunctions.atAdjust(ctx, new ValueHolder[] { dueTime[next()], zero, one, seven, zero, zero, zero });
+	}
+
+	@Benchmark
+	public ValueHolder dateToText() {
+		return TextFunctions.atText(ctx, new ValueHolder[] { dueTime[next()] });
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * © Copyright FOCONIS AG, 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ * 
+ */
+package org.openntf.formula.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openntf.formula.ASTNode;
+import org.openntf.formula.FormulaParseException;
+import org.openntf.formula.FormulaParser;
+import org.openntf.formula.Formulas;
+
+/**
+ * Measures {@link FormulaParser#parse(String)}. <code>uncached</code> parses the formula every time, <code>cached</code> returns the
+ * tree from the shared FormulaCache.
+ * 
+ * @author Roland Praml, Foconis AG
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+	@Param({ "time", "forIf", "power", "transform", "escape", "forText", "timeRange" })
+	public String formula;
+
+	private String text;
+	private FormulaParser uncachedParser;
+	private FormulaParser cachedParser;
+
+	@Setup
+	public void setup() {
+		text = Dataset.getFormula(formula);
+		uncachedParser = Formulas.getParser(Dataset.getFormatter(), Formulas.getFunctionFactory());
+		uncachedParser.setFormulaCache(null);
+		cachedParser = Formulas.getParser(Dataset.getFormatter(), Formulas.getFunctionFactory());
+	}
+
+	@Benchmark
+	public ASTNode uncached() throws FormulaParseException {
+		return uncachedParser.parse(text);
+	}
+
+	@Benchmark
+	public ASTNode cached() throws FormulaParseException {
+		return cachedParser.parse(text);
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * © Copyright FOCONIS AG, 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ * 
+ */
+package org.openntf.formula.benchmarks;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openntf.formula.ASTNode;
+import org.openntf.formula.EvaluateException;
+import org.openntf.formula.FormulaContext;
+import org.openntf.formula.FormulaParseException;
+import org.openntf.formula.FormulaParser;
+import org.openntf.formula.Formulas;
+
+/**
+ * Measures {@link ASTNode#solve(FormulaContext)} over the documents of the {@link Dataset}. The score is the time per document.
+ * 
+ * The modes compare the different ways to evaluate a formula:
+ * <ul>
+ * <li><code>interpreted</code>: the AST-tree is evaluated</li>
+ * <li><code>compiled</code>: the formula is compiled to bytecode</li>
+ * <li><code>pooled</code>: the AST-tree is evaluated with pooled contexts (the ValueHolderPool of the thread)</li>
+ * <li><code>batch</code>: all documents are evaluated at once with solveBatch</li>
+ * </ul>
+ * 
+ * @author Roland Praml, Foconis AG
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SolveBenchmark {
+
+	public static final int DOCUMENTS = 1000;
+
+	@Param({ "time", "forIf", "power", "transform", "escape", "forText", "timeRange" })
+	public String formula;
+
+	@Param({ "interpreted", "compiled", "pooled", "batch" })
+	public String mode;
+
+	private FormulaParser parser;
+	private ASTNode node;
+	private List<Map<String, Object>> documents;
+	private boolean pooled;
+
+	@Setup
+	public void setup() throws FormulaParseException {
+		parser = Formulas.getParser(Dataset.getFormatter(), Formulas.getFunctionFactory());
+		documents = Dataset.createDocuments(DOCUMENTS);
+		if ("compiled".equals(mode)) {
+			node = parser.compile(Dataset.getFormula(formula), false);
+		} else {
+			node = parser.parse(Dataset.getFormula(formula));
+		}
+		pooled = "pooled".equals(mode);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(DOCUMENTS)
+	public void solve(final Blackhole bh) throws EvaluateException {
+		if ("batch".equals(mode)) {
+			bh.consume(node.solveBatch(Formulas.createContexts(documents, parser)));
+			return;
+		}
+		for (int i = 0; i < DOCUMENTS; i++) {
+			FormulaContext ctx = Formulas.createContext(documents.get(i), parser);
+			ctx.setPooled(pooled);
+			bh.consume(node.solve(ctx));
+		}
+	}
+}
@@ -24,6 +24,7 @@ public interface IndexDatabase extends IScannerStateManager {
 	public static final String TERM_FORM_NAME = "$TermDoc";
 	public static final String TERM_KEY_NAME = "TermKey";
 	public static final String TERM_MAP_PREFIX = "_ODA_TermMap_";
+	public static final String TERM_POSTINGS_PREFIX = "_ODA_TermPost_";
 
 	public static final String VALUE_FORM_NAME = "$ValueDoc";
 	public static final String VALUE_KEY_NAME = "ValueKey";
@@ -40,6 +41,11 @@ public interface IndexDatabase extends IScannerStateManager {
 	public static final String DB_DOC_LIST_NAME = "DocumentList";
 	public static final String DB_TITLE_NAME = "Title";
 	public static final String DB_DOC_SORTER_NAME = "DocumentSorter";
+	public static final String DB_DOC_NUMBER_NAME = "DocNumberMap";
+
+	public static final String FORWARD_FORM_NAME = "$ForwardDoc";
+	public static final String FORWARD_KEY_PREFIX = "$fwd:";
+	public static final String FORWARD_INDEX_NAME = "ForwardIndex";
 	public static final String[] DEFAULT_STOP_WORDS_EN = "a,able,about,across,after,all,almost,also,am,among,an,and,any,are,as,at,be,because,been,but,by,can,cannot,could,dear,did,do,does,either,else,ever,every,for,from,get,got,had,has,have,he,her,hers,him,his,how,however,i,if,in,into,is,it,its,just,least,let,like,likely,may,me,might,most,must,my,neither,no,nor,not,of,off,often,on,only,or,other,our,own,rather,said,say,says,she,should,since,so,some,than,that,the,their,them,then,there,these,they,this,tis,to,too,twas,us,wants,was,we,were,what,when,where,which,while,who,whom,why,will,with,would,yet,you,your"
 			.split(",");
 
@@ -0,0 +1,193 @@
+package org.openntf.domino.big.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openntf.domino.Document;
+
+/**
+ * A {@link NoteList} that is stored in a document as chunks of delta encoded coordinates. It is the format of the edge lists of the graph
+ * vertices.
+ *
+ * The item with the name of the list holds a small header: the number of coordinates and the number of coordinates in every chunk. Every
+ * chunk is one item (see {@link #getChunkItemName(String, int)}) with at most {@link #CHUNK_ROWS} sorted and delta encoded coordinates.
+ *
+ * The list remembers the first position that changed since it was loaded or written, and {@link #write(Document, String)} only writes the
+ * chunks from this position on. Adding a coordinate rewrites the last chunk or starts a new one. When more than a quarter of the
+ * coordinates were appended since the last compaction, all coordinates are sorted and written again, which keeps the deltas small.
+ *
+ * Lists in the old format (the packed coordinates of {@link NoteList#toByteArray()}) are read as well and converted at the next write.
+ */
+public class ChunkedNoteList extends NoteList {
+	private static final Logger log_ = Logger.getLogger(ChunkedNoteList.class.getName());
+
+	/** the maximum number of coordinates in a chunk. Even with 30 bytes for a coordinate a chunk fits into one item. */
+	public static final int CHUNK_ROWS = 2048;
+	public static final String CHUNK_ITEM_PREFIX = "_ADJ";
+
+	private static final int MAGIC = 0x4F44414A;
+	private static final byte VERSION = 1;
+	private static final int HEADER_SIZE = 17;
+	private static final int ITEM_SIZE = 64 * 1024;
+
+	/** the number of coordinates of every chunk in the document */
+	private final List<Integer> chunkRows_ = new ArrayList<Integer>();
+	/** the number of coordinates in the chunks */
+	private int storedSize_;
+	/** the first position that changed since the last load or write */
+	private int changedFrom_;
+	/** the number of coordinates that were appended since the last compaction */
+	private int appended_;
+	/** false if the document holds the old format or a damaged list, so everything has to be written */
+	private boolean converted_;
+
+	public ChunkedNoteList() {
+		super();
+	}
+
+	public ChunkedNoteList(final boolean concurrent) {
+		super(concurrent);
+	}
+
+	/**
+	 * The name of the item of a chunk. It does not start with the name of the list, so it is not taken for an edge label.
+	 */
+	public static String getChunkItemName(final String key, final int chunk) {
+		return CHUNK_ITEM_PREFIX + chunk + key;
+	}
+
+	@Override
+	protected void changed(final int index) {
+		if (index < changedFrom_) {
+			changedFrom_ = index;
+		}
+	}
+
+	/**
+	 * Appends the coordinates stored in the item of the document. Both formats are read.
+	 */
+	public synchronized void load(final Document doc, final String key) {
+		byte[] header = doc.readBinary(key);
+		if (header == null)
+			return;
+		if (!isHeader(header)) {
+			loadByteArray(header);
+			converted_ = false;
+			return;
+		}
+		ByteBuffer buf = ByteBuffer.wrap(header, 5, header.length - 5);
+		int size = buf.getInt();
+		int chunks = buf.getInt();
+		appended_ = buf.getInt();
+		delegate_.ensureCapacity(delegate_.size() + size);
+		converted_ = true;
+		for (int i = 0; i < chunks; i++) {
+			int rows = buf.getInt();
+			int read = 0;
+			byte[] chunk = doc.readBinaryChunk(getChunkItemName(key, i), 0);
+			if (chunk != null) {
+				try {
+					read = delegate_.decodeRows(chunk);
+				} catch (IOException e) {
+					log_.log(Level.SEVERE, "Chunk " + i + " of " + key + " in document " + doc.getUniversalID() + " is damaged", e);
+				}
+			}
+			if (read != rows) {
+				log_.log(Level.WARNING, "Chunk " + i + " of " + key + " in document " + doc.getUniversalID() + " has " + read
+						+ " coordinates instead of " + rows + ". The list will be written again.");
+				converted_ = false;
+			}
+			chunkRows_.add(read);
+		}
+		storedSize_ = size();
+		changedFrom_ = storedSize_;
+	}
+
+	/**
+	 * The old format is a multiple of 24 bytes, which a header never is
+	 */
+	private static boolean isHeader(final byte[] bytes) {
+		if (bytes.length < HEADER_SIZE || bytes[4] != VERSION)
+			return false;
+		ByteBuffer buf = ByteBuffer.wrap(bytes);
+		return buf.getInt(0) == MAGIC && bytes.length == HEADER_SIZE + 4 * buf.getInt(9);
+	}
+
+	/**
+	 * Writes the chunks that changed since the list was loaded or written and the header. The document is not saved.
+	 *
+	 * The coordinates of the rewritten chunks are sorted, so their order in the list changes.
+	 */
+	public synchronized void write(final Document doc, final String key) {
+		int size = size();
+		int appended = appended_ + Math.max(0, size - storedSize_);
+		int first;
+		if (!converted_ || (appended > size / 4 && size > CHUNK_ROWS)) {
+			first = 0;
+		} else if (changedFrom_ >= storedSize_ && size == storedSize_) {
+			return;
+		} else {
+			first = findChunk(Math.min(changedFrom_, storedSize_));
+		}
+		int start = 0;
+		for (int i = 0; i < first; i++) {
+			start += chunkRows_.get(i);
+		}
+		int oldChunks = chunkRows_.size();
+		while (chunkRows_.size() > first) {
+			chunkRows_.remove(chunkRows_.size() - 1);
+		}
+		if (first == 0) {
+			delegate_.sortRows(0, size);
+		}
+		for (int pos = start; pos < size; pos += CHUNK_ROWS) {
+			int end = Math.min(pos + CHUNK_ROWS, size);
+			if (first > 0) {
+				delegate_.sortRows(pos, end);
+			}
+			doc.writeBinary(getChunkItemName(key, chunkRows_.size()), delegate_.encodeRows(pos, end), ITEM_SIZE);
+			chunkRows_.add(end - pos);
+		}
+		for (int i = chunkRows_.size(); i < oldChunks; i++) {
+			doc.removeItem(getChunkItemName(key, i));
+		}
+		appended_ = first == 0 ? 0 : appended;
+		storedSize_ = size;
+		changedFrom_ = size;
+		converted_ = true;
+		doc.writeBinary(key, toHeader(), ITEM_SIZE);
+	}
+
+	/**
+	 * Returns the first chunk that has to be written if the coordinates from the position on changed
+	 */
+	private int findChunk(final int position) {
+		int start = 0;
+		for (int i = 0; i < chunkRows_.size(); i++) {
+			int rows = chunkRows_.get(i);
+			if (position < start + rows || (position == start + rows && rows < CHUNK_ROWS)) {
+				// the chunk holds the position, or the position is appended to a chunk that is not full
+				return i;
+			}
+			start += rows;
+		}
+		return chunkRows_.size();
+	}
+
+	private byte[] toHeader() {
+		ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + 4 * chunkRows_.size());
+		buf.putInt(MAGIC);
+		buf.put(VERSION);
+		buf.putInt(storedSize_);
+		buf.putInt(chunkRows_.size());
+		buf.putInt(appended_);
+		for (Integer rows : chunkRows_) {
+			buf.putInt(rows);
+		}
+		return buf.array();
+	}
+}
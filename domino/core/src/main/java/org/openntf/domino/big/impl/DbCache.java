@@ -2,8 +2,19 @@ package org.openntf.domino.big.impl;
 
 import static org.openntf.domino.big.NoteCoordinate.Utils.getReplidFromLong;
 
-import java.util.HashMap;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.openntf.domino.Database;
 import org.openntf.domino.DbDirectory;
@@ -12,18 +23,90 @@ import org.openntf.domino.Session;
 import org.openntf.domino.utils.Factory;
 import org.openntf.domino.utils.Factory.SessionType;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader.InvalidCacheLoadException;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Caches the databases that are opened to resolve {@link NoteCoordinate}s.
+ *
+ * The cache is thread safe. A database belongs to the session that opened it, so the entries are kept per session, server and replica
+ * id, and a thread only gets databases of its own session. The least recently used databases are dropped when the cache exceeds its
+ * maximum size, and databases that were not used for {@link #DEFAULT_EXPIRY_MINUTES} are dropped, so the databases of a session that
+ * ended do not stay. The keys do not keep the sessions alive, but a cached database refers to its session until it is dropped or the
+ * session is {@link #invalidate(Session) invalidated}.
+ */
 public class DbCache {
-	private final Map<Long, Database> dbMap_ = new HashMap<Long, Database>();	//note: not Thread-safe yet.
-	private String defaultServerName_ = "";
+	private static final Logger log_ = Logger.getLogger(DbCache.class.getName());
 
-	public DbCache() {
+	public static final int DEFAULT_MAXIMUM_SIZE = 256;
+	public static final int DEFAULT_EXPIRY_MINUTES = 10;
+
+	private final Cache<DbKey, Database> dbMap_;
+	private volatile String defaultServerName_ = "";
+	private final AtomicLong openFailures_ = new AtomicLong();
+
+	/**
+	 * The key of a database: the session is compared by identity. The key refers to the session weakly, a key whose session was collected
+	 * is only equal to itself.
+	 */
+	protected static class DbKey {
+		private final WeakReference<Session> session_;
+		private final int sessionHash_;
+		private final String server_;
+		private final long dbid_;
+
+		protected DbKey(final Session session, final String server, final long dbid) {
+			session_ = new WeakReference<Session>(session);
+			sessionHash_ = System.identityHashCode(session);
+			server_ = server == null ? "" : server;
+			dbid_ = dbid;
+		}
+
+		protected Session getSession() {
+			return session_.get();
+		}
+
+		@Override
+		public int hashCode() {
+			int result = sessionHash_;
+			result = 31 * result + server_.hashCode();
+			result = 31 * result + (int) (dbid_ ^ (dbid_ >>> 32));
+			return result;
+		}
 
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof DbKey))
+				return false;
+			DbKey other = (DbKey) obj;
+			Session session = getSession();
+			return session != null && session == other.getSession() && dbid_ == other.dbid_ && server_.equals(other.server_);
+		}
+	}
+
+	public DbCache() {
+		this(DEFAULT_MAXIMUM_SIZE);
 	}
 
 	public DbCache(final String defaultServer) {
+		this(DEFAULT_MAXIMUM_SIZE);
 		defaultServerName_ = defaultServer;
 	}
 
+	/**
+	 * @param maximumSize
+	 *            the maximum number of open databases over all sessions
+	 */
+	public DbCache(final int maximumSize) {
+		dbMap_ = CacheBuilder.newBuilder().maximumSize(maximumSize).expireAfterAccess(DEFAULT_EXPIRY_MINUTES, TimeUnit.MINUTES)
+				.recordStats().build();
+	}
+
 	public void setDefaultServer(final String defaultServer) {
 		defaultServerName_ = defaultServer;
 	}
@@ -37,14 +120,40 @@ public class DbCache {
 	}
 
 	public Database getDatabase(final long dbid, final String server, final Session session) {
-		Database result = dbMap_.get(dbid);
-		if (result == null) {
-			String replid = getReplidFromLong(dbid);
-			DbDirectory dir = session.getDbDirectory(server);
-			result = dir.openDatabaseByReplicaID(replid);
-			dbMap_.put(dbid, result);
+		final DbKey key = new DbKey(session, server, dbid);
+		Callable<Database> loader = new Callable<Database>() {
+			@Override
+			public Database call() throws Exception {
+				return openDatabase(key.dbid_, key.server_, session);
+			}
+		};
+		try {
+			Database result = dbMap_.get(key, loader);
+			if (result.isDead()) {
+				// the session was recycled
+				dbMap_.invalidate(key);
+				result = dbMap_.get(key, loader);
+			}
+			return result;
+		} catch (InvalidCacheLoadException e) {
+			// the database does not exist (or we have no access): not cached, so it is tried again next time
+			openFailures_.incrementAndGet();
+			return null;
+		} catch (ExecutionException e) {
+			openFailures_.incrementAndGet();
+			log_.log(Level.WARNING, "Unable to open database " + getReplidFromLong(dbid) + " on " + server, e.getCause());
+			return null;
+		} catch (UncheckedExecutionException e) {
+			openFailures_.incrementAndGet();
+			log_.log(Level.WARNING, "Unable to open database " + getReplidFromLong(dbid) + " on " + server, e.getCause());
+			return null;
 		}
-		return result;
+	}
+
+	protected Database openDatabase(final long dbid, final String server, final Session session) {
+		String replid = getReplidFromLong(dbid);
+		DbDirectory dir = session.getDbDirectory(server);
+		return dir.openDatabaseByReplicaID(replid);
 	}
 
 	@SuppressWarnings("null")
@@ -68,7 +177,96 @@ public class DbCache {
 		return result;
 	}
 
+	/**
+	 * Resolves the coordinates on the default server
+	 *
+	 * @see #getDocuments(Collection, String)
+	 */
+	public List<Document> getDocuments(final Collection<? extends org.openntf.domino.big.NoteCoordinate> coordinates) {
+		return getDocuments(coordinates, getDefaultServer());
+	}
+
+	/**
+	 * Resolves the coordinates one database at a time: the coordinates are grouped by replica id, so every database is looked up once.
+	 *
+	 * @return the documents in the order of the coordinates. The entry is null if the database or the document was not found.
+	 */
+	public List<Document> getDocuments(final Collection<? extends org.openntf.domino.big.NoteCoordinate> coordinates, final String server) {
+		org.openntf.domino.big.NoteCoordinate[] ncs = coordinates.toArray(new org.openntf.domino.big.NoteCoordinate[coordinates.size()]);
+		Map<Long, List<Integer>> byDb = new LinkedHashMap<Long, List<Integer>>();
+		for (int i = 0; i < ncs.length; i++) {
+			if (ncs[i] == null)
+				continue;
+			Long dbid = ncs[i].getReplicaLong();
+			List<Integer> positions = byDb.get(dbid);
+			if (positions == null) {
+				positions = new ArrayList<Integer>();
+				byDb.put(dbid, positions);
+			}
+			positions.add(i);
+		}
+		Document[] result = new Document[ncs.length];
+		Session session = Factory.getSession(SessionType.CURRENT);
+		for (Map.Entry<Long, List<Integer>> e : byDb.entrySet()) {
+			Database db = getDatabase(e.getKey(), server, session);
+			if (db == null) {
+				if (log_.isLoggable(Level.FINE)) {
+					log_.log(Level.FINE, "Unable to find database " + getReplidFromLong(e.getKey()) + " for " + e.getValue().size()
+							+ " coordinates");
+				}
+				continue;
+			}
+			for (Integer pos : e.getValue()) {
+				result[pos] = db.getDocumentByUNID(ncs[pos].getUNID());
+			}
+		}
+		return Arrays.asList(result);
+	}
+
 	public String getDefaultServer() {
 		return defaultServerName_;
 	}
+
+	/**
+	 * Drops all databases of the session, e.g. when the session ends
+	 */
+	public void invalidate(final Session session) {
+		for (DbKey key : dbMap_.asMap().keySet()) {
+			if (key.getSession() == session) {
+				dbMap_.invalidate(key);
+			}
+		}
+	}
+
+	public void clear() {
+		dbMap_.invalidateAll();
+	}
+
+	/**
+	 * @return the number of cached databases
+	 */
+	public long size() {
+		return dbMap_.size();
+	}
+
+	/**
+	 * @return hits, misses, load times and evictions of the cache
+	 */
+	public CacheStats getStats() {
+		return dbMap_.stats();
+	}
+
+	/**
+	 * @return the number of databases that could not be opened
+	 */
+	public long getOpenFailures() {
+		return openFailures_.get();
+	}
+
+	@Override
+	public String toString() {
+		CacheStats stats = getStats();
+		return "DbCache[size=" + size() + ", hits=" + stats.hitCount() + ", misses=" + stats.missCount() + ", evictions="
+				+ stats.evictionCount() + ", openFailures=" + getOpenFailures() + "]";
+	}
 }
@@ -0,0 +1,266 @@
+/**
+ *
+ */
+package org.openntf.domino.big.impl;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns a dense document number to every document of one database in the index, so that the postings can be stored as
+ * {@link PostingList}s instead of sets of strings.
+ *
+ * A posting used to be stored as "address": UNID + reader flag ("0"/"1") + form name. The map keeps the UNID as two longs, the reader
+ * flag and the index of the form name, and rebuilds the address on request. If the form or reader flag of a document changes, the number
+ * stays the same.
+ *
+ * All methods are synchronized: the arrays are reallocated when a new number is assigned.
+ *
+ * @author Roland Praml, Foconis AG
+ *
+ */
+public class DocNumberMap implements Externalizable {
+	private static final long serialVersionUID = 1L;
+
+	private int size_;
+	private long[] unidHi_ = new long[64];
+	private long[] unidLo_ = new long[64];
+	private boolean[] readers_ = new boolean[64];
+	private int[] forms_ = new int[64];
+
+	private List<String> formNames_ = new ArrayList<String>();
+	private Map<String, Integer> formIndex_ = new HashMap<String, Integer>();
+
+	/** open addressing table: docNo + 1, 0 = free */
+	private int[] table_ = new int[128];
+
+	private transient volatile boolean changed_;
+	/** the number of callers that may assign new numbers, guarded by the map cache of the {@link IndexDatabase} */
+	transient int users_;
+
+	public DocNumberMap() {
+	}
+
+	/**
+	 * Returns the number of documents
+	 */
+	public synchronized int size() {
+		return size_;
+	}
+
+	/**
+	 * Returns true, if numbers were added or changed since the map was created or loaded
+	 */
+	public boolean isChanged() {
+		return changed_;
+	}
+
+	public void setChanged(final boolean changed) {
+		changed_ = changed;
+	}
+
+	/**
+	 * Returns the number of the document with the given address. A new number is assigned, if the UNID is not known yet.
+	 *
+	 * @param address
+	 *            UNID + reader flag + form name
+	 */
+	public synchronized int getDocNumber(final CharSequence address) {
+		if (address.length() < 33)
+			throw new IllegalArgumentException("Not a valid address: " + address);
+		long hi = parseHex(address, 0);
+		long lo = parseHex(address, 16);
+		boolean readers = address.charAt(32) == '1';
+		int form = getFormIndex(address.subSequence(33, address.length()).toString());
+
+		int slot = find(hi, lo);
+		int docNo = table_[slot] - 1;
+		if (docNo < 0) {
+			docNo = size_;
+			if (size_ == unidHi_.length) {
+				int cap = size_ * 2;
+				unidHi_ = Arrays.copyOf(unidHi_, cap);
+				unidLo_ = Arrays.copyOf(unidLo_, cap);
+				readers_ = Arrays.copyOf(readers_, cap);
+				forms_ = Arrays.copyOf(forms_, cap);
+			}
+			unidHi_[docNo] = hi;
+			unidLo_[docNo] = lo;
+			readers_[docNo] = readers;
+			forms_[docNo] = form;
+			size_++;
+			table_[slot] = docNo + 1;
+			if (size_ * 2 > table_.length) {
+				rehash(table_.length * 2);
+			}
+			changed_ = true;
+		} else if (readers_[docNo] != readers || forms_[docNo] != form) {
+			readers_[docNo] = readers;
+			forms_[docNo] = form;
+			changed_ = true;
+		}
+		return docNo;
+	}
+
+	/**
+	 * Returns the number of the document with the given UNID, -1 if the document is not in the map
+	 */
+	public synchronized int lookup(final CharSequence unid) {
+		if (unid.length() < 32)
+			return -1;
+		return table_[find(parseHex(unid, 0), parseHex(unid, 16))] - 1;
+	}
+
+	public synchronized String getUnid(final int docNo) {
+		StringBuilder sb = new StringBuilder(32);
+		appendHex(sb, unidHi_[docNo]);
+		appendHex(sb, unidLo_[docNo]);
+		return sb.toString();
+	}
+
+	public synchronized boolean hasReaders(final int docNo) {
+		return readers_[docNo];
+	}
+
+	public synchronized String getForm(final int docNo) {
+		return formNames_.get(forms_[docNo]);
+	}
+
+	/**
+	 * Rebuilds the address (UNID + reader flag + form name) of the document
+	 */
+	public synchronized String getAddress(final int docNo) {
+		StringBuilder sb = new StringBuilder(48);
+		appendHex(sb, unidHi_[docNo]);
+		appendHex(sb, unidLo_[docNo]);
+		sb.append(readers_[docNo] ? '1' : '0');
+		sb.append(formNames_.get(forms_[docNo]));
+		return sb.toString();
+	}
+
+	/**
+	 * Returns the numbers of all documents with one of the given forms (case insensitive)
+	 */
+	public synchronized PostingList getFormDocs(final java.util.Collection<? extends CharSequence> forms) {
+		boolean[] match = new boolean[formNames_.size()];
+		for (int i = 0; i < match.length; i++) {
+			for (CharSequence form : forms) {
+				if (formNames_.get(i).equalsIgnoreCase(form.toString())) {
+					match[i] = true;
+					break;
+				}
+			}
+		}
+		PostingList.Builder b = new PostingList.Builder();
+		for (int docNo = 0; docNo < size_; docNo++) {
+			if (match[forms_[docNo]]) {
+				b.add(docNo);
+			}
+		}
+		return b.build();
+	}
+
+	private int getFormIndex(final String form) {
+		Integer ret = formIndex_.get(form);
+		if (ret == null) {
+			ret = formNames_.size();
+			formNames_.add(form);
+			formIndex_.put(form, ret);
+		}
+		return ret;
+	}
+
+	private int find(final long hi, final long lo) {
+		int mask = table_.length - 1;
+		long h = (hi ^ lo) * 0x9E3779B97F4A7C15L;
+		int slot = (int) (h >>> 40) & mask;
+		while (true) {
+			int entry = table_[slot];
+			if (entry == 0 || (unidHi_[entry - 1] == hi && unidLo_[entry - 1] == lo))
+				return slot;
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private void rehash(final int capacity) {
+		table_ = new int[capacity];
+		for (int docNo = 0; docNo < size_; docNo++) {
+			table_[find(unidHi_[docNo], unidLo_[docNo])] = docNo + 1;
+		}
+	}
+
+	private static long parseHex(final CharSequence s, final int start) {
+		long ret = 0;
+		for (int i = start; i < start + 16; i++) {
+			int digit = Character.digit(s.charAt(i), 16);
+			if (digit < 0)
+				throw new IllegalArgumentException("Not a valid UNID: " + s);
+			ret = (ret << 4) | digit;
+		}
+		return ret;
+	}
+
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+	private static void appendHex(final StringBuilder sb, final long value) {
+		for (int shift = 60; shift >= 0; shift -= 4) {
+			sb.append(HEX[(int) (value >>> shift) & 0xF]);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.Externalizable#writeExternal(java.io.ObjectOutput)
+	 */
+	@Override
+	public synchronized void writeExternal(final ObjectOutput out) throws IOException {
+		out.writeInt(formNames_.size());
+		for (String form : formNames_) {
+			out.writeUTF(form);
+		}
+		out.writeInt(size_);
+		for (int i = 0; i < size_; i++) {
+			out.writeLong(unidHi_[i]);
+			out.writeLong(unidLo_[i]);
+			out.writeInt(readers_[i] ? -forms_[i] - 1 : forms_[i]);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.Externalizable#readExternal(java.io.ObjectInput)
+	 */
+	@Override
+	public synchronized void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
+		int formCount = in.readInt();
+		formNames_ = new ArrayList<String>(formCount);
+		formIndex_ = new HashMap<String, Integer>();
+		for (int i = 0; i < formCount; i++) {
+			getFormIndex(in.readUTF());
+		}
+		size_ = in.readInt();
+		int cap = Math.max(64, size_);
+		unidHi_ = new long[cap];
+		unidLo_ = new long[cap];
+		readers_ = new boolean[cap];
+		forms_ = new int[cap];
+		for (int i = 0; i < size_; i++) {
+			unidHi_[i] = in.readLong();
+			unidLo_[i] = in.readLong();
+			int form = in.readInt();
+			readers_[i] = form < 0;
+			forms_[i] = form < 0 ? -form - 1 : form;
+		}
+		int tableSize = 128;
+		while (tableSize < size_ * 2 + 2) {
+			tableSize <<= 1;
+		}
+		rehash(tableSize);
+		changed_ = false;
+	}
+}
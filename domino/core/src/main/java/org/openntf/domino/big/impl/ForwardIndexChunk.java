@@ -0,0 +1,147 @@
+/**
+ *
+ */
+package org.openntf.domino.big.impl;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.openntf.domino.types.CaseInsensitiveString;
+
+/**
+ * A part of the forward index of one database: for every document number the terms and the names of the document and the items that
+ * contain them. {@link IndexUpdate} compares the stored terms with the terms of a modified document, so only the differences have to be
+ * written to the postings. Terms and names are kept apart, because their postings are stored in different documents.
+ *
+ * Every chunk holds the documents with the numbers <code>chunk &lt;&lt; {@link #CHUNK_SHIFT}</code> and following.
+ *
+ * @author Roland Praml, Foconis AG
+ *
+ */
+public class ForwardIndexChunk implements Externalizable {
+	private static final long serialVersionUID = 1L;
+
+	/** 256 documents per chunk */
+	public static final int CHUNK_SHIFT = 8;
+
+	private Map<Integer, Map<String, Set<CharSequence>>> docs_ = new HashMap<Integer, Map<String, Set<CharSequence>>>();
+	private Map<Integer, Map<String, Set<CharSequence>>> names_ = new HashMap<Integer, Map<String, Set<CharSequence>>>();
+
+	private transient boolean changed_;
+
+	public ForwardIndexChunk() {
+	}
+
+	public static int getChunk(final int docNo) {
+		return docNo >>> CHUNK_SHIFT;
+	}
+
+	/**
+	 * Returns the terms of the document (term -&gt; item names), null if the document is not in the forward index
+	 */
+	public Map<String, Set<CharSequence>> get(final int docNo) {
+		return docs_.get(docNo);
+	}
+
+	/**
+	 * Returns the names of the document (name -&gt; item names), null if the document has no names in the forward index
+	 */
+	public Map<String, Set<CharSequence>> getNames(final int docNo) {
+		return names_.get(docNo);
+	}
+
+	/**
+	 * Sets the terms and names of the document. Empty maps remove them.
+	 */
+	public void put(final int docNo, final Map<String, Set<CharSequence>> terms, final Map<String, Set<CharSequence>> names) {
+		put(docs_, docNo, terms);
+		put(names_, docNo, names);
+		changed_ = true;
+	}
+
+	private static void put(final Map<Integer, Map<String, Set<CharSequence>>> map, final int docNo,
+			final Map<String, Set<CharSequence>> terms) {
+		if (terms == null || terms.isEmpty()) {
+			map.remove(docNo);
+		} else {
+			map.put(docNo, terms);
+		}
+	}
+
+	public void remove(final int docNo) {
+		boolean removed = docs_.remove(docNo) != null;
+		removed |= names_.remove(docNo) != null;
+		if (removed) {
+			changed_ = true;
+		}
+	}
+
+	public boolean isChanged() {
+		return changed_;
+	}
+
+	public void setChanged(final boolean changed) {
+		changed_ = changed;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.Externalizable#writeExternal(java.io.ObjectOutput)
+	 */
+	@Override
+	public void writeExternal(final ObjectOutput out) throws IOException {
+		write(out, docs_);
+		write(out, names_);
+	}
+
+	private static void write(final ObjectOutput out, final Map<Integer, Map<String, Set<CharSequence>>> docs) throws IOException {
+		out.writeInt(docs.size());
+		for (Map.Entry<Integer, Map<String, Set<CharSequence>>> doc : docs.entrySet()) {
+			out.writeInt(doc.getKey());
+			out.writeInt(doc.getValue().size());
+			for (Map.Entry<String, Set<CharSequence>> term : doc.getValue().entrySet()) {
+				out.writeUTF(term.getKey());
+				out.writeInt(term.getValue().size());
+				for (CharSequence item : term.getValue()) {
+					out.writeUTF(item.toString());
+				}
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.Externalizable#readExternal(java.io.ObjectInput)
+	 */
+	@Override
+	public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
+		docs_ = read(in);
+		names_ = read(in);
+		changed_ = false;
+	}
+
+	private static Map<Integer, Map<String, Set<CharSequence>>> read(final ObjectInput in) throws IOException {
+		int docCount = in.readInt();
+		Map<Integer, Map<String, Set<CharSequence>>> docs = new HashMap<Integer, Map<String, Set<CharSequence>>>(docCount * 2);
+		for (int i = 0; i < docCount; i++) {
+			int docNo = in.readInt();
+			int termCount = in.readInt();
+			Map<String, Set<CharSequence>> terms = new HashMap<String, Set<CharSequence>>(termCount * 2);
+			for (int j = 0; j < termCount; j++) {
+				String term = in.readUTF();
+				int itemCount = in.readInt();
+				Set<CharSequence> items = new LinkedHashSet<CharSequence>(itemCount * 2);
+				for (int k = 0; k < itemCount; k++) {
+					items.add(new CaseInsensitiveString(in.readUTF()));
+				}
+				terms.put(term, items);
+			}
+			docs.put(docNo, terms);
+		}
+		return docs;
+	}
+}
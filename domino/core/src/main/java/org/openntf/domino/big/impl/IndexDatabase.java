@@ -6,8 +6,11 @@ package org.openntf.domino.big.impl;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Observable;
@@ -46,6 +49,12 @@ public class IndexDatabase implements IScannerStateManager, org.openntf.domino.b
 	protected boolean caseSensitive_ = false;
 	protected boolean continue_ = true;
 
+	/** the maximum number of document number maps that are kept in memory */
+	public static final int MAX_DOC_NUMBER_MAPS = 64;
+
+	/** the document numbers of the databases in the index, by dbid, in access order. See {@link DocNumberMap} */
+	protected transient Map<String, DocNumberMap> docNumberMaps_ = new LinkedHashMap<String, DocNumberMap>(16, 0.75f, true);
+
 	/*public static Set<CharSequence> toStringSet(final Object value) {
 		Set<CharSequence> result = new HashSet<CharSequence>();
 		if (value == null)
@@ -338,7 +347,11 @@ public class IndexDatabase implements IScannerStateManager, org.openntf.domino.b
 				//				System.out.println("Scanning database " + db.getApiPath());
 				//				if (!db.getFilePath().equalsIgnoreCase("redpill\\graph.nsf")) {
 				try {
-					scanDatabase(db);
+					if (isIncremental()) {
+						updateDatabase(db);
+					} else {
+						scanDatabase(db);
+					}
 				} catch (Throwable t) {
 					t.printStackTrace();
 				}
@@ -359,17 +372,8 @@ public class IndexDatabase implements IScannerStateManager, org.openntf.domino.b
 	@SuppressWarnings("unused")
 	public DocumentScanner scanDatabase(final Database db) {
 		Document dbDoc = getDbDocument(db.getReplicaID());
-		DocumentScanner scanner = new DocumentScanner();
-		scanner.setTrackFieldTokens(false);
-		scanner.setTrackFieldTypes(false);
-		scanner.setTrackFieldValues(false);
-		scanner.setTrackTokenFreq(false);
-		scanner.setTrackTokenLocation(true);
-		scanner.setTrackNameLocation(true);
-		scanner.setStopTokenList(getStopList());
-		scanner.setIgnoreDollar(true);
+		DocumentScanner scanner = createScanner();
 		scanner.setStateManager(this, db.getReplicaID());
-		scanner.setCaseSensitive(getCaseSensitive());
 		dbDoc.replaceItemValue(IndexDatabase.DB_TITLE_NAME, db.getTitle());
 		if (dbDoc.hasItem(DB_LAST_INDEX_NAME)) {
 			scanner.setLastScanDate(dbDoc.getItemValue(DB_LAST_INDEX_NAME, Date.class));
@@ -387,17 +391,121 @@ public class IndexDatabase implements IScannerStateManager, org.openntf.domino.b
 		scanDatabase(db, scanner);
 		String dbid = db.getReplicaID();
 		//		writeResults(dbid, scanner);
-		dbDoc.replaceItemValue(DB_LAST_INDEX_NAME, scanDate);
+		if (scanner.getStatus() != IScannerStateManager.ScanStatus.INTERRUPTED) {
+			// an interrupted scan keeps the checkpoint of the last saved batch
+			dbDoc.replaceItemValue(DB_LAST_INDEX_NAME, scanDate);
+		}
 		//		dbDoc.replaceItemValue(DB_FIELD_TOKEN_NAME, scanner.getFieldTokenMap());
 		//		dbDoc.replaceItemValue(DB_TOKEN_LOCATION_NAME, scanner.getTokenLocationMap());
 		dbDoc.save();
 		return scanner;
 	}
 
+	/**
+	 * Creates a scanner with the settings of this index. No state manager is set.
+	 */
+	public DocumentScanner createScanner() {
+		DocumentScanner scanner = new DocumentScanner();
+		scanner.setTrackFieldTokens(false);
+		scanner.setTrackFieldTypes(false);
+		scanner.setTrackFieldValues(false);
+		scanner.setTrackTokenFreq(false);
+		scanner.setTrackTokenLocation(true);
+		scanner.setTrackNameLocation(true);
+		scanner.setStopTokenList(getStopList());
+		scanner.setIgnoreDollar(true);
+		scanner.setCaseSensitive(getCaseSensitive());
+		scanner.setProgressBatchSize(SCAN_BATCH_SIZE);
+		return scanner;
+	}
+
+	/**
+	 * If true, {@link #scanServer(Session, String)} updates the databases with {@link #updateDatabase(Database)}
+	 */
+	public boolean isIncremental() {
+		return incremental_;
+	}
+
+	public void setIncremental(final boolean incremental) {
+		incremental_ = incremental;
+	}
+
+	/**
+	 * Applies the documents that were modified since the last index date. The terms of every document are compared with the forward
+	 * index, so only the postings of added or removed terms are written, and deleted documents are removed from the postings. See
+	 * {@link IndexUpdate}.
+	 *
+	 * Documents that were indexed by a full scan have no forward entry yet, their terms are only added.
+	 *
+	 * @return the number of documents that were applied
+	 */
+	public long updateDatabase(final Database db) {
+		String dbid = db.getReplicaID();
+		Document dbDoc = getDbDocument(dbid);
+		dbDoc.replaceItemValue(IndexDatabase.DB_TITLE_NAME, db.getTitle());
+		dbDoc.save();
+		Date since = getLastIndexDate(dbid);
+		Date scanDate = new Date();
+		long count = 0;
+		if (db.getModifiedNoteCount(since) > 0) {
+			DocumentScanner scanner = createScanner();
+			// values are not part of the forward index
+			scanner.setTrackValueLocation(false);
+			IndexUpdate update = new IndexUpdate(this, dbid);
+			try {
+				for (Document doc : db.getModifiedDocuments(since)) {
+					if (!continue_ || Thread.currentThread().isInterrupted()) {
+						// the last index date is kept, the next update repeats the documents that are already applied
+						update.flush();
+						return count;
+					}
+					update.updateDocument(doc, scanner);
+					count++;
+					if (update.getPendingDocs() >= UPDATE_BATCH_SIZE) {
+						update.flush();
+					}
+				}
+				update.flush();
+			} finally {
+				update.close();
+			}
+			if (update.isFailed()) {
+				// the last index date is kept, the next update applies the documents again
+				log_.log(Level.WARNING, "Postings of " + db.getApiPath() + " could not be updated, the update will be repeated");
+				return count;
+			}
+			if (log_.isLoggable(Level.FINE)) {
+				log_.log(Level.FINE, "Updated " + count + " documents in " + db.getApiPath() + ": " + update.getAddedCount()
+						+ " postings added, " + update.getRemovedCount() + " removed");
+			}
+		}
+		setLastIndexDate(dbid, scanDate);
+		return count;
+	}
+
+	/**
+	 * Scans all databases of the server with the given number of threads, see {@link ParallelIndexScanner}
+	 *
+	 * @return the replica ids of the databases whose results could not be saved. Their last index date was not moved, so the next scan
+	 *         repeats them.
+	 */
+	public Set<String> scanServer(final Session session, final String serverName, final int threads) {
+		initIndexDb();
+		return new ParallelIndexScanner(this, threads).scanServer(session, serverName);
+	}
+
 	@SuppressWarnings("unused")
 	private int totalErrCount_ = 0;
 
-	private static final List<String> MOD_SORT_LIST = new ArrayList<String>();
+	/** number of documents between two checks, if the scanned locations should be saved */
+	public static final int SCAN_BATCH_SIZE = 64;
+
+	/** number of documents that {@link #updateDatabase(Database)} applies at once */
+	public static final int UPDATE_BATCH_SIZE = 256;
+
+	protected boolean incremental_ = false;
+
+	static final List<String> MOD_SORT_LIST = new ArrayList<String>();
 	static {
 		MOD_SORT_LIST.add("@modified");
 	}
@@ -442,16 +550,7 @@ public class IndexDatabase implements IScannerStateManager, org.openntf.domino.b
 	 */
 	@Override
 	public List<String> getTermDbids(final CharSequence term) {
-		List<String> result = new ArrayList<String>();
-		Document doc = getTermDocument(term);
-		for (Item item : doc.getItems()) {
-			String itemName = item.getName();
-			if (itemName.startsWith(TERM_MAP_PREFIX)) {
-				String dbid = itemName.substring(TERM_MAP_PREFIX.length());
-				result.add(dbid);
-			}
-		}
-		return result;
+		return new ArrayList<String>(getTermDbidSet(getTermDocument(term)));
 	}
 
 	/* (non-Javadoc)
@@ -461,34 +560,15 @@ public class IndexDatabase implements IScannerStateManager, org.openntf.domino.b
 	public int getTermHitCount(final String term) {
 		int result = 0;
 		Document doc = getTermDocument(term);
-		for (Item item : doc.getItems()) {
-			String itemName = item.getName();
-			if (itemName.startsWith(TERM_MAP_PREFIX)) {
-				Map termMap = doc.getItemValue(itemName, Map.class);
-				for (Object key : termMap.keySet()) {
-					Object val = termMap.get(key);
-					if (val instanceof Collection) {
-						result += ((Collection) val).size();
-					}
-				}
-			}
+		for (String dbid : getTermDbidSet(doc)) {
+			result += getTermDbidHitCount(doc, dbid);
 		}
 		return result;
 	}
 
 	protected int getTermDbidHitCount(final Document doc, final CharSequence dbid) {
-		int result = 0;
-		String itemName = TERM_MAP_PREFIX + dbid;
-		if (doc.hasItem(itemName)) {
-			Map termMap = doc.getItemValue(itemName, Map.class);
-			for (Object key : termMap.keySet()) {
-				Object val = termMap.get(key);
-				if (val instanceof Collection) {
-					result += ((Collection) val).size();
-				}
-			}
-		}
-		return result;
+		TermPostings postings = getTermPostings(doc, dbid);
+		return postings == null ? 0 : postings.getHitCount();
 	}
 
 	/* (non-Javadoc)
@@ -499,10 +579,9 @@ public class IndexDatabase implements IScannerStateManager, org.openntf.domino.b
 		Set<CharSequence> result = new HashSet<CharSequence>();
 		Document doc = getTermDocument(term);
 		for (String dbid : dbids) {
-			String itemName = TERM_MAP_PREFIX + dbid;
-			if (doc.hasItem(itemName)) {
-				Map termMap = doc.getItemValue(itemName, Map.class);
-				result.addAll(termMap.keySet());
+			TermPostings postings = getTermPostings(doc, dbid);
+			if (postings != null) {
+				result.addAll(postings.getItemNames());
 			}
 		}
 		return result;
@@ -517,29 +596,14 @@ public class IndexDatabase implements IScannerStateManager, org.openntf.domino.b
 		List<IndexHit> results = new ArrayList<IndexHit>();
 		Document doc = getTermDocument(term);
 		int dbCount = 0;
-		if (dbids == null || dbids.isEmpty()) {
-			for (Item item : doc.getItems()) {
-				String itemName = item.getName();
-				if (itemName.startsWith(TERM_MAP_PREFIX)) {
-					dbCount++;
-					String dbid = itemName.substring(TERM_MAP_PREFIX.length());
-					Map termMap = doc.getItemValue(itemName, Map.class);
-					results.addAll(getTermResultsForItemsForms(termMap, itemNames, forms, term, dbid));
-					if (limit != 0 && results.size() >= limit) {
-						return results;
-					}
-				}
-			}
-		} else {
-			for (CharSequence dbid : dbids) {
-				String itemName = TERM_MAP_PREFIX + dbid;
-				if (doc.hasItem(itemName)) {
-					dbCount++;
-					Map termMap = doc.getItemValue(itemName, Map.class);
-					results.addAll(getTermResultsForItemsForms(termMap, itemNames, forms, term, dbid));
-					if (limit != 0 && results.size() >= limit) {
-						return results;
-					}
+		Collection<? extends CharSequence> searchDbids = (dbids == null || dbids.isEmpty()) ? getTermDbidSet(doc) : dbids;
+		for (CharSequence dbid : searchDbids) {
+			TermPostings postings = getTermPostings(doc, dbid);
+			if (postings != null) {
+				dbCount++;
+				results.addAll(getTermResultsForItemsForms(postings, itemNames, forms, term, dbid));
+				if (limit != 0 && results.size() >= limit) {
+					return results;
 				}
 			}
 		}
@@ -550,6 +614,31 @@ public class IndexDatabase implements IScannerStateManager, org.openntf.domino.b
 		return results;
 	}
 
+	/**
+	 * Creates the hits for the postings of one database. The form filter is applied on the document numbers, the addresses are only built
+	 * for matching documents.
+	 */
+	protected List<IndexHit> getTermResultsForItemsForms(final TermPostings postings, final Set<CharSequence> itemNames,
+			final Set<CharSequence> forms, final CharSequence term, final CharSequence dbid) {
+		List<IndexHit> results = new ArrayList<IndexHit>();
+		DocNumberMap docNumbers = getDocNumberMap(dbid);
+		PostingList formDocs = (forms == null || forms.isEmpty()) ? null : docNumbers.getFormDocs(forms);
+		Collection<CharSequence> items = (itemNames == null || itemNames.isEmpty()) ? postings.getItemNames() : itemNames;
+		for (CharSequence item : items) {
+			PostingList docs = postings.get(item);
+			if (docs == null)
+				continue;
+			if (formDocs != null) {
+				docs = docs.and(formDocs);
+			}
+			PostingList.Cursor c = docs.cursor();
+			for (int docNo = c.next(); docNo != PostingList.END; docNo = c.next()) {
+				results.add(createHit(term, dbid, item.toString(), docNumbers.getAddress(docNo)));
+			}
+		}
+		return results;
+	}
+
 	protected List<IndexHit> getTermResultsForItemsForms(final Map map, final Set<CharSequence> itemNames, final Set<CharSequence> forms,
 			final CharSequence term, final CharSequence dbid) {
 		List<IndexHit> results = new ArrayList<IndexHit>();
@@ -627,10 +716,8 @@ public class IndexDatabase implements IScannerStateManager, org.openntf.domino.b
 		Set<CharSequence> unids = new HashSet<CharSequence>();
 		Document doc = getTermDocument(term);
 		for (String dbid : dbids) {
-			String itemName = TERM_MAP_PREFIX + dbid;
-			if (doc.hasItem(itemName)) {
-				Map termMap = doc.getItemValue(itemName, Map.class);
-
+			Map termMap = getTermLocationMap(doc, dbid);
+			if (termMap != null) {
 				for (Object key : itemNames) {
 					CaseInsensitiveString ciskey = null;
 					if (key instanceof CaseInsensitiveString) {
@@ -665,9 +752,8 @@ public class IndexDatabase implements IScannerStateManager, org.openntf.domino.b
 		Set<String> unids = new HashSet<String>();
 		Document doc = getTermDocument(term);
 		for (CharSequence dbid : dbids) {
-			String itemName = TERM_MAP_PREFIX + dbid;
-			if (doc.hasItem(itemName)) {
-				Map termMap = doc.getItemValue(itemName, Map.class);
+			Map termMap = getTermLocationMap(doc, dbid);
+			if (termMap != null) {
 				//				Database db = session.getDatabaseByReplicaID(serverName, dbid);
 				//				if (db != null) {
 				for (Object key : itemNames) {
@@ -709,11 +795,9 @@ public class IndexDatabase implements IScannerStateManager, org.openntf.domino.b
 	public Set<CharSequence> getTermUnidInItems(final CharSequence term, final Collection<String> itemNames) {
 		Set<CharSequence> unids = new HashSet<CharSequence>();
 		Document doc = getTermDocument(term);
-		for (Item item : doc.getItems()) {
-			String itemName = item.getName();
-			if (itemName.startsWith(TERM_MAP_PREFIX)) {
-				//				String dbid = itemName.substring(TERM_MAP_PREFIX.length());
-				Map termMap = doc.getItemValue(itemName, Map.class);
+		for (String dbid : getTermDbidSet(doc)) {
+			Map termMap = getTermLocationMap(doc, dbid);
+			if (termMap != null) {
 				for (String key : itemNames) {
 					CaseInsensitiveString ciskey = new CaseInsensitiveString(key);
 					Object termObj = termMap.get(ciskey);
@@ -740,9 +824,8 @@ public class IndexDatabase implements IScannerStateManager, org.openntf.domino.b
 		Set<String> unids = new HashSet<String>();
 		Document doc = getTermDocument(term);
 		for (String dbid : dbids) {
-			String itemName = TERM_MAP_PREFIX + dbid;
-			if (doc.hasItem(itemName)) {
-				Map termMap = doc.getItemValue(itemName, Map.class);
+			Map termMap = getTermLocationMap(doc, dbid);
+			if (termMap != null) {
 				for (Object key : termMap.keySet()) {
 					Object termObj = termMap.get(key);
 					if (termObj != null) {
@@ -768,12 +851,10 @@ public class IndexDatabase implements IScannerStateManager, org.openntf.domino.b
 	public Map<String, Set<CharSequence>> getTermItemMap(final String term) {
 		Map<String, Set<CharSequence>> result = new LinkedHashMap<String, Set<CharSequence>>();
 		Document doc = getTermDocument(term);
-		for (Item item : doc.getItems()) {
-			String itemName = item.getName();
-			if (itemName.startsWith(TERM_MAP_PREFIX)) {
-				String dbid = itemName.substring(TERM_MAP_PREFIX.length());
-				Map termMap = doc.getItemValue(itemName, Map.class);
-				result.put(dbid, termMap.keySet());
+		for (String dbid : getTermDbidSet(doc)) {
+			TermPostings postings = getTermPostings(doc, dbid);
+			if (postings != null) {
+				result.put(dbid, postings.getItemNames());
 			}
 		}
 		return result;
@@ -824,12 +905,10 @@ public class IndexDatabase implements IScannerStateManager, org.openntf.domino.b
 	public Map<CharSequence, Set<CharSequence>> getTermUnidMap(final CharSequence term) {
 		Map<CharSequence, Set<CharSequence>> result = new LinkedHashMap<CharSequence, Set<CharSequence>>();
 		Document doc = getTermDocument(term);
-		for (Item item : doc.getItems()) {
-			String itemName = item.getName();
-			if (itemName.startsWith(TERM_MAP_PREFIX)) {
-				String dbid = itemName.substring(TERM_MAP_PREFIX.length());
-				Set<CharSequence> unids = new HashSet<CharSequence>();
-				Map termMap = doc.getItemValue(itemName, Map.class);
+		for (String dbid : getTermDbidSet(doc)) {
+			Set<CharSequence> unids = new HashSet<CharSequence>();
+			Map termMap = getTermLocationMap(doc, dbid);
+			if (termMap != null) {
 				for (Object key : termMap.keySet()) {
 					Object termObj = termMap.get(key);
 					if (termObj != null) {
@@ -848,36 +927,272 @@ public class IndexDatabase implements IScannerStateManager, org.openntf.domino.b
 		return result;
 	}
 
+	/**
+	 * Returns the document numbers of the database. They are loaded from the db document and kept in memory. If more than
+	 * {@link #MAX_DOC_NUMBER_MAPS} databases are used, the least recently used maps that are not in use and have no unsaved numbers are
+	 * dropped and loaded again when needed.
+	 *
+	 * The returned map may only be read. Callers that assign new numbers must use {@link #acquireDocNumberMap(CharSequence)}, so the map
+	 * cannot be dropped before the numbers are saved.
+	 */
+	public DocNumberMap getDocNumberMap(final CharSequence dbid) {
+		String key = dbid.toString().toUpperCase();
+		synchronized (docNumberMaps_) {
+			DocNumberMap result = docNumberMaps_.get(key);
+			if (result == null) {
+				Document dbDoc = getDbDocument(key);
+				if (dbDoc.hasItem(DB_DOC_NUMBER_NAME)) {
+					result = dbDoc.getItemValue(DB_DOC_NUMBER_NAME, DocNumberMap.class);
+				}
+				if (result == null) {
+					result = new DocNumberMap();
+				}
+				docNumberMaps_.put(key, result);
+				if (docNumberMaps_.size() > MAX_DOC_NUMBER_MAPS) {
+					Iterator<DocNumberMap> it = docNumberMaps_.values().iterator();
+					while (docNumberMaps_.size() > MAX_DOC_NUMBER_MAPS && it.hasNext()) {
+						DocNumberMap eldest = it.next();
+						// numbers may be assigned to a map in use, and unsaved numbers may already be used by postings
+						if (eldest != result && eldest.users_ == 0 && !eldest.isChanged()) {
+							it.remove();
+						}
+					}
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Returns the document numbers of the database and keeps them in memory until {@link #releaseDocNumberMap(DocNumberMap)} is called.
+	 * New numbers must be assigned to an acquired map and saved with {@link #saveDocNumberMap(CharSequence, DocNumberMap)}.
+	 */
+	protected DocNumberMap acquireDocNumberMap(final CharSequence dbid) {
+		synchronized (docNumberMaps_) {
+			DocNumberMap result = getDocNumberMap(dbid);
+			result.users_++;
+			return result;
+		}
+	}
+
+	protected void releaseDocNumberMap(final DocNumberMap docNumbers) {
+		synchronized (docNumberMaps_) {
+			docNumbers.users_--;
+		}
+	}
+
+	/**
+	 * Writes the document numbers of the database, if new numbers were assigned. Must be called before postings with the new numbers are
+	 * saved.
+	 *
+	 * @param docNumbers
+	 *            the map that assigned the numbers
+	 */
+	protected void saveDocNumberMap(final CharSequence dbid, final DocNumberMap docNumbers) {
+		synchronized (docNumbers) {
+			if (docNumbers.isChanged()) {
+				Document dbDoc = getDbDocument(dbid);
+				dbDoc.replaceItemValue(DB_DOC_NUMBER_NAME, docNumbers);
+				dbDoc.save();
+				docNumbers.setChanged(false);
+			}
+		}
+	}
+
+	/**
+	 * Returns the dbids of all databases that contain the term (postings and location maps of older versions)
+	 */
+	protected Set<String> getTermDbidSet(final Document doc) {
+		Set<String> result = new LinkedHashSet<String>();
+		for (Item item : doc.getItems()) {
+			String itemName = item.getName();
+			if (itemName.startsWith(TERM_POSTINGS_PREFIX)) {
+				result.add(itemName.substring(TERM_POSTINGS_PREFIX.length()));
+			} else if (itemName.startsWith(TERM_MAP_PREFIX)) {
+				result.add(itemName.substring(TERM_MAP_PREFIX.length()));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the postings of the term in the database, null if the term does not occur there. Location maps of older versions are
+	 * converted.
+	 */
+	protected TermPostings getTermPostings(final Document doc, final CharSequence dbid) {
+		if (!doc.hasItem(TERM_POSTINGS_PREFIX + dbid) && doc.hasItem(TERM_MAP_PREFIX + dbid)) {
+			// the new numbers stay in memory and are saved with the next postings of the database
+			DocNumberMap docNumbers = acquireDocNumberMap(dbid);
+			try {
+				return getTermPostings(doc, dbid, docNumbers);
+			} finally {
+				releaseDocNumberMap(docNumbers);
+			}
+		}
+		return getTermPostings(doc, dbid, null);
+	}
+
+	/**
+	 * Returns the postings of the term in the database, null if the term does not occur there. A location map of an older version is
+	 * converted with the given (acquired) document numbers.
+	 */
+	protected TermPostings getTermPostings(final Document doc, final CharSequence dbid, final DocNumberMap docNumbers) {
+		String itemName = TERM_POSTINGS_PREFIX + dbid;
+		if (doc.hasItem(itemName)) {
+			return doc.getItemValue(itemName, TermPostings.class);
+		}
+		itemName = TERM_MAP_PREFIX + dbid;
+		if (doc.hasItem(itemName)) {
+			return TermPostings.fromLocationMap(doc.getItemValue(itemName, Map.class), docNumbers);
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the postings of the term in the database, null if the term does not occur there.
+	 */
+	public TermPostings getTermPostings(final CharSequence term, final CharSequence dbid) {
+		return getTermPostings(getTermDocument(term), dbid);
+	}
+
+	/**
+	 * Returns the postings of the term by dbid. If dbids is null or empty, all databases that contain the term are returned.
+	 */
+	public Map<String, TermPostings> getTermPostingsMap(final CharSequence term, final Collection<? extends CharSequence> dbids) {
+		Map<String, TermPostings> result = new LinkedHashMap<String, TermPostings>();
+		Document doc = getTermDocument(term);
+		Collection<? extends CharSequence> searchDbids = (dbids == null || dbids.isEmpty()) ? getTermDbidSet(doc) : dbids;
+		for (CharSequence dbid : searchDbids) {
+			TermPostings postings = getTermPostings(doc, dbid);
+			if (postings != null) {
+				result.put(dbid.toString(), postings);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the locations (item name -&gt; addresses) of the term in the database, null if the term does not occur there.
+	 */
+	protected Map<CharSequence, Set<CharSequence>> getTermLocationMap(final Document doc, final CharSequence dbid) {
+		String itemName = TERM_MAP_PREFIX + dbid;
+		if (!doc.hasItem(TERM_POSTINGS_PREFIX + dbid) && doc.hasItem(itemName)) {
+			return doc.getItemValue(itemName, Map.class);
+		}
+		TermPostings postings = getTermPostings(doc, dbid);
+		return postings == null ? null : postings.toLocationMap(getDocNumberMap(dbid));
+	}
+
+	/**
+	 * Converts the locations of a scanner to postings. The new document numbers are saved before the postings are written.
+	 */
+	protected Map<CharSequence, TermPostings> toPostings(final Object mapKey,
+			final Map<CharSequence, Map<CharSequence, Set<CharSequence>>> fullMap) {
+		String dbid = String.valueOf(mapKey);
+		DocNumberMap docNumbers = acquireDocNumberMap(dbid);
+		try {
+			Map<CharSequence, TermPostings> result = new HashMap<CharSequence, TermPostings>();
+			for (Map.Entry<CharSequence, Map<CharSequence, Set<CharSequence>>> e : fullMap.entrySet()) {
+				result.put(e.getKey(), TermPostings.fromLocationMap(e.getValue(), docNumbers));
+			}
+			saveDocNumberMap(dbid, docNumbers);
+			return result;
+		} finally {
+			releaseDocNumberMap(docNumbers);
+		}
+	}
+
+	/**
+	 * Merges the postings into the postings of the term document. A location map of an older version is converted and removed.
+	 */
+	protected void addTermPostings(final Document termDoc, final Object mapKey, final TermPostings postings) {
+		String dbid = String.valueOf(mapKey);
+		DocNumberMap docNumbers = acquireDocNumberMap(dbid);
+		try {
+			TermPostings existing = getTermPostings(termDoc, dbid, docNumbers);
+			if (existing != null) {
+				existing.merge(postings);
+			} else {
+				existing = postings;
+			}
+			replaceTermPostings(termDoc, dbid, existing, docNumbers);
+		} finally {
+			releaseDocNumberMap(docNumbers);
+		}
+	}
+
+	/**
+	 * Writes the postings to the term document (without saving it). Empty postings remove the item, a location map of an older version is
+	 * removed. Document numbers that were assigned when a location map was converted are saved first.
+	 *
+	 * @param docNumbers
+	 *            the acquired document numbers that were used to read the postings
+	 */
+	protected void replaceTermPostings(final Document termDoc, final CharSequence dbid, final TermPostings postings,
+			final DocNumberMap docNumbers) {
+		saveDocNumberMap(dbid, docNumbers);
+		if (postings.isEmpty()) {
+			termDoc.removeItem(TERM_POSTINGS_PREFIX + dbid);
+		} else {
+			termDoc.replaceItemValue(TERM_POSTINGS_PREFIX + dbid, postings);
+		}
+		if (termDoc.hasItem(TERM_MAP_PREFIX + dbid)) {
+			termDoc.removeItem(TERM_MAP_PREFIX + dbid);
+		}
+	}
+
+	/**
+	 * Returns the document that holds the forward index chunk of the database
+	 */
+	public Document getForwardDocument(final CharSequence dbid, final int chunk) {
+		String key = FORWARD_KEY_PREFIX + dbid.toString().toUpperCase() + ":" + chunk;
+		Document result = getIndexDb().getDocumentWithKey(key, true);
+		if (result.isNewNote()) {
+			result.replaceItemValue("Form", FORWARD_FORM_NAME);
+			result.replaceItemValue(DB_KEY_NAME, dbid);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the forward index chunk of the database, an empty chunk if it was not saved yet
+	 */
+	public ForwardIndexChunk getForwardIndexChunk(final CharSequence dbid, final int chunk) {
+		Document doc = getForwardDocument(dbid, chunk);
+		ForwardIndexChunk result = null;
+		if (doc.hasItem(FORWARD_INDEX_NAME)) {
+			result = doc.getItemValue(FORWARD_INDEX_NAME, ForwardIndexChunk.class);
+		}
+		return result == null ? new ForwardIndexChunk() : result;
+	}
+
+	protected void saveForwardIndexChunk(final CharSequence dbid, final int chunk, final ForwardIndexChunk value) {
+		Document doc = getForwardDocument(dbid, chunk);
+		doc.replaceItemValue(FORWARD_INDEX_NAME, value);
+		doc.save();
+		value.setChanged(false);
+	}
+
 	public CharSequence lastToken_ = null;
 
 	/* (non-Javadoc)
 	 * @see org.openntf.domino.big.impl.IIndexDatabase#restoreTokenLocationMap(java.lang.CharSequence, java.lang.Object)
 	 */
+	/**
+	 * The scanner always starts with an empty map, the locations are merged into the stored postings in
+	 * {@link #saveTokenLocationMap(Object, Map, DocumentScanner)}. So the term document is not read while scanning.
+	 */
 	@Override
 	public Map<CharSequence, Set<CharSequence>> restoreTokenLocationMap(final CharSequence token, final Object mapKey) {
-		Map result = null;
-		Document doc = getTermDocument(token.toString());
-		String itemName = TERM_MAP_PREFIX + String.valueOf(mapKey);
-		if (doc.hasItem(itemName)) {
-			result = doc.getItemValue(itemName, Map.class);
-			//			System.out.println("Found existing term match for: " + token.toString() + " with " + result.size() + " items");
-		} else {
-			result = new ConcurrentHashMap<CaseInsensitiveString, Set<String>>(8, 0.9f, 1);
-		}
-		return result;
+		return new ConcurrentHashMap<CharSequence, Set<CharSequence>>(8, 0.9f, 1);
 	}
 
+	/**
+	 * Like {@link #restoreTokenLocationMap(CharSequence, Object)}, the locations are merged on save
+	 */
 	@Override
 	public Map<CharSequence, Set<CharSequence>> restoreValueLocationMap(final CharSequence token, final Object mapKey) {
-		Map result = null;
-		Document doc = getValueDocument(token.toString());
-		String itemName = VALUE_MAP_PREFIX + String.valueOf(mapKey);
-		if (doc.hasItem(itemName)) {
-			result = doc.getItemValue(itemName, Map.class);
-		} else {
-			result = new ConcurrentHashMap<CaseInsensitiveString, Set<String>>(8, 0.9f, 1);
-		}
-		return result;
+		return new ConcurrentHashMap<CharSequence, Set<CharSequence>>(8, 0.9f, 1);
 	}
 
 	//	@Override
@@ -924,15 +1239,18 @@ public class IndexDatabase implements IScannerStateManager, org.openntf.domino.b
 	@Override
 	public void saveTokenLocationMap(final Object mapKey, final Map<CharSequence, Map<CharSequence, Set<CharSequence>>> fullMap,
 			final DocumentScanner scanner) {
+		saveTokenLocationMap(mapKey, fullMap);
 		setLastIndexDate(mapKey, scanner.getLastDocModDate());
+	}
+
+	protected void saveTokenLocationMap(final Object mapKey, final Map<CharSequence, Map<CharSequence, Set<CharSequence>>> fullMap) {
 		Set<CharSequence> keySet = fullMap.keySet();
 		if (keySet.size() > 0) {
+			Map<CharSequence, TermPostings> postingsMap = toPostings(mapKey, fullMap);
 			for (CharSequence cis : keySet) {
-				Map<CharSequence, Set<CharSequence>> tlValue = fullMap.get(cis);
 				String term = cis.toString();
 				Document termDoc = getTermDocument(term);
-				String itemName = TERM_MAP_PREFIX + String.valueOf(mapKey);
-				termDoc.replaceItemValue(itemName, tlValue);
+				addTermPostings(termDoc, mapKey, postingsMap.get(cis));
 				if (termDoc.save()) {
 					//					System.out.println("DEBUG: Saved term doc for " + term);
 				} else {
@@ -969,29 +1287,12 @@ public class IndexDatabase implements IScannerStateManager, org.openntf.domino.b
 				case RUNNING:
 					//				System.out.println("DEBUG: branched to running status...");
 					if (scanner != null) {
-						if (scanner.isTrackTokenLocation()) {
-							Map tokenLocationMap = scanner.getTokenLocationMap();
-							int tlsize = tokenLocationMap.size();
-							if (tlsize >= 1024) {
-								//								System.out.println("Processed " + scanner.getDocCount() + " documents so far, " + scanner.getItemCount()
-								//										+ " items and " + scanner.getTokenCount());
-								synchronized (tokenLocationMap) {
-									saveTokenLocationMap(scanner.getStateManagerKey(), tokenLocationMap, scanner);
-									tokenLocationMap.clear();
-								}
-							}
-						} else {
-							//							System.out.println("TokenLocation not being tracked by scanner");
-						}
-						if (scanner.isTrackNameLocation()) {
-							Map nameLocationMap = scanner.getNameLocationMap();
-							int nlsize = nameLocationMap.size();
-							if (nlsize >= 128) {
-								synchronized (nameLocationMap) {
-									saveNameLocationMap(scanner.getStateManagerKey(), nameLocationMap, scanner);
-									nameLocationMap.clear();
-								}
-							}
+						int tlsize = scanner.isTrackTokenLocation() ? scanner.getTokenLocationMap().size() : 0;
+						int nlsize = scanner.isTrackNameLocation() ? scanner.getNameLocationMap().size() : 0;
+						if (tlsize >= 1024 || nlsize >= 128) {
+							//								System.out.println("Processed " + scanner.getDocCount() + " documents so far, " + scanner.getItemCount()
+							//										+ " items and " + scanner.getTokenCount());
+							checkpoint(scanner);
 						}
 						if (scanner.isTrackFieldValues()) {
 							Map fieldValueMap = scanner.getFieldValueMap();
@@ -1008,38 +1309,15 @@ public class IndexDatabase implements IScannerStateManager, org.openntf.domino.b
 					}
 					break;
 				case COMPLETE:
+				case INTERRUPTED:
+				case ERROR:
 					//					System.out.println("DEBUG: branched to complete status...");
-
 					if (scanner != null) {
-						if (scanner.isTrackTokenLocation()) {
-							Map tokenLocationMap = scanner.getTokenLocationMap();
-							synchronized (tokenLocationMap) {
-								saveTokenLocationMap(scanner.getStateManagerKey(), tokenLocationMap, scanner);
-								tokenLocationMap.clear();
-							}
-						}
-						if (scanner.isTrackNameLocation()) {
-							Map nameLocationMap = scanner.getNameLocationMap();
-							synchronized (nameLocationMap) {
-								saveNameLocationMap(scanner.getStateManagerKey(), nameLocationMap, scanner);
-								nameLocationMap.clear();
-							}
-						}
-						if (scanner.isTrackValueLocation()) {
-							Map valueLocationMap = scanner.getValueLocationMap();
-							synchronized (valueLocationMap) {
-								saveValueLocationMap(scanner.getStateManagerKey(), valueLocationMap, scanner);
-								valueLocationMap.clear();
-							}
-						}
+						checkpoint(scanner);
 					} else {
 						System.out.println("ALERT! Scanner was null??");
 					}
 					break;
-				case ERROR:
-					break;
-				case INTERRUPTED:
-					break;
 				}
 			} else {
 				System.out.println("Scan status was null?");
@@ -1049,20 +1327,56 @@ public class IndexDatabase implements IScannerStateManager, org.openntf.domino.b
 		}
 	}
 
+	/**
+	 * Saves everything the scanner collected so far and records its last document modification date as the last index date. The date is
+	 * written after the locations, so a scan that is interrupted resumes from the last complete checkpoint.
+	 */
+	protected void checkpoint(final DocumentScanner scanner) {
+		Map<CharSequence, Map<CharSequence, Set<CharSequence>>> tokens = null;
+		Map<CharSequence, Map<CharSequence, Set<CharSequence>>> names = null;
+		Map<CharSequence, Map<CharSequence, Set<CharSequence>>> values = null;
+		if (scanner.isTrackTokenLocation()) {
+			tokens = scanner.takeTokenLocationMap();
+		}
+		if (scanner.isTrackNameLocation()) {
+			names = scanner.takeNameLocationMap();
+		}
+		if (scanner.isTrackValueLocation()) {
+			values = scanner.takeValueLocationMap();
+		}
+		checkpoint(scanner.getStateManagerKey(), tokens, names, values, scanner.getLastDocModDate());
+	}
+
+	/**
+	 * Saves the locations of one batch of a database, then sets the last index date to the date of the last document in the batch
+	 */
+	protected void checkpoint(final Object mapKey, final Map<CharSequence, Map<CharSequence, Set<CharSequence>>> tokens,
+			final Map<CharSequence, Map<CharSequence, Set<CharSequence>>> names,
+			final Map<CharSequence, Map<CharSequence, Set<CharSequence>>> values, final Date lastDocModDate) {
+		if (names != null && !names.isEmpty()) {
+			saveNameLocationMap(mapKey, names);
+		}
+		if (values != null && !values.isEmpty()) {
+			saveValueLocationMap(mapKey, values);
+		}
+		if (tokens != null && !tokens.isEmpty()) {
+			saveTokenLocationMap(mapKey, tokens);
+		}
+		if (lastDocModDate != null && lastDocModDate.getTime() > 0) {
+			// no document processed yet: keep the stored date
+			setLastIndexDate(mapKey, lastDocModDate);
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see org.openntf.domino.big.impl.IIndexDatabase#restoreNameLocationMap(java.lang.CharSequence, java.lang.Object)
 	 */
+	/**
+	 * Like {@link #restoreTokenLocationMap(CharSequence, Object)}, the locations are merged on save
+	 */
 	@Override
 	public Map<CharSequence, Set<CharSequence>> restoreNameLocationMap(final CharSequence name, final Object mapKey) {
-		Map result = null;
-		Document doc = getNameDocument(name.toString());
-		String itemName = TERM_MAP_PREFIX + String.valueOf(mapKey);
-		if (doc.hasItem(itemName)) {
-			result = doc.getItemValue(itemName, Map.class);
-		} else {
-			result = new ConcurrentHashMap<CaseInsensitiveString, Set<String>>(8, 0.9f, 1);
-		}
-		return result;
+		return new ConcurrentHashMap<CharSequence, Set<CharSequence>>(8, 0.9f, 1);
 	}
 
 	//	@Override
@@ -1079,6 +1393,10 @@ public class IndexDatabase implements IScannerStateManager, org.openntf.domino.b
 	@Override
 	public void saveNameLocationMap(final Object mapKey, final Map<CharSequence, Map<CharSequence, Set<CharSequence>>> fullMap,
 			final DocumentScanner scanner) {
+		saveNameLocationMap(mapKey, fullMap);
+	}
+
+	protected void saveNameLocationMap(final Object mapKey, final Map<CharSequence, Map<CharSequence, Set<CharSequence>>> fullMap) {
 		//		Document dbDoc = getDbDocument((String) mapKey);
 		//		if (scanner.getCollection() != null) {
 		//			dbDoc.replaceItemValue(IndexDatabase.DB_DOC_LIST_NAME, scanner.getCollection());
@@ -1089,12 +1407,11 @@ public class IndexDatabase implements IScannerStateManager, org.openntf.domino.b
 		//		}
 		//		dbDoc.save();
 		Set<CharSequence> keySet = fullMap.keySet();
+		Map<CharSequence, TermPostings> postingsMap = toPostings(mapKey, fullMap);
 		for (CharSequence cis : keySet) {
-			Map<CharSequence, Set<CharSequence>> tlValue = fullMap.get(cis);
 			String name = cis.toString();
 			Document nameDoc = getNameDocument(name);
-			String itemName = TERM_MAP_PREFIX + String.valueOf(mapKey);
-			nameDoc.replaceItemValue(itemName, tlValue);
+			addTermPostings(nameDoc, mapKey, postingsMap.get(cis));
 			if (nameDoc.save()) {
 				//				System.out.println("Saved term doc for " + term);
 			}
@@ -1104,7 +1421,15 @@ public class IndexDatabase implements IScannerStateManager, org.openntf.domino.b
 	@Override
 	public void saveValueLocationMap(final Object mapKey, final Map<CharSequence, Map<CharSequence, Set<CharSequence>>> fullMap,
 			final DocumentScanner scanner) {
+		saveValueLocationMap(mapKey, fullMap);
 		setLastIndexDate(mapKey, scanner.getLastDocModDate());
+	}
+
+	/**
+	 * Saves the value locations. The locations are added to the locations that are already stored.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	protected void saveValueLocationMap(final Object mapKey, final Map<CharSequence, Map<CharSequence, Set<CharSequence>>> fullMap) {
 		Set<CharSequence> keySet = fullMap.keySet();
 		if (keySet.size() > 0) {
 			for (CharSequence cis : keySet) {
@@ -1112,6 +1437,18 @@ public class IndexDatabase implements IScannerStateManager, org.openntf.domino.b
 				String term = cis.toString();
 				Document termDoc = getValueDocument(term);
 				String itemName = VALUE_MAP_PREFIX + String.valueOf(mapKey);
+				if (termDoc.hasItem(itemName)) {
+					Map<CharSequence, Set<CharSequence>> stored = termDoc.getItemValue(itemName, Map.class);
+					for (Map.Entry<CharSequence, Set<CharSequence>> e : tlValue.entrySet()) {
+						Set existing = stored.get(e.getKey());
+						if (existing == null) {
+							stored.put(e.getKey(), e.getValue());
+						} else {
+							existing.addAll(e.getValue());
+						}
+					}
+					tlValue = stored;
+				}
 				termDoc.replaceItemValue(itemName, tlValue);
 				if (termDoc.save()) {
 					//					System.out.println("DEBUG: Saved term doc for " + term);
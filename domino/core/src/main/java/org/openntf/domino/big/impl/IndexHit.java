@@ -9,6 +9,7 @@ import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.util.logging.Logger;
 
+import org.openntf.domino.Database;
 import org.openntf.domino.Document;
 import org.openntf.domino.Item;
 import org.openntf.domino.Session;
@@ -104,6 +105,11 @@ public class IndexHit implements Externalizable {
 		//		}
 		//		return document_;
 		try {
+			DbCache cache = NoteCoordinate.getDbCache();
+			if (cache != null) {
+				Database db = cache.getDatabase(NoteCoordinate.Utils.getLongFromReplid(dbid_), serverName, session);
+				return db == null ? null : db.getDocumentByUNID(unid_.toString());
+			}
 			return session.getDocumentByMetaversalID(getMetaversalID(), serverName);
 		} catch (Throwable t) {
 			return null;
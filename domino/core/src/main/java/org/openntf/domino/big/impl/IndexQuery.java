@@ -7,10 +7,17 @@ import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.openntf.domino.big.IndexDatabase;
@@ -20,7 +27,6 @@ import org.openntf.domino.big.IndexDatabase;
  * 
  */
 public class IndexQuery {
-	@SuppressWarnings("unused")
 	private static final Logger log_ = Logger.getLogger(IndexQuery.class.getName());
 
 	private Set<CharSequence> terms_;
@@ -31,6 +37,70 @@ public class IndexQuery {
 	private int limit_ = 0;
 	@SuppressWarnings("unused")
 	private transient IndexResults results_;
+	private transient Metrics metrics_;
+
+	/**
+	 * What the last {@link IndexQuery#execute(IndexDatabase)} did and how long it took
+	 */
+	public static class Metrics {
+		private final Map<CharSequence, Integer> documentFrequencies_ = new LinkedHashMap<CharSequence, Integer>();
+		private boolean postingsIntersection_;
+		private boolean terminatedEarly_;
+		private int candidates_;
+		private int hitCount_;
+		private long lookupNanos_;
+		private long totalNanos_;
+
+		/**
+		 * Returns the number of documents per term (after the item filter), in the order the terms were intersected. Only filled by
+		 * postings intersections.
+		 */
+		public Map<CharSequence, Integer> getDocumentFrequencies() {
+			return documentFrequencies_;
+		}
+
+		/**
+		 * Returns true, if the AND query was executed on the postings of the {@link org.openntf.domino.big.impl.IndexDatabase}
+		 */
+		public boolean isPostingsIntersection() {
+			return postingsIntersection_;
+		}
+
+		/**
+		 * Returns true, if the query stopped because the limit was reached
+		 */
+		public boolean isTerminatedEarly() {
+			return terminatedEarly_;
+		}
+
+		/**
+		 * Returns the number of documents of the rarest term that were checked against the other terms
+		 */
+		public int getCandidates() {
+			return candidates_;
+		}
+
+		public int getHitCount() {
+			return hitCount_;
+		}
+
+		/**
+		 * Returns the time to read the postings of all terms
+		 */
+		public long getLookupNanos() {
+			return lookupNanos_;
+		}
+
+		public long getTotalNanos() {
+			return totalNanos_;
+		}
+
+		@Override
+		public String toString() {
+			return "IndexQuery executed for " + hitCount_ + " results in " + (totalNanos_ / 1000) + "us (lookup " + (lookupNanos_ / 1000)
+					+ "us, " + candidates_ + " candidates" + (terminatedEarly_ ? ", limit reached" : "") + ") " + documentFrequencies_;
+		}
+	}
 
 	public IndexQuery() {
 
@@ -147,8 +217,6 @@ public class IndexQuery {
 		forms_ = IndexDatabase.Utils.toStringSet(forms);
 	}
 
-	private static final boolean profile_ = true;
-
 	protected IndexResults createResultsFromHitList(final List<IndexHit> hits) {
 		return new IndexResults(hits);
 	}
@@ -204,17 +272,25 @@ public class IndexQuery {
 		return debug.toString();
 	}
 
+	/**
+	 * Returns the metrics of the last {@link #execute(IndexDatabase)}, null if the query was not executed yet
+	 */
+	public Metrics getMetrics() {
+		return metrics_;
+	}
+
 	public IndexResults execute(final IndexDatabase db) {
-		long startNanos = 0;
-		if (profile_)
-			startNanos = System.nanoTime();
+		Metrics metrics = new Metrics();
+		long startNanos = System.nanoTime();
 		IndexResults result = null;
 		//		System.out.println("Executing with: " + debugGetTerms());
 		Set<CharSequence> localTerms = getTerms();
 		if (!db.getCaseSensitive()) {
 			localTerms = IndexDatabase.Utils.toCISSet(localTerms);
 		}
-		if (isAnd() && localTerms.size() > 1) {
+		if (isAnd() && localTerms.size() > 1 && db instanceof org.openntf.domino.big.impl.IndexDatabase) {
+			result = createResultsFromHitList(intersectPostings((org.openntf.domino.big.impl.IndexDatabase) db, localTerms, metrics));
+		} else if (isAnd() && localTerms.size() > 1) {
 			for (CharSequence term : localTerms) {
 				List<IndexHit> hits = db.getTermResults(term, getLimit(), getDbids(), IndexDatabase.Utils.toCISSet(getItems()), getForms());
 				if (result == null) {
@@ -232,14 +308,127 @@ public class IndexQuery {
 				result.merge(temp);
 			}
 		}
-		if (profile_) {
-			int resultCount = result == null ? 0 : result.getHits().size();
-			System.out
-			.println("IndexQuery executed for " + resultCount + " results in " + ((System.nanoTime() - startNanos) / 1000) + "us");
+		metrics.hitCount_ = result == null ? 0 : result.getHits().size();
+		metrics.totalNanos_ = System.nanoTime() - startNanos;
+		metrics_ = metrics;
+		if (log_.isLoggable(Level.FINE)) {
+			log_.log(Level.FINE, metrics.toString());
 		}
 		return result;
 	}
 
+	/**
+	 * Executes an AND query on the postings. The terms are ordered by their number of documents, the rarest term drives the intersection
+	 * and the cursors of the other terms skip forward to its documents. The hits are created for the rarest term only, and the
+	 * intersection stops when the limit is reached.
+	 */
+	protected List<IndexHit> intersectPostings(final org.openntf.domino.big.impl.IndexDatabase db, final Set<CharSequence> terms,
+			final Metrics metrics) {
+		metrics.postingsIntersection_ = true;
+		long startNanos = System.nanoTime();
+		List<IndexHit> results = new ArrayList<IndexHit>();
+		Set<CharSequence> items = IndexDatabase.Utils.toCISSet(getItems());
+		Set<CharSequence> forms = getForms();
+		int limit = getLimit();
+
+		final Map<CharSequence, Integer> frequencies = new HashMap<CharSequence, Integer>();
+		Map<CharSequence, Map<String, TermPostings>> postings = new HashMap<CharSequence, Map<String, TermPostings>>();
+		List<CharSequence> termList = new ArrayList<CharSequence>(terms);
+		for (CharSequence term : termList) {
+			Map<String, TermPostings> termPostings = db.getTermPostingsMap(term, getDbids());
+			int frequency = 0;
+			for (TermPostings tp : termPostings.values()) {
+				frequency += tp.getDocs(items).size();
+			}
+			frequencies.put(term, frequency);
+			postings.put(term, termPostings);
+			if (frequency == 0) {
+				// no document can match all terms
+				metrics.documentFrequencies_.put(term, frequency);
+				metrics.lookupNanos_ = System.nanoTime() - startNanos;
+				return results;
+			}
+		}
+		Collections.sort(termList, new Comparator<CharSequence>() {
+			@Override
+			public int compare(final CharSequence o1, final CharSequence o2) {
+				return frequencies.get(o1).compareTo(frequencies.get(o2));
+			}
+		});
+		for (CharSequence term : termList) {
+			metrics.documentFrequencies_.put(term, frequencies.get(term));
+		}
+		metrics.lookupNanos_ = System.nanoTime() - startNanos;
+
+		CharSequence rarest = termList.get(0);
+		for (Map.Entry<String, TermPostings> entry : postings.get(rarest).entrySet()) {
+			String dbid = entry.getKey();
+			DocNumberMap docNumbers = db.getDocNumberMap(dbid);
+			List<PostingList> lists = new ArrayList<PostingList>(termList.size() + 1);
+			for (CharSequence term : termList) {
+				TermPostings tp = postings.get(term).get(dbid);
+				PostingList docs = tp == null ? PostingList.EMPTY : tp.getDocs(items);
+				if (docs.isEmpty()) {
+					lists = null;
+					break;
+				}
+				lists.add(docs);
+			}
+			if (lists == null)
+				continue;
+			if (forms != null && !forms.isEmpty()) {
+				lists.add(docNumbers.getFormDocs(forms));
+			}
+			// the order can differ per database: always lead with the shortest list
+			PostingList[] sorted = lists.toArray(new PostingList[lists.size()]);
+			Arrays.sort(sorted, new Comparator<PostingList>() {
+				@Override
+				public int compare(final PostingList o1, final PostingList o2) {
+					return o1.size() < o2.size() ? -1 : (o1.size() == o2.size() ? 0 : 1);
+				}
+			});
+			PostingList.Cursor[] cursors = new PostingList.Cursor[sorted.length];
+			for (int i = 0; i < sorted.length; i++) {
+				cursors[i] = sorted[i].cursor();
+			}
+			int doc = cursors[0].next();
+			while (doc != PostingList.END) {
+				metrics.candidates_++;
+				int next = doc;
+				for (int i = 1; i < cursors.length && next == doc; i++) {
+					next = cursors[i].advance(doc);
+				}
+				if (next == doc) {
+					addHits(db, rarest, dbid, entry.getValue(), items, docNumbers, doc, results);
+					if (limit != 0 && results.size() >= limit) {
+						metrics.terminatedEarly_ = true;
+						return results;
+					}
+					doc = cursors[0].next();
+				} else {
+					doc = next == PostingList.END ? PostingList.END : cursors[0].advance(next);
+				}
+			}
+		}
+		return results;
+	}
+
+	private static void addHits(final org.openntf.domino.big.impl.IndexDatabase db, final CharSequence term, final String dbid,
+			final TermPostings postings, final Set<CharSequence> items, final DocNumberMap docNumbers, final int doc,
+			final List<IndexHit> results) {
+		String address = null;
+		Collection<CharSequence> itemNames = (items == null || items.isEmpty()) ? postings.getItemNames() : items;
+		for (CharSequence item : itemNames) {
+			PostingList docs = postings.get(item);
+			if (docs != null && docs.contains(doc)) {
+				if (address == null) {
+					address = docNumbers.getAddress(doc);
+				}
+				results.add(db.createHit(term, dbid, item.toString(), address));
+			}
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see java.io.Externalizable#readExternal(java.io.ObjectInput)
 	 */
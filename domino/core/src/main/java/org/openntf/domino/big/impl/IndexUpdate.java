@@ -0,0 +1,281 @@
+/**
+ *
+ */
+package org.openntf.domino.big.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openntf.domino.Document;
+import org.openntf.domino.helpers.DocumentScanner;
+import org.openntf.domino.types.CaseInsensitiveString;
+
+/**
+ * Applies modified documents of one database to the index. The terms of every document are compared with the terms stored in the forward
+ * index ({@link ForwardIndexChunk}), and only the postings of terms that were added to or removed from a document are written.
+ *
+ * The changes are collected until {@link #flush()} is called. Applying a document twice does not change the result, so an update that was
+ * interrupted can simply be repeated. The document numbers of the database are kept in memory until {@link #close()} is called.
+ *
+ * @author Roland Praml, Foconis AG
+ *
+ */
+public class IndexUpdate {
+	private static final Logger log_ = Logger.getLogger(IndexUpdate.class.getName());
+
+	private final IndexDatabase index_;
+	private final String dbid_;
+	/** the numbers of the documents, acquired for the whole update so new numbers are saved from the same map */
+	private final DocNumberMap docNumbers_;
+	private final Map<Integer, ForwardIndexChunk> chunks_ = new HashMap<Integer, ForwardIndexChunk>();
+	private final Map<String, TermDelta> termDeltas_ = new HashMap<String, TermDelta>();
+	private final Map<String, TermDelta> nameDeltas_ = new HashMap<String, TermDelta>();
+	private int pendingDocs_;
+	private long addedCount_;
+	private long removedCount_;
+	private boolean failed_;
+
+	/**
+	 * The changes of the postings of one term
+	 */
+	protected static class TermDelta {
+		/** the term as found in the document, used to create a new term document */
+		CharSequence term;
+		boolean isName;
+		final Map<CharSequence, PostingList.Builder> added = new HashMap<CharSequence, PostingList.Builder>();
+		final Map<CharSequence, PostingList.Builder> removed = new HashMap<CharSequence, PostingList.Builder>();
+
+		void add(final Map<CharSequence, PostingList.Builder> map, final CharSequence item, final int docNo) {
+			PostingList.Builder b = map.get(item);
+			if (b == null) {
+				b = new PostingList.Builder();
+				map.put(item, b);
+			}
+			b.add(docNo);
+		}
+	}
+
+	public IndexUpdate(final IndexDatabase index, final CharSequence dbid) {
+		index_ = index;
+		dbid_ = dbid.toString();
+		docNumbers_ = index.acquireDocNumberMap(dbid_);
+	}
+
+	/**
+	 * Releases the document numbers. Changes that were not flushed are lost.
+	 */
+	public void close() {
+		index_.releaseDocNumberMap(docNumbers_);
+	}
+
+	/**
+	 * Compares the terms of the document with the forward index and records the differences. Deleted documents remove all their postings.
+	 *
+	 * @param scanner
+	 *            a scanner without state manager, that extracts the terms
+	 */
+	public void updateDocument(final Document doc, final DocumentScanner scanner) {
+		int docNo;
+		Map<String, Set<CharSequence>> newTerms = new HashMap<String, Set<CharSequence>>();
+		Map<String, Set<CharSequence>> newNames = new HashMap<String, Set<CharSequence>>();
+		Map<String, CharSequence> termOriginals = new HashMap<String, CharSequence>();
+		Map<String, CharSequence> nameOriginals = new HashMap<String, CharSequence>();
+		if (doc.isDeleted() || !doc.isValid()) {
+			docNo = docNumbers_.lookup(doc.getUniversalID());
+			if (docNo < 0)
+				return;
+		} else {
+			scanner.processDocument(doc);
+			collectTerms(scanner.takeTokenLocationMap(), newTerms, termOriginals);
+			collectTerms(scanner.takeNameLocationMap(), newNames, nameOriginals);
+			String address = doc.getUniversalID() + (doc.hasReaders() ? "1" : "0") + doc.getFormName();
+			docNo = docNumbers_.getDocNumber(address);
+		}
+		ForwardIndexChunk chunk = getChunk(docNo);
+		compareTerms(docNo, chunk.get(docNo), newTerms, termOriginals, false);
+		compareTerms(docNo, chunk.getNames(docNo), newNames, nameOriginals, true);
+		chunk.put(docNo, newTerms, newNames);
+		pendingDocs_++;
+	}
+
+	/**
+	 * Records the differences between the stored and the new terms (or names) of a document
+	 */
+	private void compareTerms(final int docNo, final Map<String, Set<CharSequence>> stored, final Map<String, Set<CharSequence>> newTerms,
+			final Map<String, CharSequence> originals, final boolean isName) {
+		Map<String, Set<CharSequence>> oldTerms = stored == null ? Collections.<String, Set<CharSequence>> emptyMap() : stored;
+		for (Map.Entry<String, Set<CharSequence>> e : oldTerms.entrySet()) {
+			Set<CharSequence> newItems = newTerms.get(e.getKey());
+			for (CharSequence item : e.getValue()) {
+				if (newItems == null || !newItems.contains(item)) {
+					TermDelta delta = getDelta(e.getKey(), null, isName);
+					delta.add(delta.removed, item, docNo);
+					removedCount_++;
+				}
+			}
+		}
+		for (Map.Entry<String, Set<CharSequence>> e : newTerms.entrySet()) {
+			Set<CharSequence> oldItems = oldTerms.get(e.getKey());
+			for (CharSequence item : e.getValue()) {
+				if (oldItems == null || !oldItems.contains(item)) {
+					TermDelta delta = getDelta(e.getKey(), originals.get(e.getKey()), isName);
+					delta.add(delta.added, item, docNo);
+					addedCount_++;
+				}
+			}
+		}
+	}
+
+	private void collectTerms(final Map<CharSequence, Map<CharSequence, Set<CharSequence>>> locations,
+			final Map<String, Set<CharSequence>> terms, final Map<String, CharSequence> originals) {
+		for (Map.Entry<CharSequence, Map<CharSequence, Set<CharSequence>>> e : locations.entrySet()) {
+			String key = toKey(e.getKey());
+			Set<CharSequence> items = terms.get(key);
+			if (items == null) {
+				items = new LinkedHashSet<CharSequence>();
+				terms.put(key, items);
+				originals.put(key, e.getKey());
+			}
+			for (CharSequence item : e.getValue().keySet()) {
+				items.add(item instanceof CaseInsensitiveString ? item : new CaseInsensitiveString(item));
+			}
+		}
+	}
+
+	/**
+	 * The key of the term in the forward index, the same key that is used to find the term document
+	 */
+	protected String toKey(final CharSequence term) {
+		return index_.getCaseSensitive() ? term.toString() : term.toString().toLowerCase();
+	}
+
+	private TermDelta getDelta(final String key, final CharSequence term, final boolean isName) {
+		Map<String, TermDelta> deltas = isName ? nameDeltas_ : termDeltas_;
+		TermDelta result = deltas.get(key);
+		if (result == null) {
+			result = new TermDelta();
+			result.term = key;
+			result.isName = isName;
+			deltas.put(key, result);
+		}
+		if (term != null) {
+			result.term = term;
+		}
+		return result;
+	}
+
+	protected ForwardIndexChunk getChunk(final int docNo) {
+		int chunkNo = ForwardIndexChunk.getChunk(docNo);
+		ForwardIndexChunk result = chunks_.get(chunkNo);
+		if (result == null) {
+			result = index_.getForwardIndexChunk(dbid_, chunkNo);
+			chunks_.put(chunkNo, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the number of documents since the last flush
+	 */
+	public int getPendingDocs() {
+		return pendingDocs_;
+	}
+
+	/**
+	 * Returns the number of (term, item, document) postings that were added
+	 */
+	public long getAddedCount() {
+		return addedCount_;
+	}
+
+	/**
+	 * Returns the number of (term, item, document) postings that were removed
+	 */
+	public long getRemovedCount() {
+		return removedCount_;
+	}
+
+	/**
+	 * Returns true if the postings of a flush could not be written. The last index date must not be set then, so the next update applies
+	 * the documents again.
+	 */
+	public boolean isFailed() {
+		return failed_;
+	}
+
+	/**
+	 * Writes the collected changes: first the new document numbers, then the postings, then the forward index. If the update stops in
+	 * between, repeating it writes the same postings again. If the postings of a term could not be written, the forward index is not saved,
+	 * so the next update finds the same differences.
+	 *
+	 * @return true if all changes were written
+	 */
+	public boolean flush() {
+		index_.saveDocNumberMap(dbid_, docNumbers_);
+		boolean result = true;
+		for (Map<String, TermDelta> deltas : Arrays.asList(termDeltas_, nameDeltas_)) {
+			for (TermDelta delta : deltas.values()) {
+				try {
+					applyDelta(delta);
+				} catch (Exception e) {
+					log_.log(Level.WARNING, "Unable to update the postings of " + delta.term + " in " + dbid_, e);
+					result = false;
+				}
+			}
+			deltas.clear();
+		}
+		if (result) {
+			for (Map.Entry<Integer, ForwardIndexChunk> e : chunks_.entrySet()) {
+				if (e.getValue().isChanged()) {
+					index_.saveForwardIndexChunk(dbid_, e.getKey(), e.getValue());
+				}
+			}
+		} else {
+			failed_ = true;
+		}
+		// keep the memory bounded: the chunks are read again when needed
+		chunks_.clear();
+		pendingDocs_ = 0;
+		return result;
+	}
+
+	protected void applyDelta(final TermDelta delta) {
+		Document termDoc = delta.isName ? index_.getNameDocument(delta.term) : index_.getTermDocument(delta.term);
+		TermPostings postings = index_.getTermPostings(termDoc, dbid_, docNumbers_);
+		if (postings == null) {
+			if (delta.added.isEmpty())
+				return;
+			postings = new TermPostings();
+		}
+		Set<CharSequence> items = new HashSet<CharSequence>(delta.added.keySet());
+		items.addAll(delta.removed.keySet());
+		for (CharSequence item : items) {
+			PostingList list = postings.get(item);
+			if (list == null) {
+				list = PostingList.EMPTY;
+			}
+			PostingList.Builder removed = delta.removed.get(item);
+			if (removed != null) {
+				list = list.andNot(removed.build());
+			}
+			PostingList.Builder added = delta.added.get(item);
+			if (added != null) {
+				list = list.or(added.build());
+			}
+			if (list.isEmpty()) {
+				postings.remove(item);
+			} else {
+				postings.put(item, list);
+			}
+		}
+		index_.replaceTermPostings(termDoc, dbid_, postings, docNumbers_);
+		termDoc.save();
+	}
+}
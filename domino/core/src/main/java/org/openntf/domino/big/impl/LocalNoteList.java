@@ -8,10 +8,12 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
-import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Set;
@@ -26,15 +28,15 @@ import org.openntf.domino.exceptions.UnimplementedException;
 import org.openntf.domino.utils.Factory;
 import org.openntf.domino.utils.Factory.SessionType;
 
-import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Sets;
 import com.google.common.primitives.Longs;
 
-import javolution.util.FastSortedTable;
-import javolution.util.function.Equality;
-
+/**
+ * A list of the notes of one database. Only the UNIDs are stored, packed as 2 longs per entry. The replica id is stored once for the
+ * whole list.
+ */
 public class LocalNoteList implements org.openntf.domino.big.LocalNoteList {
-	private final static int BUFFER_SIZE = 16;
+	private final static int STRIDE = 2;
+	private final static int BUFFER_SIZE = STRIDE * 8;
 
 	private static ThreadLocal<byte[]> extreadbuffer_ = new ThreadLocal<byte[]>() {
 		@Override
@@ -54,6 +56,12 @@ public class LocalNoteList implements org.openntf.domino.big.LocalNoteList {
 			parent_ = parentList;
 		}
 
+		public LocalNoteCoordinate(final long x, final long y, final LocalNoteList parentList) {
+			this.x = x;
+			this.y = y;
+			parent_ = parentList;
+		}
+
 		public LocalNoteCoordinate(final byte[] bytes, final LocalNoteList parentList) {
 			parent_ = parentList;
 			if (bytes.length >= BUFFER_SIZE) {
@@ -78,7 +86,7 @@ public class LocalNoteList implements org.openntf.domino.big.LocalNoteList {
 		@Override
 		public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
 			byte[] bytes = extreadbuffer_.get();
-			in.read(bytes);
+			in.readFully(bytes);
 			this.x = Longs.fromBytes(bytes[0], bytes[1], bytes[2], bytes[3], bytes[4], bytes[5], bytes[6], bytes[7]);
 			this.y = Longs.fromBytes(bytes[8], bytes[9], bytes[10], bytes[11], bytes[12], bytes[13], bytes[14], bytes[15]);
 		}
@@ -153,125 +161,42 @@ public class LocalNoteList implements org.openntf.domino.big.LocalNoteList {
 		}
 	}
 
-	static class NoteComparator implements Equality<LocalNoteCoordinate> {
-		private static final long serialVersionUID = 1L;
-		private String comparisonKey_;
-
-		NoteComparator(final String key) {
-			comparisonKey_ = key;
-		}
-
-		@Override
-		@SuppressWarnings("unchecked")
-		public int compare(final LocalNoteCoordinate arg0, final LocalNoteCoordinate arg1) {
-			Object obj0 = arg0.get(comparisonKey_);
-			Object obj1 = arg1.get(comparisonKey_);
-			return ((Comparable<Object>) obj0).compareTo(obj1);
-		}
-
-		@Override
-		public int hashOf(final LocalNoteCoordinate object) {
-			return object.hashCode();
+	public static class LocalNoteListIterator extends NoteList.NoteListIterator {
+		public LocalNoteListIterator(final LocalNoteList parent) {
+			super(parent, 0);
 		}
 
-		@Override
-		public boolean equal(final LocalNoteCoordinate left, final LocalNoteCoordinate right) {
-			return left.equals(right);
+		public LocalNoteListIterator(final LocalNoteList parent, final int index) {
+			super(parent, index);
 		}
-
 	}
 
-	public static class LocalNoteListIterator implements ListIterator<org.openntf.domino.big.NoteCoordinate> {
-		protected ListIterator<LocalNoteCoordinate> delegate_;
-		protected LocalNoteList parent_;
-
-		public LocalNoteListIterator(final List<LocalNoteCoordinate> delegate, final LocalNoteList parent) {
-			parent_ = parent;
-			delegate_ = delegate.listIterator();
-		}
-
-		public LocalNoteListIterator(final List<LocalNoteCoordinate> delegate, final LocalNoteList parent, final int index) {
-			parent_ = parent;
-			delegate_ = delegate.listIterator(index);
-		}
-
-		@Override
-		public void add(final org.openntf.domino.big.NoteCoordinate arg0) {
-			if (parent_.validateNoteCoordinate(arg0)) {
-				delegate_.add(new LocalNoteCoordinate(arg0, parent_));
-			}
-		}
-
-		@Override
-		public boolean hasNext() {
-			return delegate_.hasNext();
-		}
-
-		@Override
-		public boolean hasPrevious() {
-			return delegate_.hasPrevious();
-		}
-
-		@Override
-		public NoteCoordinate next() {
-			return delegate_.next().toNoteCoordinate();
-		}
-
-		@Override
-		public int nextIndex() {
-			return delegate_.nextIndex();
-		}
-
-		@Override
-		public NoteCoordinate previous() {
-			return delegate_.previous().toNoteCoordinate();
-		}
-
-		@Override
-		public int previousIndex() {
-			return delegate_.previousIndex();
-		}
-
-		@Override
-		public void remove() {
-			delegate_.remove();
-		}
-
-		@Override
-		public void set(final org.openntf.domino.big.NoteCoordinate arg0) {
-			if (parent_.validateNoteCoordinate(arg0)) {
-				delegate_.set(new LocalNoteCoordinate(arg0, parent_));
-			}
-		}
-	}
-
-	protected List<LocalNoteCoordinate> delegate_;
+	protected PackedCoordinateArray delegate_;
 	protected long replid_ = Long.MIN_VALUE;
 	protected Date buildDate_ = new Date(0);
 	protected String serverName_ = "";
 	private transient org.openntf.domino.Database db_;
 
 	public LocalNoteList() {
-		delegate_ = new ArrayList<LocalNoteCoordinate>();
+		delegate_ = new PackedCoordinateArray(STRIDE);
 	}
 
 	public LocalNoteList(final NoteCollection nc, final Date buildDate) {
 		buildDate_ = buildDate;
 		replid_ = org.openntf.domino.big.NoteCoordinate.Utils.getLongFromReplid(nc.getAncestorDatabase().getReplicaID());
-		delegate_ = new ArrayList<LocalNoteCoordinate>(nc.getCount());
+		delegate_ = new PackedCoordinateArray(STRIDE, nc.getCount());
 		for (int nid : nc.getNoteIDs()) {
 			String unid = nc.getUNID(Integer.toHexString(nid));
-			delegate_.add(new LocalNoteCoordinate(unid, this));
+			add(unid);
 		}
 	}
 
 	public LocalNoteList(final DocumentCollection dc, final Date buildDate) {
 		buildDate_ = buildDate;
 		replid_ = org.openntf.domino.big.NoteCoordinate.Utils.getLongFromReplid(dc.getAncestorDatabase().getReplicaID());
-		delegate_ = new ArrayList<LocalNoteCoordinate>(dc.getCount());
+		delegate_ = new PackedCoordinateArray(STRIDE, dc.getCount());
 		for (Document doc : dc) {
-			String unid = doc.getUniversalID();
-			delegate_.add(new LocalNoteCoordinate(unid, this));
+			add(doc.getUniversalID());
 		}
 	}
 
@@ -286,7 +211,6 @@ public class LocalNoteList implements org.openntf.domino.big.LocalNoteList {
 	}
 
 	protected boolean validateNoteCoordinate(final org.openntf.domino.big.NoteCoordinate e) {
-		boolean result = true;
 		if (replid_ == Long.MIN_VALUE) {
 			replid_ = e.getReplicaLong();
 			return true;
@@ -300,27 +224,69 @@ public class LocalNoteList implements org.openntf.domino.big.LocalNoteList {
 		}
 	}
 
+	protected NoteCoordinate toNoteCoordinate(final int index) {
+		int pos = delegate_.offset(index);
+		long[] data = delegate_.array();
+		return new NoteCoordinate(replid_, data[pos], data[pos + 1]);
+	}
+
+	protected LocalNoteCoordinate toLocalNoteCoordinate(final int index) {
+		int pos = delegate_.offset(index);
+		long[] data = delegate_.array();
+		return new LocalNoteCoordinate(data[pos], data[pos + 1], this);
+	}
+
+	protected long[] toRow(final Object o) {
+		if (o instanceof LocalNoteCoordinate) {
+			LocalNoteCoordinate lnc = (LocalNoteCoordinate) o;
+			return new long[] { lnc.x, lnc.y };
+		} else if (o instanceof org.openntf.domino.big.NoteCoordinate) {
+			org.openntf.domino.big.NoteCoordinate nc = (org.openntf.domino.big.NoteCoordinate) o;
+			if (nc.getReplicaLong().longValue() == replid_) {
+				return new long[] { nc.getX(), nc.getY() };
+			}
+		}
+		return null;
+	}
+
+	protected void add(final String unid) {
+		long[] longs = org.openntf.domino.big.NoteCoordinate.Utils.getLongsFromUnid(unid);
+		int pos = delegate_.append();
+		long[] data = delegate_.array();
+		data[pos] = longs[0];
+		data[pos + 1] = longs[1];
+	}
+
 	@Override
 	public boolean add(final org.openntf.domino.big.NoteCoordinate e) {
 		if (e == null)
 			return true;
 		if (validateNoteCoordinate(e)) {
-			LocalNoteCoordinate local = new LocalNoteCoordinate(e, this);
-			return delegate_.add(local);
+			int pos = delegate_.append();
+			long[] data = delegate_.array();
+			data[pos] = e.getX();
+			data[pos + 1] = e.getY();
+			return true;
 		}
 		return false;
 	}
 
 	protected boolean add(final LocalNoteCoordinate lnc) {
-		return delegate_.add(lnc);
+		int pos = delegate_.append();
+		long[] data = delegate_.array();
+		data[pos] = lnc.x;
+		data[pos + 1] = lnc.y;
+		return true;
 	}
 
 	@Override
 	public void add(final int index, final org.openntf.domino.big.NoteCoordinate element) {
 		if (element != null) {
 			if (validateNoteCoordinate(element)) {
-				LocalNoteCoordinate local = new LocalNoteCoordinate(element, this);
-				delegate_.add(index, local);
+				int pos = delegate_.insert(index);
+				long[] data = delegate_.array();
+				data[pos] = element.getX();
+				data[pos + 1] = element.getY();
 			}
 		}
 	}
@@ -330,6 +296,7 @@ public class LocalNoteList implements org.openntf.domino.big.LocalNoteList {
 		if (c == null)
 			return true;
 
+		delegate_.ensureCapacity(delegate_.size() + c.size());
 		boolean result = true;
 		for (org.openntf.domino.big.NoteCoordinate nc : c) {
 			result = add(nc);
@@ -344,13 +311,13 @@ public class LocalNoteList implements org.openntf.domino.big.LocalNoteList {
 		if (c == null)
 			return true;
 
-		List<LocalNoteCoordinate> convertList = new ArrayList<LocalNoteCoordinate>();
+		int i = index;
 		for (org.openntf.domino.big.NoteCoordinate nc : c) {
-			if (validateNoteCoordinate(nc)) {
-				convertList.add(new LocalNoteCoordinate(nc, this));
+			if (nc != null) {
+				add(i++, nc);
 			}
 		}
-		return delegate_.addAll(index, convertList);
+		return i > index;
 	}
 
 	@Override
@@ -364,15 +331,9 @@ public class LocalNoteList implements org.openntf.domino.big.LocalNoteList {
 			return true;
 		}
 		if (o instanceof org.openntf.domino.big.NoteCoordinate) {
-			if (validateNoteCoordinate((org.openntf.domino.big.NoteCoordinate) o)) {
-				return delegate_.contains(new LocalNoteCoordinate((org.openntf.domino.big.NoteCoordinate) o, this));
-			} else {
-				return false;
-			}
-		} else if (o instanceof org.openntf.domino.big.LocalNoteCoordinate) {
-			return delegate_.contains(o);
+			validateNoteCoordinate((org.openntf.domino.big.NoteCoordinate) o);
 		}
-		return false;
+		return indexOf(o) >= 0;
 	}
 
 	@Override
@@ -390,74 +351,87 @@ public class LocalNoteList implements org.openntf.domino.big.LocalNoteList {
 
 	@Override
 	public org.openntf.domino.big.NoteCoordinate get(final int index) {
-		LocalNoteCoordinate lnc = delegate_.get(index);
-		if (lnc != null) {
-			return lnc.toNoteCoordinate();
-		} else {
-			return null;
-		}
+		return toNoteCoordinate(index);
 	}
 
 	@Override
 	public int indexOf(final Object o) {
-		//TODO
-		return delegate_.indexOf(o);
+		long[] row = toRow(o);
+		return row == null ? -1 : delegate_.indexOf(row, 0);
 	}
 
 	@Override
 	public boolean isEmpty() {
-		return delegate_.isEmpty();
+		return delegate_.size() == 0;
 	}
 
 	@Override
 	public Iterator<org.openntf.domino.big.NoteCoordinate> iterator() {
-		return new LocalNoteListIterator(delegate_, this);
+		return new LocalNoteListIterator(this);
 	}
 
 	@Override
 	public int lastIndexOf(final Object o) {
-		//TODO
-		return delegate_.lastIndexOf(o);
+		long[] row = toRow(o);
+		return row == null ? -1 : delegate_.lastIndexOf(row);
 	}
 
 	@Override
 	public ListIterator<org.openntf.domino.big.NoteCoordinate> listIterator() {
-		return new LocalNoteListIterator(delegate_, this);
+		return new LocalNoteListIterator(this);
 	}
 
 	@Override
 	public ListIterator<org.openntf.domino.big.NoteCoordinate> listIterator(final int index) {
-		return new LocalNoteListIterator(delegate_, this, index);
+		return new LocalNoteListIterator(this, index);
 	}
 
 	@Override
 	public org.openntf.domino.big.NoteCoordinate remove(final int index) {
-		return delegate_.remove(index).toNoteCoordinate();
+		NoteCoordinate result = toNoteCoordinate(index);
+		delegate_.remove(index);
+		return result;
 	}
 
 	@Override
 	public boolean remove(final Object o) {
-		//TODO
-		return delegate_.remove(o);
+		int index = indexOf(o);
+		if (index < 0)
+			return false;
+		delegate_.remove(index);
+		return true;
 	}
 
 	@Override
 	public boolean removeAll(final Collection<?> c) {
-		//TODO
-		return delegate_.removeAll(c);
+		boolean result = false;
+		for (Object o : c) {
+			while (remove(o)) {
+				result = true;
+			}
+		}
+		return result;
 	}
 
 	@Override
 	public boolean retainAll(final Collection<?> c) {
-		// TODO
-		return delegate_.retainAll(c);
+		boolean result = false;
+		for (int i = delegate_.size() - 1; i >= 0; i--) {
+			if (!c.contains(toNoteCoordinate(i))) {
+				delegate_.remove(i);
+				result = true;
+			}
+		}
+		return result;
 	}
 
 	@Override
 	public org.openntf.domino.big.NoteCoordinate set(final int index, final org.openntf.domino.big.NoteCoordinate element) {
 		if (validateNoteCoordinate(element)) {
-			LocalNoteCoordinate lnc = new LocalNoteCoordinate(element, this);
-			delegate_.set(index, lnc);
+			int pos = delegate_.offset(index);
+			long[] data = delegate_.array();
+			data[pos] = element.getX();
+			data[pos + 1] = element.getY();
 		}
 		return element;
 	}
@@ -469,12 +443,25 @@ public class LocalNoteList implements org.openntf.domino.big.LocalNoteList {
 
 	@Override
 	public Object[] toArray() {
-		return delegate_.toArray();
+		Object[] result = new Object[delegate_.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = toNoteCoordinate(i);
+		}
+		return result;
 	}
 
 	@Override
+	@SuppressWarnings("unchecked")
 	public <T> T[] toArray(final T[] a) {
-		return delegate_.toArray(a);
+		int size = delegate_.size();
+		T[] result = a.length >= size ? a : (T[]) java.lang.reflect.Array.newInstance(a.getClass().getComponentType(), size);
+		for (int i = 0; i < size; i++) {
+			result[i] = (T) toNoteCoordinate(i);
+		}
+		if (result.length > size) {
+			result[size] = null;
+		}
+		return result;
 	}
 
 	@Override
@@ -482,11 +469,7 @@ public class LocalNoteList implements org.openntf.domino.big.LocalNoteList {
 		replid_ = arg0.readLong();
 		buildDate_ = new Date(arg0.readLong());
 		int size = arg0.readInt();
-		byte[] buffer = new byte[BUFFER_SIZE];
-		for (int i = 0; i < size; i++) {
-			arg0.read(buffer);
-			add(new LocalNoteCoordinate(buffer, this));
-		}
+		delegate_.read(arg0, size);
 	}
 
 	@Override
@@ -494,9 +477,7 @@ public class LocalNoteList implements org.openntf.domino.big.LocalNoteList {
 		arg0.writeLong(replid_);
 		arg0.writeLong(buildDate_.getTime());
 		arg0.writeInt(size());
-		for (LocalNoteCoordinate lnc : delegate_) {
-			arg0.write(lnc.toByteArray());
-		}
+		delegate_.write(arg0);
 	}
 
 	@Override
@@ -511,22 +492,12 @@ public class LocalNoteList implements org.openntf.domino.big.LocalNoteList {
 
 	@Override
 	public byte[] toByteArray() {
-		byte[] result = new byte[size() * BUFFER_SIZE];
-		int pos = 0;
-		for (org.openntf.domino.big.NoteCoordinate nc : this) {
-			pos = nc.insertToByteArray(result, pos);
-		}
-		return result;
+		return delegate_.toByteArray();
 	}
 
 	@Override
 	public void loadByteArray(final byte[] bytes) {
-		int size = bytes.length / BUFFER_SIZE;
-		byte[] buffer = new byte[BUFFER_SIZE];
-		for (int i = 0; i < size; i++) {
-			System.arraycopy(bytes, i * BUFFER_SIZE, buffer, 0, BUFFER_SIZE);
-			add(new LocalNoteCoordinate(buffer, this));
-		}
+		delegate_.loadByteArray(bytes);
 	}
 
 	@Override
@@ -536,18 +507,26 @@ public class LocalNoteList implements org.openntf.domino.big.LocalNoteList {
 
 	@Override
 	public void sortBy(final String key) {
-		NoteComparator comp = new NoteComparator(key);
-		FastSortedTable<LocalNoteCoordinate> newDel = new FastSortedTable<LocalNoteCoordinate>(comp);
-		newDel.addAll(delegate_);
-		delegate_ = newDel;
+		Object[] keys = new Object[delegate_.size()];
+		for (int i = 0; i < keys.length; i++) {
+			// every document is read once, not at every comparison
+			keys[i] = toLocalNoteCoordinate(i).get(key);
+		}
+		delegate_.sortByKeys(keys);
 	}
 
 	@Override
 	public NoteList toFullNoteList() {
-		//TODO NTF this could probably be made faster with some kind of clever copy of the delegate
 		NoteList result = new NoteList();
-		for (LocalNoteCoordinate lnc : delegate_) {
-			result.add(lnc.toNoteCoordinate());
+		int size = delegate_.size();
+		result.delegate_.ensureCapacity(size);
+		long[] data = delegate_.array();
+		for (int i = 0; i < size; i++) {
+			int pos = result.delegate_.append();
+			long[] target = result.delegate_.array();
+			target[pos] = replid_;
+			target[pos + 1] = data[i * STRIDE];
+			target[pos + 2] = data[i * STRIDE + 1];
 		}
 		return result;
 	}
@@ -562,14 +541,19 @@ public class LocalNoteList implements org.openntf.domino.big.LocalNoteList {
 		buildDate_ = date;
 	}
 
-	private static LocalNoteCoordinate[] LNC_ARRAY = new LocalNoteCoordinate[0];
-
 	public Set<LocalNoteCoordinate> difference(final LocalNoteList otherList) {
-		LocalNoteCoordinate[] myArray = delegate_.toArray(LNC_ARRAY);
-		LocalNoteCoordinate[] otherArray = delegate_.toArray(LNC_ARRAY);
-		ImmutableSet<LocalNoteCoordinate> mySet = ImmutableSet.copyOf(myArray);
-		ImmutableSet<LocalNoteCoordinate> otherSet = ImmutableSet.copyOf(otherArray);
-		return Sets.difference(mySet, otherSet);
+		Set<LocalNoteCoordinate> otherSet = new HashSet<LocalNoteCoordinate>(otherList.size() * 2);
+		for (int i = 0; i < otherList.size(); i++) {
+			otherSet.add(otherList.toLocalNoteCoordinate(i));
+		}
+		Set<LocalNoteCoordinate> result = new LinkedHashSet<LocalNoteCoordinate>();
+		for (int i = 0; i < delegate_.size(); i++) {
+			LocalNoteCoordinate lnc = toLocalNoteCoordinate(i);
+			if (!otherSet.contains(lnc)) {
+				result.add(lnc);
+			}
+		}
+		return Collections.unmodifiableSet(result);
 	}
 
 }
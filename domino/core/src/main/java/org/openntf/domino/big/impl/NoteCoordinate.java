@@ -40,6 +40,8 @@ public class NoteCoordinate implements org.openntf.domino.big.NoteCoordinate {
 		}
 	};
 
+	private static volatile DbCache dbCache_;
+
 	long db;
 	long x;
 	long y;
@@ -130,7 +132,22 @@ public class NoteCoordinate implements org.openntf.domino.big.NoteCoordinate {
 		return getUnidFromLongs(x, y);
 	}
 
+	/**
+	 * Sets a cache for the databases that are opened to resolve NoteCoordinates. Without cache, every resolution opens the database.
+	 */
+	public static void setDbCache(final DbCache cache) {
+		dbCache_ = cache;
+	}
+
+	public static DbCache getDbCache() {
+		return dbCache_;
+	}
+
 	protected Database getDatabase(final String server) {
+		DbCache cache = dbCache_;
+		if (cache != null) {
+			return cache.getDatabase(db, server);
+		}
 		String replid = getReplidFromLong(db);
 		Session session = Factory.getSession(SessionType.CURRENT);
 		DbDirectory dir = session.getDbDirectory(server);
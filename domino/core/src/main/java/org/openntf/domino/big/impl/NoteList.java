@@ -3,18 +3,23 @@ package org.openntf.domino.big.impl;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.NoSuchElementException;
 
-import javolution.util.FastSortedTable;
 import javolution.util.function.Equality;
 
+/**
+ * A list of {@link NoteCoordinate}s. The coordinates are stored packed as 3 longs (replica id, UNID) per entry, a NoteCoordinate is created
+ * when an element is read.
+ */
 public class NoteList implements org.openntf.domino.big.NoteList {
-	protected List<org.openntf.domino.big.NoteCoordinate> delegate_;
+	private static final int STRIDE = 3;
+
+	protected PackedCoordinateArray delegate_;
 	protected DbCache localCache_ = null;
 	protected boolean isSynced_ = false;
 
@@ -46,192 +51,354 @@ public class NoteList implements org.openntf.domino.big.NoteList {
 
 	}
 
+	/**
+	 * A ListIterator that works with the index based methods of the list
+	 */
+	public static class NoteListIterator implements ListIterator<org.openntf.domino.big.NoteCoordinate> {
+		protected final List<org.openntf.domino.big.NoteCoordinate> list_;
+		protected int cursor_;
+		protected int lastRet_ = -1;
+
+		public NoteListIterator(final List<org.openntf.domino.big.NoteCoordinate> list, final int index) {
+			list_ = list;
+			cursor_ = index;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return cursor_ < list_.size();
+		}
+
+		@Override
+		public boolean hasPrevious() {
+			return cursor_ > 0;
+		}
+
+		@Override
+		public org.openntf.domino.big.NoteCoordinate next() {
+			if (cursor_ >= list_.size())
+				throw new NoSuchElementException();
+			try {
+				org.openntf.domino.big.NoteCoordinate result = list_.get(cursor_);
+				lastRet_ = cursor_++;
+				return result;
+			} catch (IndexOutOfBoundsException e) {
+				throw new ConcurrentModificationException();
+			}
+		}
+
+		@Override
+		public int nextIndex() {
+			return cursor_;
+		}
+
+		@Override
+		public org.openntf.domino.big.NoteCoordinate previous() {
+			if (cursor_ <= 0)
+				throw new NoSuchElementException();
+			try {
+				org.openntf.domino.big.NoteCoordinate result = list_.get(cursor_ - 1);
+				lastRet_ = --cursor_;
+				return result;
+			} catch (IndexOutOfBoundsException e) {
+				throw new ConcurrentModificationException();
+			}
+		}
+
+		@Override
+		public int previousIndex() {
+			return cursor_ - 1;
+		}
+
+		@Override
+		public void remove() {
+			if (lastRet_ < 0)
+				throw new IllegalStateException();
+			list_.remove(lastRet_);
+			cursor_ = lastRet_;
+			lastRet_ = -1;
+		}
+
+		@Override
+		public void set(final org.openntf.domino.big.NoteCoordinate arg0) {
+			if (lastRet_ < 0)
+				throw new IllegalStateException();
+			list_.set(lastRet_, arg0);
+		}
+
+		@Override
+		public void add(final org.openntf.domino.big.NoteCoordinate arg0) {
+			int before = list_.size();
+			list_.add(cursor_, arg0);
+			if (list_.size() > before) {
+				cursor_++;
+			}
+			lastRet_ = -1;
+		}
+	}
+
 	public static NoteComparator getComparator(final String key) {
 		return new NoteComparator(key);
 	}
 
 	public NoteList() {
-		delegate_ = new ArrayList<org.openntf.domino.big.NoteCoordinate>();
+		delegate_ = new PackedCoordinateArray(STRIDE);
 	}
 
 	public NoteList(final boolean concurrent) {
-		delegate_ = Collections.synchronizedList(new ArrayList<org.openntf.domino.big.NoteCoordinate>());
-		isSynced_ = true;
+		delegate_ = new PackedCoordinateArray(STRIDE);
+		isSynced_ = concurrent;
+	}
+
+	protected NoteList(final PackedCoordinateArray delegate, final boolean concurrent) {
+		delegate_ = delegate;
+		isSynced_ = concurrent;
+	}
+
+	protected static long[] toRow(final Object o) {
+		if (o instanceof org.openntf.domino.big.NoteCoordinate) {
+			org.openntf.domino.big.NoteCoordinate nc = (org.openntf.domino.big.NoteCoordinate) o;
+			return new long[] { nc.getReplicaLong(), nc.getX(), nc.getY() };
+		}
+		return null;
+	}
+
+	protected NoteCoordinate toNoteCoordinate(final int index) {
+		int pos = delegate_.offset(index);
+		long[] data = delegate_.array();
+		return new NoteCoordinate(data[pos], data[pos + 1], data[pos + 2]);
+	}
+
+	protected static void store(final long[] data, final int pos, final org.openntf.domino.big.NoteCoordinate nc) {
+		data[pos] = nc.getReplicaLong();
+		data[pos + 1] = nc.getX();
+		data[pos + 2] = nc.getY();
+	}
+
+	/**
+	 * Called when the element at the index and the elements after it may have changed. Appending an element does not call this method.
+	 */
+	protected void changed(final int index) {
 	}
 
 	@Override
-	public void sortBy(final String key) {
-		NoteComparator comp = new NoteComparator(key);
-		FastSortedTable<org.openntf.domino.big.NoteCoordinate> newDel = new FastSortedTable<org.openntf.domino.big.NoteCoordinate>(comp);
-		newDel.addAll(delegate_);
-		delegate_ = newDel;
+	public synchronized void sortBy(final String key) {
+		Object[] keys = new Object[delegate_.size()];
+		for (int i = 0; i < keys.length; i++) {
+			// every document is read once, not at every comparison
+			keys[i] = toNoteCoordinate(i).get(key);
+		}
+		delegate_.sortByKeys(keys);
+		changed(0);
 	}
 
 	@Override
-	public boolean add(final org.openntf.domino.big.NoteCoordinate e) {
+	public synchronized boolean add(final org.openntf.domino.big.NoteCoordinate e) {
 		if (e == null)
 			return true;
-		return delegate_.add(e);
+		// append() may replace the array, so it is read afterwards
+		int pos = delegate_.append();
+		store(delegate_.array(), pos, e);
+		return true;
 	}
 
 	@Override
-	public void add(final int index, final org.openntf.domino.big.NoteCoordinate element) {
+	public synchronized void add(final int index, final org.openntf.domino.big.NoteCoordinate element) {
 		if (element != null) {
-			delegate_.add(index, element);
+			int pos = delegate_.insert(index);
+			store(delegate_.array(), pos, element);
+			changed(index);
 		}
 	}
 
 	@Override
-	public boolean addAll(final Collection<? extends org.openntf.domino.big.NoteCoordinate> c) {
+	public synchronized boolean addAll(final Collection<? extends org.openntf.domino.big.NoteCoordinate> c) {
 		if (c == null)
 			return true;
-		return delegate_.addAll(c);
+		delegate_.ensureCapacity(delegate_.size() + c.size());
+		for (org.openntf.domino.big.NoteCoordinate nc : c) {
+			add(nc);
+		}
+		return !c.isEmpty();
 	}
 
 	@Override
-	public boolean addAll(final int index, final Collection<? extends org.openntf.domino.big.NoteCoordinate> c) {
+	public synchronized boolean addAll(final int index, final Collection<? extends org.openntf.domino.big.NoteCoordinate> c) {
 		if (c == null)
 			return true;
-		return delegate_.addAll(index, c);
+		int i = index;
+		for (org.openntf.domino.big.NoteCoordinate nc : c) {
+			if (nc != null) {
+				add(i++, nc);
+			}
+		}
+		return i > index;
 	}
 
 	@Override
-	public void clear() {
+	public synchronized void clear() {
 		delegate_.clear();
+		changed(0);
 	}
 
 	@Override
-	public boolean contains(final Object o) {
+	public synchronized boolean contains(final Object o) {
 		if (o == null)
 			return true;
-		return delegate_.contains(o);
+		return indexOf(o) >= 0;
 	}
 
 	@Override
-	public boolean containsAll(final Collection<?> c) {
+	public synchronized boolean containsAll(final Collection<?> c) {
 		if (c == null)
 			return true;
-		return delegate_.containsAll(c);
+		for (Object o : c) {
+			if (!contains(o))
+				return false;
+		}
+		return true;
 	}
 
 	@Override
-	public org.openntf.domino.big.NoteCoordinate get(final int index) {
-		return delegate_.get(index);
+	public synchronized org.openntf.domino.big.NoteCoordinate get(final int index) {
+		return toNoteCoordinate(index);
 	}
 
 	@Override
-	public int indexOf(final Object o) {
-		return delegate_.indexOf(o);
+	public synchronized int indexOf(final Object o) {
+		long[] row = toRow(o);
+		return row == null ? -1 : delegate_.indexOf(row, 0);
 	}
 
 	@Override
-	public boolean isEmpty() {
-		return delegate_.isEmpty();
+	public synchronized boolean isEmpty() {
+		return delegate_.size() == 0;
 	}
 
 	@Override
 	public Iterator<org.openntf.domino.big.NoteCoordinate> iterator() {
-		return delegate_.iterator();
+		return new NoteListIterator(this, 0);
 	}
 
 	@Override
-	public int lastIndexOf(final Object o) {
-		return delegate_.lastIndexOf(o);
+	public synchronized int lastIndexOf(final Object o) {
+		long[] row = toRow(o);
+		return row == null ? -1 : delegate_.lastIndexOf(row);
 	}
 
 	@Override
 	public ListIterator<org.openntf.domino.big.NoteCoordinate> listIterator() {
-		return delegate_.listIterator();
+		return new NoteListIterator(this, 0);
 	}
 
 	@Override
 	public ListIterator<org.openntf.domino.big.NoteCoordinate> listIterator(final int index) {
-		return delegate_.listIterator(index);
+		return new NoteListIterator(this, index);
 	}
 
 	@Override
-	public org.openntf.domino.big.NoteCoordinate remove(final int index) {
-		return delegate_.remove(index);
+	public synchronized org.openntf.domino.big.NoteCoordinate remove(final int index) {
+		NoteCoordinate result = toNoteCoordinate(index);
+		delegate_.remove(index);
+		changed(index);
+		return result;
 	}
 
 	@Override
-	public boolean remove(final Object o) {
-		return delegate_.remove(o);
+	public synchronized boolean remove(final Object o) {
+		int index = indexOf(o);
+		if (index < 0)
+			return false;
+		delegate_.remove(index);
+		changed(index);
+		return true;
 	}
 
 	@Override
-	public boolean removeAll(final Collection<?> c) {
-		return delegate_.removeAll(c);
+	public synchronized boolean removeAll(final Collection<?> c) {
+		boolean result = false;
+		for (Object o : c) {
+			while (remove(o)) {
+				result = true;
+			}
+		}
+		return result;
 	}
 
 	@Override
-	public boolean retainAll(final Collection<?> c) {
-		return delegate_.retainAll(c);
+	public synchronized boolean retainAll(final Collection<?> c) {
+		boolean result = false;
+		for (int i = delegate_.size() - 1; i >= 0; i--) {
+			if (!c.contains(toNoteCoordinate(i))) {
+				delegate_.remove(i);
+				changed(i);
+				result = true;
+			}
+		}
+		return result;
 	}
 
 	@Override
-	public org.openntf.domino.big.NoteCoordinate set(final int index, final org.openntf.domino.big.NoteCoordinate element) {
-		return delegate_.set(index, element);
+	public synchronized org.openntf.domino.big.NoteCoordinate set(final int index, final org.openntf.domino.big.NoteCoordinate element) {
+		NoteCoordinate result = toNoteCoordinate(index);
+		store(delegate_.array(), delegate_.offset(index), element);
+		changed(index);
+		return result;
 	}
 
 	@Override
-	public int size() {
+	public synchronized int size() {
 		return delegate_.size();
 	}
 
 	@Override
-	public List<org.openntf.domino.big.NoteCoordinate> subList(final int fromIndex, final int toIndex) {
-		NoteList result = new NoteList(isSynced_);
-		result.addAll(delegate_.subList(fromIndex, toIndex));
-		return result;
+	public synchronized List<org.openntf.domino.big.NoteCoordinate> subList(final int fromIndex, final int toIndex) {
+		return new NoteList(delegate_.copy(fromIndex, toIndex), isSynced_);
 	}
 
 	@Override
-	public Object[] toArray() {
-		return delegate_.toArray();
+	public synchronized Object[] toArray() {
+		Object[] result = new Object[delegate_.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = toNoteCoordinate(i);
+		}
+		return result;
 	}
 
 	@Override
-	public <T> T[] toArray(final T[] a) {
-		return delegate_.toArray(a);
+	@SuppressWarnings("unchecked")
+	public synchronized <T> T[] toArray(final T[] a) {
+		int size = delegate_.size();
+		T[] result = a.length >= size ? a : (T[]) java.lang.reflect.Array.newInstance(a.getClass().getComponentType(), size);
+		for (int i = 0; i < size; i++) {
+			result[i] = (T) toNoteCoordinate(i);
+		}
+		if (result.length > size) {
+			result[size] = null;
+		}
+		return result;
 	}
 
 	@Override
-	public byte[] toByteArray() {
-		byte[] result = new byte[size() * 24];
-		int pos = 0;
-		for (org.openntf.domino.big.NoteCoordinate nc : this) {
-			pos = nc.insertToByteArray(result, pos);
-		}
-		return result;
+	public synchronized byte[] toByteArray() {
+		return delegate_.toByteArray();
 	}
 
 	@Override
-	public void loadByteArray(final byte[] bytes) {
-		int size = bytes.length / 24;
-		byte[] buffer = new byte[24];
-		for (int i = 0; i < size; i++) {
-			System.arraycopy(bytes, i * 24, buffer, 0, 24);
-			add(new NoteCoordinate(buffer));
-		}
+	public synchronized void loadByteArray(final byte[] bytes) {
+		delegate_.loadByteArray(bytes);
 	}
 
 	@Override
-	public void readExternal(final ObjectInput arg0) throws IOException, ClassNotFoundException {
+	public synchronized void readExternal(final ObjectInput arg0) throws IOException, ClassNotFoundException {
 		int size = arg0.readInt();
-		byte[] buffer = new byte[24];
-		for (int i = 0; i < size; i++) {
-			arg0.read(buffer);
-			add(new NoteCoordinate(buffer));
-		}
+		delegate_.read(arg0, size);
 	}
 
 	@Override
-	public void writeExternal(final ObjectOutput arg0) throws IOException {
-		arg0.writeInt(size());
-		for (org.openntf.domino.big.NoteCoordinate coord : this) {
-			arg0.write(coord.toByteArray());
-		}
+	public synchronized void writeExternal(final ObjectOutput arg0) throws IOException {
+		arg0.writeInt(delegate_.size());
+		delegate_.write(arg0);
 	}
 
 }
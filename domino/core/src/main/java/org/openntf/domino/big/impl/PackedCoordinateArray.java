@@ -0,0 +1,396 @@
+/**
+ *
+ */
+package org.openntf.domino.big.impl;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * The storage of {@link NoteList} and {@link LocalNoteList}: the coordinates are kept as rows of <code>stride</code> longs in one
+ * <code>long[]</code> instead of one object per coordinate. The list classes create {@link NoteCoordinate}s only when an element is
+ * accessed.
+ *
+ * The rows are read and written in big endian order, so the byte format is the same as the one of
+ * {@link NoteCoordinate#toByteArray()}.
+ *
+ * This class is not thread safe.
+ *
+ * @author Roland Praml, Foconis AG
+ *
+ */
+class PackedCoordinateArray {
+	private static final long[] EMPTY = new long[0];
+
+	/** the number of longs that are converted at once when reading or writing */
+	private static final int IO_CHUNK = 4096;
+
+	private final int stride_;
+	private long[] data_ = EMPTY;
+	private int size_;
+
+	/**
+	 * @param stride
+	 *            the number of longs of one coordinate
+	 */
+	PackedCoordinateArray(final int stride) {
+		stride_ = stride;
+	}
+
+	PackedCoordinateArray(final int stride, final int capacity) {
+		stride_ = stride;
+		data_ = capacity > 0 ? new long[capacity * stride] : EMPTY;
+	}
+
+	int getStride() {
+		return stride_;
+	}
+
+	int size() {
+		return size_;
+	}
+
+	/**
+	 * The backing array. It is only valid until the next change of the size.
+	 */
+	long[] array() {
+		return data_;
+	}
+
+	/**
+	 * @return the position of the first long of the row in {@link #array()}
+	 */
+	int offset(final int index) {
+		if (index < 0 || index >= size_)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size_);
+		return index * stride_;
+	}
+
+	long get(final int index, final int field) {
+		return data_[offset(index) + field];
+	}
+
+	void ensureCapacity(final int rows) {
+		int needed = rows * stride_;
+		if (needed > data_.length) {
+			int newLength = Math.max(needed, data_.length + (data_.length >> 1) + stride_ * 4);
+			data_ = Arrays.copyOf(data_, newLength);
+		}
+	}
+
+	/**
+	 * Opens a gap for one row at the index
+	 *
+	 * @return the position of the new row in {@link #array()}
+	 */
+	int insert(final int index) {
+		if (index < 0 || index > size_)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size_);
+		ensureCapacity(size_ + 1);
+		int pos = index * stride_;
+		if (index < size_) {
+			System.arraycopy(data_, pos, data_, pos + stride_, (size_ - index) * stride_);
+		}
+		size_++;
+		return pos;
+	}
+
+	/**
+	 * Appends one row
+	 *
+	 * @return the position of the new row in {@link #array()}
+	 */
+	int append() {
+		ensureCapacity(size_ + 1);
+		return size_++ * stride_;
+	}
+
+	void remove(final int index) {
+		int pos = offset(index);
+		if (index < size_ - 1) {
+			System.arraycopy(data_, pos + stride_, data_, pos, (size_ - index - 1) * stride_);
+		}
+		size_--;
+	}
+
+	void clear() {
+		size_ = 0;
+	}
+
+	/**
+	 * Returns the first row at or after <code>from</code> that starts with the given longs, -1 if there is none
+	 */
+	int indexOf(final long[] row, final int from) {
+		int end = size_ * stride_;
+		for (int pos = from * stride_; pos < end; pos += stride_) {
+			if (matches(pos, row)) {
+				return pos / stride_;
+			}
+		}
+		return -1;
+	}
+
+	int lastIndexOf(final long[] row) {
+		for (int pos = (size_ - 1) * stride_; pos >= 0; pos -= stride_) {
+			if (matches(pos, row)) {
+				return pos / stride_;
+			}
+		}
+		return -1;
+	}
+
+	private boolean matches(final int pos, final long[] row) {
+		for (int i = 0; i < row.length; i++) {
+			if (data_[pos + i] != row[i])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Copies the rows <code>from</code> (inclusive) to <code>to</code> (exclusive) into a new array
+	 */
+	PackedCoordinateArray copy(final int from, final int to) {
+		if (from < 0 || to > size_ || from > to)
+			throw new IndexOutOfBoundsException("fromIndex: " + from + ", toIndex: " + to + ", Size: " + size_);
+		PackedCoordinateArray result = new PackedCoordinateArray(stride_, to - from);
+		System.arraycopy(data_, from * stride_, result.data_, 0, (to - from) * stride_);
+		result.size_ = to - from;
+		return result;
+	}
+
+	/**
+	 * Sorts the rows by the keys. The sort is stable, <code>null</code> keys come first.
+	 *
+	 * @param keys
+	 *            one key for every row
+	 */
+	void sortByKeys(final Object[] keys) {
+		Integer[] order = new Integer[size_];
+		for (int i = 0; i < size_; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			@SuppressWarnings("unchecked")
+			public int compare(final Integer o1, final Integer o2) {
+				Object key1 = keys[o1];
+				Object key2 = keys[o2];
+				if (key1 == null)
+					return key2 == null ? 0 : -1;
+				if (key2 == null)
+					return 1;
+				return ((Comparable<Object>) key1).compareTo(key2);
+			}
+		});
+		long[] sorted = new long[data_.length];
+		for (int i = 0; i < size_; i++) {
+			System.arraycopy(data_, order[i] * stride_, sorted, i * stride_, stride_);
+		}
+		data_ = sorted;
+	}
+
+	/**
+	 * Sorts the rows <code>from</code> (inclusive) to <code>to</code> (exclusive) by their longs
+	 */
+	void sortRows(final int from, final int to) {
+		if (from < 0 || to > size_ || from > to)
+			throw new IndexOutOfBoundsException("fromIndex: " + from + ", toIndex: " + to + ", Size: " + size_);
+		quickSort(from, to - 1);
+	}
+
+	private void quickSort(int lo, int hi) {
+		while (hi - lo > 16) {
+			int mid = (lo + hi) >>> 1;
+			if (compareRows(mid, lo) < 0)
+				swapRows(mid, lo);
+			if (compareRows(hi, lo) < 0)
+				swapRows(hi, lo);
+			if (compareRows(hi, mid) < 0)
+				swapRows(hi, mid);
+			// the median is the pivot, lo and hi are the sentinels of the partitioning
+			int pivot = hi - 1;
+			swapRows(mid, pivot);
+			int i = lo;
+			int j = pivot;
+			while (true) {
+				while (compareRows(++i, pivot) < 0) {
+				}
+				while (compareRows(--j, pivot) > 0) {
+				}
+				if (i >= j)
+					break;
+				swapRows(i, j);
+			}
+			swapRows(i, pivot);
+			// recurse into the smaller part only
+			if (i - lo < hi - i) {
+				quickSort(lo, i - 1);
+				lo = i + 1;
+			} else {
+				quickSort(i + 1, hi);
+				hi = i - 1;
+			}
+		}
+		for (int i = lo + 1; i <= hi; i++) {
+			for (int j = i; j > lo && compareRows(j - 1, j) > 0; j--) {
+				swapRows(j - 1, j);
+			}
+		}
+	}
+
+	private int compareRows(final int row1, final int row2) {
+		int pos1 = row1 * stride_;
+		int pos2 = row2 * stride_;
+		for (int i = 0; i < stride_; i++) {
+			long l1 = data_[pos1 + i];
+			long l2 = data_[pos2 + i];
+			if (l1 != l2)
+				return l1 < l2 ? -1 : 1;
+		}
+		return 0;
+	}
+
+	private void swapRows(final int row1, final int row2) {
+		int pos1 = row1 * stride_;
+		int pos2 = row2 * stride_;
+		for (int i = 0; i < stride_; i++) {
+			long tmp = data_[pos1 + i];
+			data_[pos1 + i] = data_[pos2 + i];
+			data_[pos2 + i] = tmp;
+		}
+	}
+
+	/**
+	 * Encodes the rows <code>from</code> (inclusive) to <code>to</code> (exclusive): the number of rows, then every long as the zigzag
+	 * varint of its difference to the same long of the previous row. If the rows are sorted, coordinates in the same database mostly differ
+	 * in the last long only and take a few bytes instead of 24.
+	 */
+	byte[] encodeRows(final int from, final int to) {
+		if (from < 0 || to > size_ || from > to)
+			throw new IndexOutOfBoundsException("fromIndex: " + from + ", toIndex: " + to + ", Size: " + size_);
+		byte[] result = new byte[10 + (to - from) * stride_ * 10];
+		int op = writeVarLong(result, 0, to - from);
+		long[] prev = new long[stride_];
+		for (int pos = from * stride_; pos < to * stride_; pos += stride_) {
+			for (int i = 0; i < stride_; i++) {
+				long value = data_[pos + i];
+				long delta = value - prev[i];
+				op = writeVarLong(result, op, (delta << 1) ^ (delta >> 63));
+				prev[i] = value;
+			}
+		}
+		return Arrays.copyOf(result, op);
+	}
+
+	/**
+	 * Appends the rows of a block written by {@link #encodeRows(int, int)}
+	 *
+	 * @return the number of rows
+	 * @throws IOException
+	 *             if the block is corrupt
+	 */
+	int decodeRows(final byte[] bytes) throws IOException {
+		int[] ip = new int[1];
+		try {
+			long rows = readVarLong(bytes, ip);
+			if (rows < 0 || rows > bytes.length)
+				throw new IOException("Corrupt coordinate block with " + rows + " rows in " + bytes.length + " bytes");
+			ensureCapacity(size_ + (int) rows);
+			int pos = size_ * stride_;
+			int end = pos + (int) rows * stride_;
+			long[] prev = new long[stride_];
+			while (pos < end) {
+				for (int i = 0; i < stride_; i++) {
+					long zigzag = readVarLong(bytes, ip);
+					prev[i] += (zigzag >>> 1) ^ -(zigzag & 1);
+					data_[pos++] = prev[i];
+				}
+			}
+			size_ += (int) rows;
+			return (int) rows;
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IOException("Corrupt coordinate block at offset " + ip[0]);
+		}
+	}
+
+	private static int writeVarLong(final byte[] dst, int op, long value) {
+		while ((value & ~0x7FL) != 0) {
+			dst[op++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		dst[op++] = (byte) value;
+		return op;
+	}
+
+	private static long readVarLong(final byte[] src, final int[] ip) {
+		long result = 0;
+		int shift = 0;
+		while (true) {
+			byte b = src[ip[0]++];
+			result |= (long) (b & 0x7F) << shift;
+			if (b >= 0)
+				return result;
+			shift += 7;
+		}
+	}
+
+	/**
+	 * Appends <code>rows</code> rows from the input
+	 */
+	void read(final ObjectInput in, final int rows) throws IOException {
+		ensureCapacity(size_ + rows);
+		int remaining = rows * stride_;
+		byte[] bytes = new byte[Math.min(remaining, IO_CHUNK) * 8];
+		LongBuffer longs = ByteBuffer.wrap(bytes).asLongBuffer();
+		int pos = size_ * stride_;
+		while (remaining > 0) {
+			int count = Math.min(remaining, IO_CHUNK);
+			in.readFully(bytes, 0, count * 8);
+			longs.clear();
+			longs.get(data_, pos, count);
+			pos += count;
+			remaining -= count;
+		}
+		size_ += rows;
+	}
+
+	/**
+	 * Writes all rows to the output
+	 */
+	void write(final ObjectOutput out) throws IOException {
+		int remaining = size_ * stride_;
+		byte[] bytes = new byte[Math.min(remaining, IO_CHUNK) * 8];
+		LongBuffer longs = ByteBuffer.wrap(bytes).asLongBuffer();
+		int pos = 0;
+		while (remaining > 0) {
+			int count = Math.min(remaining, IO_CHUNK);
+			longs.clear();
+			longs.put(data_, pos, count);
+			out.write(bytes, 0, count * 8);
+			pos += count;
+			remaining -= count;
+		}
+	}
+
+	byte[] toByteArray() {
+		byte[] result = new byte[size_ * stride_ * 8];
+		ByteBuffer.wrap(result).asLongBuffer().put(data_, 0, size_ * stride_);
+		return result;
+	}
+
+	/**
+	 * Appends the complete rows of the byte array
+	 */
+	void loadByteArray(final byte[] bytes) {
+		int rows = bytes.length / (stride_ * 8);
+		ensureCapacity(size_ + rows);
+		ByteBuffer.wrap(bytes).asLongBuffer().get(data_, size_ * stride_, rows * stride_);
+		size_ += rows;
+	}
+}
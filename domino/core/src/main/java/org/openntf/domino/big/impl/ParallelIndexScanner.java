@@ -0,0 +1,370 @@
+/**
+ *
+ */
+package org.openntf.domino.big.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openntf.domino.Database;
+import org.openntf.domino.DbDirectory;
+import org.openntf.domino.Document;
+import org.openntf.domino.DocumentCollection;
+import org.openntf.domino.Session;
+import org.openntf.domino.big.impl.IScannerStateManager.ScanStatus;
+import org.openntf.domino.helpers.DocumentScanner;
+import org.openntf.domino.helpers.DocumentSorter;
+import org.openntf.domino.session.ISessionFactory;
+import org.openntf.domino.thread.AbstractDominoCallable;
+import org.openntf.domino.thread.DominoExecutor;
+import org.openntf.domino.utils.Factory;
+import org.openntf.domino.utils.Factory.SessionType;
+
+/**
+ * Scans several databases in parallel for an {@link IndexDatabase}.
+ *
+ * Every database is scanned by a worker of a {@link DominoExecutor} with its own {@link DocumentScanner}, so the location maps are not
+ * shared between threads. After each batch of documents the worker hands its maps over to the thread that started the scan. This thread
+ * is the only one that writes to the index database: it merges the maps into the postings and records the last modification date of the
+ * batch as checkpoint (see {@link IndexDatabase#checkpoint(Object, Map, Map, Map, Date)}). A scan that is interrupted resumes from there.
+ *
+ * If a batch of a database cannot be saved, the later batches of the database are still saved, but the last index date is not moved any
+ * more, so the next scan repeats the documents of the failed batch. The failed databases are returned by {@link #scanDatabases(Collection)}.
+ *
+ * Observers are notified with a {@link Progress} after every batch.
+ *
+ * @author Roland Praml, Foconis AG
+ *
+ */
+public class ParallelIndexScanner extends Observable {
+	private static final Logger log_ = Logger.getLogger(ParallelIndexScanner.class.getName());
+
+	private final IndexDatabase index_;
+	private final int threads_;
+	private final BlockingQueue<ScanBatch> queue_;
+
+	private final Map<String, Date> scanDates_ = new HashMap<String, Date>();
+	private final Map<String, Long> docCounts_ = new HashMap<String, Long>();
+	/** the databases with a batch that could not be saved */
+	private final Set<String> failedDbids_ = new LinkedHashSet<String>();
+	private int dbCount_;
+	private int dbsDone_;
+	private long totalDocCount_;
+
+	/**
+	 * The locations of one batch of documents of one database
+	 */
+	protected static class ScanBatch {
+		final String dbid;
+		final ScanStatus status;
+		final Map<CharSequence, Map<CharSequence, Set<CharSequence>>> tokens;
+		final Map<CharSequence, Map<CharSequence, Set<CharSequence>>> names;
+		final Map<CharSequence, Map<CharSequence, Set<CharSequence>>> values;
+		final Date lastDocModDate;
+		final long docCount;
+
+		ScanBatch(final String dbid, final ScanStatus status, final DocumentScanner scanner) {
+			this.dbid = dbid;
+			this.status = status;
+			tokens = scanner.isTrackTokenLocation() ? scanner.takeTokenLocationMap() : null;
+			names = scanner.isTrackNameLocation() ? scanner.takeNameLocationMap() : null;
+			values = scanner.isTrackValueLocation() ? scanner.takeValueLocationMap() : null;
+			lastDocModDate = new Date(scanner.getLastDocModDate().getTime());
+			docCount = scanner.getDocCount();
+		}
+	}
+
+	/**
+	 * The state of the scan after a batch
+	 */
+	public static class Progress {
+		private final String dbid_;
+		private final ScanStatus status_;
+		private final long dbDocCount_;
+		private final long totalDocCount_;
+		private final int dbsDone_;
+		private final int dbCount_;
+		private final boolean failed_;
+
+		Progress(final String dbid, final ScanStatus status, final long dbDocCount, final long totalDocCount, final int dbsDone,
+				final int dbCount, final boolean failed) {
+			dbid_ = dbid;
+			status_ = status;
+			dbDocCount_ = dbDocCount;
+			totalDocCount_ = totalDocCount;
+			dbsDone_ = dbsDone;
+			dbCount_ = dbCount;
+			failed_ = failed;
+		}
+
+		/**
+		 * @return the replica id of the database of the last batch
+		 */
+		public String getDbid() {
+			return dbid_;
+		}
+
+		/**
+		 * @return {@link ScanStatus#RUNNING}, or the final status of the database
+		 */
+		public ScanStatus getStatus() {
+			return status_;
+		}
+
+		/**
+		 * @return the documents scanned in the database so far
+		 */
+		public long getDbDocCount() {
+			return dbDocCount_;
+		}
+
+		/**
+		 * @return the documents scanned in all databases so far
+		 */
+		public long getTotalDocCount() {
+			return totalDocCount_;
+		}
+
+		public int getDbsDone() {
+			return dbsDone_;
+		}
+
+		public int getDbCount() {
+			return dbCount_;
+		}
+
+		/**
+		 * @return true, if a batch of the database could not be saved. The database is scanned again by the next scan.
+		 */
+		public boolean isFailed() {
+			return failed_;
+		}
+
+		@Override
+		public String toString() {
+			return "Scanned " + dbDocCount_ + " documents in " + dbid_ + " (" + status_ + (failed_ ? ", failed" : "") + "), "
+					+ totalDocCount_ + " documents in " + dbsDone_ + "/" + dbCount_ + " databases";
+		}
+	}
+
+	/**
+	 * Scans one database in a worker thread. The database is opened in the session of the worker, only the results are passed back.
+	 */
+	protected static class DatabaseScanTask extends AbstractDominoCallable<Long> {
+		private static final long serialVersionUID = 1L;
+
+		private final String server_;
+		private final String filePath_;
+		private final String dbid_;
+		private final Date since_;
+		private final transient DocumentScanner scanner_;
+		private final transient BlockingQueue<ScanBatch> queue_;
+		private final transient ISessionFactory sessionFactory_;
+
+		protected DatabaseScanTask(final Database db, final Date since, final DocumentScanner scanner,
+				final BlockingQueue<ScanBatch> queue) {
+			server_ = db.getServer();
+			filePath_ = db.getFilePath();
+			dbid_ = db.getReplicaID();
+			since_ = since;
+			scanner_ = scanner;
+			queue_ = queue;
+			sessionFactory_ = Factory.getSessionFactory(SessionType.CURRENT);
+			scanner_.addObserver(new Observer() {
+				@Override
+				public void update(final Observable o, final Object arg) {
+					// same thresholds as IndexDatabase.update(): every handover is a write of the term documents
+					if (arg == ScanStatus.RUNNING
+							&& (scanner_.getTokenLocationMap().size() >= 1024 || scanner_.getNameLocationMap().size() >= 128)) {
+						handOver(ScanStatus.RUNNING);
+					}
+				}
+			});
+		}
+
+		@Override
+		public ISessionFactory getSessionFactory() {
+			return sessionFactory_;
+		}
+
+		@Override
+		public String getDescription() {
+			return "IndexScan " + server_ + "!!" + filePath_;
+		}
+
+		@Override
+		public Long call() throws Exception {
+			ScanStatus status = ScanStatus.ERROR;
+			try {
+				Session session = Factory.getSession(SessionType.CURRENT);
+				Database db = session.getDatabase(server_, filePath_);
+				if (db != null && db.getModifiedNoteCount(since_) > 0) {
+					DocumentCollection rawColl = db.getModifiedDocuments(since_);
+					scanner_.processSorter(new DocumentSorter(rawColl, IndexDatabase.MOD_SORT_LIST));
+				}
+				status = (shouldStop() || scanner_.getStatus() == ScanStatus.INTERRUPTED) ? ScanStatus.INTERRUPTED : ScanStatus.COMPLETE;
+			} catch (Throwable t) {
+				log_.log(Level.WARNING, "Unable to scan database " + server_ + "!!" + filePath_, t);
+			} finally {
+				handOver(status);
+			}
+			return scanner_.getDocCount();
+		}
+
+		/**
+		 * Passes the maps to the writing thread. This blocks while the writer is busy, so the workers cannot run away with the memory.
+		 */
+		protected void handOver(final ScanStatus status) {
+			ScanBatch batch = new ScanBatch(dbid_, status, scanner_);
+			boolean interrupted = false;
+			while (true) {
+				try {
+					queue_.put(batch);
+					break;
+				} catch (InterruptedException e) {
+					// the batch must not get lost, the scanner stops at the next document
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * @param index
+	 *            the index to write to
+	 * @param threads
+	 *            the number of databases that are scanned at the same time
+	 */
+	public ParallelIndexScanner(final IndexDatabase index, final int threads) {
+		index_ = index;
+		threads_ = threads < 1 ? 1 : threads;
+		queue_ = new ArrayBlockingQueue<ScanBatch>(threads_ * 2);
+	}
+
+	/**
+	 * Scans all databases of the server, except the index database itself
+	 *
+	 * @return the replica ids of the databases whose results could not be saved completely
+	 */
+	public Set<String> scanServer(final Session session, final String serverName) {
+		DbDirectory dir = session.getDbDirectory(serverName);
+		dir.setDirectoryType(DbDirectory.Type.DATABASE);
+		String indexId = index_.getIndexDb().getReplicaID();
+		List<Database> dbs = new ArrayList<Database>();
+		for (Database db : dir) {
+			if (!db.getReplicaID().equals(indexId)) {
+				dbs.add(db);
+			}
+		}
+		Set<String> result = scanDatabases(dbs);
+		log_.log(Level.FINE, "Completed scan of server " + serverName);
+		return result;
+	}
+
+	/**
+	 * Scans the databases. Returns when all databases are done or the index was stopped.
+	 *
+	 * @return the replica ids of the databases whose results could not be saved completely. Their last index date was not moved past the
+	 *         failed batch, so the next scan repeats it.
+	 */
+	public Set<String> scanDatabases(final Collection<Database> dbs) {
+		DominoExecutor executor = new DominoExecutor(threads_, "IndexScanner");
+		int open = 0;
+		for (Database db : dbs) {
+			executor.submit(createTask(db));
+			open++;
+		}
+		dbCount_ += open;
+		executor.shutdown();
+		boolean stopping = false;
+		boolean interrupted = false;
+		while (open > 0 && !(executor.isTerminated() && queue_.isEmpty())) {
+			if (!stopping && (interrupted || !index_.continue_)) {
+				log_.log(Level.FINE, "Escaping process early due to continue_ == false");
+				stopping = true;
+				// tasks that did not start yet never report back
+				open -= executor.shutdownNow().size();
+			}
+			ScanBatch batch = null;
+			try {
+				batch = queue_.poll(1, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+			if (batch != null && process(batch)) {
+				open--;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		if (!failedDbids_.isEmpty()) {
+			log_.log(Level.WARNING, "The scan results of " + failedDbids_ + " could not be saved completely, they will be scanned again");
+		}
+		return new LinkedHashSet<String>(failedDbids_);
+	}
+
+	protected DatabaseScanTask createTask(final Database db) {
+		String dbid = db.getReplicaID();
+		Document dbDoc = index_.getDbDocument(dbid);
+		dbDoc.replaceItemValue(org.openntf.domino.big.IndexDatabase.DB_TITLE_NAME, db.getTitle());
+		dbDoc.save();
+		scanDates_.put(dbid, new Date());
+		failedDbids_.remove(dbid);
+		Date since = index_.getLastIndexDate(dbid);
+		if (log_.isLoggable(Level.FINE)) {
+			log_.log(Level.FINE, "Scanning database " + db.getApiPath() + " with last date of " + since.getTime());
+		}
+		return new DatabaseScanTask(db, since, index_.createScanner(), queue_);
+	}
+
+	/**
+	 * Writes the batch to the index
+	 *
+	 * @return true, if this was the last batch of the database
+	 */
+	protected boolean process(final ScanBatch batch) {
+		boolean failed = failedDbids_.contains(batch.dbid);
+		try {
+			// after a failed batch the date stays before it, so the next scan repeats its documents
+			index_.checkpoint(batch.dbid, batch.tokens, batch.names, batch.values, failed ? null : batch.lastDocModDate);
+			if (batch.status == ScanStatus.COMPLETE && !failed) {
+				// like IndexDatabase.scanDatabase: the next scan starts with the documents modified after this scan started
+				index_.setLastIndexDate(batch.dbid, scanDates_.get(batch.dbid));
+			}
+		} catch (Throwable t) {
+			log_.log(Level.WARNING, "Unable to save the scan results of " + batch.dbid, t);
+			failedDbids_.add(batch.dbid);
+			failed = true;
+		}
+		Long prev = docCounts_.put(batch.dbid, batch.docCount);
+		totalDocCount_ += batch.docCount - (prev == null ? 0 : prev);
+		boolean last = batch.status != ScanStatus.RUNNING;
+		if (last) {
+			dbsDone_++;
+		}
+		Progress progress = new Progress(batch.dbid, batch.status, batch.docCount, totalDocCount_, dbsDone_, dbCount_, failed);
+		if (log_.isLoggable(Level.FINE)) {
+			log_.log(Level.FINE, progress.toString());
+		}
+		setChanged();
+		notifyObservers(progress);
+		return last;
+	}
+}
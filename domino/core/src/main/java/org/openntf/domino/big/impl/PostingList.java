@@ -0,0 +1,464 @@
+/**
+ *
+ */
+package org.openntf.domino.big.impl;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Arrays;
+
+/**
+ * An immutable, sorted set of document numbers (see {@link DocNumberMap}), as it is stored for every term, database and item in the
+ * index.
+ *
+ * Sparse lists are stored as blocks of {@value #BLOCK_SIZE} varint encoded deltas. For every block, the first number and the offset of the
+ * block are kept in a skip table, so that {@link Cursor#advance(int)} can jump over whole blocks. Dense lists (more than one number in 8)
+ * are stored as bitmap.
+ *
+ * @author Roland Praml, Foconis AG
+ *
+ */
+public class PostingList implements Externalizable {
+	private static final long serialVersionUID = 1L;
+
+	/** number of postings per block */
+	public static final int BLOCK_SIZE = 128;
+
+	/** returned by the cursor, if there are no more postings */
+	public static final int END = Integer.MAX_VALUE;
+
+	public static final PostingList EMPTY = new PostingList(new int[0], 0);
+
+	private static final byte FORMAT_BLOCKS = 1;
+	private static final byte FORMAT_BITMAP = 2;
+
+	private int size_;
+	private int last_ = -1;
+
+	// FORMAT_BLOCKS
+	private byte[] data_;
+	private int[] skipDocs_;
+	private int[] skipOffsets_;
+
+	// FORMAT_BITMAP
+	private long[] bitmap_;
+
+	/**
+	 * Collects numbers in any order
+	 */
+	public static class Builder {
+		private int[] docs_ = new int[16];
+		private int size_;
+
+		public Builder add(final int docNo) {
+			if (docNo < 0)
+				throw new IllegalArgumentException("Document number must not be negative: " + docNo);
+			if (size_ == docs_.length) {
+				docs_ = Arrays.copyOf(docs_, size_ * 2);
+			}
+			docs_[size_++] = docNo;
+			return this;
+		}
+
+		public Builder addAll(final PostingList list) {
+			Cursor c = list.cursor();
+			for (int doc = c.next(); doc != END; doc = c.next()) {
+				add(doc);
+			}
+			return this;
+		}
+
+		public int size() {
+			return size_;
+		}
+
+		public PostingList build() {
+			Arrays.sort(docs_, 0, size_);
+			int n = 0;
+			for (int i = 0; i < size_; i++) {
+				if (n == 0 || docs_[i] != docs_[n - 1]) {
+					docs_[n++] = docs_[i];
+				}
+			}
+			return new PostingList(docs_, n);
+		}
+	}
+
+	/**
+	 * Iterates over the postings in ascending order
+	 */
+	public class Cursor {
+		private int doc_ = -1;
+		private int block_ = -1;
+		private int inBlock_ = BLOCK_SIZE;
+		private int pos_;
+		private int count_;
+
+		/**
+		 * Returns the current number (-1 before the first call of next, {@link #END} after the last)
+		 */
+		public int doc() {
+			return doc_;
+		}
+
+		/**
+		 * Moves to the next number
+		 *
+		 * @return the number or {@link #END}
+		 */
+		public int next() {
+			if (doc_ == END)
+				return END;
+			if (count_ >= size_)
+				return doc_ = END;
+			count_++;
+			if (bitmap_ != null) {
+				return doc_ = nextSetBit(doc_ + 1);
+			}
+			if (inBlock_ == BLOCK_SIZE) {
+				block_++;
+				inBlock_ = 1;
+				pos_ = skipOffsets_[block_];
+				return doc_ = skipDocs_[block_];
+			}
+			inBlock_++;
+			return doc_ = doc_ + readVarint();
+		}
+
+		/**
+		 * Moves to the first number that is &gt;= target. Blocks that end before target are skipped without decoding.
+		 *
+		 * @return the number or {@link #END}
+		 */
+		public int advance(final int target) {
+			if (doc_ >= target)
+				return doc_;
+			if (bitmap_ != null) {
+				int doc = target >= last_ + 1 ? -1 : nextSetBit(target);
+				if (doc < 0) {
+					count_ = size_;
+					return doc_ = END;
+				}
+				count_ += rank(doc_ + 1, doc + 1);
+				return doc_ = doc;
+			}
+			// skip whole blocks: find the last block that starts <= target
+			int b = block_ < 0 ? 0 : block_;
+			if (b + 1 < skipDocs_.length && skipDocs_[b + 1] <= target) {
+				int lo = b + 1;
+				int hi = skipDocs_.length - 1;
+				while (lo < hi) {
+					int mid = (lo + hi + 1) >>> 1;
+					if (skipDocs_[mid] <= target) {
+						lo = mid;
+					} else {
+						hi = mid - 1;
+					}
+				}
+				block_ = lo - 1;
+				inBlock_ = BLOCK_SIZE;
+				count_ = lo * BLOCK_SIZE;
+			}
+			int doc;
+			do {
+				doc = next();
+			} while (doc < target);
+			return doc;
+		}
+
+		private int readVarint() {
+			int ret = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = data_[pos_++];
+				ret |= (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			return ret;
+		}
+	}
+
+	public PostingList() {
+		// for Externalizable
+	}
+
+	/**
+	 * Creates a posting list from sorted, distinct numbers
+	 */
+	private PostingList(final int[] docs, final int size) {
+		size_ = size;
+		if (size == 0) {
+			data_ = new byte[0];
+			skipDocs_ = new int[0];
+			skipOffsets_ = new int[0];
+			return;
+		}
+		last_ = docs[size - 1];
+		if ((long) size * 8 > last_) {
+			bitmap_ = new long[(last_ >> 6) + 1];
+			for (int i = 0; i < size; i++) {
+				bitmap_[docs[i] >> 6] |= 1L << docs[i];
+			}
+			return;
+		}
+		int blocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		skipDocs_ = new int[blocks];
+		skipOffsets_ = new int[blocks];
+		byte[] buf = new byte[size * 2 + 16];
+		int pos = 0;
+		for (int i = 0; i < size; i++) {
+			if (i % BLOCK_SIZE == 0) {
+				skipDocs_[i / BLOCK_SIZE] = docs[i];
+				skipOffsets_[i / BLOCK_SIZE] = pos;
+			} else {
+				if (pos + 5 > buf.length) {
+					buf = Arrays.copyOf(buf, buf.length * 2);
+				}
+				int delta = docs[i] - docs[i - 1];
+				while ((delta & ~0x7F) != 0) {
+					buf[pos++] = (byte) ((delta & 0x7F) | 0x80);
+					delta >>>= 7;
+				}
+				buf[pos++] = (byte) delta;
+			}
+		}
+		data_ = Arrays.copyOf(buf, pos);
+	}
+
+	/**
+	 * Creates a posting list from numbers in any order
+	 */
+	public static PostingList of(final int... docs) {
+		Builder b = new Builder();
+		for (int doc : docs) {
+			b.add(doc);
+		}
+		return b.build();
+	}
+
+	public int size() {
+		return size_;
+	}
+
+	public boolean isEmpty() {
+		return size_ == 0;
+	}
+
+	/**
+	 * Returns the highest number, -1 if empty
+	 */
+	public int getLast() {
+		return last_;
+	}
+
+	/**
+	 * Returns the (approximate) size of the encoded list in bytes
+	 */
+	public int getByteSize() {
+		if (bitmap_ != null)
+			return bitmap_.length * 8;
+		return data_.length + skipDocs_.length * 8;
+	}
+
+	public boolean isBitmap() {
+		return bitmap_ != null;
+	}
+
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	public boolean contains(final int docNo) {
+		if (docNo < 0 || docNo > last_)
+			return false;
+		if (bitmap_ != null)
+			return (bitmap_[docNo >> 6] & (1L << docNo)) != 0;
+		return cursor().advance(docNo) == docNo;
+	}
+
+	public int[] toArray() {
+		int[] ret = new int[size_];
+		Cursor c = cursor();
+		for (int i = 0; i < size_; i++) {
+			ret[i] = c.next();
+		}
+		return ret;
+	}
+
+	/**
+	 * Returns the numbers that are in both lists. The smaller list drives the intersection and skips through the larger one.
+	 */
+	public PostingList and(final PostingList other) {
+		if (isEmpty() || other.isEmpty())
+			return EMPTY;
+		PostingList small = size_ <= other.size_ ? this : other;
+		PostingList large = small == this ? other : this;
+		int[] ret = new int[small.size_];
+		int n = 0;
+		Cursor cs = small.cursor();
+		Cursor cl = large.cursor();
+		for (int doc = cs.next(); doc != END; doc = cs.next()) {
+			int found = cl.advance(doc);
+			if (found == END)
+				break;
+			if (found == doc) {
+				ret[n++] = doc;
+			}
+		}
+		return new PostingList(ret, n);
+	}
+
+	/**
+	 * Returns the numbers that are in any of the lists
+	 */
+	public PostingList or(final PostingList other) {
+		if (other.isEmpty())
+			return this;
+		if (isEmpty())
+			return other;
+		int[] ret = new int[size_ + other.size_];
+		int n = 0;
+		Cursor a = cursor();
+		Cursor b = other.cursor();
+		int da = a.next();
+		int db = b.next();
+		while (da != END || db != END) {
+			if (da < db) {
+				ret[n++] = da;
+				da = a.next();
+			} else if (db < da) {
+				ret[n++] = db;
+				db = b.next();
+			} else {
+				ret[n++] = da;
+				da = a.next();
+				db = b.next();
+			}
+		}
+		return new PostingList(ret, n);
+	}
+
+	/**
+	 * Returns the numbers of this list, that are not in the other list
+	 */
+	public PostingList andNot(final PostingList other) {
+		if (isEmpty() || other.isEmpty())
+			return this;
+		int[] ret = new int[size_];
+		int n = 0;
+		Cursor a = cursor();
+		Cursor b = other.cursor();
+		for (int doc = a.next(); doc != END; doc = a.next()) {
+			if (b.advance(doc) != doc) {
+				ret[n++] = doc;
+			}
+		}
+		return n == size_ ? this : new PostingList(ret, n);
+	}
+
+	private int nextSetBit(final int from) {
+		int i = from >> 6;
+		if (i >= bitmap_.length)
+			return -1;
+		long word = bitmap_[i] & (-1L << from);
+		while (true) {
+			if (word != 0)
+				return (i << 6) + Long.numberOfTrailingZeros(word);
+			if (++i == bitmap_.length)
+				return -1;
+			word = bitmap_[i];
+		}
+	}
+
+	/** counts the set bits in [from, to) */
+	private int rank(final int from, final int to) {
+		int ret = 0;
+		int i = from >> 6;
+		int end = to >> 6;
+		long word = bitmap_[i] & (-1L << from);
+		while (i < end) {
+			ret += Long.bitCount(word);
+			word = ++i < bitmap_.length ? bitmap_[i] : 0;
+		}
+		if ((to & 63) != 0) {
+			ret += Long.bitCount(word & ((1L << to) - 1));
+		}
+		return ret;
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof PostingList))
+			return false;
+		PostingList other = (PostingList) obj;
+		return size_ == other.size_ && Arrays.equals(toArray(), other.toArray());
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(toArray());
+	}
+
+	@Override
+	public String toString() {
+		return "PostingList[" + size_ + (isBitmap() ? " bitmap, " : " blocks, ") + getByteSize() + " bytes]";
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.Externalizable#writeExternal(java.io.ObjectOutput)
+	 */
+	@Override
+	public void writeExternal(final ObjectOutput out) throws IOException {
+		out.writeInt(size_);
+		out.writeInt(last_);
+		if (bitmap_ != null) {
+			out.writeByte(FORMAT_BITMAP);
+			out.writeInt(bitmap_.length);
+			for (long word : bitmap_) {
+				out.writeLong(word);
+			}
+		} else {
+			out.writeByte(FORMAT_BLOCKS);
+			out.writeInt(skipDocs_.length);
+			for (int i = 0; i < skipDocs_.length; i++) {
+				out.writeInt(skipDocs_[i]);
+				out.writeInt(skipOffsets_[i]);
+			}
+			out.writeInt(data_.length);
+			out.write(data_);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.Externalizable#readExternal(java.io.ObjectInput)
+	 */
+	@Override
+	public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
+		size_ = in.readInt();
+		last_ = in.readInt();
+		byte format = in.readByte();
+		if (format == FORMAT_BITMAP) {
+			bitmap_ = new long[in.readInt()];
+			for (int i = 0; i < bitmap_.length; i++) {
+				bitmap_[i] = in.readLong();
+			}
+		} else if (format == FORMAT_BLOCKS) {
+			int blocks = in.readInt();
+			skipDocs_ = new int[blocks];
+			skipOffsets_ = new int[blocks];
+			for (int i = 0; i < blocks; i++) {
+				skipDocs_[i] = in.readInt();
+				skipOffsets_[i] = in.readInt();
+			}
+			data_ = new byte[in.readInt()];
+			in.readFully(data_);
+		} else {
+			throw new IOException("Unknown posting list format " + format);
+		}
+	}
+}
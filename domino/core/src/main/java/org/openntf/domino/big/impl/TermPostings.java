@@ -0,0 +1,167 @@
+/**
+ *
+ */
+package org.openntf.domino.big.impl;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.openntf.domino.types.CaseInsensitiveString;
+
+/**
+ * The postings of one term in one database: For every item name, the numbers of the documents that contain the term in this item. This
+ * replaces the Map&lt;ItemName, Set&lt;Address&gt;&gt; that was stored in the term documents before.
+ *
+ * @author Roland Praml, Foconis AG
+ *
+ */
+public class TermPostings implements Externalizable {
+	private static final long serialVersionUID = 1L;
+
+	private Map<CharSequence, PostingList> items_ = new LinkedHashMap<CharSequence, PostingList>();
+
+	private transient PostingList union_;
+
+	public TermPostings() {
+	}
+
+	/**
+	 * Converts a location map (item name -&gt; addresses), as it is built by the DocumentScanner
+	 */
+	public static TermPostings fromLocationMap(final Map<?, ?> map, final DocNumberMap docNumbers) {
+		TermPostings ret = new TermPostings();
+		for (Map.Entry<?, ?> e : map.entrySet()) {
+			Object val = e.getValue();
+			PostingList.Builder b = new PostingList.Builder();
+			if (val instanceof Collection) {
+				for (Object address : (Collection<?>) val) {
+					b.add(docNumbers.getDocNumber(address.toString()));
+				}
+			} else if (val != null) {
+				b.add(docNumbers.getDocNumber(val.toString()));
+			}
+			ret.put(e.getKey().toString(), b.build());
+		}
+		return ret;
+	}
+
+	/**
+	 * Converts the postings back to a location map (item name -&gt; addresses)
+	 */
+	public Map<CharSequence, Set<CharSequence>> toLocationMap(final DocNumberMap docNumbers) {
+		Map<CharSequence, Set<CharSequence>> ret = new LinkedHashMap<CharSequence, Set<CharSequence>>();
+		for (Map.Entry<CharSequence, PostingList> e : items_.entrySet()) {
+			Set<CharSequence> addresses = new HashSet<CharSequence>();
+			PostingList.Cursor c = e.getValue().cursor();
+			for (int doc = c.next(); doc != PostingList.END; doc = c.next()) {
+				addresses.add(docNumbers.getAddress(doc));
+			}
+			ret.put(e.getKey(), addresses);
+		}
+		return ret;
+	}
+
+	public Set<CharSequence> getItemNames() {
+		return items_.keySet();
+	}
+
+	/**
+	 * Returns the postings of the item, null if the term does not occur in this item
+	 */
+	public PostingList get(final CharSequence itemName) {
+		return items_.get(itemName instanceof CaseInsensitiveString ? itemName : new CaseInsensitiveString(itemName));
+	}
+
+	public void put(final CharSequence itemName, final PostingList postings) {
+		items_.put(itemName instanceof CaseInsensitiveString ? itemName : new CaseInsensitiveString(itemName), postings);
+		union_ = null;
+	}
+
+	public void remove(final CharSequence itemName) {
+		items_.remove(itemName instanceof CaseInsensitiveString ? itemName : new CaseInsensitiveString(itemName));
+		union_ = null;
+	}
+
+	/**
+	 * Adds the postings of the other map (e.g. new documents from a scan)
+	 */
+	public void merge(final TermPostings other) {
+		for (Map.Entry<CharSequence, PostingList> e : other.items_.entrySet()) {
+			PostingList old = items_.get(e.getKey());
+			put(e.getKey(), old == null ? e.getValue() : old.or(e.getValue()));
+		}
+	}
+
+	/**
+	 * Returns the documents that contain the term in any of the given items (all items, if itemNames is null or empty)
+	 */
+	public PostingList getDocs(final Collection<? extends CharSequence> itemNames) {
+		if (itemNames == null || itemNames.isEmpty()) {
+			if (union_ == null) {
+				PostingList ret = PostingList.EMPTY;
+				for (PostingList list : items_.values()) {
+					ret = ret.or(list);
+				}
+				union_ = ret;
+			}
+			return union_;
+		}
+		PostingList ret = PostingList.EMPTY;
+		for (CharSequence itemName : itemNames) {
+			PostingList list = get(itemName);
+			if (list != null) {
+				ret = ret.or(list);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Returns the number of postings over all items
+	 */
+	public int getHitCount() {
+		int ret = 0;
+		for (PostingList list : items_.values()) {
+			ret += list.size();
+		}
+		return ret;
+	}
+
+	public boolean isEmpty() {
+		return items_.isEmpty();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.Externalizable#writeExternal(java.io.ObjectOutput)
+	 */
+	@Override
+	public void writeExternal(final ObjectOutput out) throws IOException {
+		out.writeInt(items_.size());
+		for (Map.Entry<CharSequence, PostingList> e : items_.entrySet()) {
+			out.writeUTF(e.getKey().toString());
+			e.getValue().writeExternal(out);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.Externalizable#readExternal(java.io.ObjectInput)
+	 */
+	@Override
+	public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
+		int count = in.readInt();
+		items_ = new LinkedHashMap<CharSequence, PostingList>();
+		for (int i = 0; i < count; i++) {
+			CaseInsensitiveString itemName = new CaseInsensitiveString(in.readUTF());
+			PostingList list = new PostingList();
+			list.readExternal(in);
+			items_.put(itemName, list);
+		}
+	}
+}
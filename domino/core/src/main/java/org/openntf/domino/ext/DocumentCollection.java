@@ -7,6 +7,7 @@ import java.util.Collection;
 import java.util.Map;
 
 import org.openntf.domino.View;
+import org.openntf.domino.types.NoteIdBitmap;
 
 /**
  * @author withersp
@@ -89,4 +90,40 @@ public interface DocumentCollection {
 	 * @since org.openntf.domino 3.0.0
 	 */
 	public org.openntf.domino.DocumentCollection filter(final Map<String, Object> filterMap);
+
+	/**
+	 * Gets the note IDs of the DocumentCollection as compressed bitmap, e.g. for set operations with other collections or to store them in
+	 * a Document
+	 * 
+	 * @return NoteIdBitmap of the note IDs
+	 * @since org.openntf.domino 5.0.0
+	 */
+	public NoteIdBitmap getNoteIdBitmap();
+
+	/**
+	 * Removes all Documents from the DocumentCollection whose note IDs are not in the bitmap
+	 * 
+	 * @param noteIds
+	 *            NoteIdBitmap of the note IDs to keep
+	 * @since org.openntf.domino 5.0.0
+	 */
+	public void intersect(final NoteIdBitmap noteIds);
+
+	/**
+	 * Adds the Documents with the note IDs in the bitmap to the DocumentCollection
+	 * 
+	 * @param noteIds
+	 *            NoteIdBitmap of the note IDs to add
+	 * @since org.openntf.domino 5.0.0
+	 */
+	public void merge(final NoteIdBitmap noteIds);
+
+	/**
+	 * Removes the Documents with the note IDs in the bitmap from the DocumentCollection
+	 * 
+	 * @param noteIds
+	 *            NoteIdBitmap of the note IDs to remove
+	 * @since org.openntf.domino 5.0.0
+	 */
+	public void subtract(final NoteIdBitmap noteIds);
 }
@@ -6,6 +6,7 @@ package org.openntf.domino.ext;
 import java.util.Set;
 
 import org.openntf.domino.NoteCollection.SelectOption;
+import org.openntf.domino.types.NoteIdBitmap;
 
 /**
  * @author withersp
@@ -44,4 +45,40 @@ public interface NoteCollection {
 	 * @since org.openntf.domino 3.0.0
 	 */
 	public void setSinceTime(final java.util.Date since);
+
+	/**
+	 * Gets the note IDs of the collection as compressed bitmap, e.g. for set operations with other collections or to store them in a
+	 * Document
+	 * 
+	 * @return NoteIdBitmap of the note IDs
+	 * @since org.openntf.domino 5.0.0
+	 */
+	public NoteIdBitmap getNoteIdBitmap();
+
+	/**
+	 * Adds the notes with the note IDs in the bitmap to the collection
+	 * 
+	 * @param noteIds
+	 *            NoteIdBitmap of the note IDs to add
+	 * @since org.openntf.domino 5.0.0
+	 */
+	public void add(final NoteIdBitmap noteIds);
+
+	/**
+	 * Removes all notes from the collection whose note IDs are not in the bitmap
+	 * 
+	 * @param noteIds
+	 *            NoteIdBitmap of the note IDs to keep
+	 * @since org.openntf.domino 5.0.0
+	 */
+	public void intersect(final NoteIdBitmap noteIds);
+
+	/**
+	 * Removes the notes with the note IDs in the bitmap from the collection
+	 * 
+	 * @param noteIds
+	 *            NoteIdBitmap of the note IDs to remove
+	 * @since org.openntf.domino 5.0.0
+	 */
+	public void remove(final NoteIdBitmap noteIds);
 }
@@ -47,4 +47,15 @@ public interface DConfiguration extends Externalizable {
 
 	public void setDefaultProxyStore(DElementStore store);
 
+	/**
+	 * The maximum weight (the estimated memory in bytes) of the element cache of a store: the size set for the store, or an equal share
+	 * of the budget that is left by the stores with a size
+	 */
+	public long getElementCacheSize(Long storeKey);
+
+	/**
+	 * The time in milliseconds after which a cached element is read again
+	 */
+	public long getElementCacheExpiry();
+
 }
@@ -13,4 +13,12 @@ public interface DElementIterable {
 	public Iterator<? extends Element> iterator();
 
 	public ListIterator<? extends Element> listIterator();
+
+	/**
+	 * Sets the number of elements that the iterators load into the element cache at once, when they reach an element that was not
+	 * loaded yet. 0 loads every element on its own.
+	 */
+	public void setLookAhead(int lookAhead);
+
+	public int getLookAhead();
 }
@@ -5,6 +5,7 @@ import java.io.Serializable;
 import java.util.List;
 import java.util.Map;
 
+import com.google.common.cache.CacheStats;
 import com.tinkerpop.blueprints.Edge;
 import com.tinkerpop.blueprints.Element;
 import com.tinkerpop.blueprints.Vertex;
@@ -108,6 +109,35 @@ public interface DElementStore extends Externalizable {
 
 	public void flushCache();
 
+	/**
+	 * Returns the hits, misses, load times and evictions of the element cache
+	 */
+	public CacheStats getElementCacheStats();
+
 	public CustomProxyResolver getCustomProxyResolver();
 
+	/**
+	 * Registers an in-memory index of a property. {@link #getVertices(String, Object)} and {@link #getEdges(String, Object)} use it
+	 * instead of a formula search.
+	 *
+	 * @param key
+	 *            the name of the property
+	 * @param kind
+	 *            Vertex.class or Edge.class
+	 */
+	public void addPropertyIndex(String key, Class<? extends Element> kind);
+
+	/**
+	 * Applies changed properties of an element to the property indexes
+	 *
+	 * @param changes
+	 *            the new values of the changed properties, null for removed properties
+	 */
+	public void updatePropertyIndexes(Element element, Map<String, Object> changes);
+
+	/**
+	 * Writes the changed property indexes to the store, so they do not have to be built again
+	 */
+	public void savePropertyIndexes();
+
 }
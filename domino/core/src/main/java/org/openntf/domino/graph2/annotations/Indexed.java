@@ -0,0 +1,23 @@
+package org.openntf.domino.graph2.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Indexed annotates the getter of a {@link TypedProperty} whose values should be kept in an in-memory index of the element store. Lookups
+ * with <code>getVertices(key, value)</code> or <code>getEdges(key, value)</code> on that property then read the index instead of running a
+ * formula search over the store database.
+ *
+ * The index is registered when the frame type is added to the element store.
+ *
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Indexed {
+	/**
+	 * The name of the property. If it is empty, the value of the {@link TypedProperty} annotation of the getter is used.
+	 */
+	public String value() default "";
+}
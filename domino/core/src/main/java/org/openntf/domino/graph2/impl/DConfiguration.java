@@ -8,9 +8,12 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import org.openntf.domino.Document;
@@ -770,6 +773,12 @@ public class DConfiguration extends FramedGraphConfiguration implements org.open
 
 	}
 
+	/** the default memory budget of the element caches of all stores */
+	public static final long DEFAULT_ELEMENT_CACHE_BUDGET = 64L * 1024 * 1024;
+	/** the smallest element cache of a store */
+	public static final long MIN_ELEMENT_CACHE_SIZE = 1024L * 1024;
+	public static final long DEFAULT_ELEMENT_CACHE_EXPIRY = TimeUnit.MINUTES.toMillis(10);
+
 	private Long defaultElementStoreKey_ = null;
 	private DElementStore defaultElementStore_;
 	private Long defaultProxyStoreKey_ = null;
@@ -779,6 +788,9 @@ public class DConfiguration extends FramedGraphConfiguration implements org.open
 	private transient DGraph graph_;
 	private transient Module module_;
 	private DTypedGraphModuleBuilder builder_;
+	private long elementCacheBudget_ = DEFAULT_ELEMENT_CACHE_BUDGET;
+	private long elementCacheExpiry_ = DEFAULT_ELEMENT_CACHE_EXPIRY;
+	private Map<Long, Long> elementCacheSizes_;
 
 	//	private DTypeRegistry typeRegistry_;
 	//	private DTypeManager typeManager_;
@@ -842,6 +854,72 @@ public class DConfiguration extends FramedGraphConfiguration implements org.open
 		return defaultProxyStore_;
 	}
 
+	/**
+	 * Sets the memory budget of the element caches of all stores. The caches are sized when they are created, so a change takes effect
+	 * when the cache of a store is flushed. If stores are added, the other stores keep their caches and weigh the elements they load
+	 * heavier, so they hold their smaller share.
+	 *
+	 * @param bytes
+	 *            the estimated memory in bytes, see {@link org.openntf.domino.graph2.impl.DElementStore.ElementWeigher}
+	 */
+	public void setElementCacheBudget(final long bytes) {
+		elementCacheBudget_ = bytes;
+	}
+
+	public long getElementCacheBudget() {
+		return elementCacheBudget_;
+	}
+
+	/**
+	 * Sets the size of the element cache of a store, for stores with large elements or many requests. The size is taken from the
+	 * budget, the other stores share the rest.
+	 *
+	 * @param bytes
+	 *            the estimated memory in bytes, 0 to use a share of the budget
+	 */
+	public void setElementCacheSize(final Long storeKey, final long bytes) {
+		if (elementCacheSizes_ == null) {
+			elementCacheSizes_ = new HashMap<Long, Long>();
+		}
+		if (bytes > 0) {
+			elementCacheSizes_.put(storeKey, bytes);
+		} else {
+			elementCacheSizes_.remove(storeKey);
+		}
+	}
+
+	@Override
+	public long getElementCacheSize(final Long storeKey) {
+		if (elementCacheSizes_ != null) {
+			Long size = elementCacheSizes_.get(storeKey);
+			if (size != null)
+				return size;
+		}
+		long reserved = 0;
+		if (elementCacheSizes_ != null) {
+			for (Long size : elementCacheSizes_.values()) {
+				reserved += size;
+			}
+		}
+		// a proxied store is registered under two keys
+		Set<DElementStore> shared = Collections.newSetFromMap(new IdentityHashMap<DElementStore, Boolean>());
+		for (DElementStore store : getElementStores().values()) {
+			if (elementCacheSizes_ == null || !elementCacheSizes_.containsKey(store.getStoreKey())) {
+				shared.add(store);
+			}
+		}
+		return Math.max(MIN_ELEMENT_CACHE_SIZE, (elementCacheBudget_ - reserved) / Math.max(1, shared.size()));
+	}
+
+	public void setElementCacheExpiry(final long millis) {
+		elementCacheExpiry_ = millis;
+	}
+
+	@Override
+	public long getElementCacheExpiry() {
+		return elementCacheExpiry_;
+	}
+
 	@Override
 	public Map<Long, DElementStore> getElementStores() {
 		if (elementStoreMap_ == null) {
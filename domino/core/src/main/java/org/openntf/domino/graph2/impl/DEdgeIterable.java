@@ -88,6 +88,16 @@ public class DEdgeIterable implements org.openntf.domino.graph2.DEdgeIterable {
 		delegate_ = delegate;
 	}
 
+	@Override
+	public void setLookAhead(final int lookAhead) {
+		delegate_.setLookAhead(lookAhead);
+	}
+
+	@Override
+	public int getLookAhead() {
+		return delegate_.getLookAhead();
+	}
+
 	@Override
 	public Iterator<Edge> iterator() {
 		return new DEdgeIterator(delegate_.listIterator());
@@ -4,6 +4,7 @@ import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
@@ -19,6 +20,7 @@ import org.openntf.domino.RichTextItem;
 import org.openntf.domino.Session;
 import org.openntf.domino.View;
 import org.openntf.domino.ViewEntry;
+import org.openntf.domino.big.impl.ChunkedNoteList;
 import org.openntf.domino.big.impl.NoteCoordinate;
 //import javolution.util.FastMap;
 //import javolution.util.FastSet;
@@ -542,6 +544,7 @@ public abstract class DElement implements org.openntf.domino.graph2.DElement, Se
 			throw new IllegalStateException("Get delegate returned null for id " + getId() + " so we cannot apply changes to it.");
 		}
 		boolean saveNeeded = false;
+		Map<String, Object> indexChanges = new HashMap<String, Object>();
 		Set<String> changes = getChangedPropertiesInt();
 		if (!props.isEmpty() && !changes.isEmpty()) {
 			saveNeeded = true;
@@ -553,10 +556,12 @@ public abstract class DElement implements org.openntf.domino.graph2.DElement, Se
 				if (s != null && v != null) {
 					if (s.startsWith(DVertex.IN_PREFIX) || s.startsWith(DVertex.OUT_PREFIX)) {
 						if (delegate instanceof Document) {
-							if (v instanceof NoteList) {
+							if (v instanceof ChunkedNoteList) {
+								// only the chunks that changed are written
+								((ChunkedNoteList) v).write((Document) delegate, s);
+							} else if (v instanceof NoteList) {
 								byte[] bytes = ((NoteList) v).toByteArray();
 								((Document) delegate).writeBinary(s, bytes, 2048 * 24);
-								//FIXME NTF .writeBinary needs to clear any extra items added to the document if the binary content shrank
 								//							System.out.println("TEMP DEBUG: Writing a NoteList (" + ((NoteList) v).size() + ") of size " + bytes.length
 								//									+ " to a Document in " + s);
 							} else {
@@ -575,6 +580,7 @@ public abstract class DElement implements org.openntf.domino.graph2.DElement, Se
 					} else {
 						try {
 							delegate.put(s, v);
+							indexChanges.put(s, v);
 						} catch (Throwable t) {
 							System.err.println("ALERT Failed to write a property of " + s + " to element id " + getId() + " due to a "
 									+ t.getClass().getSimpleName());
@@ -589,6 +595,7 @@ public abstract class DElement implements org.openntf.domino.graph2.DElement, Se
 		}
 		for (String key : getRemovedPropertiesInt()) {
 			delegate.remove(key);
+			indexChanges.put(key, null);
 			saveNeeded = true;
 		}
 		getRemovedPropertiesInt().clear();
@@ -598,9 +605,15 @@ public abstract class DElement implements org.openntf.domino.graph2.DElement, Se
 				//			if (!doc.hasItem("form")) {
 				//				System.err.println("Graph element being saved without a form value.");
 				//			}
-				doc.save();
+				// in a commit of the graph the document is saved once, after all elements of the note were applied
+				if (!DGraph.deferSave(doc)) {
+					doc.save();
+				}
 			}
 		}
+		if (!indexChanges.isEmpty()) {
+			getStore().updatePropertyIndexes(this, indexChanges);
+		}
 	}
 
 	@Override
@@ -12,14 +12,30 @@ import com.tinkerpop.blueprints.Element;
 
 public class DElementIterable implements org.openntf.domino.graph2.DElementIterable, List<Element> {
 
+	/** the default number of elements that are loaded at once */
+	public static final int DEFAULT_LOOK_AHEAD = 100;
+
 	public static class DElementIterator implements org.openntf.domino.graph2.DElementIterable.DElementIterator {
 		protected final DElementStore elementStore_;
 		protected final List<NoteCoordinate> index_;
 		protected ListIterator<NoteCoordinate> iterator_;
+		protected final int lookAhead_;
+		/** the elements before this position were loaded */
+		protected int loadedTo_;
 
 		public DElementIterator(final DElementStore store, final List<NoteCoordinate> index) {
+			this(store, index, 0);
+		}
+
+		/**
+		 * @param lookAhead
+		 *            the number of elements that are loaded at once by {@link DElementStore#prefetchElements(Collection)}, 0 to load every
+		 *            element on its own
+		 */
+		public DElementIterator(final DElementStore store, final List<NoteCoordinate> index, final int lookAhead) {
 			elementStore_ = store;
 			index_ = index;
+			lookAhead_ = lookAhead;
 		}
 
 		private ListIterator<NoteCoordinate> getIterator() {
@@ -34,9 +50,23 @@ public class DElementIterable implements org.openntf.domino.graph2.DElementItera
 			return getIterator().hasNext();
 		}
 
+		/**
+		 * Loads the next page of elements if the element at the position was not loaded yet
+		 */
+		protected void prefetch(final int position) {
+			if (lookAhead_ > 0 && position >= loadedTo_) {
+				int to = Math.min(index_.size(), position + lookAhead_);
+				if (to > position) {
+					elementStore_.prefetchElements(index_.subList(position, to));
+				}
+				loadedTo_ = to;
+			}
+		}
+
 		@Override
 		public Element next() {
 			Element result = null;
+			prefetch(getIterator().nextIndex());
 			NoteCoordinate nc = getIterator().next();
 			if (nc != null) {
 				result = elementStore_.getElement(nc);
@@ -102,15 +132,26 @@ public class DElementIterable implements org.openntf.domino.graph2.DElementItera
 
 	protected final List<NoteCoordinate> index_;
 	protected final DElementStore store_;
+	protected int lookAhead_ = DEFAULT_LOOK_AHEAD;
 
 	public DElementIterable(final DElementStore store, final List<NoteCoordinate> index) {
 		store_ = store;
 		index_ = index;
 	}
 
+	@Override
+	public void setLookAhead(final int lookAhead) {
+		lookAhead_ = Math.max(0, lookAhead);
+	}
+
+	@Override
+	public int getLookAhead() {
+		return lookAhead_;
+	}
+
 	@Override
 	public Iterator<Element> iterator() {
-		return new DElementIterator(store_, index_);
+		return new DElementIterator(store_, index_, lookAhead_);
 	}
 
 	@Override
@@ -219,7 +260,7 @@ public class DElementIterable implements org.openntf.domino.graph2.DElementItera
 
 	@Override
 	public ListIterator<Element> listIterator() {
-		return new DElementIterator(store_, index_);
+		return new DElementIterator(store_, index_, lookAhead_);
 	}
 
 	@Override
@@ -292,7 +333,9 @@ public class DElementIterable implements org.openntf.domino.graph2.DElementItera
 	@Override
 	public List<Element> subList(final int fromIndex, final int toIndex) {
 		List<NoteCoordinate> subindex = index_.subList(fromIndex, toIndex);
-		return new DElementIterable(store_, subindex);
+		DElementIterable result = new DElementIterable(store_, subindex);
+		result.setLookAhead(lookAhead_);
+		return result;
 	}
 
 	@Override
@@ -300,6 +343,9 @@ public class DElementIterable implements org.openntf.domino.graph2.DElementItera
 		int size = index_.size();
 		Object[] result = new Object[size];
 		for (int i = 0; i < size; i++) {
+			if (lookAhead_ > 0 && i % lookAhead_ == 0) {
+				store_.prefetchElements(index_.subList(i, Math.min(size, i + lookAhead_)));
+			}
 			NoteCoordinate e = index_.get(i);
 			result[i] = store_.getElement(e);
 		}
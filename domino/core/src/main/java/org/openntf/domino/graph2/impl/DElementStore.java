@@ -4,12 +4,16 @@ import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.openntf.domino.Database;
@@ -23,17 +27,22 @@ import org.openntf.domino.exceptions.UnimplementedException;
 import org.openntf.domino.exceptions.UserAccessException;
 import org.openntf.domino.ext.Session.Fixes;
 import org.openntf.domino.graph2.DIdentityFactory;
+import org.openntf.domino.graph2.annotations.Indexed;
+import org.openntf.domino.graph2.annotations.TypedProperty;
 import org.openntf.domino.graph2.builtin.CategoryVertex;
 import org.openntf.domino.graph2.builtin.DbInfoVertex;
 import org.openntf.domino.graph2.builtin.ViewVertex;
 import org.openntf.domino.utils.DominoUtils;
+import org.openntf.domino.utils.Documents;
 import org.openntf.domino.utils.Factory;
 
 import com.google.common.base.Strings;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.CacheLoader.InvalidCacheLoadException;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
+import com.google.common.cache.Weigher;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.UncheckedExecutionException;
@@ -41,13 +50,73 @@ import com.tinkerpop.blueprints.Direction;
 import com.tinkerpop.blueprints.Edge;
 import com.tinkerpop.blueprints.Element;
 import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.frames.EdgeFrame;
+import com.tinkerpop.frames.Property;
 
 import javolution.util.FastTable;
 
 public class DElementStore implements org.openntf.domino.graph2.DElementStore {
-	@SuppressWarnings("unused")
 	private static final Logger log_ = Logger.getLogger(DElementStore.class.getName());
 
+	/** the key of the documents that hold the saved property indexes */
+	public static final String PROPERTY_INDEX_PREFIX = "$graph2index.";
+	public static final String PROPERTY_INDEX_ITEM = "$IndexData";
+	/** a property index is refreshed from the modified documents if it is older than this */
+	public static final long PROPERTY_INDEX_REFRESH = TimeUnit.SECONDS.toMillis(30);
+
+	/**
+	 * Estimates the memory of a cached element in bytes: a base size, the properties, and the coordinates of the edges. The weight is
+	 * taken when the element is put into the cache, before a vertex loads its edge lists, so the edges of a list that is not loaded are
+	 * charged with its stored count.
+	 *
+	 * The cache keeps the size it was created with. If the share of the store shrinks later, because stores were added, new elements
+	 * are weighed heavier by the same ratio, so the store holds less without rebuilding the cache.
+	 *
+	 * The weight of one element is limited to an eighth of the cache: Guava splits the cache into 4 segments, and an element that is
+	 * heavier than its segment would be evicted at once. A vertex with a very large edge list is still cached, as half a segment.
+	 */
+	public static class ElementWeigher implements Weigher<Object, Element> {
+		public static final int BASE_WEIGHT = 512;
+		public static final int PROPERTY_WEIGHT = 128;
+		/** a packed coordinate and its share of the edge list */
+		public static final int EDGE_WEIGHT = 32;
+
+		private final long cacheSize_;
+
+		public ElementWeigher(final long cacheSize) {
+			cacheSize_ = cacheSize;
+		}
+
+		/**
+		 * The size the cache should have now. By default the size it was created with.
+		 */
+		protected long getCurrentSize() {
+			return cacheSize_;
+		}
+
+		@Override
+		public int weigh(final Object key, final Element value) {
+			long result = BASE_WEIGHT;
+			if (value instanceof DElement) {
+				DElement elem = (DElement) value;
+				try {
+					result += (long) elem.getPropertyKeys().size() * PROPERTY_WEIGHT;
+					if (elem instanceof DVertex) {
+						result += (long) ((DVertex) elem).getEdgeCountEstimate() * EDGE_WEIGHT;
+					}
+				} catch (Throwable t) {
+					// the weight is an estimate, it must not fail the load
+					log_.log(Level.FINE, "Unable to weigh element " + key, t);
+				}
+			}
+			long currentSize = getCurrentSize();
+			if (currentSize > 0 && currentSize < cacheSize_) {
+				result = result * cacheSize_ / currentSize;
+			}
+			return (int) Math.min(Math.min(result, cacheSize_ / 8), Integer.MAX_VALUE);
+		}
+	}
+
 	public static class ElementStoreCacheLoader extends CacheLoader<Object, Element> {
 		protected DElementStore parent_;
 
@@ -260,19 +329,65 @@ public class DElementStore implements org.openntf.domino.graph2.DElementStore {
 	private CustomProxyResolver proxyResolver_;
 	private transient Map<Object, NoteCoordinate> keyMap_;
 	private transient Map<Object, Element> elementCache_OLD;
-	private transient LoadingCache<Object, Element> elementCache_;
+	private transient volatile LoadingCache<Object, Element> elementCache_;
+	private transient ElementStoreCacheLoader elementLoader_;
 	private transient org.openntf.domino.graph2.DConfiguration configuration_;
+	private transient volatile Map<String, DPropertyIndex> propertyIndexes_;
 
 	protected void setTypes(final List<Class<?>> types) {
 		types_ = types;
 	}
 
 	protected LoadingCache<Object, Element> getElementCache() {
-		if (elementCache_ == null) {
-			elementCache_ = CacheBuilder.newBuilder().maximumSize(25000).expireAfterWrite(10, TimeUnit.MINUTES)
-					.build(new ElementStoreCacheLoader(this));
+		LoadingCache<Object, Element> result = elementCache_;
+		if (result == null) {
+			synchronized (this) {
+				result = elementCache_;
+				if (result == null) {
+					result = createElementCache();
+					elementCache_ = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Creates the element cache with the size of {@link org.openntf.domino.graph2.DConfiguration#getElementCacheSize(Long)}. The budget
+	 * is shared by all stores: if stores are added later, the weigher charges new elements more, so the cache and its statistics are
+	 * kept.
+	 */
+	private LoadingCache<Object, Element> createElementCache() {
+		long size = DConfiguration.DEFAULT_ELEMENT_CACHE_BUDGET;
+		long expiry = DConfiguration.DEFAULT_ELEMENT_CACHE_EXPIRY;
+		ElementWeigher weigher;
+		if (configuration_ != null) {
+			final org.openntf.domino.graph2.DConfiguration config = configuration_;
+			size = config.getElementCacheSize(getStoreKey());
+			expiry = config.getElementCacheExpiry();
+			weigher = new ElementWeigher(size) {
+				@Override
+				protected long getCurrentSize() {
+					return config.getElementCacheSize(getStoreKey());
+				}
+			};
+		} else {
+			weigher = new ElementWeigher(size);
 		}
-		return elementCache_;
+		return CacheBuilder.newBuilder().maximumWeight(size).weigher(weigher).expireAfterWrite(expiry, TimeUnit.MILLISECONDS)
+				.recordStats().build(getElementLoader());
+	}
+
+	@Override
+	public CacheStats getElementCacheStats() {
+		return getElementCache().stats();
+	}
+
+	protected ElementStoreCacheLoader getElementLoader() {
+		if (elementLoader_ == null) {
+			elementLoader_ = new ElementStoreCacheLoader(this);
+		}
+		return elementLoader_;
 	}
 
 	//	protected Map<Object, Element> getElementCache_OLD() {
@@ -282,6 +397,20 @@ public class DElementStore implements org.openntf.domino.graph2.DElementStore {
 	//		return elementCache_;
 	//	}
 
+	protected Map<String, DPropertyIndex> getPropertyIndexMap() {
+		Map<String, DPropertyIndex> result = propertyIndexes_;
+		if (result == null) {
+			synchronized (this) {
+				result = propertyIndexes_;
+				if (result == null) {
+					result = new ConcurrentHashMap<String, DPropertyIndex>();
+					propertyIndexes_ = result;
+				}
+			}
+		}
+		return result;
+	}
+
 	protected Map<Object, NoteCoordinate> getKeyMap() {
 		if (keyMap_ == null) {
 			keyMap_ = new ConcurrentHashMap<Object, NoteCoordinate>();
@@ -323,6 +452,7 @@ public class DElementStore implements org.openntf.domino.graph2.DElementStore {
 			String className = in.readUTF();
 			Class<?> clazz = cl.loadClass(className);
 			types_.add(clazz);
+			addPropertyIndexes(clazz);
 		}
 	}
 
@@ -340,6 +470,7 @@ public class DElementStore implements org.openntf.domino.graph2.DElementStore {
 		List<Class<?>> types = getTypes();
 		if (!types.contains(type)) {
 			types.add(type);
+			addPropertyIndexes(type);
 		}
 		//		for (Class<?> subtype : type.getClasses()) {
 		//			if (subtype.isInterface()) {
@@ -348,6 +479,34 @@ public class DElementStore implements org.openntf.domino.graph2.DElementStore {
 		//		}
 	}
 
+	/**
+	 * Registers the property indexes declared with {@link Indexed} on the getters of the frame type
+	 */
+	protected void addPropertyIndexes(final Class<?> type) {
+		Class<? extends Element> kind = EdgeFrame.class.isAssignableFrom(type) ? Edge.class : Vertex.class;
+		for (Method method : type.getMethods()) {
+			Indexed indexed = method.getAnnotation(Indexed.class);
+			if (indexed != null) {
+				String key = indexed.value();
+				if (key.length() == 0) {
+					TypedProperty typed = method.getAnnotation(TypedProperty.class);
+					Property property = method.getAnnotation(Property.class);
+					if (typed != null) {
+						key = typed.value();
+					} else if (property != null) {
+						key = property.value();
+					}
+				}
+				if (key.length() == 0) {
+					log_.log(Level.WARNING, "Method " + method.getName() + " of " + type.getName()
+							+ " is annotated with @Indexed but the property name is unknown");
+				} else {
+					addPropertyIndex(key, kind);
+				}
+			}
+		}
+	}
+
 	@Override
 	public void removeType(final Class<?> type) {
 		List<Class<?>> types = getTypes();
@@ -652,6 +811,55 @@ public class DElementStore implements org.openntf.domino.graph2.DElementStore {
 		}
 	}
 
+	/**
+	 * Loads the elements of the ids into the element cache, so the following {@link #getElement(Object)} calls find them there.
+	 *
+	 * The ids that are not cached yet are grouped by database: every database is resolved once and its documents are opened one after the
+	 * other, without the key handling of {@link ElementStoreCacheLoader#load(Object)}. The API has no call that opens several notes at once
+	 * or reads only their summary, so this is the closest to a bulk read. Ids that need the special handling of the loader (view entries,
+	 * icon notes and proxied stores) are left to {@link #getElement(Object)}.
+	 *
+	 * @return the number of elements that were loaded
+	 */
+	public int prefetchElements(final Collection<?> ids) {
+		if (isProxied())
+			return 0;
+		LoadingCache<Object, Element> cache = getElementCache();
+		ElementStoreCacheLoader loader = getElementLoader();
+		Map<Object, List<NoteCoordinate>> groups = new LinkedHashMap<Object, List<NoteCoordinate>>();
+		for (Object id : ids) {
+			if (!(id instanceof NoteCoordinate) || id instanceof ViewEntryCoordinate || ((NoteCoordinate) id).isIcon())
+				continue;
+			if (cache.getIfPresent(id) != null)
+				continue;
+			Object del = loader.getStoreDelegate(id);
+			List<NoteCoordinate> group = groups.get(del);
+			if (group == null) {
+				group = new ArrayList<NoteCoordinate>();
+				groups.put(del, group);
+			}
+			group.add((NoteCoordinate) id);
+		}
+		int count = 0;
+		for (Map.Entry<Object, List<NoteCoordinate>> e : groups.entrySet()) {
+			if (!(e.getKey() instanceof Database))
+				continue;
+			Database db = (Database) e.getKey();
+			db.getAncestorSession().setFixEnable(Fixes.MIME_BLOCK_ITEM_INTERFACE, false);
+			for (NoteCoordinate nc : e.getValue()) {
+				Document doc = db.getDocumentByUNID(nc.getUNID());
+				if (doc != null) {
+					Element elem = loader.toElement(doc, nc, false);
+					// an element that was loaded in between is kept, it may already be in use
+					if (elem != null && cache.asMap().putIfAbsent(nc, elem) == null) {
+						count++;
+					}
+				}
+			}
+		}
+		return count;
+	}
+
 	/*public Element getElement_OLD(final Object id, final Class<? extends Element> type) throws IllegalStateException {
 			Element result = null;
 			Element chk = getCachedElement(id, Element.class);
@@ -1031,6 +1239,14 @@ public class DElementStore implements org.openntf.domino.graph2.DElementStore {
 
 	@Override
 	public void removeElementDelegate(final Element element) {
+		if (propertyIndexes_ != null) {
+			Object id = element.getId();
+			if (id instanceof NoteCoordinate) {
+				for (DPropertyIndex index : propertyIndexes_.values()) {
+					index.remove((NoteCoordinate) id);
+				}
+			}
+		}
 		if (element instanceof DElement) {
 			Object del = ((DElement) element).getDelegate();
 			if (del instanceof Document) {
@@ -1138,22 +1354,138 @@ public class DElementStore implements org.openntf.domino.graph2.DElementStore {
 
 	@Override
 	public DVertexIterable getVertices(final String key, final Object value) {
+		DPropertyIndex index = getPropertyIndex(key, Vertex.class);
+		if (index != null) {
+			return new DVertexIterable(this, index.get(value));
+		}
 		String formulaFilter = org.openntf.domino.graph2.DGraph.Utils.getVertexFormula(key, value);
 		return getVertices(formulaFilter);
 	}
 
 	@Override
 	public DEdgeIterable getEdges(final String key, final Object value) {
+		DPropertyIndex index = getPropertyIndex(key, Edge.class);
+		if (index != null) {
+			return new DEdgeIterable(this, index.get(value));
+		}
 		String formulaFilter = org.openntf.domino.graph2.DGraph.Utils.getEdgeFormula(key, value);
 		return getEdges(formulaFilter);
 	}
 
 	@Override
 	public DElementIterable getElements(final String key, final Object value) {
+		DPropertyIndex vertexIndex = getPropertyIndex(key, Vertex.class);
+		DPropertyIndex edgeIndex = vertexIndex == null ? null : getPropertyIndex(key, Edge.class);
+		if (vertexIndex != null && edgeIndex != null) {
+			List<NoteCoordinate> ids = new ArrayList<NoteCoordinate>(vertexIndex.get(value));
+			ids.addAll(edgeIndex.get(value));
+			return new DElementIterable(this, ids);
+		}
 		String formulaFilter = org.openntf.domino.graph2.DGraph.Utils.getElementFormula(key, value);
 		return getElements(formulaFilter);
 	}
 
+	protected static String getPropertyIndexName(final String key, final Class<? extends Element> kind) {
+		return (Edge.class.isAssignableFrom(kind) ? "E." : "V.") + key.toLowerCase();
+	}
+
+	@Override
+	public void addPropertyIndex(final String key, final Class<? extends Element> kind) {
+		String name = getPropertyIndexName(key, kind);
+		Map<String, DPropertyIndex> indexes = getPropertyIndexMap();
+		if (!indexes.containsKey(name)) {
+			indexes.put(name, new DPropertyIndex(key, Edge.class.isAssignableFrom(kind)));
+		}
+	}
+
+	/**
+	 * Returns the current index of the property. An index that is used for the first time is loaded from the store, or built if it was
+	 * not saved. Afterwards, the documents modified since the last refresh are applied every {@link #PROPERTY_INDEX_REFRESH} ms.
+	 *
+	 * @return the index, null if the property is not indexed
+	 */
+	protected DPropertyIndex getPropertyIndex(final String key, final Class<? extends Element> kind) {
+		if (key == null || propertyIndexes_ == null || isProxied())
+			return null;
+		String name = getPropertyIndexName(key, kind);
+		DPropertyIndex index = propertyIndexes_.get(name);
+		if (index == null)
+			return null;
+		Object raw = getStoreDelegate();
+		if (!(raw instanceof Database))
+			return null;
+		Database db = (Database) raw;
+		if (index.getSince() == null) {
+			DPropertyIndex saved = loadPropertyIndex(db, name);
+			if (saved != null) {
+				index = saved;
+				propertyIndexes_.put(name, saved);
+			}
+		}
+		if (index.getSince() == null || System.currentTimeMillis() - index.getLastRefresh() > PROPERTY_INDEX_REFRESH) {
+			index.refresh(db);
+		}
+		return index;
+	}
+
+	protected DPropertyIndex loadPropertyIndex(final Database db, final String name) {
+		Document doc = db.getDocumentWithKey(PROPERTY_INDEX_PREFIX + name, false);
+		if (doc == null || !doc.hasItem(PROPERTY_INDEX_ITEM))
+			return null;
+		try {
+			Object result = Documents.restoreState(doc, PROPERTY_INDEX_ITEM, doc.getMIMEEntity(PROPERTY_INDEX_ITEM));
+			if (result instanceof DPropertyIndex) {
+				return (DPropertyIndex) result;
+			}
+		} catch (Exception e) {
+			log_.log(Level.WARNING, "Unable to load the property index " + name + " from " + db.getApiPath() + ", it is built again", e);
+		}
+		return null;
+	}
+
+	@Override
+	public void updatePropertyIndexes(final Element element, final Map<String, Object> changes) {
+		if (propertyIndexes_ == null || propertyIndexes_.isEmpty())
+			return;
+		Object id = element.getId();
+		if (!(id instanceof NoteCoordinate) || id instanceof ViewEntryCoordinate)
+			return;
+		Class<? extends Element> kind = element instanceof Edge ? Edge.class : Vertex.class;
+		for (Map.Entry<String, Object> change : changes.entrySet()) {
+			DPropertyIndex index = propertyIndexes_.get(getPropertyIndexName(change.getKey(), kind));
+			if (index != null) {
+				if (change.getValue() == null) {
+					index.remove((NoteCoordinate) id);
+				} else {
+					index.put((NoteCoordinate) id, change.getValue());
+				}
+			}
+		}
+	}
+
+	@Override
+	public void savePropertyIndexes() {
+		if (propertyIndexes_ == null)
+			return;
+		Object raw = getStoreDelegate();
+		if (!(raw instanceof Database))
+			return;
+		Database db = (Database) raw;
+		for (Map.Entry<String, DPropertyIndex> e : propertyIndexes_.entrySet()) {
+			DPropertyIndex index = e.getValue();
+			if (index.isChanged() && index.getSince() != null) {
+				try {
+					Document doc = db.getDocumentWithKey(PROPERTY_INDEX_PREFIX + e.getKey(), true);
+					Documents.saveState(index, doc, PROPERTY_INDEX_ITEM);
+					doc.save();
+					index.setChanged(false);
+				} catch (Exception ex) {
+					DominoUtils.handleException(ex);
+				}
+			}
+		}
+	}
+
 	//	@Override
 	//	public Set<Vertex> getCachedVertices() {
 	//		FastSet<Vertex> result = new FastSet<Vertex>();
@@ -1,16 +1,23 @@
 package org.openntf.domino.graph2.impl;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.openntf.domino.Database;
 import org.openntf.domino.DbDirectory;
+import org.openntf.domino.Document;
 import org.openntf.domino.Session;
 import org.openntf.domino.big.NoteCoordinate;
 import org.openntf.domino.big.NoteList;
@@ -21,10 +28,14 @@ import org.openntf.domino.graph2.DConfiguration;
 import org.openntf.domino.graph2.DElementStore;
 import org.openntf.domino.graph2.DKeyResolver;
 import org.openntf.domino.graph2.exception.ElementKeyException;
+import org.openntf.domino.session.ISessionFactory;
+import org.openntf.domino.thread.AbstractDominoCallable;
+import org.openntf.domino.thread.DominoExecutor;
 import org.openntf.domino.utils.DominoUtils;
 import org.openntf.domino.utils.Factory;
 import org.openntf.domino.utils.Factory.SessionType;
 
+import com.google.common.cache.CacheStats;
 import com.tinkerpop.blueprints.Edge;
 import com.tinkerpop.blueprints.Element;
 import com.tinkerpop.blueprints.Features;
@@ -34,7 +45,6 @@ import com.tinkerpop.blueprints.Vertex;
 import com.tinkerpop.blueprints.util.MultiIterable;
 
 public class DGraph implements org.openntf.domino.graph2.DGraph {
-	@SuppressWarnings("unused")
 	private static final Logger log_ = Logger.getLogger(DGraph.class.getName());
 	public static final Set<String> EMPTY_IDS = Collections.emptySet();
 	private DConfiguration configuration_;
@@ -64,6 +74,221 @@ public class DGraph implements org.openntf.domino.graph2.DGraph {
 		}
 	};
 
+	/**
+	 * The counts and timings of one element store in a commit
+	 */
+	public static class CommitStats {
+		private final Long storeKey_;
+		private int elementCount_;
+		private int noteCount_;
+		private int savedCount_;
+		private int failureCount_;
+		private long millis_;
+
+		public CommitStats(final Long storeKey) {
+			storeKey_ = storeKey;
+		}
+
+		public Long getStoreKey() {
+			return storeKey_;
+		}
+
+		/**
+		 * The number of elements of the store in the transaction
+		 */
+		public int getElementCount() {
+			return elementCount_;
+		}
+
+		/**
+		 * The number of notes of these elements
+		 */
+		public int getNoteCount() {
+			return noteCount_;
+		}
+
+		/**
+		 * The number of documents that were saved, each at most once
+		 */
+		public int getSavedCount() {
+			return savedCount_;
+		}
+
+		/**
+		 * The number of elements and documents that could not be written
+		 */
+		public int getFailureCount() {
+			return failureCount_;
+		}
+
+		public long getMillis() {
+			return millis_;
+		}
+
+		@Override
+		public String toString() {
+			return "Store " + storeKey_ + ": " + elementCount_ + " elements in " + noteCount_ + " notes, " + savedCount_ + " saved, "
+					+ failureCount_ + " failed in " + millis_ + "ms";
+		}
+	}
+
+	/**
+	 * The elements of one store in a commit, by note. The notes are applied in the order of their coordinates (replica id, then UNID). The
+	 * documents that the elements of a note register are saved as soon as all elements of the note are applied, so every note is saved
+	 * once even if the transaction holds several elements or edge lists of it, and only the documents of one note are held at a time.
+	 */
+	protected static class CommitGroup {
+		/** note coordinates in their natural order, other ids after them in the order they were added */
+		private static final Comparator<Map.Entry<Object, List<DElement>>> NOTE_ORDER = new Comparator<Map.Entry<Object, List<DElement>>>() {
+			@Override
+			public int compare(final Map.Entry<Object, List<DElement>> o1, final Map.Entry<Object, List<DElement>> o2) {
+				boolean nc1 = o1.getKey() instanceof NoteCoordinate;
+				boolean nc2 = o2.getKey() instanceof NoteCoordinate;
+				if (nc1 && nc2)
+					return ((NoteCoordinate) o1.getKey()).compareTo((NoteCoordinate) o2.getKey());
+				return nc1 == nc2 ? 0 : (nc1 ? -1 : 1);
+			}
+		};
+
+		private final Map<Object, List<DElement>> notes_ = new LinkedHashMap<Object, List<DElement>>();
+		private final Set<Document> saves_ = Collections.newSetFromMap(new IdentityHashMap<Document, Boolean>());
+		private final CommitStats stats_;
+
+		protected CommitGroup(final DElementStore store) {
+			stats_ = new CommitStats(store.getStoreKey());
+		}
+
+		public CommitStats getStats() {
+			return stats_;
+		}
+
+		protected void add(final DElement elem) {
+			Object id = elem.getId();
+			List<DElement> elems = notes_.get(id);
+			if (elems == null) {
+				elems = new ArrayList<DElement>(1);
+				notes_.put(id, elems);
+			}
+			elems.add(elem);
+			stats_.elementCount_++;
+		}
+
+		protected void deferSave(final Document doc) {
+			saves_.add(doc);
+		}
+
+		protected void run() {
+			long start = System.nanoTime();
+			stats_.noteCount_ = notes_.size();
+			currentGroup_.set(this);
+			List<Map.Entry<Object, List<DElement>>> notes = new ArrayList<Map.Entry<Object, List<DElement>>>(notes_.entrySet());
+			Collections.sort(notes, NOTE_ORDER);
+			try {
+				for (Map.Entry<Object, List<DElement>> note : notes) {
+					List<DElement> elems = note.getValue();
+					Map<String, Object> delegate = null;
+					for (DElement elem : elems) {
+						try {
+							if (elems.size() > 1) {
+								// several instances of the same element write into one document
+								if (delegate == null) {
+									delegate = elem.getDelegate();
+								} else {
+									elem.setDelegate(delegate);
+								}
+							}
+							elem.applyChanges();
+						} catch (DocumentWriteAccessException t) {
+							stats_.failureCount_++;
+							System.err.println(t.getMessage());
+						} catch (Throwable t) {
+							stats_.failureCount_++;
+							t.printStackTrace();
+						}
+					}
+					saveDeferred();
+				}
+			} finally {
+				currentGroup_.set(null);
+				saveDeferred();
+			}
+			stats_.millis_ = (System.nanoTime() - start) / 1000000;
+		}
+
+		/**
+		 * Saves the documents that were registered since the last call
+		 */
+		protected void saveDeferred() {
+			for (Document doc : saves_) {
+				try {
+					if (doc.save()) {
+						stats_.savedCount_++;
+					} else {
+						stats_.failureCount_++;
+					}
+				} catch (DocumentWriteAccessException t) {
+					stats_.failureCount_++;
+					System.err.println(t.getMessage());
+				} catch (Throwable t) {
+					stats_.failureCount_++;
+					t.printStackTrace();
+				}
+			}
+			saves_.clear();
+		}
+	}
+
+	/**
+	 * Commits one group in a worker thread, see {@link DGraph#setCommitThreads(int)}
+	 */
+	protected static class CommitTask extends AbstractDominoCallable<CommitStats> {
+		private static final long serialVersionUID = 1L;
+
+		private final transient CommitGroup group_;
+		private final transient ISessionFactory sessionFactory_;
+
+		protected CommitTask(final CommitGroup group) {
+			group_ = group;
+			sessionFactory_ = Factory.getSessionFactory(SessionType.CURRENT);
+		}
+
+		@Override
+		public ISessionFactory getSessionFactory() {
+			return sessionFactory_;
+		}
+
+		@Override
+		public CommitStats call() throws Exception {
+			try {
+				group_.run();
+			} finally {
+				// setProperty of the elements registers them in a transaction of the worker
+				localTxn.set(null);
+			}
+			return group_.getStats();
+		}
+	}
+
+	private static final ThreadLocal<CommitGroup> currentGroup_ = new ThreadLocal<CommitGroup>();
+	private static final ThreadLocal<List<CommitStats>> lastCommitStats_ = new ThreadLocal<List<CommitStats>>();
+
+	private int commitThreads_ = 1;
+	/** the workers of parallel commits, created on the first one and shut down by {@link #shutdown()} */
+	private DominoExecutor commitExecutor_;
+
+	/**
+	 * Registers a document that has to be saved by the commit that runs in this thread
+	 *
+	 * @return false if no commit is running, the caller has to save the document itself
+	 */
+	protected static boolean deferSave(final Document doc) {
+		CommitGroup group = currentGroup_.get();
+		if (group == null)
+			return false;
+		group.deferSave(doc);
+		return true;
+	}
+
 	public DGraph(final DConfiguration config) {
 		configuration_ = config;
 		config.setGraph(this);
@@ -204,7 +429,10 @@ public class DGraph implements org.openntf.domino.graph2.DGraph {
 
 	@Override
 	public void shutdown() {
-
+		for (DElementStore store : getElementStores().values()) {
+			store.savePropertyIndexes();
+		}
+		shutdownCommitExecutor();
 	}
 
 	@Override
@@ -220,34 +448,149 @@ public class DGraph implements org.openntf.domino.graph2.DGraph {
 
 	}
 
+	/**
+	 * The number of threads that commit the element stores of a transaction. With 1 (the default) the stores are committed one after
+	 * the other in the calling thread.
+	 *
+	 * With more threads every store is committed by a worker of a {@link DominoExecutor} in its own session. Domino objects are bound to
+	 * the thread that created them: a delegate that is not valid in the worker is read again by {@link DElement#getDelegate()}, but new
+	 * documents that were never saved cannot be read again. Only use more threads if the transaction does not hold new elements whose
+	 * documents were created in another thread.
+	 */
+	public synchronized void setCommitThreads(final int threads) {
+		int count = Math.max(1, threads);
+		if (count != commitThreads_) {
+			// the workers are created again with the new count on the next parallel commit
+			shutdownCommitExecutor();
+		}
+		commitThreads_ = count;
+	}
+
+	public int getCommitThreads() {
+		return commitThreads_;
+	}
+
+	protected synchronized DominoExecutor getCommitExecutor() {
+		if (commitExecutor_ == null) {
+			commitExecutor_ = new DominoExecutor(commitThreads_, "GraphCommit");
+		}
+		return commitExecutor_;
+	}
+
+	/**
+	 * Shuts down the workers of parallel commits. Commits that are running are completed.
+	 */
+	protected synchronized void shutdownCommitExecutor() {
+		if (commitExecutor_ != null) {
+			commitExecutor_.shutdown();
+			commitExecutor_ = null;
+		}
+	}
+
+	/**
+	 * Returns the counts and timings of the last commit of this thread, one entry per element store
+	 */
+	public List<CommitStats> getLastCommitStats() {
+		List<CommitStats> result = lastCommitStats_.get();
+		if (result == null)
+			return Collections.emptyList();
+		return result;
+	}
+
+	/**
+	 * Returns the statistics of the element caches by store key: hits, misses, load times and evictions
+	 */
+	public Map<Long, CacheStats> getElementCacheStats() {
+		Map<Long, CacheStats> result = new LinkedHashMap<Long, CacheStats>();
+		for (DElementStore store : getElementStores().values()) {
+			// a proxied store is registered under two keys
+			result.put(store.getStoreKey(), store.getElementCacheStats());
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the statistics of the element caches of all stores added up
+	 */
+	public CacheStats getTotalElementCacheStats() {
+		CacheStats result = new CacheStats(0, 0, 0, 0, 0, 0);
+		for (CacheStats stats : getElementCacheStats().values()) {
+			result = result.plus(stats);
+		}
+		return result;
+	}
+
 	@Override
 	public void commit() {
 		GraphTransaction txn = localTxn.get();
-		if (txn != null) {
-			Iterator<Element> it = txn.iterator();
-			int count = 0;
-			while (it.hasNext()) {
-				Element elem = it.next();
+		if (txn != null && !txn.isEmpty()) {
+			Map<DElementStore, CommitGroup> groups = new LinkedHashMap<DElementStore, CommitGroup>();
+			for (Element elem : txn) {
 				if (elem instanceof DElement) {
-					DElement delem = (DElement) elem;
-					try {
-						delem.applyChanges();
-					} catch (DocumentWriteAccessException t) {
-						System.err.println(t.getMessage());
-					} catch (Throwable t) {
-						t.printStackTrace();
+					DElementStore store = findElementStore(elem);
+					if (store == null) {
+						// the transaction is kept, so it can be rolled back
+						throw new IllegalStateException("No element store found for element " + elem.getId() + " of type "
+								+ elem.getClass().getName() + ", nothing was committed");
 					}
-					//					DElementStore store = findElementStore(elem.getId());
-					//				store.uncache(delem);
-					count++;
+					CommitGroup group = groups.get(store);
+					if (group == null) {
+						group = new CommitGroup(store);
+						groups.put(store, group);
+					}
+					group.add((DElement) elem);
 				}
-				it.remove();
 			}
-			//			System.out.println("TEMP DEBUG: Transaction committed changes to " + count + " elements");
+			// elements that are changed while the changes are applied register in a new transaction, which is discarded
+			localTxn.set(null);
+			txn.clear();
+			if (commitThreads_ > 1 && groups.size() > 1) {
+				commitParallel(groups.values());
+			} else {
+				for (CommitGroup group : groups.values()) {
+					group.run();
+				}
+			}
+			List<CommitStats> stats = new ArrayList<CommitStats>(groups.size());
+			for (CommitGroup group : groups.values()) {
+				stats.add(group.getStats());
+				if (log_.isLoggable(Level.FINE)) {
+					log_.log(Level.FINE, "Commit " + group.getStats());
+				}
+			}
+			lastCommitStats_.set(stats);
 		}
 		localTxn.set(null);
 	}
 
+	protected void commitParallel(final Collection<CommitGroup> groups) {
+		List<Future<CommitStats>> futures = new ArrayList<Future<CommitStats>>(groups.size());
+		synchronized (this) {
+			// setCommitThreads must not shut down the workers while the tasks are submitted
+			DominoExecutor executor = getCommitExecutor();
+			for (CommitGroup group : groups) {
+				futures.add(executor.submit(new CommitTask(group)));
+			}
+		}
+		boolean interrupted = false;
+		for (Future<CommitStats> future : futures) {
+			while (true) {
+				try {
+					future.get();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					log_.log(Level.WARNING, "Commit of an element store failed", e.getCause());
+					break;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
 	@Override
 	public void rollback() {
 		localTxn.set(null);
@@ -478,6 +821,12 @@ public class DGraph implements org.openntf.domino.graph2.DGraph {
 		//		if (result == null) {
 		//			System.err.println("Unable to open database by replica id " + keyStr);
 		//		}
+		org.openntf.domino.big.impl.DbCache cache = org.openntf.domino.big.impl.NoteCoordinate.getDbCache();
+		if (cache != null) {
+			result = cache.getDatabase(key, cache.getDefaultServer(), session);
+			if (result != null)
+				return result;
+		}
 		result = session.getDatabase(keyStr);	//TODO NTF sort out server?
 		return result;
 	}
@@ -0,0 +1,451 @@
+package org.openntf.domino.graph2.impl;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openntf.domino.Database;
+import org.openntf.domino.DateTime;
+import org.openntf.domino.Document;
+import org.openntf.domino.DocumentCollection;
+import org.openntf.domino.NoteCollection;
+import org.openntf.domino.big.NoteCoordinate;
+import org.openntf.domino.graph2.DEdge;
+import org.openntf.domino.graph2.DElement;
+import org.openntf.domino.graph2.DVertex;
+import org.openntf.domino.utils.TypeUtils;
+
+/**
+ * An in-memory index of one property of the vertices or the edges of a {@link DElementStore}: a sorted map from the values of the property
+ * to the ids of the elements. Every value of a multi-value property is indexed.
+ *
+ * The values are normalized to numbers as Double, dates as Date, enums as the stored String and everything else as String. Numbers sort
+ * before dates, dates before strings. Strings are compared case-insensitively, like the formula engine compares them, so values that differ
+ * only in case share one entry.
+ *
+ * The index is kept current by {@link DElementStore#updatePropertyIndexes(com.tinkerpop.blueprints.Element, Map)} and by
+ * {@link #refresh(Database)}, which applies the documents modified since the last refresh and removes the deleted ones. The time of the last
+ * refresh is taken from the database, not from the local clock.
+ *
+ */
+public class DPropertyIndex implements Externalizable {
+	private static final long serialVersionUID = 1L;
+	private static final Logger log_ = Logger.getLogger(DPropertyIndex.class.getName());
+
+	protected static final Comparator<Object> VALUE_COMPARATOR = new Comparator<Object>() {
+		@Override
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		public int compare(final Object o1, final Object o2) {
+			int rank1 = rank(o1);
+			int rank2 = rank(o2);
+			if (rank1 != rank2)
+				return rank1 - rank2;
+			if (rank1 == 2)
+				return o1.toString().compareToIgnoreCase(o2.toString());
+			return ((Comparable) o1).compareTo(o2);
+		}
+
+		private int rank(final Object value) {
+			if (value instanceof Double)
+				return 0;
+			if (value instanceof Date)
+				return 1;
+			return 2;
+		}
+	};
+
+	private String key_;
+	private boolean edges_;
+	private TreeMap<Object, Set<NoteCoordinate>> values_ = new TreeMap<Object, Set<NoteCoordinate>>(VALUE_COMPARATOR);
+	/** the indexed values of every element, a single value or a List */
+	private Map<NoteCoordinate, Object> elements_ = new HashMap<NoteCoordinate, Object>();
+	/** the time of the last build or refresh, in the time of the database */
+	private Date since_;
+	/** the local time of the last build or refresh, 0 if the index was loaded */
+	private transient long refreshed_;
+	private transient boolean changed_;
+
+	public DPropertyIndex() {
+		// for deserialization
+	}
+
+	/**
+	 * @param key
+	 *            the name of the property
+	 * @param edges
+	 *            true to index edges, false to index vertices
+	 */
+	public DPropertyIndex(final String key, final boolean edges) {
+		key_ = key;
+		edges_ = edges;
+	}
+
+	public String getKey() {
+		return key_;
+	}
+
+	public boolean isEdgeIndex() {
+		return edges_;
+	}
+
+	public Date getSince() {
+		return since_;
+	}
+
+	/**
+	 * Returns the local time in ms of the last build or refresh, 0 if the index was not refreshed since it was loaded
+	 */
+	public long getLastRefresh() {
+		return refreshed_;
+	}
+
+	/**
+	 * Returns whether the index was changed since it was built or loaded
+	 */
+	public boolean isChanged() {
+		return changed_;
+	}
+
+	public void setChanged(final boolean changed) {
+		changed_ = changed;
+	}
+
+	public synchronized int size() {
+		return elements_.size();
+	}
+
+	/**
+	 * Converts a property value to the value in the index
+	 *
+	 * @return the normalized value, null if the value is not indexed
+	 */
+	public static Object normalize(final Object value) {
+		if (value == null) {
+			return null;
+		} else if (value instanceof Number) {
+			return ((Number) value).doubleValue();
+		} else if (value instanceof Date) {
+			return new Date(((Date) value).getTime());
+		} else if (value instanceof DateTime) {
+			return ((DateTime) value).toJavaDate();
+		} else if (value instanceof Enum<?>) {
+			return ((Enum<?>) value).getDeclaringClass().getName() + " " + ((Enum<?>) value).name();
+		} else {
+			String result = TypeUtils.toString(value);
+			return result == null || result.length() == 0 ? null : result;
+		}
+	}
+
+	/**
+	 * Sets the values of an element, replacing its previous values
+	 *
+	 * @param value
+	 *            the property value, a Collection or array for multiple values, null to remove the element
+	 */
+	public synchronized void put(final NoteCoordinate id, final Object value) {
+		removeInt(id);
+		List<Object> normalized = new ArrayList<Object>();
+		if (value instanceof Collection) {
+			for (Object v : (Collection<?>) value) {
+				addNormalized(normalized, v);
+			}
+		} else if (value instanceof Object[]) {
+			for (Object v : (Object[]) value) {
+				addNormalized(normalized, v);
+			}
+		} else {
+			addNormalized(normalized, value);
+		}
+		for (Object v : normalized) {
+			Set<NoteCoordinate> ids = values_.get(v);
+			if (ids == null) {
+				ids = new LinkedHashSet<NoteCoordinate>(2);
+				values_.put(v, ids);
+			}
+			ids.add(id);
+		}
+		if (normalized.size() == 1) {
+			elements_.put(id, normalized.get(0));
+		} else if (!normalized.isEmpty()) {
+			elements_.put(id, normalized);
+		}
+		changed_ = true;
+	}
+
+	private void addNormalized(final List<Object> normalized, final Object value) {
+		Object v = normalize(value);
+		if (v == null)
+			return;
+		for (Object n : normalized) {
+			if (VALUE_COMPARATOR.compare(n, v) == 0)
+				return;
+		}
+		normalized.add(v);
+	}
+
+	/**
+	 * Removes an element from the index
+	 *
+	 * @return true if the element was indexed
+	 */
+	public synchronized boolean remove(final NoteCoordinate id) {
+		boolean result = removeInt(id);
+		if (result) {
+			changed_ = true;
+		}
+		return result;
+	}
+
+	private boolean removeInt(final NoteCoordinate id) {
+		Object old = elements_.remove(id);
+		if (old == null)
+			return false;
+		if (old instanceof List) {
+			for (Object v : (List<?>) old) {
+				removeValue(v, id);
+			}
+		} else {
+			removeValue(old, id);
+		}
+		return true;
+	}
+
+	private void removeValue(final Object value, final NoteCoordinate id) {
+		Set<NoteCoordinate> ids = values_.get(value);
+		if (ids != null) {
+			ids.remove(id);
+			if (ids.isEmpty()) {
+				values_.remove(value);
+			}
+		}
+	}
+
+	/**
+	 * Returns the ids of the elements with the value
+	 */
+	public synchronized List<NoteCoordinate> get(final Object value) {
+		Object v = normalize(value);
+		Set<NoteCoordinate> ids = v == null ? null : values_.get(v);
+		if (ids == null)
+			return Collections.emptyList();
+		return new ArrayList<NoteCoordinate>(ids);
+	}
+
+	/**
+	 * Returns the ids of the elements with a value from <code>from</code> (inclusive) to <code>to</code> (exclusive), in the order of the
+	 * values
+	 *
+	 * @param from
+	 *            the lowest value, null for no lower bound
+	 * @param to
+	 *            the value after the highest value, null for no upper bound
+	 */
+	public synchronized List<NoteCoordinate> getRange(final Object from, final Object to) {
+		Object f = normalize(from);
+		Object t = normalize(to);
+		Map<Object, Set<NoteCoordinate>> range;
+		if (f == null && t == null) {
+			range = values_;
+		} else if (f == null) {
+			range = values_.headMap(t);
+		} else if (t == null) {
+			range = values_.tailMap(f);
+		} else {
+			range = values_.subMap(f, t);
+		}
+		Set<NoteCoordinate> result = new LinkedHashSet<NoteCoordinate>();
+		for (Set<NoteCoordinate> ids : range.values()) {
+			result.addAll(ids);
+		}
+		return new ArrayList<NoteCoordinate>(result);
+	}
+
+	public synchronized void clear() {
+		values_.clear();
+		elements_.clear();
+		since_ = null;
+		changed_ = true;
+	}
+
+	protected String getFormulaFilter() {
+		return edges_ ? DEdge.FORMULA_FILTER : DVertex.FORMULA_FILTER;
+	}
+
+	protected String getGraphType() {
+		return edges_ ? DEdge.GRAPH_TYPE_VALUE : DVertex.GRAPH_TYPE_VALUE;
+	}
+
+	/**
+	 * Reads the property of all elements of the database
+	 */
+	public void build(final Database db) {
+		NoteCollection nc = createNoteCollection(db);
+		Date start = nc.getLastBuildTime().toJavaDate();
+		synchronized (this) {
+			values_.clear();
+			elements_.clear();
+			for (String noteid : nc) {
+				Document doc = db.getDocumentByID(noteid);
+				if (doc != null) {
+					put(NoteCoordinate.Utils.getNoteCoordinate(doc), doc.get(key_));
+				}
+			}
+			since_ = start;
+			refreshed_ = System.currentTimeMillis();
+			changed_ = true;
+		}
+		if (log_.isLoggable(Level.FINE)) {
+			log_.log(Level.FINE, "Built index of " + key_ + " in " + db.getApiPath() + " with " + size() + " elements");
+		}
+	}
+
+	/**
+	 * Returns the notes of all elements that have the property
+	 */
+	protected NoteCollection createNoteCollection(final Database db) {
+		NoteCollection nc = db.createNoteCollection(false);
+		nc.setSelectDocuments(true);
+		nc.setSelectionFormula(getFormulaFilter() + " & @IsAvailable(" + key_ + ")");
+		nc.buildCollection();
+		return nc;
+	}
+
+	/**
+	 * Applies the documents that were modified since the last build or refresh, so changes made outside of the graph are found. The
+	 * modified documents do not include the deleted ones, so their elements are removed with the deletion stubs of the modified notes.
+	 *
+	 * @return the number of documents that were applied or removed
+	 */
+	public int refresh(final Database db) {
+		if (since_ == null) {
+			build(db);
+			return size();
+		}
+		int count = 0;
+		Date until = null;
+		Date lastModified = db.getLastModifiedDate();
+		if (lastModified == null || lastModified.after(since_)) {
+			// built first, so a document that is modified in between is not taken for a deletion stub
+			NoteCollection notes = createModifiedNoteCollection(db, since_);
+			DocumentCollection modified = db.getModifiedDocuments(since_);
+			DateTime untilTime = modified.getUntilTime();
+			until = untilTime == null ? null : untilTime.toJavaDate();
+			Set<Long> noteids = new HashSet<Long>();
+			for (Document doc : modified) {
+				noteids.add(toNoteID(doc.getNoteID()));
+				update(doc);
+				count++;
+			}
+			count += removeDeleted(notes, noteids);
+		}
+		synchronized (this) {
+			if (until != null) {
+				since_ = until;
+			}
+			refreshed_ = System.currentTimeMillis();
+			if (count > 0) {
+				changed_ = true;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the documents that were modified since the given time, including the deletion stubs
+	 */
+	protected NoteCollection createModifiedNoteCollection(final Database db, final Date since) {
+		NoteCollection nc = db.createNoteCollection(false);
+		nc.setSelectDocuments(true);
+		nc.setSinceTime(since);
+		nc.buildCollection();
+		return nc;
+	}
+
+	/**
+	 * The id of a note, without the flag that marks a deletion stub
+	 */
+	private static long toNoteID(final String noteid) {
+		return Long.parseLong(noteid, 16) & 0x7FFFFFFFL;
+	}
+
+	/**
+	 * Removes the elements of the deletion stubs, which are the modified notes that are not modified documents
+	 *
+	 * @param notes
+	 *            the modified notes
+	 * @param noteids
+	 *            the ids of the modified documents
+	 * @return the number of elements that were removed
+	 */
+	protected int removeDeleted(final NoteCollection notes, final Set<Long> noteids) {
+		if (notes.getCount() <= noteids.size())
+			return 0;
+		int count = 0;
+		for (String noteid : notes) {
+			if (!noteids.contains(toNoteID(noteid)) && remove(NoteCoordinate.Utils.getNoteCoordinate(notes, noteid))) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Reads the property of one document
+	 */
+	protected void update(final Document doc) {
+		NoteCoordinate id = NoteCoordinate.Utils.getNoteCoordinate(doc);
+		if (doc.isDeleted() || !doc.isValid()) {
+			remove(id);
+		} else if (getGraphType().equals(TypeUtils.toString(doc.get(DElement.TYPE_FIELD)))) {
+			put(id, doc.get(key_));
+		} else {
+			remove(id);
+		}
+	}
+
+	@Override
+	public synchronized void writeExternal(final ObjectOutput out) throws IOException {
+		out.writeUTF(key_);
+		out.writeBoolean(edges_);
+		out.writeLong(since_ == null ? 0 : since_.getTime());
+		out.writeInt(elements_.size());
+		for (Map.Entry<NoteCoordinate, Object> e : elements_.entrySet()) {
+			NoteCoordinate id = e.getKey();
+			out.writeLong(id.getReplicaLong());
+			out.writeLong(id.getX());
+			out.writeLong(id.getY());
+			out.writeObject(e.getValue());
+		}
+	}
+
+	@Override
+	public synchronized void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
+		key_ = in.readUTF();
+		edges_ = in.readBoolean();
+		long since = in.readLong();
+		since_ = since == 0 ? null : new Date(since);
+		int count = in.readInt();
+		values_ = new TreeMap<Object, Set<NoteCoordinate>>(VALUE_COMPARATOR);
+		elements_ = new HashMap<NoteCoordinate, Object>(count * 2);
+		for (int i = 0; i < count; i++) {
+			NoteCoordinate id = NoteCoordinate.Utils.getNoteCoordinate(in.readLong(), in.readLong(), in.readLong());
+			put(id, in.readObject());
+		}
+		changed_ = false;
+	}
+}
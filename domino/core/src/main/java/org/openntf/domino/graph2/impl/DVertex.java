@@ -1,6 +1,7 @@
 package org.openntf.domino.graph2.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -12,6 +13,7 @@ import org.openntf.domino.Database;
 import org.openntf.domino.Document;
 import org.openntf.domino.View;
 import org.openntf.domino.big.NoteList;
+import org.openntf.domino.big.impl.ChunkedNoteList;
 import org.openntf.domino.graph2.DEdgeList;
 
 import com.tinkerpop.blueprints.Direction;
@@ -334,14 +336,13 @@ public class DVertex extends DElement implements org.openntf.domino.graph2.DVert
 	protected NoteList getInEdgesSet(final String label) {
 		NoteList edgeIds = getInEdgesMap().get(label);
 		if (edgeIds == null) {
-			edgeIds = new org.openntf.domino.big.impl.NoteList(true);
+			edgeIds = new ChunkedNoteList(true);
 			String key = DVertex.IN_PREFIX + label;
 			Map<String, Object> delegate = getDelegate();
 			if (delegate.containsKey(key)) {
 				if (delegate instanceof Document) {
-					byte[] bytes = ((Document) delegate).readBinary(key);
 					//					Factory.println("Loading a NoteList from an item for label " + label + " for vertex " + getId());
-					edgeIds.loadByteArray(bytes);
+					((ChunkedNoteList) edgeIds).load((Document) delegate, key);
 				} else {
 					Object o = getProperty(key, java.util.Collection.class);
 					if (o instanceof NoteList) {
@@ -391,15 +392,12 @@ public class DVertex extends DElement implements org.openntf.domino.graph2.DVert
 	protected NoteList getOutEdgesSet(final String label) {
 		NoteList edgeIds = getOutEdgesMap().get(label);
 		if (edgeIds == null) {
-			edgeIds = new org.openntf.domino.big.impl.NoteList(true);
+			edgeIds = new ChunkedNoteList(true);
 			String key = DVertex.OUT_PREFIX + label;
 			Map<String, Object> delegate = getDelegate();
 			if (delegate.containsKey(key)) {
 				if (delegate instanceof Document) {
-					byte[] bytes = ((Document) delegate).readBinary(key);
-					//					System.out.println("TEMP DEBUG: read Document-based NoteList binary for " + label + " and found " + bytes.length
-					//							+ " bytes");
-					edgeIds.loadByteArray(bytes);
+					((ChunkedNoteList) edgeIds).load((Document) delegate, key);
 				} else {
 					Object o = getProperty(key, java.util.Collection.class);
 					if (o != null) {
@@ -429,6 +427,51 @@ public class DVertex extends DElement implements org.openntf.domino.graph2.DVert
 		return edgeIds;
 	}
 
+	/**
+	 * Returns the number of edge ids in the edge lists that are loaded. The lists are loaded on first use, see {@link #getOutEdgesSet(String)}
+	 */
+	protected int getLoadedEdgeCount() {
+		int result = 0;
+		for (Map<String, NoteList> map : Arrays.asList(inEdgesMapCompressed_, outEdgesMapCompressed_)) {
+			if (map != null) {
+				for (NoteList list : map.values()) {
+					result += list.size();
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Estimates the number of edge ids of the vertex before its edge lists are loaded: the size of the lists that are loaded, and the
+	 * stored count (the <code>_COUNT</code> item) of every list that is not loaded yet.
+	 */
+	protected int getEdgeCountEstimate() {
+		int result = getLoadedEdgeCount();
+		String inCount = "_COUNT" + DVertex.IN_PREFIX;
+		String outCount = "_COUNT" + DVertex.OUT_PREFIX;
+		for (String key : getPropertyKeys()) {
+			Map<String, NoteList> loaded;
+			String label;
+			if (key.startsWith(inCount)) {
+				loaded = inEdgesMapCompressed_;
+				label = key.substring(inCount.length());
+			} else if (key.startsWith(outCount)) {
+				loaded = outEdgesMapCompressed_;
+				label = key.substring(outCount.length());
+			} else {
+				continue;
+			}
+			if (loaded == null || !loaded.containsKey(label)) {
+				Integer count = getProperty(key, Integer.class, false);
+				if (count != null) {
+					result += count;
+				}
+			}
+		}
+		return result;
+	}
+
 	protected FastSet<String> getInDirtyKeySet() {
 		if (inDirtyKeySet_ == null) {
 			inDirtyKeySet_ = new FastSet<String>().atomic();
@@ -91,6 +91,16 @@ public class DVertexIterable implements org.openntf.domino.graph2.DVertexIterabl
 		delegate_ = delegate;
 	}
 
+	@Override
+	public void setLookAhead(final int lookAhead) {
+		delegate_.setLookAhead(lookAhead);
+	}
+
+	@Override
+	public int getLookAhead() {
+		return delegate_.getLookAhead();
+	}
+
 	@Override
 	public Iterator<Vertex> iterator() {
 		return new DVertexIterator(delegate_.listIterator());
@@ -230,6 +230,14 @@ public class DocumentScanner extends Observable {
 	protected long itemCount_ = 0l;
 	protected long tokenCount_ = 0l;
 
+	public static final int DEFAULT_PROGRESS_BATCH_SIZE = 100;
+	protected int progressBatchSize_ = DEFAULT_PROGRESS_BATCH_SIZE;
+	protected ScanStatus status_ = ScanStatus.NEW;
+
+	/** the item names repeat in every document, so the CaseInsensitiveStrings are reused */
+	private final Map<String, CaseInsensitiveString> itemNameCache_ = new HashMap<String, CaseInsensitiveString>();
+	private static final int ITEM_NAME_CACHE_SIZE = 4096;
+
 	public void setCaseSensitive(final boolean value) {
 		caseSensitive_ = value;
 	}
@@ -284,6 +292,31 @@ public class DocumentScanner extends Observable {
 		super.notifyObservers(arg);
 	}
 
+	/**
+	 * @return the number of documents between two {@link ScanStatus#RUNNING} notifications
+	 */
+	public int getProgressBatchSize() {
+		return progressBatchSize_;
+	}
+
+	/**
+	 * The observers are notified with {@link ScanStatus#RUNNING} after every batch of documents, and not after every document.
+	 * 
+	 * @param progressBatchSize
+	 *            the number of documents per batch
+	 */
+	public void setProgressBatchSize(final int progressBatchSize) {
+		progressBatchSize_ = progressBatchSize < 1 ? 1 : progressBatchSize;
+	}
+
+	/**
+	 * @return the status of the last notification. {@link ScanStatus#INTERRUPTED}, if the thread was interrupted while the collection was
+	 *         processed
+	 */
+	public ScanStatus getStatus() {
+		return status_;
+	}
+
 	public int getZeroDocCount() {
 		return zeroDocCount_;
 	}
@@ -354,6 +387,34 @@ public class DocumentScanner extends Observable {
 		return fieldTokenMap_;
 	}
 
+	/**
+	 * Returns the token locations that were collected since the last call and starts a new map. Used to hand over the results of a batch
+	 * to another thread.
+	 */
+	public Map<CharSequence, Map<CharSequence, Set<CharSequence>>> takeTokenLocationMap() {
+		Map<CharSequence, Map<CharSequence, Set<CharSequence>>> result = getTokenLocationMap();
+		tokenLocationMap_ = null;
+		return result;
+	}
+
+	/**
+	 * @see #takeTokenLocationMap()
+	 */
+	public Map<CharSequence, Map<CharSequence, Set<CharSequence>>> takeNameLocationMap() {
+		Map<CharSequence, Map<CharSequence, Set<CharSequence>>> result = getNameLocationMap();
+		nameLocationMap_ = null;
+		return result;
+	}
+
+	/**
+	 * @see #takeTokenLocationMap()
+	 */
+	public Map<CharSequence, Map<CharSequence, Set<CharSequence>>> takeValueLocationMap() {
+		Map<CharSequence, Map<CharSequence, Set<CharSequence>>> result = getValueLocationMap();
+		valueLocationMap_ = null;
+		return result;
+	}
+
 	public Map<CharSequence, Map<CharSequence, Set<CharSequence>>> getTokenLocationMap() {
 		if (tokenLocationMap_ == null) {
 			//			System.out.println("Setting up new tokenLocationMap for scanner");
@@ -508,8 +569,21 @@ public class DocumentScanner extends Observable {
 
 	public void complete() {
 		//		System.out.println("COMPLETING.");
+		notifyStatus(ScanStatus.COMPLETE);
+	}
+
+	/**
+	 * Notifies the observers, that the scan was stopped. Everything up to {@link #getLastDocModDate()} was processed, so a new scan can
+	 * resume from there.
+	 */
+	public void interrupt() {
+		notifyStatus(ScanStatus.INTERRUPTED);
+	}
+
+	protected void notifyStatus(final ScanStatus status) {
+		status_ = status;
 		setChanged();
-		notifyObservers(ScanStatus.COMPLETE);
+		notifyObservers(status);
 	}
 
 	private org.openntf.domino.DocumentCollection collection_;
@@ -518,9 +592,11 @@ public class DocumentScanner extends Observable {
 		//		System.out.println("DEBUG: Scanning a collection of " + collection_.getCount());
 		for (Document doc : collection_) {
 			if (docCount_ < docLimit_) {
-				if (!Thread.interrupted()) {
-					processDocument(doc);
+				if (Thread.interrupted()) {
+					interrupt();
+					return;
 				}
+				processDocument(doc);
 			} else {
 				break;
 			}
@@ -574,7 +650,7 @@ public class DocumentScanner extends Observable {
 			String address = doc.getUniversalID() + (hasReaders ? "1" : "0") + doc.getFormName();
 			for (Item item : items) {
 				if (item != null) {
-					CaseInsensitiveString name = new CaseInsensitiveString(item.getName());
+					CaseInsensitiveString name = getItemName(item.getName());
 					if (/*lastMod.after(getLastScanDate()) && */!(name.startsWith("$") && getIgnoreDollar())) {
 						try {
 							String value = null;
@@ -630,9 +706,22 @@ public class DocumentScanner extends Observable {
 			}
 
 			setLastDocModDate(doc.getLastModifiedDate());
-			setChanged();
-			notifyObservers(ScanStatus.RUNNING);
+			if (docCount_ % progressBatchSize_ == 0) {
+				notifyStatus(ScanStatus.RUNNING);
+			}
+		}
+	}
+
+	protected CaseInsensitiveString getItemName(final String itemName) {
+		CaseInsensitiveString result = itemNameCache_.get(itemName);
+		if (result == null) {
+			if (itemNameCache_.size() >= ITEM_NAME_CACHE_SIZE) {
+				itemNameCache_.clear();
+			}
+			result = new CaseInsensitiveString(itemName);
+			itemNameCache_.put(itemName, result);
 		}
+		return result;
 	}
 
 	public void processTextValue(final CaseInsensitiveString name, final Object value, final String address) {
@@ -1,20 +1,35 @@
 package org.openntf.domino.helpers;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.Externalizable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInput;
+import java.io.ObjectInputStream;
 import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.text.Collator;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.Vector;
 import java.util.concurrent.ConcurrentSkipListSet;
 
 import org.openntf.domino.Database;
+import org.openntf.domino.DateTime;
 import org.openntf.domino.Document;
 import org.openntf.domino.DocumentCollection;
 import org.openntf.domino.iterators.DocumentList;
@@ -28,16 +43,33 @@ public class DocumentSorter implements Externalizable {
 	private SortedSet<DocumentData> skipListSet_ = new ConcurrentSkipListSet<DocumentData>();
 
 	public static class DocumentData implements Comparable<DocumentData>, Externalizable {
-		private static boolean debug = false;
 		private int nid_;
 		//		private String replid_;
 		//		private String unid_;
 		private final byte[] address_ = new byte[48];
 		//		private List<Serializable> values_;	//houses the results of the comparison criteria
 		private Serializable[] values_;
+		/** the values encoded so that an unsigned byte comparison gives their order, see {@link #encodeKey(Serializable[])} */
+		private transient byte[] key_;
 
 		//		private int valSize_;
 
+		private static final byte TAG_NULL = 0x00;
+		private static final byte TAG_NUMBER = 0x10;
+		private static final byte TAG_STRING = 0x20;
+		private static final byte TAG_OTHER = 0x30;
+
+		/** Collators are not thread safe */
+		private static final ThreadLocal<Collator> collator_ = new ThreadLocal<Collator>() {
+			@Override
+			protected Collator initialValue() {
+				// like the default view collation: case and accent insensitive
+				Collator result = Collator.getInstance();
+				result.setStrength(Collator.PRIMARY);
+				return result;
+			}
+		};
+
 		public Serializable[] _debugGetValues() {
 			return values_;
 		}
@@ -89,6 +121,110 @@ public class DocumentSorter implements Externalizable {
 				}
 			}
 			//			valSize_ = values_.length;
+			key_ = encodeKey(values_);
+		}
+
+		/**
+		 * Encodes the values into one byte array. Every value starts with a type tag, so null sorts first, then numbers, then strings, then
+		 * other values. Numbers and dates (as epoch millis) are written as the bits of the double with the sign flipped, strings as their
+		 * collation key with 0x00 escaped and terminated by 0x00 0x00, so a shorter string sorts before its extensions. Other values are
+		 * encoded like strings from their toString().
+		 *
+		 * Every row of a sort is compared by its key only, so the order is the same for all rows.
+		 */
+		protected static byte[] encodeKey(final Serializable[] values) {
+			if (values == null)
+				return new byte[0];
+			ByteArrayOutputStream out = new ByteArrayOutputStream(values.length * 16);
+			for (Serializable value : values) {
+				if (value == Null.INSTANCE || value == null) {
+					out.write(TAG_NULL);
+				} else if (value instanceof Number || value instanceof Date || value instanceof Calendar || value instanceof DateTime) {
+					long bits = Double.doubleToLongBits(toDouble(value));
+					bits = bits < 0 ? ~bits : bits ^ Long.MIN_VALUE;
+					out.write(TAG_NUMBER);
+					for (int shift = 56; shift >= 0; shift -= 8) {
+						out.write((int) (bits >>> shift));
+					}
+				} else if (value instanceof String) {
+					out.write(TAG_STRING);
+					writeString(out, (String) value);
+				} else {
+					out.write(TAG_OTHER);
+					writeString(out, value.toString());
+				}
+			}
+			return out.toByteArray();
+		}
+
+		private static double toDouble(final Serializable value) {
+			if (value instanceof Date) {
+				return ((Date) value).getTime();
+			} else if (value instanceof Calendar) {
+				return ((Calendar) value).getTimeInMillis();
+			} else if (value instanceof DateTime) {
+				return ((DateTime) value).toJavaDate().getTime();
+			}
+			return ((Number) value).doubleValue();
+		}
+
+		private static void writeString(final ByteArrayOutputStream out, final String value) {
+			for (byte b : collator_.get().getCollationKey(value).toByteArray()) {
+				out.write(b);
+				if (b == 0) {
+					out.write(0xFF);
+				}
+			}
+			out.write(0);
+			out.write(0);
+		}
+
+		private byte[] getKey() {
+			if (key_ == null) {
+				key_ = encodeKey(values_);
+			}
+			return key_;
+		}
+
+		private static int compareKeys(final byte[] key0, final byte[] key1) {
+			int length = Math.min(key0.length, key1.length);
+			for (int i = 0; i < length; i++) {
+				int b0 = key0[i] & 0xFF;
+				int b1 = key1[i] & 0xFF;
+				if (b0 != b1)
+					return b0 - b1;
+			}
+			return key0.length - key1.length;
+		}
+
+		public int getNoteID() {
+			return nid_;
+		}
+
+		public String getUNID() {
+			return new String(address_, 16, 32);
+		}
+
+		/**
+		 * A rough estimate of the heap used by this entry, for the memory budget of the external sort
+		 */
+		protected long estimateSize() {
+			// object, nid, address array, values array
+			long result = 16 + 4 + 8 + 16 + 48 + 8 + 16;
+			if (key_ != null) {
+				result += 16 + key_.length;
+			}
+			if (values_ != null) {
+				result += 8 * values_.length;
+				for (Serializable value : values_) {
+					if (value instanceof String) {
+						result += 40 + 2 * ((String) value).length();
+					} else if (value != Null.INSTANCE) {
+						result += 24;
+					}
+				}
+			}
+			return result;
 		}
 
 		public Document getDocument(final Database db) {
@@ -100,64 +236,11 @@ public class DocumentSorter implements Externalizable {
 		}
 
 		@Override
-		@SuppressWarnings({ "unchecked", "rawtypes" })
 		public int compareTo(final DocumentData o) {
-			int result = 0;
-			int count0 = values_.length;
-			int count1 = o.values_.length;
-			if (count0 != count1) {
-				throw new IllegalStateException("Cannot compare DocumentData arguments with different value sizes");
-			}
-
-			for (int i = 0; i < count0; i++) {
-				Serializable ser0 = values_[i];
-				Serializable ser1 = o.values_[i];
-				if (ser0 == Null.INSTANCE && ser1 == Null.INSTANCE) {
-					result = 0;
-					if (debug) {
-						System.out.println("Both values are null instances. They're equals");
-					}
-				} else if (ser0 == Null.INSTANCE) {
-					result = -1;
-					if (debug) {
-						System.out.println("This value is null");
-					}
-				} else if (ser1 == Null.INSTANCE) {
-					result = 1;
-					if (debug) {
-						System.out.println("Other value is null");
-					}
-				} else if (ser0 instanceof String && ser1 instanceof String) {
-					result = ((String) ser0).compareTo((String) ser1);
-					if (debug) {
-						System.out.println("Comparing " + ser0 + " to " + ser1 + " resulting in " + result);
-					}
-				} else if (ser0 instanceof Comparable && ser1 instanceof Comparable) {
-					result = ((Comparable) ser0).compareTo(ser1);
-					if (debug) {
-						System.out.println("Comparing " + ser0 + " to " + ser1 + " resulting in " + result);
-					}
-				} else {
-					System.out.println("Unable to compare values of " + ser0 + " and " + ser1);
-				}
-				if (result != 0) {
-					return result;
-				}
-			}
-			if (result == 0) {
-				if (debug) {
-					System.out.println("Results match. Resorting to nid compare...");
-				}
-				if (nid_ > o.nid_)
-					return -1;
-				if (nid_ < o.nid_)
-					return 1;
-				//				result = replid_.compareTo(o.replid_);
-			}
-			//			if (result == 0) {
-			//				result = unid_.compareTo(o.unid_);
-			//			}
-			return result;
+			int result = compareKeys(getKey(), o.getKey());
+			if (result != 0)
+				return result;
+			return nid_ > o.nid_ ? -1 : (nid_ < o.nid_ ? 1 : 0);
 		}
 
 		@Override
@@ -177,6 +260,7 @@ public class DocumentSorter implements Externalizable {
 					}
 				}
 			}
+			key_ = encodeKey(values_);
 		}
 
 		@Override
@@ -198,9 +282,141 @@ public class DocumentSorter implements Externalizable {
 
 	}
 
+	/**
+	 * A sorted part of the data, written to a temporary file
+	 */
+	protected static class SortedRun {
+		private final File file_;
+		private final int count_;
+
+		protected SortedRun(final File file, final int count) {
+			file_ = file;
+			count_ = count;
+		}
+	}
+
+	/**
+	 * Reads the entries of a {@link SortedRun} one by one
+	 */
+	protected static class RunReader implements Comparable<RunReader> {
+		private final SortedRun run_;
+		private final ObjectInputStream in_;
+		private int remaining_;
+		private DocumentData current_;
+
+		protected RunReader(final SortedRun run) throws IOException {
+			run_ = run;
+			in_ = new ObjectInputStream(new BufferedInputStream(new FileInputStream(run.file_), 65536));
+			remaining_ = run.count_;
+		}
+
+		/**
+		 * Reads the next entry
+		 *
+		 * @return false if the run is exhausted
+		 */
+		protected boolean advance() throws IOException, ClassNotFoundException {
+			if (remaining_ <= 0) {
+				current_ = null;
+				return false;
+			}
+			current_ = readData(in_);
+			remaining_--;
+			return true;
+		}
+
+		protected void close() {
+			try {
+				in_.close();
+			} catch (IOException e) {
+				// the file is deleted anyway
+			}
+			run_.file_.delete();
+		}
+
+		@Override
+		public int compareTo(final RunReader o) {
+			return current_.compareTo(o.current_);
+		}
+	}
+
+	/**
+	 * Merges the sorted runs: the smallest head of all runs is returned next. Only one entry per run is held in memory. The temporary files
+	 * are deleted when the iterator is exhausted or closed.
+	 */
+	public static class MergeIterator implements Iterator<DocumentData> {
+		private final PriorityQueue<RunReader> queue_;
+		private final List<RunReader> readers_;
+
+		protected MergeIterator(final List<SortedRun> runs) throws IOException, ClassNotFoundException {
+			queue_ = new PriorityQueue<RunReader>(Math.max(runs.size(), 1));
+			readers_ = new ArrayList<RunReader>(runs.size());
+			try {
+				for (SortedRun run : runs) {
+					RunReader reader = new RunReader(run);
+					readers_.add(reader);
+					if (reader.advance()) {
+						queue_.add(reader);
+					}
+				}
+			} catch (IOException e) {
+				close();
+				throw e;
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (queue_.isEmpty()) {
+				close();
+				return false;
+			}
+			return true;
+		}
+
+		@Override
+		public DocumentData next() {
+			RunReader reader = queue_.poll();
+			if (reader == null)
+				throw new NoSuchElementException();
+			DocumentData result = reader.current_;
+			try {
+				if (reader.advance()) {
+					queue_.add(reader);
+				}
+			} catch (Exception e) {
+				close();
+				throw new IllegalStateException("Unable to read sorted run " + reader.run_.file_, e);
+			}
+			return result;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		/**
+		 * Deletes the temporary files
+		 */
+		public void close() {
+			queue_.clear();
+			for (RunReader reader : readers_) {
+				reader.close();
+			}
+			readers_.clear();
+		}
+	}
+
+	/** the number of entries after which the stream handles are reset, so the written values can be collected */
+	private static final int RESET_INTERVAL = 1024;
+
 	private List<String> criteria_ = new ArrayList<String>();
 	private transient DocumentCollection sourceColl_;
 	private transient Database database_;
+	private transient long memoryBudget_ = 0;
+	private transient File tempDir_;
+	private transient int count_ = -1;
 
 	public DocumentSorter() {
 		// NTF for serialization
@@ -224,6 +440,7 @@ public class DocumentSorter implements Externalizable {
 	public void setSourceCollection(final DocumentCollection coll) {
 		sourceColl_ = coll;
 		dataset_ = null;
+		count_ = -1;
 	}
 
 	protected void _normalize() {
@@ -295,17 +512,204 @@ public class DocumentSorter implements Externalizable {
 		}
 	}
 
+	/**
+	 * Sets the heap that may be used for the sort data. If the data of the source collection exceeds it, sorted runs are written to
+	 * temporary files and merged. 0 (the default) sorts in memory.
+	 *
+	 * @param bytes
+	 *            the memory budget in bytes
+	 */
+	public void setMemoryBudget(final long bytes) {
+		memoryBudget_ = bytes;
+	}
+
+	public long getMemoryBudget() {
+		return memoryBudget_;
+	}
+
+	/**
+	 * Sets the directory for the temporary files of the external sort. Default is the temp directory of the JVM.
+	 */
+	public void setTempDirectory(final File dir) {
+		tempDir_ = dir;
+	}
+
+	/**
+	 * Reads the source collection and writes a sorted run to disk whenever the data reaches the memory budget.
+	 *
+	 * @return the runs, empty if everything fits into the budget. In that case, the dataset is sorted in memory.
+	 */
+	protected List<SortedRun> _spill() throws IOException {
+		List<String> criteria = getCriteria();
+		if (criteria.isEmpty()) {
+			addCriteria("@created");
+		}
+		if (sourceColl_ == null) {
+			throw new IllegalStateException("Cannot sort from a null DocumentCollection. Please add a DocumentCollection that you want to sort...");
+		}
+		long startTime = System.nanoTime();
+		List<SortedRun> runs = new ArrayList<SortedRun>();
+		List<DocumentData> buffer = new ArrayList<DocumentData>();
+		long bufferSize = 0;
+		int docCount = 0;
+		try {
+			for (Document doc : sourceColl_) {
+				DocumentData data = new DocumentData(doc, criteria);
+				buffer.add(data);
+				bufferSize += data.estimateSize();
+				docCount++;
+				if (bufferSize >= memoryBudget_) {
+					runs.add(writeRun(buffer));
+					buffer.clear();
+					bufferSize = 0;
+				}
+			}
+			if (runs.isEmpty()) {
+				dataset_ = buffer.toArray(new DocumentData[buffer.size()]);
+				_arraySort();
+			} else if (!buffer.isEmpty()) {
+				runs.add(writeRun(buffer));
+			}
+		} catch (IOException e) {
+			for (SortedRun run : runs) {
+				run.file_.delete();
+			}
+			throw e;
+		}
+		count_ = docCount;
+		if (debug) {
+			System.out.println("Wrote " + runs.size() + " sorted runs of " + docCount + " documents in " + (System.nanoTime() - startTime)
+					/ 1000000 + "ms");
+		}
+		return runs;
+	}
+
+	protected SortedRun writeRun(final List<DocumentData> buffer) throws IOException {
+		Collections.sort(buffer);
+		File file = File.createTempFile("docsort", ".run", tempDir_);
+		file.deleteOnExit();
+		ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file), 65536));
+		try {
+			int i = 0;
+			for (DocumentData data : buffer) {
+				writeData(out, data);
+				if (++i % RESET_INTERVAL == 0) {
+					out.reset();
+				}
+			}
+		} finally {
+			out.close();
+		}
+		return new SortedRun(file, buffer.size());
+	}
+
+	/**
+	 * Writes the Externalizable form of the entry, followed by its address
+	 */
+	protected static void writeData(final ObjectOutput out, final DocumentData data) throws IOException {
+		data.writeExternal(out);
+		out.write(data.address_);
+	}
+
+	protected static DocumentData readData(final ObjectInput in) throws IOException, ClassNotFoundException {
+		DocumentData result = new DocumentData();
+		result.readExternal(in);
+		in.readFully(result.address_);
+		return result;
+	}
+
+	/**
+	 * Sorts the source collection and returns the entries in sorted order. With a memory budget, the entries are streamed from the merged
+	 * runs on disk.
+	 *
+	 * @see #setMemoryBudget(long)
+	 */
+	public Iterator<DocumentData> sortedIterator() {
+		if (memoryBudget_ <= 0 || dataset_ != null) {
+			_sort();
+			return Arrays.asList(dataset_).iterator();
+		}
+		try {
+			List<SortedRun> runs = _spill();
+			if (runs.isEmpty()) {
+				return Arrays.asList(dataset_).iterator();
+			}
+			return new MergeIterator(runs);
+		} catch (Exception e) {
+			throw new IllegalStateException("Unable to sort " + count_ + " documents on disk", e);
+		}
+	}
+
+	/**
+	 * @return the note IDs of the source collection in sorted order
+	 * @see #sortedIterator()
+	 */
+	public Iterator<Integer> sortedNoteIDs() {
+		final Iterator<DocumentData> delegate = sortedIterator();
+		return new Iterator<Integer>() {
+			@Override
+			public boolean hasNext() {
+				return delegate.hasNext();
+			}
+
+			@Override
+			public Integer next() {
+				return delegate.next().nid_;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * @return the UNIDs of the source collection in sorted order
+	 * @see #sortedIterator()
+	 */
+	public Iterator<String> sortedUNIDs() {
+		final Iterator<DocumentData> delegate = sortedIterator();
+		return new Iterator<String>() {
+			@Override
+			public boolean hasNext() {
+				return delegate.hasNext();
+			}
+
+			@Override
+			public String next() {
+				return delegate.next().getUNID();
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
 	public DocumentData[] _debugGetDataset() {
 		return dataset_;
 	}
 
 	public DocumentCollection sort() {
 		long startMemory = Runtime.getRuntime().freeMemory();
-		_sort();
-		int[] nids = new int[dataset_.length];
-		//		System.out.println("Beginning merge of " + dataset_.length + " DocumentDatas");
-		for (int i = 0; i < nids.length; i++) {
-			nids[i] = dataset_[i].nid_;
+		int[] nids;
+		if (memoryBudget_ > 0 && dataset_ == null) {
+			// only the note IDs of the result are kept in memory
+			Iterator<DocumentData> it = sortedIterator();
+			nids = new int[getCount()];
+			int i = 0;
+			while (it.hasNext()) {
+				nids[i++] = it.next().nid_;
+			}
+		} else {
+			_sort();
+			nids = new int[dataset_.length];
+			//		System.out.println("Beginning merge of " + dataset_.length + " DocumentDatas");
+			for (int i = 0; i < nids.length; i++) {
+				nids[i] = dataset_[i].nid_;
+			}
 		}
 		DocumentCollection result = new DocumentList(nids, database_);
 		//		for (DocumentData data : dataset_) {
@@ -320,7 +724,7 @@ public class DocumentSorter implements Externalizable {
 	}
 
 	public int getCount() {
-		return dataset_.length;
+		return dataset_ == null ? count_ : dataset_.length;
 	}
 
 	public List<String> getCriteria() {
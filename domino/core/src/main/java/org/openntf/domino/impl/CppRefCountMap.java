@@ -0,0 +1,190 @@
+/*
+ * Copyright 2013
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.openntf.domino.impl;
+
+/**
+ * Counts the references per C++ object id (see {@link Base#GetCppObj(lotus.domino.Base)}).
+ *
+ * The keys are stored as primitive longs in open addressing tables, so no Long/AtomicInteger is created per object. The map is split
+ * into segments, each segment is locked separately, so threads that work on different ids do not block each other. The key 0 is reserved
+ * (= not tracked).
+ *
+ * @author Roland Praml, Foconis AG
+ */
+public class CppRefCountMap {
+	private static final int SEGMENT_SHIFT = 5;
+	private static final int SEGMENTS = 1 << SEGMENT_SHIFT;
+
+	private final Segment[] segments_ = new Segment[SEGMENTS];
+
+	/**
+	 * One part of the map. Linear probing, removal shifts the following entries back, so no tombstones are needed.
+	 */
+	private static final class Segment {
+		private long[] keys_;
+		private int[] counts_;
+		private int size_;
+
+		Segment(final int capacity) {
+			keys_ = new long[capacity];
+			counts_ = new int[capacity];
+		}
+
+		private int indexOf(final long key) {
+			int mask = keys_.length - 1;
+			int i = hash(key) & mask;
+			while (keys_[i] != 0 && keys_[i] != key) {
+				i = (i + 1) & mask;
+			}
+			return i;
+		}
+
+		synchronized int increment(final long key) {
+			int i = indexOf(key);
+			if (keys_[i] == 0) {
+				if ((size_ + 1) * 4 > keys_.length * 3) {
+					grow();
+					i = indexOf(key);
+				}
+				keys_[i] = key;
+				size_++;
+			}
+			return ++counts_[i];
+		}
+
+		synchronized int decrement(final long key) {
+			int i = indexOf(key);
+			if (keys_[i] == 0)
+				return 0;
+			int ret = --counts_[i];
+			if (ret < 1) {
+				remove(i);
+			}
+			return ret;
+		}
+
+		synchronized int get(final long key) {
+			return counts_[indexOf(key)];
+		}
+
+		synchronized int size() {
+			return size_;
+		}
+
+		private void remove(int i) {
+			int mask = keys_.length - 1;
+			int j = i;
+			for (;;) {
+				j = (j + 1) & mask;
+				if (keys_[j] == 0)
+					break;
+				int home = hash(keys_[j]) & mask;
+				// move entry j to the free slot i, if i lies on the probe path from home to j
+				if (((j - home) & mask) >= ((j - i) & mask)) {
+					keys_[i] = keys_[j];
+					counts_[i] = counts_[j];
+					i = j;
+				}
+			}
+			keys_[i] = 0;
+			counts_[i] = 0;
+			size_--;
+		}
+
+		private void grow() {
+			long[] oldKeys = keys_;
+			int[] oldCounts = counts_;
+			keys_ = new long[oldKeys.length * 2];
+			counts_ = new int[oldKeys.length * 2];
+			for (int k = 0; k < oldKeys.length; k++) {
+				if (oldKeys[k] != 0) {
+					int i = indexOf(oldKeys[k]);
+					keys_[i] = oldKeys[k];
+					counts_[i] = oldCounts[k];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates a new map
+	 *
+	 * @param initialCapacity
+	 *            the expected number of ids
+	 */
+	public CppRefCountMap(final int initialCapacity) {
+		int cap = 16;
+		while (cap * SEGMENTS * 3 / 4 < initialCapacity) {
+			cap <<= 1;
+		}
+		for (int i = 0; i < SEGMENTS; i++) {
+			segments_[i] = new Segment(cap);
+		}
+	}
+
+	private static int hash(final long key) {
+		// C++ pointers are aligned, so the low bits do not vary much: mix all bits (murmur3 finalizer)
+		long h = key;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return (int) h;
+	}
+
+	private Segment segmentFor(final long key) {
+		if (key == 0)
+			throw new IllegalArgumentException("cppId cannot be 0");
+		return segments_[hash(key) >>> (32 - SEGMENT_SHIFT)];
+	}
+
+	/**
+	 * Adds a reference to the given id
+	 *
+	 * @return the new count
+	 */
+	public int increment(final long cppId) {
+		return segmentFor(cppId).increment(cppId);
+	}
+
+	/**
+	 * Removes a reference from the given id. The id is removed from the map, when the last reference is gone.
+	 *
+	 * @return the remaining count, 0 if this was the last reference (or the id was not in the map)
+	 */
+	public int decrement(final long cppId) {
+		return segmentFor(cppId).decrement(cppId);
+	}
+
+	/**
+	 * Returns the current count of the given id
+	 */
+	public int get(final long cppId) {
+		return segmentFor(cppId).get(cppId);
+	}
+
+	/**
+	 * Returns the number of tracked ids
+	 */
+	public int size() {
+		int ret = 0;
+		for (Segment seg : segments_) {
+			ret += seg.size();
+		}
+		return ret;
+	}
+}
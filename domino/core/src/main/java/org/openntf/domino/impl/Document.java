@@ -4106,7 +4106,7 @@ public class Document extends BaseResurrectable<org.openntf.domino.Document, lot
 				if (i == chunks - 1 && lastChunkSize > 0) {
 					//					System.out.println("DEBUG: Writing last chunk");
 					byte[] lastBuffer = new byte[lastChunkSize];
-					System.arraycopy(data, lastChunkSize, lastBuffer, 0, lastBuffer.length);
+					System.arraycopy(data, i * chunkSize, lastBuffer, 0, lastBuffer.length);
 					writeBinaryChunk(name, i, lastBuffer);
 				} else {
 					System.arraycopy(data, i * chunkSize, buffer, 0, buffer.length);
@@ -4114,8 +4114,13 @@ public class Document extends BaseResurrectable<org.openntf.domino.Document, lot
 				}
 			}
 		}
-		while (hasItem(name + "$" + (++i))) {
+		// remove the chunks of longer content written before
+		if (i == 0) {
+			i = 1;
+		}
+		while (hasItem(name + "$" + i)) {
 			removeItem(name + "$" + i);
+			i++;
 		}
 
 	}
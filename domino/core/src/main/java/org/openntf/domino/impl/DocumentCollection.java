@@ -31,6 +31,7 @@ import org.openntf.domino.View;
 import org.openntf.domino.WrapperFactory;
 import org.openntf.domino.ext.Session.Fixes;
 import org.openntf.domino.iterators.DocumentCollectionIterator;
+import org.openntf.domino.types.NoteIdBitmap;
 import org.openntf.domino.utils.DominoUtils;
 import org.openntf.domino.utils.TypeUtils;
 
@@ -593,6 +594,11 @@ public class DocumentCollection extends BaseThreadSafe<org.openntf.domino.Docume
 	 */
 	@Override
 	public void intersect(final lotus.domino.Base documents) {
+		NoteIdBitmap noteIds = toNoteIdBitmap(documents);
+		if (noteIds != null) {
+			intersect(noteIds);
+			return;
+		}
 		try {
 			getDelegate().intersect(toLotus(documents));
 		} catch (NotesException e) {
@@ -638,6 +644,11 @@ public class DocumentCollection extends BaseThreadSafe<org.openntf.domino.Docume
 	 */
 	@Override
 	public void merge(final lotus.domino.Base documents) {
+		NoteIdBitmap noteIds = toNoteIdBitmap(documents);
+		if (noteIds != null) {
+			merge(noteIds);
+			return;
+		}
 		try {
 			getDelegate().merge(toLotus(documents));
 		} catch (NotesException e) {
@@ -683,6 +694,11 @@ public class DocumentCollection extends BaseThreadSafe<org.openntf.domino.Docume
 	 */
 	@Override
 	public void subtract(final lotus.domino.Base documents) {
+		NoteIdBitmap noteIds = toNoteIdBitmap(documents);
+		if (noteIds != null) {
+			subtract(noteIds);
+			return;
+		}
 		try {
 			getDelegate().subtract(toLotus(documents));
 		} catch (NotesException e) {
@@ -929,6 +945,97 @@ public class DocumentCollection extends BaseThreadSafe<org.openntf.domino.Docume
 		return result;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.openntf.domino.ext.DocumentCollection#getNoteIdBitmap()
+	 */
+	@Override
+	public NoteIdBitmap getNoteIdBitmap() {
+		// the order does not matter here, so the note IDs are read in one call instead of walking the documents
+		try {
+			lotus.domino.DocumentCollection delegate = getDelegate();
+			lotus.domino.NoteCollection nc = delegate.getParent().createNoteCollection(false);
+			nc.add(delegate);
+			int[] noteIds = nc.getNoteIDs();
+			nc.recycle();
+			if (noteIds != null) {
+				return NoteIdBitmap.valueOf(noteIds);
+			}
+		} catch (NotesException e) {
+			DominoUtils.handleException(e);
+		}
+		return new NoteIdBitmap();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.openntf.domino.ext.DocumentCollection#intersect(org.openntf.domino.types.NoteIdBitmap)
+	 */
+	@Override
+	public void intersect(final NoteIdBitmap noteIds) {
+		// only the difference is passed to the delegate
+		NoteIdBitmap removed = getNoteIdBitmap().andNot(noteIds);
+		try {
+			lotus.domino.DocumentCollection delegate = getDelegate();
+			for (int noteId : removed.toArray()) {
+				delegate.subtract(noteId);
+			}
+		} catch (NotesException e) {
+			DominoUtils.handleException(e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.openntf.domino.ext.DocumentCollection#merge(org.openntf.domino.types.NoteIdBitmap)
+	 */
+	@Override
+	public void merge(final NoteIdBitmap noteIds) {
+		NoteIdBitmap added = noteIds.andNot(getNoteIdBitmap());
+		try {
+			lotus.domino.DocumentCollection delegate = getDelegate();
+			for (int noteId : added.toArray()) {
+				delegate.merge(noteId);
+			}
+		} catch (NotesException e) {
+			DominoUtils.handleException(e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.openntf.domino.ext.DocumentCollection#subtract(org.openntf.domino.types.NoteIdBitmap)
+	 */
+	@Override
+	public void subtract(final NoteIdBitmap noteIds) {
+		NoteIdBitmap removed = noteIds.and(getNoteIdBitmap());
+		try {
+			lotus.domino.DocumentCollection delegate = getDelegate();
+			for (int noteId : removed.toArray()) {
+				delegate.subtract(noteId);
+			}
+		} catch (NotesException e) {
+			DominoUtils.handleException(e);
+		}
+	}
+
+	/**
+	 * Returns the note IDs of collections that have no native DocumentCollection (DocumentList, NoteCollection), null for all other
+	 * arguments
+	 */
+	protected static NoteIdBitmap toNoteIdBitmap(final lotus.domino.Base documents) {
+		if (documents instanceof org.openntf.domino.DocumentList) {
+			return ((org.openntf.domino.DocumentList) documents).getNoteIdBitmap();
+		} else if (documents instanceof org.openntf.domino.NoteCollection) {
+			return ((org.openntf.domino.NoteCollection) documents).getNoteIdBitmap();
+		}
+		return null;
+	}
+
 	@Override
 	protected WrapperFactory getFactory() {
 		return parent.getAncestorSession().getFactory();
@@ -44,6 +44,10 @@ public class DominoReference extends WeakReference<Base<?>> {
 
 	private boolean noRecycle = false;
 
+	/** the cache that owns this reference and whether it is still counted in its budget (BUDGETED mode only) */
+	private DominoReferenceCache cache_;
+	private boolean counted_;
+
 	/**
 	 * Instantiates a new domino reference.
 	 *
@@ -64,6 +68,32 @@ public class DominoReference extends WeakReference<Base<?>> {
 		this.cppId_ = cppId;
 	}
 
+	/**
+	 * Sets the owning cache and marks the reference as counted
+	 */
+	void setCache(final DominoReferenceCache cache) {
+		cache_ = cache;
+		counted_ = true;
+	}
+
+	/**
+	 * Returns the cache that owns this reference
+	 */
+	DominoReferenceCache getCache() {
+		return cache_;
+	}
+
+	/**
+	 * Removes the reference from the budget of the owning cache.
+	 *
+	 * @return true if it was counted before
+	 */
+	boolean uncount() {
+		boolean ret = counted_;
+		counted_ = false;
+		return ret;
+	}
+
 	//void clearLotusReference() {
 	//	delegate_ = null;
 	//}
@@ -17,11 +17,13 @@ package org.openntf.domino.impl;
 
 import java.lang.ref.ReferenceQueue;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -40,6 +42,11 @@ import org.openntf.domino.utils.Factory;
  *
  * The DominoReference tracks the wrapper lifetime and caches the delegate and key, so that it can do the cleanup if the wrapper dies!
  *
+ * There are two {@link RecycleMode}s: <code>GC_INTERVAL</code> (the default) polls the queue of the cache and calls System.gc() every
+ * {@link #GARBAGE_INTERVAL} wraps. <code>BUDGETED</code> never calls the GC: All caches share one queue, a background reclaimer thread
+ * hands the dead references back to the cache (= thread) that created them, as the delegate must be recycled in its own thread. If a
+ * thread (or all threads together) hold more live handles than the budget allows, the thread waits a short time for the reclaimer.
+ *
  * @author Roland Praml, Foconis AG
  */
 
@@ -49,7 +56,7 @@ public class DominoReferenceCache {
 	/** The delegate map contains the value wrapped in phantomReferences) **/
 	//	private Map<Long, DominoReference> map = new HashMap<Long, DominoReference>(16, 0.75F);
 	private Map<lotus.domino.Base, DominoReference> map = new IdentityHashMap<lotus.domino.Base, DominoReference>(2048);
-	private Map<Long, AtomicInteger> cppMap = Collections.synchronizedMap(new HashMap<Long, AtomicInteger>(2048));
+	private CppRefCountMap cppMap = new CppRefCountMap(2048);
 
 	/** This is the queue with unreachable refs **/
 	private ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
@@ -60,6 +67,52 @@ public class DominoReferenceCache {
 	private static AtomicInteger cache_counter = new AtomicInteger();
 	public static int GARBAGE_INTERVAL = 1024;
 
+	/**
+	 * How dead wrappers are detected
+	 */
+	public enum RecycleMode {
+		/** poll the queue when wrapping objects and call System.gc() every GARBAGE_INTERVAL wraps */
+		GC_INTERVAL,
+		/** a reclaimer thread collects the dead references, live handles are limited by budgets. No explicit GC */
+		BUDGETED
+	}
+
+	/** The mode for new caches. Can be set with the system property <code>org.openntf.domino.recycleMode</code> */
+	public static RecycleMode RECYCLE_MODE = getRecycleModeProperty();
+
+	/** max. live handles per thread in BUDGETED mode */
+	public static int THREAD_BUDGET = 10000;
+
+	/** max. live handles of all threads in BUDGETED mode */
+	public static int GLOBAL_BUDGET = 200000;
+
+	/** how long (ms) a thread waits for the reclaimer, if a budget is exceeded */
+	public static int BUDGET_WAIT = 5;
+
+	/** the shared queue and the reclaimer thread of the BUDGETED mode */
+	private static ReferenceQueue<Object> sharedQueue_;
+	private static Thread reclaimer_;
+
+	/** counters of the BUDGETED mode */
+	private static final AtomicInteger globalLive_ = new AtomicInteger();
+	private static final AtomicLong reclaimed_ = new AtomicLong();
+	private static final AtomicLong budgetExceeded_ = new AtomicLong();
+	private static final AtomicLong budgetTimeouts_ = new AtomicLong();
+
+	private final RecycleMode mode_;
+
+	/** the references that the reclaimer has handed back to this cache */
+	private final BlockingQueue<DominoReference> inbox_;
+
+	/** the live handles of this cache */
+	private int live_;
+
+	/** no backpressure until live_ exceeds this value */
+	private int nextWait_;
+
+	/** set when the thread of this cache terminates. The reclaimer drops the references of a terminated cache */
+	private volatile boolean terminated_;
+
 	/**
 	 * Creates a new DominoReferencCache
 	 *
@@ -70,6 +123,70 @@ public class DominoReferenceCache {
 	public DominoReferenceCache() {
 		super();
 		//autorecycle_ = autorecycle;
+		mode_ = RECYCLE_MODE;
+		if (mode_ == RecycleMode.BUDGETED) {
+			inbox_ = new LinkedBlockingQueue<DominoReference>();
+			queue = getSharedQueue();
+		} else {
+			inbox_ = null;
+		}
+	}
+
+	private static RecycleMode getRecycleModeProperty() {
+		String mode = null;
+		try {
+			mode = System.getProperty("org.openntf.domino.recycleMode");
+			if (mode != null) {
+				return RecycleMode.valueOf(mode.trim().toUpperCase());
+			}
+		} catch (SecurityException e) {
+			// not allowed to read. Use default
+		} catch (IllegalArgumentException e) {
+			log_.log(Level.WARNING, "Unknown recycle mode " + mode);
+		}
+		return RecycleMode.GC_INTERVAL;
+	}
+
+	/**
+	 * Returns the queue that is shared by all caches in BUDGETED mode and starts the reclaimer thread
+	 */
+	private static synchronized ReferenceQueue<Object> getSharedQueue() {
+		if (sharedQueue_ == null) {
+			sharedQueue_ = new ReferenceQueue<Object>();
+			reclaimer_ = new Thread(new Reclaimer(sharedQueue_), "DominoReferenceReclaimer");
+			reclaimer_.setDaemon(true);
+			reclaimer_.start();
+		}
+		return sharedQueue_;
+	}
+
+	/**
+	 * The reclaimer waits for dead references and hands them back to the cache they belong to. It does not recycle anything itself, as the
+	 * lotus objects must be recycled in the thread that created them.
+	 */
+	private static class Reclaimer implements Runnable {
+		private final ReferenceQueue<Object> queue_;
+
+		Reclaimer(final ReferenceQueue<Object> queue) {
+			queue_ = queue;
+		}
+
+		@Override
+		public void run() {
+			for (;;) {
+				try {
+					DominoReference ref = (DominoReference) queue_.remove();
+					DominoReferenceCache cache = ref.getCache();
+					if (cache != null && !cache.terminated_) {
+						cache.inbox_.add(ref);
+					}
+				} catch (InterruptedException e) {
+					return;
+				} catch (Throwable t) {
+					log_.log(Level.SEVERE, "Error in reference reclaimer", t);
+				}
+			}
+		}
 	}
 
 	/**
@@ -133,13 +250,7 @@ public class DominoReferenceCache {
 		if (value instanceof SessionDescendant
 				&& ((SessionDescendant) value).getAncestorSession().isFixEnabled(Fixes.PEDANTIC_GC_TRACKING)) {
 			cppId = org.openntf.domino.impl.Base.GetCppObj(delegate);
-			synchronized (cppMap) {
-				if (!cppMap.containsKey(cppId)) {
-					cppMap.put(cppId, new AtomicInteger(1));
-				} else {
-					cppMap.get(cppId).incrementAndGet();
-				}
-			}
+			cppMap.increment(cppId);
 		}
 
 		// create and enqueue a reference that tracks lifetime of value
@@ -148,6 +259,17 @@ public class DominoReferenceCache {
 			throw new IllegalArgumentException("key cannot be 0");
 		}
 		Factory.countLotus(delegate.getClass());
+		if (mode_ == RecycleMode.BUDGETED) {
+			ref.setCache(this);
+			live_++;
+			globalLive_.incrementAndGet();
+			DominoReference old = map.put(delegate, ref);
+			if (old != null) {
+				// the old reference is no longer tracked by the map
+				release(old);
+			}
+			return getReferenceObject(old);
+		}
 
 		return getReferenceObject(map.put(delegate, ref));
 	}
@@ -157,7 +279,28 @@ public class DominoReferenceCache {
 	 *
 	 */
 	public long processQueue(final lotus.domino.Base current, final Collection<lotus.domino.Base> prevent_recycling) {
-		long result = 0;
+		if (mode_ == RecycleMode.BUDGETED) {
+			long result = processReferences(current, prevent_recycling);
+			if (live_ > nextWait_ && (live_ > THREAD_BUDGET || globalLive_.get() > GLOBAL_BUDGET)) {
+				// backpressure: give the GC and the reclaimer some time, but do not force a GC
+				budgetExceeded_.incrementAndGet();
+				try {
+					DominoReference ref = inbox_.poll(BUDGET_WAIT, TimeUnit.MILLISECONDS);
+					if (ref == null) {
+						// nothing died. Do not wait again for the next few handles, otherwise every call would wait until the next GC
+						budgetTimeouts_.incrementAndGet();
+						nextWait_ = live_ + (THREAD_BUDGET >> 3);
+					} else {
+						nextWait_ = 0;
+						inbox_.add(ref);
+						result += processReferences(current, prevent_recycling);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return result;
+		}
 		if (current instanceof lotus.domino.Item) {
 			// do not count items, as we have many of them
 		} else if (current instanceof lotus.domino.MIMEEntity) {
@@ -172,11 +315,20 @@ public class DominoReferenceCache {
 				System.gc();
 			}
 		}
+		return processReferences(current, prevent_recycling);
+	}
+
+	/**
+	 * Recycles the delegates of all dead references.
+	 */
+	private long processReferences(final lotus.domino.Base current, final Collection<lotus.domino.Base> prevent_recycling) {
+		long result = 0;
 		DominoReference ref = null;
 
 		boolean died = false;
-		while ((ref = (DominoReference) queue.poll()) != null) {
+		while ((ref = poll()) != null) {
 			Base unrefLotus = ref.getDelegate();
+			release(ref);
 
 			map.remove(unrefLotus);
 			if (unrefLotus == null) {
@@ -213,12 +365,9 @@ public class DominoReferenceCache {
 			boolean recycle = false;
 			if (cppId != 0) {
 				// Then it must have had tracking enabled
-				synchronized (cppMap) {
-					if (cppMap.get(cppId).decrementAndGet() < 1) {
-						// Then this must have been the last ref for that CPP ID
-						recycle = true;
-						cppMap.remove(cppId);
-					}
+				if (cppMap.decrement(cppId) < 1) {
+					// Then this must have been the last ref for that CPP ID
+					recycle = true;
 				}
 			} else {
 				recycle = true;
@@ -248,6 +397,64 @@ public class DominoReferenceCache {
 		return result;
 	}
 
+	/**
+	 * Returns the next dead reference or null
+	 */
+	private DominoReference poll() {
+		if (inbox_ == null) {
+			return (DominoReference) queue.poll();
+		} else {
+			return inbox_.poll();
+		}
+	}
+
+	/**
+	 * Removes the reference from the budget. Every reference is counted only once
+	 */
+	private void release(final DominoReference ref) {
+		if (ref.getCache() == this && ref.uncount()) {
+			live_--;
+			globalLive_.decrementAndGet();
+			reclaimed_.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Called when the thread of this cache terminates. In BUDGETED mode the handles that are still counted are removed from the global
+	 * budget (they are recycled with the sessions of the thread) and the reclaimer stops handing references back to this cache. The cache
+	 * must not be used afterwards.
+	 */
+	public void terminate() {
+		if (mode_ != RecycleMode.BUDGETED)
+			return;
+		terminated_ = true;
+		for (DominoReference ref : map.values()) {
+			ref.uncount();
+		}
+		map.clear();
+		inbox_.clear();
+		// also the references that died but were not handed back yet
+		globalLive_.addAndGet(-live_);
+		live_ = 0;
+	}
+
+	/**
+	 * Returns true if {@link #terminate()} was called in BUDGETED mode
+	 */
+	public boolean isTerminated() {
+		return terminated_;
+	}
+
+	/**
+	 * Returns the counters of the BUDGETED mode, for {@link Factory#dumpCounters(boolean)}
+	 */
+	public static String dumpCounters() {
+		if (sharedQueue_ == null)
+			return "";
+		return "LiveHandles: " + globalLive_.get() + " Reclaimed: " + reclaimed_.get() + " BudgetExceeded: " + budgetExceeded_.get()
+				+ " BudgetTimeouts: " + budgetTimeouts_.get();
+	}
+
 	public long finishThreadSafes() {
 		long ret = 0;
 		//NTF can't remove values from a map while iterating over them...
@@ -260,6 +467,7 @@ public class DominoReferenceCache {
 			if (ref.recycle()) {
 				ret++;
 			}
+			release(ref);
 			map.remove(ref.getDelegate());
 		}
 		return ret;
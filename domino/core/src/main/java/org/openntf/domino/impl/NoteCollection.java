@@ -28,6 +28,7 @@ import org.openntf.domino.DateTime;
 import org.openntf.domino.Session;
 import org.openntf.domino.WrapperFactory;
 import org.openntf.domino.iterators.NoteIterator;
+import org.openntf.domino.types.NoteIdBitmap;
 import org.openntf.domino.utils.DominoUtils;
 
 // TODO: Auto-generated Javadoc
@@ -117,6 +118,11 @@ public class NoteCollection extends BaseThreadSafe<org.openntf.domino.NoteCollec
 	 */
 	@Override
 	public void add(final lotus.domino.DocumentCollection additionSpecifier) {
+		if (additionSpecifier instanceof org.openntf.domino.DocumentList) {
+			// a DocumentList has no native collection
+			add(((org.openntf.domino.DocumentList) additionSpecifier).getNoteIdBitmap());
+			return;
+		}
 		try {
 			// TODO Figure out why the normal add() line with the DC throws a NotesException("Invalid object type for method argument")
 			//if (additionSpecifier instanceof lotus.domino.DocumentCollection) {
@@ -319,6 +325,58 @@ public class NoteCollection extends BaseThreadSafe<org.openntf.domino.NoteCollec
 		return null;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.openntf.domino.ext.NoteCollection#getNoteIdBitmap()
+	 */
+	@Override
+	public NoteIdBitmap getNoteIdBitmap() {
+		int[] noteIds = getNoteIDs();
+		return noteIds == null ? new NoteIdBitmap() : NoteIdBitmap.valueOf(noteIds);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.openntf.domino.ext.NoteCollection#add(org.openntf.domino.types.NoteIdBitmap)
+	 */
+	@Override
+	public void add(final NoteIdBitmap noteIds) {
+		if (!noteIds.isEmpty()) {
+			add(noteIds.toArray());
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.openntf.domino.ext.NoteCollection#intersect(org.openntf.domino.types.NoteIdBitmap)
+	 */
+	@Override
+	public void intersect(final NoteIdBitmap noteIds) {
+		setNoteIds(getNoteIdBitmap().and(noteIds));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.openntf.domino.ext.NoteCollection#remove(org.openntf.domino.types.NoteIdBitmap)
+	 */
+	@Override
+	public void remove(final NoteIdBitmap noteIds) {
+		setNoteIds(getNoteIdBitmap().andNot(noteIds));
+	}
+
+	/**
+	 * Replaces the content of the collection. The result of a set operation is computed on the bitmaps and loaded in one call, instead of
+	 * one call per note.
+	 */
+	protected void setNoteIds(final NoteIdBitmap noteIds) {
+		clearCollection();
+		add(noteIds);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 *
@@ -864,6 +922,10 @@ public class NoteCollection extends BaseThreadSafe<org.openntf.domino.NoteCollec
 	 */
 	@Override
 	public void intersect(final lotus.domino.DocumentCollection collection) {
+		if (collection instanceof org.openntf.domino.DocumentList) {
+			intersect(((org.openntf.domino.DocumentList) collection).getNoteIdBitmap());
+			return;
+		}
 		try {
 			getDelegate().intersect(toLotus(collection));
 		} catch (NotesException e) {
@@ -1025,6 +1087,10 @@ public class NoteCollection extends BaseThreadSafe<org.openntf.domino.NoteCollec
 	 */
 	@Override
 	public void remove(final lotus.domino.DocumentCollection collection) {
+		if (collection instanceof org.openntf.domino.DocumentList) {
+			remove(((org.openntf.domino.DocumentList) collection).getNoteIdBitmap());
+			return;
+		}
 		try {
 			getDelegate().remove(toLotus(collection));
 		} catch (NotesException e) {
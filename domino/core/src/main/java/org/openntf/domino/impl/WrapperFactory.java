@@ -104,20 +104,27 @@ public class WrapperFactory extends BaseImpl<lotus.domino.Base> implements org.o
 
 	private long clearCaches() {
 		long result = 0;
-		// call gc once before processing the queues
-		System.gc();
-		try {
-			//give the gc some ms (not too much, we do not want to delay HTTP-Requests!
-			Thread.sleep(1);
-		} catch (InterruptedException e) {
-			// and ignore this
-			//DominoUtils.handleException(e);
+		if (DominoReferenceCache.RECYCLE_MODE == DominoReferenceCache.RecycleMode.GC_INTERVAL) {
+			// call gc once before processing the queues. (In BUDGETED mode, the reclaimer does the work)
+			System.gc();
+			try {
+				//give the gc some ms (not too much, we do not want to delay HTTP-Requests!
+				Thread.sleep(1);
+			} catch (InterruptedException e) {
+				// and ignore this
+				//DominoUtils.handleException(e);
+			}
 		}
 		// TODO: Recycle all?
 		//System.out.println("Online objects: " + Factory.getActiveObjectCount());
 		DominoReferenceCache rc = referenceCache.get();
 		result = rc.processQueue(null, null);
 		result += rc.finishThreadSafes();
+		// this is called when the thread terminates. Remove the remaining handles from the budget, the thread gets a new cache
+		rc.terminate();
+		if (rc.isTerminated()) {
+			referenceCache.remove();
+		}
 		//System.out.println("Online objects: " + Factory.getActiveObjectCount());
 		clearLWDCache();
 		return result;
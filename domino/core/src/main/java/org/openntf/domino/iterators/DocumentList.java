@@ -20,6 +20,7 @@ import org.openntf.domino.DocumentCollection;
 import org.openntf.domino.View;
 import org.openntf.domino.annotations.Incomplete;
 import org.openntf.domino.exceptions.UnimplementedException;
+import org.openntf.domino.types.NoteIdBitmap;
 import org.openntf.domino.utils.CollectionUtils;
 import org.openntf.domino.utils.DominoUtils;
 import org.openntf.domino.utils.TypeUtils;
@@ -59,32 +60,26 @@ public class DocumentList extends BaseImpl<lotus.domino.DocumentCollection>imple
 		return intersectNids(nids1, nids2);
 	}
 
+	/**
+	 * Returns the note IDs of <code>nids1</code> that are also in <code>nids2</code>, in the order of <code>nids1</code>
+	 */
 	public static int[] intersectNids(final int[] nids1, final int[] nids2) {
-		boolean largerIs1 = nids1.length >= nids2.length;
-		int[] search = null;
-		int[] temp = new int[Math.max(nids1.length, nids2.length)];
-		if (largerIs1) {
-			search = Arrays.copyOf(nids1, nids1.length);
-		} else {
-			search = Arrays.copyOf(nids2, nids2.length);
-		}
-		Arrays.sort(search);
-		int hitCount = 0;
-		if (largerIs1) {
-			for (int nid : nids2) {
-				if (Arrays.binarySearch(search, nid) >= 0) {
-					temp[hitCount++] = nid;
-				}
-			}
-		} else {
-			for (int nid : nids1) {
-				if (Arrays.binarySearch(search, nid) >= 0) {
-					temp[hitCount++] = nid;
-				}
+		return filterNids(nids1, NoteIdBitmap.valueOf(nids2), true);
+	}
+
+	/**
+	 * Returns the note IDs of the array that are (<code>keep</code> = true) or are not (<code>keep</code> = false) in the bitmap. The
+	 * order of the array is preserved.
+	 */
+	public static int[] filterNids(final int[] nids, final NoteIdBitmap bitmap, final boolean keep) {
+		int[] temp = new int[nids.length];
+		int count = 0;
+		for (int nid : nids) {
+			if (bitmap.contains(nid) == keep) {
+				temp[count++] = nid;
 			}
 		}
-		int[] result = Arrays.copyOf(temp, hitCount);
-		return result;
+		return count == nids.length ? temp : Arrays.copyOf(temp, count);
 	}
 
 	public static int[] diffNids(final int[] nids1, final Collection<Integer> nidList) {
@@ -92,32 +87,11 @@ public class DocumentList extends BaseImpl<lotus.domino.DocumentCollection>imple
 		return diffNids(nids1, nids2);
 	}
 
+	/**
+	 * Returns the note IDs of <code>nids1</code> that are not in <code>nids2</code>, in the order of <code>nids1</code>
+	 */
 	public static int[] diffNids(final int[] nids1, final int[] nids2) {
-		boolean largerIs1 = nids1.length >= nids2.length;
-		int[] search = null;
-		int[] temp = new int[Math.max(nids1.length, nids2.length)];
-		if (largerIs1) {
-			search = Arrays.copyOf(nids1, nids1.length);
-		} else {
-			search = Arrays.copyOf(nids2, nids2.length);
-		}
-		Arrays.sort(search);
-		int missCount = 0;
-		if (largerIs1) {
-			for (int nid : nids2) {
-				if (Arrays.binarySearch(search, nid) < 0) {
-					temp[missCount++] = nid;
-				}
-			}
-		} else {
-			for (int nid : nids1) {
-				if (Arrays.binarySearch(search, nid) < 0) {
-					temp[missCount++] = nid;
-				}
-			}
-		}
-		int[] result = Arrays.copyOf(temp, missCount);
-		return result;
+		return filterNids(nids1, NoteIdBitmap.valueOf(nids2), false);
 	}
 
 	public static int findNid(final int[] nids, final int nid) {
@@ -132,20 +106,15 @@ public class DocumentList extends BaseImpl<lotus.domino.DocumentCollection>imple
 		return -1;
 	}
 
+	/**
+	 * Returns the position in <code>nids</code> for every note ID of <code>nidsToFind</code>, -1 if the note ID is not found
+	 */
 	public static int[] findAllNids(final int[] nids, final int[] nidsToFind) {
-		//TODO - NTF
 		if (nids != null && nids.length > 0 && nidsToFind != null && nidsToFind.length > 0) {
+			long[] index = indexNids(nids);
 			int[] results = new int[nidsToFind.length];
 			for (int i = 0; i < results.length; i++) {
-				int pos = -1;
-				int nid = nidsToFind[i];
-				results[i] = pos;
-				for (int n : nids) {
-					pos++;
-					if (n == nid)
-						results[i] = pos;
-					break;
-				}
+				results[i] = findInIndex(index, nidsToFind[i]);
 			}
 			return results;
 		} else {
@@ -153,24 +122,44 @@ public class DocumentList extends BaseImpl<lotus.domino.DocumentCollection>imple
 		}
 	}
 
+	/**
+	 * Sorts the note IDs together with their positions: (nid &lt;&lt; 32 | position)
+	 */
+	private static long[] indexNids(final int[] nids) {
+		long[] index = new long[nids.length];
+		for (int i = 0; i < nids.length; i++) {
+			index[i] = ((long) nids[i] << 32) | i;
+		}
+		Arrays.sort(index);
+		return index;
+	}
+
+	private static int findInIndex(final long[] index, final int nid) {
+		int pos = Arrays.binarySearch(index, (long) nid << 32);
+		if (pos < 0) {
+			pos = -pos - 1;
+		}
+		if (pos < index.length && (int) (index[pos] >> 32) == nid) {
+			return (int) index[pos];
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the positions in <code>nids</code> of the note IDs of <code>nidsToFind</code> that are found
+	 */
 	public static int[] findOnlyMatchedNids(final int[] nids, final int[] nidsToFind) {
-		//TODO - NTF
 		if (nids != null && nids.length > 0 && nidsToFind != null && nidsToFind.length > 0) {
+			long[] index = indexNids(nids);
 			int[] temp = new int[nidsToFind.length];
 			int hitCount = 0;
-			for (int i = 0; i < temp.length; i++) {
-				int pos = -1;
-				int nid = nidsToFind[i];
-				for (int n : nids) {
-					pos++;
-					if (n == nid)
-						temp[hitCount++] = pos;
-					break;
+			for (int nid : nidsToFind) {
+				int pos = findInIndex(index, nid);
+				if (pos >= 0) {
+					temp[hitCount++] = pos;
 				}
 			}
-			int[] results = new int[hitCount];
-			System.arraycopy(temp, 0, results, 0, hitCount);
-			return results;
+			return Arrays.copyOf(temp, hitCount);
 		} else {
 			return null;
 		}
@@ -255,6 +244,14 @@ public class DocumentList extends BaseImpl<lotus.domino.DocumentCollection>imple
 		nids_ = nids;
 	}
 
+	/**
+	 * Creates an unsorted DocumentList with the note IDs of the bitmap
+	 */
+	public DocumentList(final NoteIdBitmap nids, final org.openntf.domino.Database parent) {
+		database = parent;
+		nids_ = nids.toArray();
+	}
+
 	public int[] getNids() {
 		if (usingList_) {
 			return TypeUtils.toIntArray(getNidList());
@@ -275,6 +272,40 @@ public class DocumentList extends BaseImpl<lotus.domino.DocumentCollection>imple
 		return nidList_;
 	}
 
+	/**
+	 * Replaces the note IDs after a set operation
+	 */
+	protected void setNids(final int[] nids) {
+		nids_ = nids;
+		nidList_ = null;
+		usingList_ = false;
+	}
+
+	@Override
+	public NoteIdBitmap getNoteIdBitmap() {
+		return NoteIdBitmap.valueOf(getNids());
+	}
+
+	/**
+	 * Returns the note IDs of a collection argument as bitmap, null if the argument is not a collection
+	 */
+	protected static NoteIdBitmap toNoteIdBitmap(final lotus.domino.Base base) {
+		if (base instanceof org.openntf.domino.DocumentCollection) {
+			return ((org.openntf.domino.DocumentCollection) base).getNoteIdBitmap();
+		} else if (base instanceof org.openntf.domino.NoteCollection) {
+			return ((org.openntf.domino.NoteCollection) base).getNoteIdBitmap();
+		} else if (base instanceof lotus.domino.DocumentCollection) {
+			return NoteIdBitmap.valueOf(CollectionUtils.getNoteIDs((lotus.domino.DocumentCollection) base));
+		} else if (base instanceof lotus.domino.NoteCollection) {
+			try {
+				return NoteIdBitmap.valueOf(((lotus.domino.NoteCollection) base).getNoteIDs());
+			} catch (NotesException ne) {
+				DominoUtils.handleException(ne);
+			}
+		}
+		return null;
+	}
+
 	@Override
 	public void addDocument(final lotus.domino.Document doc) {
 		usingList_ = true;
@@ -319,27 +350,9 @@ public class DocumentList extends BaseImpl<lotus.domino.DocumentCollection>imple
 				return hasNid(nids_, nid);
 			}
 		} else if (base instanceof lotus.domino.DocumentCollection) {
-			if (usingList_) {
-				if (getSize((lotus.domino.DocumentCollection) base) > getNidList().size())
-					return false;
-			} else {
-				if (getSize((lotus.domino.DocumentCollection) base) > nids_.length)
-					return false;
-			}
-			int[] nids = CollectionUtils.getNoteIDs((lotus.domino.DocumentCollection) base);
-			if (usingList_) {
-				List<Integer> list = new ArrayList<Integer>();
-				for (int n : nids) {
-					list.add(n);
-				}
-				return getNidList().containsAll(list);
-			} else {
-				for (int nid : nids) {
-					if (!hasNid(nids_, nid))
-						return false;
-				}
-				return true;
-			}
+			if (getSize((lotus.domino.DocumentCollection) base) > getCount())
+				return false;
+			return toNoteIdBitmap(base).andNot(getNoteIdBitmap()).isEmpty();
 		} else {
 			throw new IllegalArgumentException("Cannot check a DocumentList to see if it contains a " + base.getClass().getName());
 		}
@@ -538,25 +551,16 @@ public class DocumentList extends BaseImpl<lotus.domino.DocumentCollection>imple
 	}
 
 	public void intersect(final int[] noteids) {
-		if (usingList_) {
-			List<Integer> curList = getNidList();
-			List<Integer> paramList = new ArrayList<Integer>();
-			for (int n : noteids) {
-				paramList.add(n);
-			}
-			curList.retainAll(paramList);
-		} else {
-			nids_ = intersectNids(nids_, noteids);
-		}
+		setNids(intersectNids(getNids(), noteids));
 	}
 
 	public void intersect(final Collection<Integer> paramList) {
-		if (usingList_) {
-			List<Integer> curList = getNidList();
-			curList.retainAll(paramList);
-		} else {
-			nids_ = intersectNids(nids_, paramList);
-		}
+		setNids(filterNids(getNids(), NoteIdBitmap.valueOf(paramList), true));
+	}
+
+	@Override
+	public void intersect(final NoteIdBitmap noteIds) {
+		setNids(filterNids(getNids(), noteIds, true));
 	}
 
 	@Override
@@ -564,11 +568,10 @@ public class DocumentList extends BaseImpl<lotus.domino.DocumentCollection>imple
 		if (doc instanceof lotus.domino.Document) {
 			int nid = getNid((lotus.domino.Document) doc);
 			intersect(nid);
-		} else if (doc instanceof lotus.domino.DocumentCollection) {
-			int[] nids = CollectionUtils.getNoteIDs((lotus.domino.DocumentCollection) doc);
-			intersect(nids);
+		} else if (doc instanceof lotus.domino.DocumentCollection || doc instanceof lotus.domino.NoteCollection) {
+			intersect(toNoteIdBitmap(doc));
 		} else {
-			//TODO why not a View, ViewEntryCollection, NoteCollection, Iterable<Document>, ViewEntry,
+			//TODO why not a View, ViewEntryCollection, Iterable<Document>, ViewEntry,
 			throw new IllegalArgumentException("Cannot intersect a DocumentList with a " + doc.getClass().getName());
 		}
 	}
@@ -620,35 +623,37 @@ public class DocumentList extends BaseImpl<lotus.domino.DocumentCollection>imple
 		} else {
 			if (!hasNid(nids_, noteid)) {
 				nids_ = Arrays.copyOf(nids_, nids_.length + 1);
-				nids_[nids_.length] = noteid;
+				nids_[nids_.length - 1] = noteid;
 			}
 		}
 	}
 
 	public void merge(final int[] noteids) {
-		if (usingList_) {
-			for (int noteid : noteids) {
-				if (!getNidList().contains(noteid))
-					getNidList().add(noteid);
-			}
-		} else {
-			int origLength = nids_.length;
-			int[] newNids = diffNids(nids_, noteids);
-			nids_ = Arrays.copyOf(nids_, origLength + newNids.length);
-			for (int i = 0; i < newNids.length; i++) {
-				nids_[i + origLength] = newNids[i];
+		int[] nids = getNids();
+		NoteIdBitmap present = NoteIdBitmap.valueOf(nids);
+		int[] result = Arrays.copyOf(nids, nids.length + noteids.length);
+		int count = nids.length;
+		for (int noteid : noteids) {
+			if (present.add(noteid)) {
+				result[count++] = noteid;
 			}
 		}
+		setNids(count == result.length ? result : Arrays.copyOf(result, count));
+	}
+
+	@Override
+	public void merge(final NoteIdBitmap noteIds) {
+		merge(noteIds.toArray());
 	}
 
 	@Override
 	public void merge(final lotus.domino.Base doc) {
 		if (doc instanceof lotus.domino.Document) {
 			merge(getNid((lotus.domino.Document) doc));
-		} else if (doc instanceof lotus.domino.DocumentCollection) {
-			merge(CollectionUtils.getNoteIDs((lotus.domino.DocumentCollection) doc));
+		} else if (doc instanceof lotus.domino.DocumentCollection || doc instanceof lotus.domino.NoteCollection) {
+			merge(toNoteIdBitmap(doc));
 		} else {
-			//TODO why not a View, ViewEntryCollection, NoteCollection, Iterable<Document>, ViewEntry,
+			//TODO why not a View, ViewEntryCollection, Iterable<Document>, ViewEntry,
 			throw new IllegalArgumentException("Cannot merge a DocumentList with a " + doc.getClass().getName());
 		}
 	}
@@ -708,6 +713,8 @@ public class DocumentList extends BaseImpl<lotus.domino.DocumentCollection>imple
 			getNidList().removeAll(tlist);
 		} else {
 			int pos = findNid(nids_, noteid);
+			if (pos < 0)
+				return;
 			int[] result = new int[nids_.length - 1];
 			System.arraycopy(nids_, 0, result, 0, pos);
 			System.arraycopy(nids_, pos + 1, result, pos, result.length - pos);
@@ -722,31 +729,22 @@ public class DocumentList extends BaseImpl<lotus.domino.DocumentCollection>imple
 	}
 
 	public void subtract(final int[] noteids) {
-		if (usingList_) {
-			List<Integer> tlist = new ArrayList<Integer>();
-			for (int noteid : noteids) {
-				tlist.add(noteid);
-			}
-			getNidList().removeAll(tlist);
-		} else {
-			int[] posSet = findOnlyMatchedNids(nids_, noteids);
-			Arrays.sort(posSet);
-			for (int pos : posSet) {
-				System.arraycopy(nids_, pos + 1, nids_, pos, nids_.length - 1 - pos);
-			}
-			int[] result = Arrays.copyOf(nids_, nids_.length - posSet.length);
-			nids_ = result;
-		}
+		setNids(diffNids(getNids(), noteids));
+	}
+
+	@Override
+	public void subtract(final NoteIdBitmap noteIds) {
+		setNids(filterNids(getNids(), noteIds, false));
 	}
 
 	@Override
 	public void subtract(final lotus.domino.Base doc) {
 		if (doc instanceof lotus.domino.Document) {
 			subtract(getNid((lotus.domino.Document) doc));
-		} else if (doc instanceof lotus.domino.DocumentCollection) {
-			subtract(CollectionUtils.getNoteIDs((lotus.domino.DocumentCollection) doc));
+		} else if (doc instanceof lotus.domino.DocumentCollection || doc instanceof lotus.domino.NoteCollection) {
+			subtract(toNoteIdBitmap(doc));
 		} else {
-			//TODO why not a View, ViewEntryCollection, NoteCollection, Iterable<Document>, ViewEntry,
+			//TODO why not a View, ViewEntryCollection, Iterable<Document>, ViewEntry,
 			throw new IllegalArgumentException("Cannot subtract from a DocumentList with a " + doc.getClass().getName());
 		}
 	}
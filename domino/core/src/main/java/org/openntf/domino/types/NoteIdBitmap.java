@@ -0,0 +1,745 @@
+package org.openntf.domino.types;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A compressed set of note IDs for fast set operations on large collections.
+ *
+ * The note IDs are split by their upper 16 bits into containers. A container with up to {@link #ARRAY_MAX} note IDs stores the lower 16
+ * bits as sorted <code>char[]</code>, a fuller container as bitmap of 1024 longs. The set operations work container by container, so
+ * intersecting or subtracting collections of a million notes takes a few milliseconds.
+ *
+ * The note IDs are iterated in ascending order. The set can be saved in a document as MIME bean, it is written in the same compressed form.
+ *
+ * @see org.openntf.domino.iterators.DocumentList#getNoteIdBitmap()
+ * @see org.openntf.domino.ext.DocumentCollection#getNoteIdBitmap()
+ * @see org.openntf.domino.ext.NoteCollection#getNoteIdBitmap()
+ */
+public class NoteIdBitmap implements Iterable<Integer>, Externalizable {
+	private static final long serialVersionUID = 1L;
+
+	/** a container with more note IDs is stored as bitmap */
+	public static final int ARRAY_MAX = 4096;
+
+	private static final int BITMAP_WORDS = 1024;
+	private static final char[] NO_KEYS = new char[0];
+	private static final Container[] NO_CONTAINERS = new Container[0];
+
+	private char[] keys_ = NO_KEYS;
+	private Container[] containers_ = NO_CONTAINERS;
+	private int size_;
+
+	/**
+	 * The lower 16 bits of the note IDs with the same upper 16 bits
+	 */
+	protected static abstract class Container {
+		abstract int cardinality();
+
+		abstract boolean contains(char low);
+
+		/** adds the value, returns the container to use from now on */
+		abstract Container add(char low);
+
+		/** removes the value, returns the container to use from now on */
+		abstract Container remove(char low);
+
+		abstract Container and(Container other);
+
+		abstract Container or(Container other);
+
+		abstract Container andNot(Container other);
+
+		abstract Container copy();
+
+		/** writes the note IDs to the array, returns the next position */
+		abstract int fill(int[] dest, int pos, int high);
+
+		abstract void write(ObjectOutput out) throws IOException;
+	}
+
+	protected static final class ArrayContainer extends Container {
+		char[] values;
+		int card;
+
+		ArrayContainer(final int capacity) {
+			values = new char[Math.max(capacity, 4)];
+		}
+
+		ArrayContainer(final char[] values, final int card) {
+			this.values = values;
+			this.card = card;
+		}
+
+		@Override
+		int cardinality() {
+			return card;
+		}
+
+		private int indexOf(final char low) {
+			int lo = 0;
+			int hi = card - 1;
+			while (lo <= hi) {
+				int mid = (lo + hi) >>> 1;
+				char v = values[mid];
+				if (v < low) {
+					lo = mid + 1;
+				} else if (v > low) {
+					hi = mid - 1;
+				} else {
+					return mid;
+				}
+			}
+			return -(lo + 1);
+		}
+
+		@Override
+		boolean contains(final char low) {
+			return indexOf(low) >= 0;
+		}
+
+		@Override
+		Container add(final char low) {
+			int pos = indexOf(low);
+			if (pos >= 0)
+				return this;
+			if (card >= ARRAY_MAX) {
+				return toBitmap().add(low);
+			}
+			pos = -pos - 1;
+			if (card == values.length) {
+				values = Arrays.copyOf(values, Math.min(ARRAY_MAX, values.length * 2));
+			}
+			System.arraycopy(values, pos, values, pos + 1, card - pos);
+			values[pos] = low;
+			card++;
+			return this;
+		}
+
+		@Override
+		Container remove(final char low) {
+			int pos = indexOf(low);
+			if (pos >= 0) {
+				System.arraycopy(values, pos + 1, values, pos, card - pos - 1);
+				card--;
+			}
+			return this;
+		}
+
+		BitmapContainer toBitmap() {
+			BitmapContainer result = new BitmapContainer();
+			for (int i = 0; i < card; i++) {
+				result.set(values[i]);
+			}
+			return result;
+		}
+
+		@Override
+		Container and(final Container other) {
+			ArrayContainer result = new ArrayContainer(card);
+			if (other instanceof ArrayContainer) {
+				ArrayContainer o = (ArrayContainer) other;
+				int i = 0;
+				int j = 0;
+				while (i < card && j < o.card) {
+					char a = values[i];
+					char b = o.values[j];
+					if (a < b) {
+						i++;
+					} else if (a > b) {
+						j++;
+					} else {
+						result.values[result.card++] = a;
+						i++;
+						j++;
+					}
+				}
+			} else {
+				for (int i = 0; i < card; i++) {
+					if (other.contains(values[i])) {
+						result.values[result.card++] = values[i];
+					}
+				}
+			}
+			return result;
+		}
+
+		@Override
+		Container or(final Container other) {
+			if (other instanceof BitmapContainer) {
+				BitmapContainer result = (BitmapContainer) other.copy();
+				for (int i = 0; i < card; i++) {
+					result.set(values[i]);
+				}
+				return result;
+			}
+			ArrayContainer o = (ArrayContainer) other;
+			char[] merged = new char[card + o.card];
+			int n = 0;
+			int i = 0;
+			int j = 0;
+			while (i < card && j < o.card) {
+				char a = values[i];
+				char b = o.values[j];
+				if (a < b) {
+					merged[n++] = a;
+					i++;
+				} else if (a > b) {
+					merged[n++] = b;
+					j++;
+				} else {
+					merged[n++] = a;
+					i++;
+					j++;
+				}
+			}
+			while (i < card) {
+				merged[n++] = values[i++];
+			}
+			while (j < o.card) {
+				merged[n++] = o.values[j++];
+			}
+			ArrayContainer result = new ArrayContainer(merged, n);
+			return n > ARRAY_MAX ? result.toBitmap() : result;
+		}
+
+		@Override
+		Container andNot(final Container other) {
+			ArrayContainer result = new ArrayContainer(card);
+			if (other instanceof ArrayContainer) {
+				ArrayContainer o = (ArrayContainer) other;
+				int j = 0;
+				for (int i = 0; i < card; i++) {
+					char a = values[i];
+					while (j < o.card && o.values[j] < a) {
+						j++;
+					}
+					if (j >= o.card || o.values[j] != a) {
+						result.values[result.card++] = a;
+					}
+				}
+			} else {
+				for (int i = 0; i < card; i++) {
+					if (!other.contains(values[i])) {
+						result.values[result.card++] = values[i];
+					}
+				}
+			}
+			return result;
+		}
+
+		@Override
+		Container copy() {
+			return new ArrayContainer(Arrays.copyOf(values, Math.max(card, 4)), card);
+		}
+
+		@Override
+		int fill(final int[] dest, final int pos, final int high) {
+			int p = pos;
+			for (int i = 0; i < card; i++) {
+				dest[p++] = high | values[i];
+			}
+			return p;
+		}
+
+		@Override
+		void write(final ObjectOutput out) throws IOException {
+			for (int i = 0; i < card; i++) {
+				out.writeChar(values[i]);
+			}
+		}
+	}
+
+	protected static final class BitmapContainer extends Container {
+		final long[] words;
+		int card;
+
+		BitmapContainer() {
+			words = new long[BITMAP_WORDS];
+		}
+
+		BitmapContainer(final long[] words, final int card) {
+			this.words = words;
+			this.card = card;
+		}
+
+		void set(final char low) {
+			long bit = 1L << low;
+			int idx = low >>> 6;
+			if ((words[idx] & bit) == 0) {
+				words[idx] |= bit;
+				card++;
+			}
+		}
+
+		@Override
+		int cardinality() {
+			return card;
+		}
+
+		@Override
+		boolean contains(final char low) {
+			return (words[low >>> 6] & (1L << low)) != 0;
+		}
+
+		@Override
+		Container add(final char low) {
+			set(low);
+			return this;
+		}
+
+		void clear(final char low) {
+			long bit = 1L << low;
+			int idx = low >>> 6;
+			if ((words[idx] & bit) != 0) {
+				words[idx] &= ~bit;
+				card--;
+			}
+		}
+
+		@Override
+		Container remove(final char low) {
+			clear(low);
+			return normalize();
+		}
+
+		/** converts back to an array container, if the bitmap became sparse */
+		Container normalize() {
+			return card <= ARRAY_MAX ? toArray() : this;
+		}
+
+		ArrayContainer toArray() {
+			ArrayContainer result = new ArrayContainer(card);
+			for (int i = 0; i < BITMAP_WORDS; i++) {
+				long word = words[i];
+				while (word != 0) {
+					result.values[result.card++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+					word &= word - 1;
+				}
+			}
+			return result;
+		}
+
+		@Override
+		Container and(final Container other) {
+			if (other instanceof ArrayContainer) {
+				return other.and(this);
+			}
+			long[] o = ((BitmapContainer) other).words;
+			long[] result = new long[BITMAP_WORDS];
+			int count = 0;
+			for (int i = 0; i < BITMAP_WORDS; i++) {
+				result[i] = words[i] & o[i];
+				count += Long.bitCount(result[i]);
+			}
+			return new BitmapContainer(result, count).normalize();
+		}
+
+		@Override
+		Container or(final Container other) {
+			if (other instanceof ArrayContainer) {
+				return other.or(this);
+			}
+			long[] o = ((BitmapContainer) other).words;
+			long[] result = new long[BITMAP_WORDS];
+			int count = 0;
+			for (int i = 0; i < BITMAP_WORDS; i++) {
+				result[i] = words[i] | o[i];
+				count += Long.bitCount(result[i]);
+			}
+			return new BitmapContainer(result, count);
+		}
+
+		@Override
+		Container andNot(final Container other) {
+			if (other instanceof ArrayContainer) {
+				ArrayContainer o = (ArrayContainer) other;
+				BitmapContainer result = (BitmapContainer) copy();
+				for (int i = 0; i < o.card; i++) {
+					result.clear(o.values[i]);
+				}
+				return result.normalize();
+			}
+			long[] o = ((BitmapContainer) other).words;
+			long[] result = new long[BITMAP_WORDS];
+			int count = 0;
+			for (int i = 0; i < BITMAP_WORDS; i++) {
+				result[i] = words[i] & ~o[i];
+				count += Long.bitCount(result[i]);
+			}
+			return new BitmapContainer(result, count).normalize();
+		}
+
+		@Override
+		Container copy() {
+			return new BitmapContainer(words.clone(), card);
+		}
+
+		@Override
+		int fill(final int[] dest, final int pos, final int high) {
+			int p = pos;
+			for (int i = 0; i < BITMAP_WORDS; i++) {
+				long word = words[i];
+				while (word != 0) {
+					dest[p++] = high | ((i << 6) + Long.numberOfTrailingZeros(word));
+					word &= word - 1;
+				}
+			}
+			return p;
+		}
+
+		@Override
+		void write(final ObjectOutput out) throws IOException {
+			for (int i = 0; i < BITMAP_WORDS; i++) {
+				out.writeLong(words[i]);
+			}
+		}
+	}
+
+	public NoteIdBitmap() {
+	}
+
+	private NoteIdBitmap(final int capacity) {
+		keys_ = new char[capacity];
+		containers_ = new Container[capacity];
+	}
+
+	/**
+	 * Creates a bitmap of the note IDs. The array may be unsorted and contain duplicates, it is not changed.
+	 */
+	public static NoteIdBitmap valueOf(final int[] noteIds) {
+		if (noteIds == null || noteIds.length == 0)
+			return new NoteIdBitmap();
+		int[] sorted = noteIds.clone();
+		Arrays.sort(sorted);
+		// 0x8000.0000 and above sort first in signed order; rotate them to the end to keep the keys ascending
+		int firstPositive = 0;
+		while (firstPositive < sorted.length && sorted[firstPositive] < 0) {
+			firstPositive++;
+		}
+		if (firstPositive > 0 && firstPositive < sorted.length) {
+			int[] rotated = new int[sorted.length];
+			System.arraycopy(sorted, firstPositive, rotated, 0, sorted.length - firstPositive);
+			System.arraycopy(sorted, 0, rotated, sorted.length - firstPositive, firstPositive);
+			sorted = rotated;
+		}
+		NoteIdBitmap result = new NoteIdBitmap(Math.min(sorted.length, 65536));
+		int start = 0;
+		while (start < sorted.length) {
+			int high = sorted[start] >>> 16;
+			int end = start;
+			while (end < sorted.length && (sorted[end] >>> 16) == high) {
+				end++;
+			}
+			ArrayContainer array = new ArrayContainer(Math.min(end - start, ARRAY_MAX + 1));
+			Container container = array;
+			for (int i = start; i < end; i++) {
+				char low = (char) sorted[i];
+				if (container == array && array.card > 0 && array.values[array.card - 1] == low)
+					continue;
+				if (container == array && array.card < ARRAY_MAX) {
+					array.values[array.card++] = low;
+				} else {
+					container = container.add(low);
+				}
+			}
+			result.keys_[result.size_] = (char) high;
+			result.containers_[result.size_++] = container;
+			start = end;
+		}
+		return result;
+	}
+
+	public static NoteIdBitmap valueOf(final Collection<Integer> noteIds) {
+		int[] array = new int[noteIds.size()];
+		int i = 0;
+		for (Integer nid : noteIds) {
+			array[i++] = nid;
+		}
+		return valueOf(array);
+	}
+
+	private int indexOfKey(final char key) {
+		int lo = 0;
+		int hi = size_ - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			char k = keys_[mid];
+			if (k < key) {
+				lo = mid + 1;
+			} else if (k > key) {
+				hi = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(lo + 1);
+	}
+
+	private void append(final char key, final Container container) {
+		if (container.cardinality() == 0)
+			return;
+		if (size_ == keys_.length) {
+			int newLength = Math.max(4, size_ * 2);
+			keys_ = Arrays.copyOf(keys_, newLength);
+			containers_ = Arrays.copyOf(containers_, newLength);
+		}
+		keys_[size_] = key;
+		containers_[size_++] = container;
+	}
+
+	public boolean contains(final int noteId) {
+		int idx = indexOfKey((char) (noteId >>> 16));
+		return idx >= 0 && containers_[idx].contains((char) noteId);
+	}
+
+	/**
+	 * @return true, if the note ID was not yet in the set
+	 */
+	public boolean add(final int noteId) {
+		char key = (char) (noteId >>> 16);
+		int idx = indexOfKey(key);
+		if (idx >= 0) {
+			Container c = containers_[idx];
+			int before = c.cardinality();
+			containers_[idx] = c.add((char) noteId);
+			return containers_[idx].cardinality() > before;
+		}
+		idx = -idx - 1;
+		ArrayContainer c = new ArrayContainer(4);
+		c.add((char) noteId);
+		if (size_ == keys_.length) {
+			int newLength = Math.max(4, size_ * 2);
+			keys_ = Arrays.copyOf(keys_, newLength);
+			containers_ = Arrays.copyOf(containers_, newLength);
+		}
+		System.arraycopy(keys_, idx, keys_, idx + 1, size_ - idx);
+		System.arraycopy(containers_, idx, containers_, idx + 1, size_ - idx);
+		keys_[idx] = key;
+		containers_[idx] = c;
+		size_++;
+		return true;
+	}
+
+	/**
+	 * @return true, if the note ID was in the set
+	 */
+	public boolean remove(final int noteId) {
+		int idx = indexOfKey((char) (noteId >>> 16));
+		if (idx < 0)
+			return false;
+		Container c = containers_[idx];
+		int before = c.cardinality();
+		c = c.remove((char) noteId);
+		if (c.cardinality() == 0) {
+			System.arraycopy(keys_, idx + 1, keys_, idx, size_ - idx - 1);
+			System.arraycopy(containers_, idx + 1, containers_, idx, size_ - idx - 1);
+			containers_[--size_] = null;
+		} else {
+			containers_[idx] = c;
+		}
+		return c.cardinality() < before;
+	}
+
+	/**
+	 * @return the number of note IDs
+	 */
+	public int size() {
+		int result = 0;
+		for (int i = 0; i < size_; i++) {
+			result += containers_[i].cardinality();
+		}
+		return result;
+	}
+
+	public boolean isEmpty() {
+		return size_ == 0;
+	}
+
+	/**
+	 * @return the note IDs that are in this and in the other set
+	 */
+	public NoteIdBitmap and(final NoteIdBitmap other) {
+		NoteIdBitmap result = new NoteIdBitmap(Math.min(size_, other.size_));
+		int i = 0;
+		int j = 0;
+		while (i < size_ && j < other.size_) {
+			char a = keys_[i];
+			char b = other.keys_[j];
+			if (a < b) {
+				i++;
+			} else if (a > b) {
+				j++;
+			} else {
+				result.append(a, containers_[i].and(other.containers_[j]));
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the note IDs that are in this or in the other set
+	 */
+	public NoteIdBitmap or(final NoteIdBitmap other) {
+		NoteIdBitmap result = new NoteIdBitmap(size_ + other.size_);
+		int i = 0;
+		int j = 0;
+		while (i < size_ && j < other.size_) {
+			char a = keys_[i];
+			char b = other.keys_[j];
+			if (a < b) {
+				result.append(a, containers_[i++].copy());
+			} else if (a > b) {
+				result.append(b, other.containers_[j++].copy());
+			} else {
+				result.append(a, containers_[i++].or(other.containers_[j++]));
+			}
+		}
+		while (i < size_) {
+			result.append(keys_[i], containers_[i++].copy());
+		}
+		while (j < other.size_) {
+			result.append(other.keys_[j], other.containers_[j++].copy());
+		}
+		return result;
+	}
+
+	/**
+	 * @return the note IDs that are in this, but not in the other set
+	 */
+	public NoteIdBitmap andNot(final NoteIdBitmap other) {
+		NoteIdBitmap result = new NoteIdBitmap(size_);
+		int j = 0;
+		for (int i = 0; i < size_; i++) {
+			char a = keys_[i];
+			while (j < other.size_ && other.keys_[j] < a) {
+				j++;
+			}
+			if (j < other.size_ && other.keys_[j] == a) {
+				result.append(a, containers_[i].andNot(other.containers_[j]));
+			} else {
+				result.append(a, containers_[i].copy());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the note IDs in ascending order
+	 */
+	public int[] toArray() {
+		int[] result = new int[size()];
+		int pos = 0;
+		for (int i = 0; i < size_; i++) {
+			pos = containers_[i].fill(result, pos, keys_[i] << 16);
+		}
+		return result;
+	}
+
+	@Override
+	public Iterator<Integer> iterator() {
+		return new Iterator<Integer>() {
+			private int container_ = 0;
+			private int[] buffer_ = new int[0];
+			private int count_ = 0;
+			private int pos_ = 0;
+
+			@Override
+			public boolean hasNext() {
+				while (pos_ >= count_ && container_ < size_) {
+					Container c = containers_[container_];
+					if (buffer_.length < c.cardinality()) {
+						buffer_ = new int[c instanceof BitmapContainer ? 65536 : ARRAY_MAX];
+					}
+					count_ = c.fill(buffer_, 0, keys_[container_] << 16);
+					pos_ = 0;
+					container_++;
+				}
+				return pos_ < count_;
+			}
+
+			@Override
+			public Integer next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				return buffer_[pos_++];
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof NoteIdBitmap))
+			return false;
+		NoteIdBitmap other = (NoteIdBitmap) obj;
+		if (size_ != other.size_ || size() != other.size())
+			return false;
+		return Arrays.equals(toArray(), other.toArray());
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(toArray());
+	}
+
+	@Override
+	public String toString() {
+		return "NoteIdBitmap[" + size() + " note IDs in " + size_ + " containers]";
+	}
+
+	/**
+	 * Format: the number of containers, then for every container the upper 16 bits, the number of note IDs and either the sorted lower 16
+	 * bits or 1024 bitmap words
+	 */
+	@Override
+	public void writeExternal(final ObjectOutput out) throws IOException {
+		out.writeInt(size_);
+		for (int i = 0; i < size_; i++) {
+			out.writeChar(keys_[i]);
+			out.writeInt(containers_[i].cardinality());
+			containers_[i].write(out);
+		}
+	}
+
+	@Override
+	public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
+		int count = in.readInt();
+		keys_ = new char[count];
+		containers_ = new Container[count];
+		size_ = 0;
+		for (int i = 0; i < count; i++) {
+			char key = in.readChar();
+			int card = in.readInt();
+			Container c;
+			if (card > ARRAY_MAX) {
+				long[] words = new long[BITMAP_WORDS];
+				for (int w = 0; w < BITMAP_WORDS; w++) {
+					words[w] = in.readLong();
+				}
+				c = new BitmapContainer(words, card);
+			} else {
+				char[] values = new char[Math.max(card, 4)];
+				for (int v = 0; v < card; v++) {
+					values[v] = in.readChar();
+				}
+				c = new ArrayContainer(values, card);
+			}
+			append(key, c);
+		}
+	}
+}
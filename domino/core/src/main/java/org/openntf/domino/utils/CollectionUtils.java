@@ -503,9 +503,12 @@ public enum CollectionUtils {
 						doc = next;
 					}
 				}
+			} else if (collection instanceof org.openntf.domino.DocumentCollection) {
+				result = ((org.openntf.domino.DocumentCollection) collection).getNoteIdBitmap().toArray();
 			} else {
 				lotus.domino.Database db = collection.getParent();
 				lotus.domino.NoteCollection nc = db.createNoteCollection(false);
+				nc.add(collection);
 				result = nc.getNoteIDs();
 				nc.recycle();
 			}
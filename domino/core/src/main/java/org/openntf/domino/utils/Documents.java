@@ -18,6 +18,7 @@ package org.openntf.domino.utils;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.Externalizable;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
@@ -68,6 +69,9 @@ public enum Documents {
 	public static final String ITEMNAME_UNIVERSALID = "universalID";
 	private static AtomicInteger RESTORE_ERR_COUNT = new AtomicInteger(0);
 
+	/** the codec for new MIME beans, null for Java serialization */
+	private static volatile String storageCodec_;
+
 	/** The Constant log_. */
 	private final static Logger log_ = Logger.getLogger("org.openntf.domino");
 
@@ -84,6 +88,23 @@ public enum Documents {
 		}
 	};
 
+	/**
+	 * Sets the {@link StorageCodec} that is used by {@link #saveState(Serializable, Document, String, boolean, Map)}. Objects that the codec
+	 * does not support are stored with Java serialization. MIME beans are always restored with the codec they were written with.
+	 * 
+	 * @param name
+	 *            the name of the codec (see {@link StorageCodecs}), null for Java serialization (the default)
+	 */
+	public static void setStorageCodec(final String name) {
+		if (name != null && StorageCodecs.getCodec(name) == null)
+			throw new IllegalArgumentException("Unknown storage codec " + name);
+		storageCodec_ = name;
+	}
+
+	public static String getStorageCodec() {
+		return storageCodec_;
+	}
+
 	/*
 	 * **************************************************************************
 	 * **************************************************************************
@@ -134,9 +155,12 @@ public enum Documents {
 		//		byte[] stateBytes = streamOut.toByteArray();
 		//		ByteArrayInputStream byteStream = new ByteArrayInputStream(stateBytes);
 		InputStream is = new Streams.MIMEBufferedInputStream(mimeStream);
-		ObjectInputStream objectStream;
+		MIMEHeader codecHeader = entity.getNthHeader(StorageCodecs.HEADER);
+		ObjectInputStream objectStream = null;
 
-		if (allHeaders == null) {
+		if (codecHeader != null) {
+			// the codec reads the raw bytes
+		} else if (allHeaders == null) {
 			//			System.out.println("No headers available. Testing gzip by experimentation...");
 			try {
 				GZIPInputStream zipStream = new GZIPInputStream(is);
@@ -153,7 +177,7 @@ public enum Documents {
 		}
 
 		// There are three potential storage forms: Externalizable, Serializable, and StateHolder, distinguished by type or header
-		if ("x-java-externalized-object".equals(entity.getContentSubType())) {
+		if (codecHeader == null && "x-java-externalized-object".equals(entity.getContentSubType())) {
 			Class<Externalizable> externalizableClass = (Class<Externalizable>) DominoUtils.getClass(entity.getNthHeader("X-Java-Class")
 					.getHeaderVal());
 			Externalizable restored = externalizableClass.newInstance();
@@ -162,7 +186,15 @@ public enum Documents {
 		} else {
 			Object restored = null;
 			try {
-				restored = objectStream.readObject();
+				if (codecHeader != null) {
+					String codecName = codecHeader.getHeaderVal();
+					StorageCodec codec = StorageCodecs.getCodec(codecName);
+					if (codec == null)
+						throw new IllegalStateException("Unknown storage codec " + codecName);
+					restored = codec.decode(readBytes(is));
+				} else {
+					restored = objectStream.readObject();
+				}
 			} catch (Throwable t) {
 				int curCount = RESTORE_ERR_COUNT.incrementAndGet();
 				if (curCount < 20) {
@@ -232,6 +264,16 @@ public enum Documents {
 		return restoreState(doc, itemName, null);
 	}
 
+	private static byte[] readBytes(final InputStream is) throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = is.read(buffer)) > 0) {
+			result.write(buffer, 0, read);
+		}
+		return result.toByteArray();
+	}
+
 	/**
 	 * Save state.
 	 * 
@@ -266,8 +308,31 @@ public enum Documents {
 	 * @throws Throwable
 	 *             the throwable
 	 */
-	public static void saveState(final Serializable object, final Document doc, final String itemName, boolean compress,
+	public static void saveState(final Serializable object, final Document doc, final String itemName, final boolean compress,
 			final Map<String, String> headers) throws Exception {
+		saveState(object, doc, itemName, compress, headers, storageCodec_);
+	}
+
+	/**
+	 * Save state.
+	 * 
+	 * @param object
+	 *            the object
+	 * @param doc
+	 *            the doc
+	 * @param itemName
+	 *            the item name
+	 * @param compress
+	 *            the compress, if the object is stored with Java serialization
+	 * @param headers
+	 *            the headers
+	 * @param codecName
+	 *            the {@link StorageCodec} to use, null for Java serialization
+	 * @throws Throwable
+	 *             the throwable
+	 */
+	public static void saveState(final Serializable object, final Document doc, final String itemName, boolean compress,
+			final Map<String, String> headers, final String codecName) throws Exception {
 		if (object == null) {
 			log_.log(Level.INFO, "Ignoring attempt to save MIMEBean value of null");
 			return;
@@ -285,22 +350,32 @@ public enum Documents {
 				}
 			}
 		}
-		ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-		ObjectOutputStream objectStream = compress ? new ObjectOutputStream(new GZIPOutputStream(byteStream)) : new ObjectOutputStream(
-				byteStream);
 		String contentType = null;
-		// Prefer externalization if available
-		if (object instanceof Externalizable) {
-			((Externalizable) object).writeExternal(objectStream);
-			contentType = "application/x-java-externalized-object";
-		} else {
-			//			System.out.println("TEMP DEBUG Writing a " + object.getClass().getName() + " to a MIME Bean");
-			objectStream.writeObject(object);
+		StorageCodec codec = StorageCodecs.getCodec(codecName);
+		byte[] bytes = codec == null ? null : codec.encode(object);
+		if (bytes != null) {
+			// the content type is kept, so getItemValueMIME recognizes the MIME bean
 			contentType = "application/x-java-serialized-object";
-		}
+			compress = false;
+		} else {
+			codec = null;
+			ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+			ObjectOutputStream objectStream = compress ? new ObjectOutputStream(new GZIPOutputStream(byteStream)) : new ObjectOutputStream(
+					byteStream);
+			// Prefer externalization if available
+			if (object instanceof Externalizable) {
+				((Externalizable) object).writeExternal(objectStream);
+				contentType = "application/x-java-externalized-object";
+			} else {
+				//			System.out.println("TEMP DEBUG Writing a " + object.getClass().getName() + " to a MIME Bean");
+				objectStream.writeObject(object);
+				contentType = "application/x-java-serialized-object";
+			}
 
-		objectStream.flush();
-		objectStream.close();
+			objectStream.flush();
+			objectStream.close();
+			bytes = byteStream.toByteArray();
+		}
 
 		Stream mimeStream = session.createStream();
 		MIMEEntity previousState = doc.getMIMEEntity(itemName);
@@ -322,6 +397,7 @@ public enum Documents {
 		try {
 			MIMEHeader javaClass = entity.getNthHeader("X-Java-Class");
 			MIMEHeader contentEncoding = entity.getNthHeader("Content-Encoding");
+			MIMEHeader codecHeader = entity.getNthHeader(StorageCodecs.HEADER);
 			if (javaClass == null) {
 				javaClass = entity.createHeader("X-Java-Class");
 			} else {
@@ -353,6 +429,15 @@ public enum Documents {
 				}
 			}
 
+			if (codec != null) {
+				if (codecHeader == null) {
+					codecHeader = entity.createHeader(StorageCodecs.HEADER);
+				}
+				codecHeader.setHeaderVal(codec.getName());
+			} else if (codecHeader != null) {
+				codecHeader.remove();
+			}
+
 			// javaClass.recycle();
 
 			if (headers != null) {
@@ -365,7 +450,6 @@ public enum Documents {
 					// paramHeader.recycle();
 				}
 			}
-			byte[] bytes = byteStream.toByteArray();
 			ByteArrayInputStream byteIn = new ByteArrayInputStream(bytes);
 
 			mimeStream.setContents(byteIn);
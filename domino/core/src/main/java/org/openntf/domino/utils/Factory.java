@@ -54,6 +54,7 @@ import org.openntf.domino.WrapperFactory;
 import org.openntf.domino.exceptions.DataNotCompatibleException;
 import org.openntf.domino.exceptions.UndefinedDelegateTypeException;
 import org.openntf.domino.ext.Session.Fixes;
+import org.openntf.domino.impl.DominoReferenceCache;
 import org.openntf.domino.logging.Logging;
 import org.openntf.domino.session.INamedSessionFactory;
 import org.openntf.domino.session.ISessionFactory;
@@ -1446,6 +1447,11 @@ public enum Factory {
 		sb.append(getRecycleErrorCount());
 		sb.append(" ActiveObjects: ");
 		sb.append(getActiveObjectCount());
+		String budget = DominoReferenceCache.dumpCounters();
+		if (budget.length() > 0) {
+			sb.append(" ");
+			sb.append(budget);
+		}
 
 		if (!counters.classes.isEmpty() && details) {
 			sb.append("\n=== The following objects were left in memory ===");
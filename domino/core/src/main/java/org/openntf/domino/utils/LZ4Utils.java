@@ -0,0 +1,180 @@
+/**
+ *
+ */
+package org.openntf.domino.utils;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Utility enum for a fast compression in the LZ4 block format. It compresses much less than gzip, but is several times faster in both
+ * directions, which is what counts for MIME beans that are written on every request.
+ *
+ * The block does not contain the uncompressed length, the caller has to store it.
+ *
+ */
+public enum LZ4Utils {
+	;
+
+	private static final int MIN_MATCH = 4;
+	/** the last 5 bytes are always literals */
+	private static final int LAST_LITERALS = 5;
+	/** a match must start at least 12 bytes before the end */
+	private static final int MF_LIMIT = 12;
+	private static final int MAX_OFFSET = 65535;
+	private static final int HASH_LOG = 14;
+	/** the number of misses after which the search starts to skip bytes in incompressible data */
+	private static final int SKIP_TRIGGER = 6;
+
+	/**
+	 * The size of the buffer needed for the compression of <code>length</code> bytes in the worst case
+	 */
+	public static int maxCompressedLength(final int length) {
+		return length + length / 255 + 16;
+	}
+
+	/**
+	 * Compresses the data into one LZ4 block
+	 */
+	public static byte[] compress(final byte[] src) {
+		return compress(src, 0, src.length);
+	}
+
+	public static byte[] compress(final byte[] src, final int offset, final int length) {
+		byte[] dst = new byte[maxCompressedLength(length)];
+		int end = offset + length;
+		int anchor = offset;
+		int op = 0;
+		if (length >= MF_LIMIT + 1) {
+			// positions + 1, so that 0 is empty
+			int[] table = new int[1 << HASH_LOG];
+			int matchLimit = end - MF_LIMIT;
+			int ip = offset;
+			int misses = 1 << SKIP_TRIGGER;
+			while (ip < matchLimit) {
+				int seq = readInt(src, ip);
+				int h = hash(seq);
+				int ref = table[h] - 1;
+				table[h] = ip + 1;
+				if (ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != seq) {
+					ip += misses++ >>> SKIP_TRIGGER;
+					continue;
+				}
+				misses = 1 << SKIP_TRIGGER;
+				while (ip > anchor && ref > offset && src[ip - 1] == src[ref - 1]) {
+					ip--;
+					ref--;
+				}
+				int matchLength = MIN_MATCH;
+				int maxLength = end - LAST_LITERALS - ip;
+				while (matchLength < maxLength && src[ip + matchLength] == src[ref + matchLength]) {
+					matchLength++;
+				}
+				op = writeSequence(src, anchor, ip - anchor, ip - ref, matchLength, dst, op);
+				ip += matchLength;
+				anchor = ip;
+			}
+		}
+		op = writeSequence(src, anchor, end - anchor, 0, 0, dst, op);
+		return Arrays.copyOf(dst, op);
+	}
+
+	/**
+	 * Decompresses a block that starts at <code>offset</code> and ends at the end of the array
+	 *
+	 * @param length
+	 *            the uncompressed length
+	 * @throws IOException
+	 *             if the block is corrupt
+	 */
+	public static byte[] decompress(final byte[] src, final int offset, final int length) throws IOException {
+		byte[] dst = new byte[length];
+		int ip = offset;
+		int op = 0;
+		try {
+			while (true) {
+				int token = src[ip++] & 0xFF;
+				int literals = token >>> 4;
+				if (literals == 15) {
+					int b;
+					do {
+						b = src[ip++] & 0xFF;
+						literals += b;
+					} while (b == 255);
+				}
+				System.arraycopy(src, ip, dst, op, literals);
+				ip += literals;
+				op += literals;
+				if (ip >= src.length) {
+					break;
+				}
+				int matchOffset = (src[ip++] & 0xFF) | (src[ip++] & 0xFF) << 8;
+				int matchLength = token & 0x0F;
+				if (matchLength == 15) {
+					int b;
+					do {
+						b = src[ip++] & 0xFF;
+						matchLength += b;
+					} while (b == 255);
+				}
+				matchLength += MIN_MATCH;
+				int ref = op - matchOffset;
+				if (matchOffset == 0 || ref < 0 || op + matchLength > length)
+					throw new IOException("Corrupt LZ4 block at offset " + (ip - offset));
+				if (matchOffset >= matchLength) {
+					System.arraycopy(dst, ref, dst, op, matchLength);
+					op += matchLength;
+				} else {
+					// overlapping: the match repeats the last bytes
+					for (int i = 0; i < matchLength; i++) {
+						dst[op++] = dst[ref++];
+					}
+				}
+			}
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException("Corrupt LZ4 block at offset " + (ip - offset));
+		}
+		if (op != length)
+			throw new IOException("LZ4 block has " + op + " bytes instead of " + length);
+		return dst;
+	}
+
+	private static int writeSequence(final byte[] src, final int literalStart, final int literals, final int matchOffset,
+			final int matchLength, final byte[] dst, int op) {
+		int tokenPos = op++;
+		int token = Math.min(literals, 15) << 4;
+		if (literals >= 15) {
+			op = writeLength(literals - 15, dst, op);
+		}
+		System.arraycopy(src, literalStart, dst, op, literals);
+		op += literals;
+		if (matchLength > 0) {
+			dst[op++] = (byte) matchOffset;
+			dst[op++] = (byte) (matchOffset >>> 8);
+			int extra = matchLength - MIN_MATCH;
+			token |= Math.min(extra, 15);
+			if (extra >= 15) {
+				op = writeLength(extra - 15, dst, op);
+			}
+		}
+		dst[tokenPos] = (byte) token;
+		return op;
+	}
+
+	private static int writeLength(int length, final byte[] dst, int op) {
+		while (length >= 255) {
+			dst[op++] = (byte) 255;
+			length -= 255;
+		}
+		dst[op++] = (byte) length;
+		return op;
+	}
+
+	private static int readInt(final byte[] b, final int pos) {
+		return (b[pos] & 0xFF) | (b[pos + 1] & 0xFF) << 8 | (b[pos + 2] & 0xFF) << 16 | (b[pos + 3] & 0xFF) << 24;
+	}
+
+	private static int hash(final int seq) {
+		return (seq * -1640531535) >>> (32 - HASH_LOG);
+	}
+}
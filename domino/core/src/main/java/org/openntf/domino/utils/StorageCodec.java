@@ -0,0 +1,38 @@
+/**
+ *
+ */
+package org.openntf.domino.utils;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Converts the value of a MIME bean to bytes and back. The name of the codec is stored in the {@link StorageCodecs#HEADER} of the MIME
+ * entity, so {@link Documents#restoreState(org.openntf.domino.Document, String, org.openntf.domino.MIMEEntity)} can find it again.
+ * Entities without this header use the original format (Java serialization, optionally gzipped).
+ *
+ * Codecs are looked up by {@link StorageCodecs#getCodec(String)}: the built-in codecs, codecs added with
+ * {@link StorageCodecs#register(StorageCodec)} and application services of this type.
+ *
+ * Implementations must be thread safe.
+ *
+ */
+public interface StorageCodec {
+
+	/**
+	 * The name that is written to the header. It must not change as long as data written by the codec exists.
+	 */
+	public String getName();
+
+	/**
+	 * Encodes the object
+	 *
+	 * @return the bytes, or <code>null</code> if the codec does not support the object. It is then stored in the original format.
+	 */
+	public byte[] encode(Serializable object) throws IOException;
+
+	/**
+	 * Decodes bytes written by {@link #encode(Serializable)}
+	 */
+	public Object decode(byte[] data) throws IOException, ClassNotFoundException;
+}
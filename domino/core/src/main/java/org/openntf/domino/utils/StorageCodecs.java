@@ -0,0 +1,467 @@
+/**
+ *
+ */
+package org.openntf.domino.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openntf.domino.utils.DominoUtils.LoaderObjectInputStream;
+
+/**
+ * Utility enum for the {@link StorageCodec}s of MIME beans.
+ *
+ * The built-in codecs are
+ * <ul>
+ * <li>{@link #JAVA_LZ4}: Java serialization, compressed with {@link LZ4Utils}. It supports every Serializable.</li>
+ * <li>{@link #COMPACT}: a schema-less binary format for Strings, primitive wrappers, Dates, byte[], String[] and the common Maps, Lists
+ * and Sets of these. Other objects are stored in the original format.</li>
+ * </ul>
+ *
+ */
+public enum StorageCodecs {
+	;
+	private static final Logger log_ = Logger.getLogger(StorageCodecs.class.getName());
+
+	/** the MIME header with the name of the codec */
+	public static final String HEADER = "X-Storage-Codec";
+
+	public static final String JAVA_LZ4 = "java-lz4";
+	public static final String COMPACT = "compact";
+
+	private static final Map<String, StorageCodec> codecs_ = new ConcurrentHashMap<String, StorageCodec>();
+
+	static {
+		register(new JavaLZ4Codec());
+		register(new CompactCodec());
+	}
+
+	public static void register(final StorageCodec codec) {
+		codecs_.put(codec.getName(), codec);
+	}
+
+	/**
+	 * Returns the codec with the given name: a registered one or an application service
+	 *
+	 * @return the codec, null if there is none with that name
+	 */
+	public static StorageCodec getCodec(final String name) {
+		if (name == null)
+			return null;
+		StorageCodec result = codecs_.get(name);
+		if (result == null) {
+			try {
+				for (StorageCodec codec : Factory.findApplicationServices(StorageCodec.class)) {
+					if (name.equals(codec.getName())) {
+						return codec;
+					}
+				}
+			} catch (Exception e) {
+				log_.log(Level.FINE, "Unable to look up application storage codecs", e);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Writes the uncompressed length followed by the LZ4 block
+	 */
+	static byte[] compress(final byte[] data, final int length) {
+		byte[] block = LZ4Utils.compress(data, 0, length);
+		byte[] result = new byte[block.length + 4];
+		result[0] = (byte) (length >>> 24);
+		result[1] = (byte) (length >>> 16);
+		result[2] = (byte) (length >>> 8);
+		result[3] = (byte) length;
+		System.arraycopy(block, 0, result, 4, block.length);
+		return result;
+	}
+
+	static byte[] decompress(final byte[] data, final int offset) throws IOException {
+		if (data.length < offset + 4)
+			throw new IOException("Missing length of compressed data");
+		int length = (data[offset] & 0xFF) << 24 | (data[offset + 1] & 0xFF) << 16 | (data[offset + 2] & 0xFF) << 8
+				| (data[offset + 3] & 0xFF);
+		return LZ4Utils.decompress(data, offset + 4, length);
+	}
+
+	/**
+	 * A ByteArrayOutputStream that gives access to its buffer, to avoid a copy before the compression
+	 */
+	static class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+		ExposedByteArrayOutputStream(final int size) {
+			super(size);
+		}
+
+		byte[] buffer() {
+			return buf;
+		}
+	}
+
+	/**
+	 * Java serialization with LZ4 compression
+	 */
+	public static class JavaLZ4Codec implements StorageCodec {
+
+		@Override
+		public String getName() {
+			return JAVA_LZ4;
+		}
+
+		@Override
+		public byte[] encode(final Serializable object) throws IOException {
+			ExposedByteArrayOutputStream bytes = new ExposedByteArrayOutputStream(1024);
+			ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeObject(object);
+			out.close();
+			return compress(bytes.buffer(), bytes.size());
+		}
+
+		@Override
+		public Object decode(final byte[] data) throws IOException, ClassNotFoundException {
+			ObjectInputStream in = new LoaderObjectInputStream(new ByteArrayInputStream(decompress(data, 0)));
+			try {
+				return in.readObject();
+			} finally {
+				in.close();
+			}
+		}
+	}
+
+	/**
+	 * A tagged binary format without class descriptors. Only the exact classes listed in the tags are supported, so the restored object
+	 * has the same class as the saved one. Data larger than {@link #COMPRESS_THRESHOLD} is compressed.
+	 */
+	public static class CompactCodec implements StorageCodec {
+		private static final int COMPRESS_THRESHOLD = 512;
+		private static final byte PLAIN = 0;
+		private static final byte COMPRESSED = 1;
+
+		private static final byte T_NULL = 0;
+		private static final byte T_TRUE = 1;
+		private static final byte T_FALSE = 2;
+		private static final byte T_BYTE = 3;
+		private static final byte T_SHORT = 4;
+		private static final byte T_CHAR = 5;
+		private static final byte T_INT = 6;
+		private static final byte T_LONG = 7;
+		private static final byte T_FLOAT = 8;
+		private static final byte T_DOUBLE = 9;
+		private static final byte T_STRING = 10;
+		private static final byte T_DATE = 11;
+		private static final byte T_BYTES = 12;
+		private static final byte T_STRINGS = 13;
+		private static final byte T_ARRAYLIST = 20;
+		private static final byte T_VECTOR = 21;
+		private static final byte T_LINKEDLIST = 22;
+		private static final byte T_HASHSET = 23;
+		private static final byte T_LINKEDHASHSET = 24;
+		private static final byte T_TREESET = 25;
+		private static final byte T_HASHMAP = 26;
+		private static final byte T_LINKEDHASHMAP = 27;
+		private static final byte T_TREEMAP = 28;
+
+		/**
+		 * Thrown if the object contains a value of another class
+		 */
+		private static class UnsupportedValueException extends IOException {
+			private static final long serialVersionUID = 1L;
+
+			UnsupportedValueException(final Object value) {
+				super("Unsupported value of " + value.getClass().getName());
+			}
+		}
+
+		@Override
+		public String getName() {
+			return COMPACT;
+		}
+
+		@Override
+		public byte[] encode(final Serializable object) throws IOException {
+			ExposedByteArrayOutputStream bytes = new ExposedByteArrayOutputStream(256);
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeByte(PLAIN);
+			try {
+				write(out, object);
+			} catch (UnsupportedValueException e) {
+				return null;
+			}
+			out.flush();
+			byte[] buffer = bytes.buffer();
+			if (bytes.size() > COMPRESS_THRESHOLD) {
+				byte[] result = compress(buffer, bytes.size());
+				// the compressed data replaces the marker, so the PLAIN byte is included in it
+				byte[] framed = new byte[result.length + 1];
+				framed[0] = COMPRESSED;
+				System.arraycopy(result, 0, framed, 1, result.length);
+				return framed;
+			}
+			return bytes.toByteArray();
+		}
+
+		@Override
+		public Object decode(byte[] data) throws IOException, ClassNotFoundException {
+			if (data.length == 0)
+				throw new IOException("No data");
+			if (data[0] == COMPRESSED) {
+				data = decompress(data, 1);
+			}
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 1, data.length - 1));
+			return read(in);
+		}
+
+		protected void write(final DataOutputStream out, final Object value) throws IOException {
+			if (value == null) {
+				out.writeByte(T_NULL);
+				return;
+			}
+			Class<?> clazz = value.getClass();
+			if (clazz == String.class) {
+				out.writeByte(T_STRING);
+				writeString(out, (String) value);
+			} else if (clazz == Integer.class) {
+				out.writeByte(T_INT);
+				writeVarLong(out, zigZag((Integer) value));
+			} else if (clazz == Long.class) {
+				out.writeByte(T_LONG);
+				writeVarLong(out, zigZag((Long) value));
+			} else if (clazz == Double.class) {
+				out.writeByte(T_DOUBLE);
+				out.writeDouble((Double) value);
+			} else if (clazz == Boolean.class) {
+				out.writeByte((Boolean) value ? T_TRUE : T_FALSE);
+			} else if (clazz == Date.class) {
+				out.writeByte(T_DATE);
+				out.writeLong(((Date) value).getTime());
+			} else if (clazz == Float.class) {
+				out.writeByte(T_FLOAT);
+				out.writeFloat((Float) value);
+			} else if (clazz == Short.class) {
+				out.writeByte(T_SHORT);
+				out.writeShort((Short) value);
+			} else if (clazz == Byte.class) {
+				out.writeByte(T_BYTE);
+				out.writeByte((Byte) value);
+			} else if (clazz == Character.class) {
+				out.writeByte(T_CHAR);
+				out.writeChar((Character) value);
+			} else if (clazz == byte[].class) {
+				byte[] bytes = (byte[]) value;
+				out.writeByte(T_BYTES);
+				writeVarLong(out, bytes.length);
+				out.write(bytes);
+			} else if (clazz == String[].class) {
+				String[] strings = (String[]) value;
+				out.writeByte(T_STRINGS);
+				writeVarLong(out, strings.length);
+				for (String s : strings) {
+					if (s == null) {
+						out.writeByte(T_NULL);
+					} else {
+						out.writeByte(T_STRING);
+						writeString(out, s);
+					}
+				}
+			} else if (clazz == ArrayList.class) {
+				writeCollection(out, T_ARRAYLIST, (Collection<?>) value);
+			} else if (clazz == Vector.class) {
+				writeCollection(out, T_VECTOR, (Collection<?>) value);
+			} else if (clazz == LinkedList.class) {
+				writeCollection(out, T_LINKEDLIST, (Collection<?>) value);
+			} else if (clazz == HashSet.class) {
+				writeCollection(out, T_HASHSET, (Collection<?>) value);
+			} else if (clazz == LinkedHashSet.class) {
+				writeCollection(out, T_LINKEDHASHSET, (Collection<?>) value);
+			} else if (clazz == TreeSet.class && ((TreeSet<?>) value).comparator() == null) {
+				writeCollection(out, T_TREESET, (Collection<?>) value);
+			} else if (clazz == HashMap.class) {
+				writeMap(out, T_HASHMAP, (Map<?, ?>) value);
+			} else if (clazz == LinkedHashMap.class) {
+				writeMap(out, T_LINKEDHASHMAP, (Map<?, ?>) value);
+			} else if (clazz == TreeMap.class && ((TreeMap<?, ?>) value).comparator() == null) {
+				writeMap(out, T_TREEMAP, (Map<?, ?>) value);
+			} else {
+				throw new UnsupportedValueException(value);
+			}
+		}
+
+		private void writeCollection(final DataOutputStream out, final byte tag, final Collection<?> values) throws IOException {
+			out.writeByte(tag);
+			writeVarLong(out, values.size());
+			for (Object value : values) {
+				write(out, value);
+			}
+		}
+
+		private void writeMap(final DataOutputStream out, final byte tag, final Map<?, ?> map) throws IOException {
+			out.writeByte(tag);
+			writeVarLong(out, map.size());
+			for (Map.Entry<?, ?> e : map.entrySet()) {
+				write(out, e.getKey());
+				write(out, e.getValue());
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		protected Object read(final DataInputStream in) throws IOException {
+			byte tag = in.readByte();
+			switch (tag) {
+			case T_NULL:
+				return null;
+			case T_TRUE:
+				return Boolean.TRUE;
+			case T_FALSE:
+				return Boolean.FALSE;
+			case T_BYTE:
+				return in.readByte();
+			case T_SHORT:
+				return in.readShort();
+			case T_CHAR:
+				return in.readChar();
+			case T_INT:
+				return (int) unZigZag(readVarLong(in));
+			case T_LONG:
+				return unZigZag(readVarLong(in));
+			case T_FLOAT:
+				return in.readFloat();
+			case T_DOUBLE:
+				return in.readDouble();
+			case T_STRING:
+				return readString(in);
+			case T_DATE:
+				return new Date(in.readLong());
+			case T_BYTES: {
+				byte[] result = new byte[readSize(in)];
+				in.readFully(result);
+				return result;
+			}
+			case T_STRINGS: {
+				String[] result = new String[readSize(in)];
+				for (int i = 0; i < result.length; i++) {
+					result[i] = (String) read(in);
+				}
+				return result;
+			}
+			case T_ARRAYLIST: {
+				int size = readSize(in);
+				return readCollection(in, new ArrayList<Object>(size), size);
+			}
+			case T_VECTOR: {
+				int size = readSize(in);
+				return readCollection(in, new Vector<Object>(size), size);
+			}
+			case T_LINKEDLIST:
+				return readCollection(in, new LinkedList<Object>(), readSize(in));
+			case T_HASHSET: {
+				int size = readSize(in);
+				return readCollection(in, new HashSet<Object>(size * 2), size);
+			}
+			case T_LINKEDHASHSET: {
+				int size = readSize(in);
+				return readCollection(in, new LinkedHashSet<Object>(size * 2), size);
+			}
+			case T_TREESET:
+				return readCollection(in, new TreeSet<Object>(), readSize(in));
+			case T_HASHMAP: {
+				int size = readSize(in);
+				return readMap(in, new HashMap<Object, Object>(size * 2), size);
+			}
+			case T_LINKEDHASHMAP: {
+				int size = readSize(in);
+				return readMap(in, new LinkedHashMap<Object, Object>(size * 2), size);
+			}
+			case T_TREEMAP:
+				return readMap(in, new TreeMap<Object, Object>(), readSize(in));
+			default:
+				throw new IOException("Unknown tag " + tag);
+			}
+		}
+
+		private Collection<Object> readCollection(final DataInputStream in, final Collection<Object> result, final int size)
+				throws IOException {
+			for (int i = 0; i < size; i++) {
+				result.add(read(in));
+			}
+			return result;
+		}
+
+		private Map<Object, Object> readMap(final DataInputStream in, final Map<Object, Object> result, final int size) throws IOException {
+			for (int i = 0; i < size; i++) {
+				Object key = read(in);
+				result.put(key, read(in));
+			}
+			return result;
+		}
+
+		/**
+		 * Strings are written as UTF-8 with the length in bytes, as {@link DataOutputStream#writeUTF(String)} is limited to 64k
+		 */
+		private static void writeString(final DataOutputStream out, final String value) throws IOException {
+			byte[] bytes = value.getBytes("UTF-8");
+			writeVarLong(out, bytes.length);
+			out.write(bytes);
+		}
+
+		private static String readString(final DataInputStream in) throws IOException {
+			byte[] bytes = new byte[readSize(in)];
+			in.readFully(bytes);
+			return new String(bytes, "UTF-8");
+		}
+
+		private static int readSize(final DataInputStream in) throws IOException {
+			long size = readVarLong(in);
+			if (size < 0 || size > Integer.MAX_VALUE)
+				throw new IOException("Invalid size " + size);
+			return (int) size;
+		}
+
+		private static long zigZag(final long value) {
+			return (value << 1) ^ (value >> 63);
+		}
+
+		private static long unZigZag(final long value) {
+			return (value >>> 1) ^ -(value & 1);
+		}
+
+		private static void writeVarLong(final DataOutputStream out, long value) throws IOException {
+			while ((value & ~0x7FL) != 0) {
+				out.writeByte((int) ((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			out.writeByte((int) value);
+		}
+
+		private static long readVarLong(final DataInputStream in) throws IOException {
+			long result = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				byte b = in.readByte();
+				result |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0)
+					return result;
+			}
+			throw new IOException("Malformed variable length number");
+		}
+	}
+}
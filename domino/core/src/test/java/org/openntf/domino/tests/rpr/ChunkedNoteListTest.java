@@ -0,0 +1,178 @@
+package org.openntf.domino.tests.rpr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+import org.openntf.domino.Document;
+import org.openntf.domino.big.NoteCoordinate;
+import org.openntf.domino.big.impl.ChunkedNoteList;
+import org.openntf.domino.big.impl.NoteList;
+
+/**
+ * Writes ChunkedNoteLists to a document and reads them again. The document is a proxy that keeps the binary items in a map and records
+ * which items were written.
+ */
+public class ChunkedNoteListTest {
+	private static final String KEY = "_OPEN_OUT_knows";
+
+	private static class Items implements InvocationHandler {
+		final Map<String, byte[]> items = new HashMap<String, byte[]>();
+		final Set<String> written = new TreeSet<String>();
+
+		@Override
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+			String name = method.getName();
+			if ("readBinary".equals(name) || "readBinaryChunk".equals(name)) {
+				return items.get(args[0]);
+			} else if ("writeBinary".equals(name)) {
+				items.put((String) args[0], (byte[]) args[1]);
+				written.add((String) args[0]);
+				return null;
+			} else if ("removeItem".equals(name)) {
+				items.remove(args[0]);
+				return null;
+			} else if ("getUniversalID".equals(name)) {
+				return "0123456789ABCDEF0123456789ABCDEF";
+			}
+			throw new UnsupportedOperationException(name);
+		}
+
+		Document createDocument() {
+			return (Document) Proxy.newProxyInstance(Document.class.getClassLoader(), new Class<?>[] { Document.class }, this);
+		}
+	}
+
+	private NoteCoordinate randomCoordinate(final Random rnd) {
+		return NoteCoordinate.Utils.getNoteCoordinate(0x85257C0000000000L + rnd.nextInt(2), rnd.nextLong(), rnd.nextInt(1000));
+	}
+
+	private List<NoteCoordinate> sorted(final List<NoteCoordinate> list) {
+		List<NoteCoordinate> result = new ArrayList<NoteCoordinate>(list);
+		Collections.sort(result);
+		return result;
+	}
+
+	private ChunkedNoteList load(final Items items) {
+		ChunkedNoteList result = new ChunkedNoteList();
+		result.load(items.createDocument(), KEY);
+		return result;
+	}
+
+	@Test
+	public void testChunkItemName() {
+		assertEquals("_ADJ2" + KEY, ChunkedNoteList.getChunkItemName(KEY, 2));
+		assertFalse(ChunkedNoteList.getChunkItemName(KEY, 0).startsWith(KEY));
+	}
+
+	@Test
+	public void testWriteAndLoad() {
+		Random rnd = new Random(4711);
+		Items items = new Items();
+		ChunkedNoteList list = new ChunkedNoteList();
+		List<NoteCoordinate> expected = new ArrayList<NoteCoordinate>();
+		for (int i = 0; i < 5000; i++) {
+			NoteCoordinate nc = randomCoordinate(rnd);
+			expected.add(nc);
+			list.add(nc);
+		}
+		list.write(items.createDocument(), KEY);
+		assertEquals(4, items.items.size());
+		assertTrue(items.items.containsKey(ChunkedNoteList.getChunkItemName(KEY, 2)));
+		assertEquals(sorted(expected), sorted(list));
+		assertEquals(sorted(expected), sorted(load(items)));
+
+		// an empty document
+		assertTrue(load(new Items()).isEmpty());
+	}
+
+	@Test
+	public void testIncrementalWrite() {
+		Random rnd = new Random(42);
+		Items items = new Items();
+		ChunkedNoteList list = new ChunkedNoteList();
+		for (int i = 0; i < 5000; i++) {
+			list.add(randomCoordinate(rnd));
+		}
+		list.write(items.createDocument(), KEY);
+
+		// nothing changed, nothing is written
+		ChunkedNoteList loaded = load(items);
+		items.written.clear();
+		loaded.write(items.createDocument(), KEY);
+		assertTrue(items.written.isEmpty());
+
+		// appending rewrites the last chunk only
+		List<NoteCoordinate> expected = new ArrayList<NoteCoordinate>(loaded);
+		for (int i = 0; i < 10; i++) {
+			NoteCoordinate nc = randomCoordinate(rnd);
+			expected.add(nc);
+			loaded.add(nc);
+		}
+		loaded.write(items.createDocument(), KEY);
+		assertEquals(new TreeSet<String>(Arrays.asList(KEY, ChunkedNoteList.getChunkItemName(KEY, 2))), items.written);
+		assertEquals(sorted(expected), sorted(load(items)));
+
+		// removing coordinates drops the chunks that are not needed any more
+		loaded = load(items);
+		for (int i = 0; i < 3000; i++) {
+			expected.remove(loaded.remove(rnd.nextInt(loaded.size())));
+		}
+		loaded.write(items.createDocument(), KEY);
+		assertNull(items.items.get(ChunkedNoteList.getChunkItemName(KEY, 2)));
+		assertEquals(sorted(expected), sorted(load(items)));
+	}
+
+	@Test
+	public void testOldFormat() {
+		Random rnd = new Random(17);
+		NoteList old = new NoteList();
+		for (int i = 0; i < 100; i++) {
+			old.add(randomCoordinate(rnd));
+		}
+		Items items = new Items();
+		items.items.put(KEY, old.toByteArray());
+		ChunkedNoteList loaded = load(items);
+		assertEquals(new ArrayList<NoteCoordinate>(old), new ArrayList<NoteCoordinate>(loaded));
+
+		// the next write converts the list, even if it did not change
+		loaded.write(items.createDocument(), KEY);
+		assertTrue(items.items.containsKey(ChunkedNoteList.getChunkItemName(KEY, 0)));
+		assertEquals(sorted(old), sorted(load(items)));
+	}
+
+	@Test
+	public void testDamagedChunk() {
+		Random rnd = new Random(1);
+		Items items = new Items();
+		ChunkedNoteList list = new ChunkedNoteList();
+		for (int i = 0; i < 3000; i++) {
+			list.add(randomCoordinate(rnd));
+		}
+		list.write(items.createDocument(), KEY);
+		items.items.put(ChunkedNoteList.getChunkItemName(KEY, 1), new byte[] { (byte) 0x80 });
+
+		// the coordinates of the damaged chunk are lost, the rest is written again
+		ChunkedNoteList loaded = load(items);
+		assertEquals(ChunkedNoteList.CHUNK_ROWS, loaded.size());
+		items.written.clear();
+		loaded.write(items.createDocument(), KEY);
+		assertTrue(items.written.contains(ChunkedNoteList.getChunkItemName(KEY, 0)));
+		assertEquals(sorted(loaded), sorted(load(items)));
+	}
+}
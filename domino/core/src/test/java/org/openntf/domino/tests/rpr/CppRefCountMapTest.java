@@ -0,0 +1,87 @@
+package org.openntf.domino.tests.rpr;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+import org.openntf.domino.impl.CppRefCountMap;
+
+/**
+ * Compares CppRefCountMap with a HashMap, also while entries are removed and the segments grow, and checks the counts after concurrent
+ * updates.
+ */
+public class CppRefCountMapTest {
+
+	/** C++ pointers are aligned */
+	private long cppId(final int i) {
+		return 0x7F0000000000L + i * 16L;
+	}
+
+	@Test
+	public void testCounts() {
+		Random rnd = new Random(4711);
+		CppRefCountMap map = new CppRefCountMap(16);
+		Map<Long, Integer> expected = new HashMap<Long, Integer>();
+		for (int i = 0; i < 200000; i++) {
+			long id = cppId(rnd.nextInt(5000));
+			Integer count = expected.get(id);
+			if (rnd.nextInt(5) < 3) {
+				int value = count == null ? 1 : count + 1;
+				expected.put(id, value);
+				assertEquals(value, map.increment(id));
+			} else if (count == null) {
+				assertEquals(0, map.decrement(id));
+			} else {
+				if (count == 1) {
+					expected.remove(id);
+				} else {
+					expected.put(id, count - 1);
+				}
+				assertEquals(count - 1, map.decrement(id));
+			}
+		}
+		assertEquals(expected.size(), map.size());
+		for (int i = 0; i < 5000; i++) {
+			Integer count = expected.get(cppId(i));
+			assertEquals(count == null ? 0 : count.intValue(), map.get(cppId(i)));
+		}
+	}
+
+	@Test
+	public void testConcurrent() throws Exception {
+		final CppRefCountMap map = new CppRefCountMap(1000);
+		Thread[] threads = new Thread[8];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int round = 0; round < 20; round++) {
+						for (int i = 1; i <= 2000; i++) {
+							map.increment(cppId(i));
+							map.increment(cppId(i));
+						}
+						for (int i = 1; i <= 2000; i++) {
+							map.decrement(cppId(i));
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(2000, map.size());
+		for (int i = 1; i <= 2000; i++) {
+			assertEquals(threads.length * 20, map.get(cppId(i)));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testZero() {
+		new CppRefCountMap(16).increment(0);
+	}
+}
@@ -0,0 +1,276 @@
+package org.openntf.domino.tests.rpr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.openntf.domino.Database;
+import org.openntf.domino.DateTime;
+import org.openntf.domino.Document;
+import org.openntf.domino.DocumentCollection;
+import org.openntf.domino.NoteCollection;
+import org.openntf.domino.big.NoteCoordinate;
+import org.openntf.domino.graph2.DElement;
+import org.openntf.domino.graph2.DVertex;
+import org.openntf.domino.graph2.impl.DPropertyIndex;
+
+/**
+ * Lookups, ranges, multiple values and the serialization of DPropertyIndex, and the refresh of an index from the modified documents and
+ * the deletion stubs.
+ */
+public class DPropertyIndexTest {
+
+	private NoteCoordinate id(final int i) {
+		return NoteCoordinate.Utils.getNoteCoordinate(0x85257C0000000001L, 4711L, i);
+	}
+
+	@Test
+	public void testGet() {
+		DPropertyIndex index = new DPropertyIndex("Name", false);
+		index.put(id(1), "Smith");
+		index.put(id(2), "SMITH");
+		index.put(id(3), "Miller");
+		index.put(id(4), 5);
+		index.put(id(5), "");
+		assertEquals(4, index.size());
+		assertEquals(Arrays.asList(id(1), id(2)), index.get("smith"));
+		assertEquals(Arrays.asList(id(4)), index.get(5.0));
+		assertEquals(Arrays.asList(id(4)), index.get(5L));
+		assertTrue(index.get("Jones").isEmpty());
+		assertTrue(index.get(null).isEmpty());
+		assertTrue(index.isChanged());
+
+		// a new value replaces the old one
+		index.put(id(1), "Jones");
+		assertEquals(Arrays.asList(id(2)), index.get("Smith"));
+		assertEquals(Arrays.asList(id(1)), index.get("jones"));
+
+		assertTrue(index.remove(id(2)));
+		assertFalse(index.remove(id(2)));
+		assertTrue(index.get("Smith").isEmpty());
+		index.put(id(3), null);
+		assertTrue(index.get("Miller").isEmpty());
+		assertEquals(2, index.size());
+	}
+
+	@Test
+	public void testMultipleValues() {
+		DPropertyIndex index = new DPropertyIndex("Tags", true);
+		index.put(id(1), Arrays.asList("red", "Red", "blue", null));
+		index.put(id(2), new Object[] { "BLUE", 1 });
+		assertEquals(Arrays.asList(id(1)), index.get("RED"));
+		assertEquals(Arrays.asList(id(1), id(2)), index.get("Blue"));
+		assertEquals(Arrays.asList(id(2)), index.get(1));
+
+		index.put(id(1), Collections.singletonList("green"));
+		assertTrue(index.get("red").isEmpty());
+		assertEquals(Arrays.asList(id(2)), index.get("blue"));
+	}
+
+	@Test
+	public void testRange() {
+		DPropertyIndex index = new DPropertyIndex("Value", false);
+		index.put(id(1), "b");
+		index.put(id(2), "C");
+		index.put(id(3), 10);
+		index.put(id(4), 2);
+		index.put(id(5), new Date(1000));
+		index.put(id(6), "a");
+		// numbers before dates before strings
+		assertEquals(Arrays.asList(id(4), id(3), id(5), id(6), id(1), id(2)), index.getRange(null, null));
+		assertEquals(Arrays.asList(id(4), id(3)), index.getRange(0, 100));
+		assertEquals(Arrays.asList(id(1), id(2)), index.getRange("B", null));
+		assertEquals(Arrays.asList(id(6), id(1)), index.getRange("A", "c"));
+		assertEquals(Arrays.asList(id(4), id(3), id(5)), index.getRange(null, "a"));
+	}
+
+	@Test
+	public void testSerialization() throws Exception {
+		DPropertyIndex index = new DPropertyIndex("Value", true);
+		index.put(id(1), "x");
+		index.put(id(2), Arrays.asList("x", "y"));
+		index.put(id(3), new Date(123456789L));
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(index);
+		out.close();
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		DPropertyIndex read = (DPropertyIndex) in.readObject();
+
+		assertEquals("Value", read.getKey());
+		assertTrue(read.isEdgeIndex());
+		assertFalse(read.isChanged());
+		assertEquals(0, read.getLastRefresh());
+		assertEquals(3, read.size());
+		assertEquals(new HashSet<NoteCoordinate>(Arrays.asList(id(1), id(2))), new HashSet<NoteCoordinate>(read.get("X")));
+		assertEquals(Arrays.asList(id(2)), read.get("y"));
+		assertEquals(Arrays.asList(id(3)), read.get(new Date(123456789L)));
+	}
+
+	/**
+	 * A database proxy with an empty note collection, which fails on every method the refresh must not call
+	 */
+	private static class EmptyDatabase implements InvocationHandler {
+		final Date buildTime = new Date(2000000000000L);
+		Date lastModified;
+
+		@Override
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+			String name = method.getName();
+			if ("createNoteCollection".equals(name)) {
+				return Proxy.newProxyInstance(NoteCollection.class.getClassLoader(), new Class<?>[] { NoteCollection.class }, this);
+			} else if ("getLastBuildTime".equals(name)) {
+				return Proxy.newProxyInstance(DateTime.class.getClassLoader(), new Class<?>[] { DateTime.class }, this);
+			} else if ("toJavaDate".equals(name)) {
+				return buildTime;
+			} else if ("iterator".equals(name)) {
+				return Collections.<String> emptyList().iterator();
+			} else if ("getLastModifiedDate".equals(name)) {
+				return lastModified;
+			} else if ("getApiPath".equals(name)) {
+				return "server!!names.nsf";
+			} else if (method.getReturnType() == Void.TYPE) {
+				return null;
+			}
+			throw new UnsupportedOperationException(name);
+		}
+
+		Database createDatabase() {
+			return (Database) Proxy.newProxyInstance(Database.class.getClassLoader(), new Class<?>[] { Database.class }, this);
+		}
+	}
+
+	@Test
+	public void testRefreshUnmodified() {
+		EmptyDatabase handler = new EmptyDatabase();
+		Database db = handler.createDatabase();
+		DPropertyIndex index = new DPropertyIndex("Name", false);
+		index.refresh(db);
+		// the time of the database, not of the local clock
+		assertEquals(handler.buildTime, index.getSince());
+		assertTrue(index.getLastRefresh() > 0);
+
+		// not modified since the build: the modified documents are not searched
+		handler.lastModified = new Date(handler.buildTime.getTime() - 1000);
+		index.put(id(1), "Smith");
+		assertEquals(0, index.refresh(db));
+		assertEquals(handler.buildTime, index.getSince());
+		assertEquals(Arrays.asList(id(1)), index.get("smith"));
+	}
+
+	/**
+	 * A database proxy that was modified after the index was built. The modified notes are the modified documents and the deletion stubs.
+	 */
+	private static class ModifiedDatabase implements InvocationHandler {
+		final Date buildTime = new Date(2000000000000L);
+		final Date untilTime = new Date(buildTime.getTime() + 2000);
+		final Map<String, Document> documents = new LinkedHashMap<String, Document>();
+		final Map<String, String> unids = new LinkedHashMap<String, String>();
+		final Database db = (Database) Proxy.newProxyInstance(Database.class.getClassLoader(), new Class<?>[] { Database.class }, this);
+		Date lastModified;
+		Date time = buildTime;
+
+		void modify(final String noteid, final NoteCoordinate id, final String name) {
+			unids.put(noteid, id.getUNID());
+			documents.put(noteid, (Document) Proxy.newProxyInstance(Document.class.getClassLoader(), new Class<?>[] { Document.class },
+					new InvocationHandler() {
+						@Override
+						public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+							String mname = method.getName();
+							if ("getNoteID".equals(mname)) {
+								return noteid;
+							} else if ("getUniversalID".equals(mname)) {
+								return id.getUNID();
+							} else if ("getAncestorDatabase".equals(mname)) {
+								return db;
+							} else if ("isValid".equals(mname)) {
+								return true;
+							} else if ("isDeleted".equals(mname)) {
+								return false;
+							} else if ("get".equals(mname)) {
+								return DElement.TYPE_FIELD.equals(args[0]) ? DVertex.GRAPH_TYPE_VALUE : name;
+							}
+							throw new UnsupportedOperationException(mname);
+						}
+					}));
+		}
+
+		void delete(final String noteid, final NoteCoordinate id) {
+			unids.put(noteid, id.getUNID());
+		}
+
+		@Override
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+			String name = method.getName();
+			if ("createNoteCollection".equals(name)) {
+				return Proxy.newProxyInstance(NoteCollection.class.getClassLoader(), new Class<?>[] { NoteCollection.class }, this);
+			} else if ("getModifiedDocuments".equals(name)) {
+				time = untilTime;
+				return Proxy.newProxyInstance(DocumentCollection.class.getClassLoader(), new Class<?>[] { DocumentCollection.class }, this);
+			} else if ("getLastBuildTime".equals(name) || "getUntilTime".equals(name)) {
+				return Proxy.newProxyInstance(DateTime.class.getClassLoader(), new Class<?>[] { DateTime.class }, this);
+			} else if ("toJavaDate".equals(name)) {
+				return time;
+			} else if ("iterator".equals(name)) {
+				return proxy instanceof NoteCollection ? unids.keySet().iterator() : documents.values().iterator();
+			} else if ("getCount".equals(name)) {
+				return unids.size();
+			} else if ("getUNID".equals(name)) {
+				return unids.get(args[0]);
+			} else if ("getAncestorDatabase".equals(name)) {
+				return db;
+			} else if ("getReplicaID".equals(name)) {
+				return NoteCoordinate.Utils.getReplidFromLong(0x85257C0000000001L);
+			} else if ("getLastModifiedDate".equals(name)) {
+				return lastModified;
+			} else if ("getApiPath".equals(name)) {
+				return "server!!names.nsf";
+			} else if (method.getReturnType() == Void.TYPE) {
+				return null;
+			}
+			throw new UnsupportedOperationException(name);
+		}
+	}
+
+	@Test
+	public void testRefreshDeleted() {
+		ModifiedDatabase handler = new ModifiedDatabase();
+		DPropertyIndex index = new DPropertyIndex("Name", false);
+		index.refresh(handler.db);
+		assertEquals(handler.buildTime, index.getSince());
+		index.put(id(1), "Smith");
+		index.put(id(2), "Miller");
+		index.put(id(3), "Jones");
+		index.put(id(4), "Brown");
+
+		handler.lastModified = new Date(handler.buildTime.getTime() + 1000);
+		handler.modify("8FA", id(1), "Smythe");
+		// the note id of a deletion stub may carry the deleted flag
+		handler.delete("800008FE", id(2));
+		handler.delete("902", id(4));
+		assertEquals(3, index.refresh(handler.db));
+		assertEquals(handler.untilTime, index.getSince());
+		assertTrue(index.get("smith").isEmpty());
+		assertEquals(Arrays.asList(id(1)), index.get("smythe"));
+		assertTrue(index.get("miller").isEmpty());
+		assertTrue(index.get("brown").isEmpty());
+		assertEquals(Arrays.asList(id(3)), index.get("jones"));
+		assertEquals(2, index.size());
+	}
+}
@@ -0,0 +1,135 @@
+package org.openntf.domino.tests.rpr;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.junit.Test;
+import org.openntf.domino.types.NoteIdBitmap;
+
+/**
+ * Compares the set operations of NoteIdBitmap with a TreeSet, for array and bitmap containers and note IDs above 0x8000.0000.
+ */
+public class NoteIdBitmapTest {
+
+	/** note IDs as unsigned values, the order of the bitmap */
+	private SortedSet<Long> randomSet(final Random rnd, final int count, final int base, final int range) {
+		SortedSet<Long> result = new TreeSet<Long>();
+		while (result.size() < count) {
+			result.add((base + rnd.nextInt(range)) & 0xFFFFFFFFL);
+		}
+		return result;
+	}
+
+	private int[] toArray(final SortedSet<Long> set) {
+		int[] result = new int[set.size()];
+		int i = 0;
+		for (long nid : set) {
+			result[i++] = (int) nid;
+		}
+		return result;
+	}
+
+	private List<SortedSet<Long>> createSets(final Random rnd) {
+		List<SortedSet<Long>> result = new ArrayList<SortedSet<Long>>();
+		result.add(new TreeSet<Long>());
+		// one sparse container
+		result.add(randomSet(rnd, 100, 0x10000, 0x10000));
+		// a bitmap container and a few array containers
+		result.add(randomSet(rnd, 10000, 0x10000, 0x20000));
+		// many containers, also above 0x8000.0000
+		result.add(randomSet(rnd, 5000, 0x7FFF0000, 0x40000));
+		return result;
+	}
+
+	@Test
+	public void testValueOf() {
+		NoteIdBitmap bitmap = NoteIdBitmap.valueOf(new int[] { 0x20004, 4, 0x80000004, 4, 0x20000 });
+		assertArrayEquals(new int[] { 4, 0x20000, 0x20004, 0x80000004 }, bitmap.toArray());
+		assertEquals(4, bitmap.size());
+		assertTrue(bitmap.contains(0x80000004));
+		assertFalse(bitmap.contains(0x80000000));
+		assertTrue(new NoteIdBitmap().isEmpty());
+	}
+
+	@Test
+	public void testAddRemove() {
+		Random rnd = new Random(17);
+		NoteIdBitmap bitmap = new NoteIdBitmap();
+		SortedSet<Long> expected = new TreeSet<Long>();
+		for (int i = 0; i < 20000; i++) {
+			int nid = 0x10000 + rnd.nextInt(0x30000);
+			if (rnd.nextInt(3) == 0) {
+				assertEquals(expected.remove(nid & 0xFFFFFFFFL), bitmap.remove(nid));
+			} else {
+				assertEquals(expected.add(nid & 0xFFFFFFFFL), bitmap.add(nid));
+			}
+		}
+		assertEquals(expected.size(), bitmap.size());
+		assertArrayEquals(toArray(expected), bitmap.toArray());
+		List<Integer> iterated = new ArrayList<Integer>();
+		for (int nid : bitmap) {
+			iterated.add(nid);
+		}
+		assertEquals(expected.size(), iterated.size());
+		assertArrayEquals(bitmap.toArray(), toArray(iterated));
+	}
+
+	private int[] toArray(final List<Integer> list) {
+		int[] result = new int[list.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = list.get(i);
+		}
+		return result;
+	}
+
+	@Test
+	public void testOperations() {
+		Random rnd = new Random(4711);
+		for (SortedSet<Long> set1 : createSets(rnd)) {
+			for (SortedSet<Long> set2 : createSets(rnd)) {
+				NoteIdBitmap bitmap1 = NoteIdBitmap.valueOf(toArray(set1));
+				NoteIdBitmap bitmap2 = NoteIdBitmap.valueOf(toArray(set2));
+				assertArrayEquals(toArray(set1), bitmap1.toArray());
+
+				SortedSet<Long> and = new TreeSet<Long>(set1);
+				and.retainAll(set2);
+				assertArrayEquals(toArray(and), bitmap1.and(bitmap2).toArray());
+
+				SortedSet<Long> or = new TreeSet<Long>(set1);
+				or.addAll(set2);
+				assertArrayEquals(toArray(or), bitmap1.or(bitmap2).toArray());
+
+				SortedSet<Long> andNot = new TreeSet<Long>(set1);
+				andNot.removeAll(set2);
+				assertArrayEquals(toArray(andNot), bitmap1.andNot(bitmap2).toArray());
+			}
+		}
+	}
+
+	@Test
+	public void testSerialization() throws Exception {
+		for (SortedSet<Long> set : createSets(new Random(1))) {
+			NoteIdBitmap bitmap = NoteIdBitmap.valueOf(toArray(set));
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeObject(bitmap);
+			out.close();
+			ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+			NoteIdBitmap read = (NoteIdBitmap) in.readObject();
+			assertEquals(bitmap, read);
+			assertArrayEquals(toArray(set), read.toArray());
+		}
+	}
+}
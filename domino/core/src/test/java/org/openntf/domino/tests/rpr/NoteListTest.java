@@ -0,0 +1,158 @@
+package org.openntf.domino.tests.rpr;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Random;
+
+import org.junit.Test;
+import org.openntf.domino.big.NoteCoordinate;
+import org.openntf.domino.big.impl.NoteList;
+
+/**
+ * Compares NoteList, which keeps the coordinates in a packed long array, with an ArrayList.
+ */
+public class NoteListTest {
+
+	/** a few databases, so the coordinates differ in every long */
+	private NoteCoordinate randomCoordinate(final Random rnd) {
+		return NoteCoordinate.Utils.getNoteCoordinate(0x85257C0000000000L + rnd.nextInt(3), rnd.nextLong(), rnd.nextInt(50));
+	}
+
+	private NoteList createList(final List<NoteCoordinate> expected, final Random rnd, final int count) {
+		NoteList list = new NoteList();
+		for (int i = 0; i < count; i++) {
+			NoteCoordinate nc = randomCoordinate(rnd);
+			expected.add(nc);
+			list.add(nc);
+		}
+		return list;
+	}
+
+	@Test
+	public void testListOperations() {
+		Random rnd = new Random(4711);
+		List<NoteCoordinate> expected = new ArrayList<NoteCoordinate>();
+		NoteList list = createList(expected, rnd, 100);
+		for (int i = 0; i < 5000; i++) {
+			switch (rnd.nextInt(5)) {
+			case 0:
+				NoteCoordinate nc = randomCoordinate(rnd);
+				int index = rnd.nextInt(expected.size() + 1);
+				expected.add(index, nc);
+				list.add(index, nc);
+				break;
+			case 1:
+				if (!expected.isEmpty()) {
+					index = rnd.nextInt(expected.size());
+					assertEquals(expected.remove(index), list.remove(index));
+				}
+				break;
+			case 2:
+				if (!expected.isEmpty()) {
+					nc = expected.get(rnd.nextInt(expected.size()));
+					assertEquals(expected.remove(nc), list.remove(nc));
+				}
+				break;
+			case 3:
+				if (!expected.isEmpty()) {
+					index = rnd.nextInt(expected.size());
+					nc = randomCoordinate(rnd);
+					assertEquals(expected.set(index, nc), list.set(index, nc));
+				}
+				break;
+			default:
+				nc = randomCoordinate(rnd);
+				assertEquals(expected.indexOf(nc), list.indexOf(nc));
+				assertEquals(expected.lastIndexOf(nc), list.lastIndexOf(nc));
+				assertEquals(expected.contains(nc), list.contains(nc));
+			}
+		}
+		assertEquals(expected.size(), list.size());
+		assertEquals(expected, new ArrayList<NoteCoordinate>(list));
+		assertFalse(list.contains("not a coordinate"));
+	}
+
+	@Test
+	public void testSubListAndIterator() {
+		Random rnd = new Random(42);
+		List<NoteCoordinate> expected = new ArrayList<NoteCoordinate>();
+		NoteList list = createList(expected, rnd, 300);
+		assertEquals(expected.subList(17, 250), new ArrayList<NoteCoordinate>(list.subList(17, 250)));
+		assertTrue(list.subList(5, 5).isEmpty());
+		assertArrayEquals(expected.toArray(), list.toArray());
+		assertArrayEquals(expected.toArray(new NoteCoordinate[0]), list.toArray(new NoteCoordinate[0]));
+
+		ListIterator<NoteCoordinate> it = list.listIterator();
+		int pos = 0;
+		while (it.hasNext()) {
+			it.next();
+			if (pos++ % 3 == 0) {
+				it.remove();
+			}
+		}
+		for (int i = expected.size() - 1; i >= 0; i--) {
+			if (i % 3 == 0) {
+				expected.remove(i);
+			}
+		}
+		assertEquals(expected, new ArrayList<NoteCoordinate>(list));
+	}
+
+	@Test
+	public void testAddAllRemoveAll() {
+		Random rnd = new Random(1);
+		List<NoteCoordinate> expected = new ArrayList<NoteCoordinate>();
+		NoteList list = createList(expected, rnd, 50);
+		List<NoteCoordinate> more = new ArrayList<NoteCoordinate>();
+		for (int i = 0; i < 20; i++) {
+			more.add(randomCoordinate(rnd));
+		}
+		expected.addAll(10, more);
+		list.addAll(10, more);
+		expected.addAll(more);
+		list.addAll(more);
+		assertEquals(expected, new ArrayList<NoteCoordinate>(list));
+		assertTrue(list.containsAll(more));
+
+		List<NoteCoordinate> removed = more.subList(0, 5);
+		assertEquals(expected.removeAll(removed), list.removeAll(removed));
+		assertEquals(expected, new ArrayList<NoteCoordinate>(list));
+		assertEquals(expected.retainAll(more), list.retainAll(more));
+		assertEquals(expected, new ArrayList<NoteCoordinate>(list));
+		list.clear();
+		assertTrue(list.isEmpty());
+	}
+
+	@Test
+	public void testSerialization() throws Exception {
+		Random rnd = new Random(17);
+		List<NoteCoordinate> expected = new ArrayList<NoteCoordinate>();
+		// more than one chunk of the stream
+		NoteList list = createList(expected, rnd, 5000);
+
+		NoteList loaded = new NoteList();
+		loaded.loadByteArray(list.toByteArray());
+		assertEquals(expected, new ArrayList<NoteCoordinate>(loaded));
+		// the format of the coordinates
+		assertArrayEquals(expected.get(3).toByteArray(), Arrays.copyOfRange(list.toByteArray(), 3 * 24, 4 * 24));
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		list.writeExternal(out);
+		out.close();
+		NoteList read = new NoteList();
+		read.readExternal(new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		assertEquals(expected, new ArrayList<NoteCoordinate>(read));
+	}
+}
@@ -0,0 +1,130 @@
+package org.openntf.domino.tests.rpr;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.junit.Test;
+import org.openntf.domino.big.impl.PostingList;
+
+/**
+ * Compares the operations of sparse (block encoded) and dense (bitmap) posting lists with a TreeSet.
+ */
+public class PostingListTest {
+
+	private SortedSet<Integer> randomSet(final Random rnd, final int count, final int range) {
+		SortedSet<Integer> result = new TreeSet<Integer>();
+		while (result.size() < count) {
+			result.add(rnd.nextInt(range));
+		}
+		return result;
+	}
+
+	private PostingList toList(final SortedSet<Integer> set) {
+		PostingList.Builder b = new PostingList.Builder();
+		for (int doc : set) {
+			b.add(doc);
+		}
+		return b.build();
+	}
+
+	private int[] toArray(final SortedSet<Integer> set) {
+		int[] result = new int[set.size()];
+		int i = 0;
+		for (int doc : set) {
+			result[i++] = doc;
+		}
+		return result;
+	}
+
+	@Test
+	public void testBuilder() {
+		PostingList list = PostingList.of(5, 3, 1000000, 3, 0);
+		assertArrayEquals(new int[] { 0, 3, 5, 1000000 }, list.toArray());
+		assertEquals(4, list.size());
+		assertEquals(1000000, list.getLast());
+		assertFalse(list.isBitmap());
+		assertTrue(PostingList.of(0, 1, 2, 3).isBitmap());
+		assertTrue(PostingList.EMPTY.isEmpty());
+		assertEquals(-1, PostingList.EMPTY.getLast());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegative() {
+		PostingList.of(1, -1);
+	}
+
+	@Test
+	public void testOperations() {
+		Random rnd = new Random(4711);
+		// sparse and dense lists, also with more than one block
+		int[][] shapes = { { 10, 100000 }, { 500, 1000000 }, { 3000, 5000 }, { 200, 300 } };
+		for (int[] s1 : shapes) {
+			for (int[] s2 : shapes) {
+				SortedSet<Integer> set1 = randomSet(rnd, s1[0], s1[1]);
+				SortedSet<Integer> set2 = randomSet(rnd, s2[0], s2[1]);
+				PostingList list1 = toList(set1);
+				PostingList list2 = toList(set2);
+				assertArrayEquals(toArray(set1), list1.toArray());
+
+				SortedSet<Integer> and = new TreeSet<Integer>(set1);
+				and.retainAll(set2);
+				assertArrayEquals(toArray(and), list1.and(list2).toArray());
+
+				SortedSet<Integer> or = new TreeSet<Integer>(set1);
+				or.addAll(set2);
+				assertArrayEquals(toArray(or), list1.or(list2).toArray());
+
+				SortedSet<Integer> andNot = new TreeSet<Integer>(set1);
+				andNot.removeAll(set2);
+				assertArrayEquals(toArray(andNot), list1.andNot(list2).toArray());
+			}
+		}
+	}
+
+	@Test
+	public void testCursor() {
+		Random rnd = new Random(42);
+		for (int range : new int[] { 1000, 1000000 }) {
+			TreeSet<Integer> set = new TreeSet<Integer>(randomSet(rnd, 700, range));
+			PostingList list = toList(set);
+			for (int i = 0; i < 200; i++) {
+				int target = rnd.nextInt(range + 10);
+				Integer expected = set.ceiling(target);
+				PostingList.Cursor c = list.cursor();
+				assertEquals(expected == null ? PostingList.END : expected.intValue(), c.advance(target));
+				assertEquals(set.contains(target), list.contains(target));
+			}
+			PostingList.Cursor c = list.cursor();
+			for (int doc : set) {
+				assertEquals(doc, c.next());
+			}
+			assertEquals(PostingList.END, c.next());
+		}
+	}
+
+	@Test
+	public void testSerialization() throws Exception {
+		Random rnd = new Random(1);
+		for (PostingList list : new PostingList[] { PostingList.EMPTY, toList(randomSet(rnd, 1000, 2000)),
+				toList(randomSet(rnd, 1000, 10000000)) }) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeObject(list);
+			out.close();
+			ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+			PostingList read = (PostingList) in.readObject();
+			assertEquals(list, read);
+			assertArrayEquals(list.toArray(), read.toArray());
+		}
+	}
+}
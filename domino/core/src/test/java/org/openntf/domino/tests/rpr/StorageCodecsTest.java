@@ -0,0 +1,152 @@
+package org.openntf.domino.tests.rpr;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.Vector;
+
+import org.junit.Test;
+import org.openntf.domino.utils.LZ4Utils;
+import org.openntf.domino.utils.StorageCodec;
+import org.openntf.domino.utils.StorageCodecs;
+
+/**
+ * Round trips of LZ4Utils and of the built-in storage codecs.
+ */
+public class StorageCodecsTest {
+
+	public static class Bean implements Serializable {
+		private static final long serialVersionUID = 1L;
+		public String name;
+
+		@Override
+		public boolean equals(final Object obj) {
+			return obj instanceof Bean && ((Bean) obj).name.equals(name);
+		}
+
+		@Override
+		public int hashCode() {
+			return name.hashCode();
+		}
+	}
+
+	private List<byte[]> createData() {
+		Random rnd = new Random(4711);
+		List<byte[]> result = new ArrayList<byte[]>();
+		result.add(new byte[0]);
+		result.add("short".getBytes());
+		byte[] random = new byte[100000];
+		rnd.nextBytes(random);
+		result.add(random);
+		// overlapping matches
+		byte[] same = new byte[70000];
+		Arrays.fill(same, (byte) 'a');
+		result.add(same);
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			text.append("Document ").append(rnd.nextInt(100)).append(" of the form Memo;");
+		}
+		result.add(text.toString().getBytes());
+		return result;
+	}
+
+	@Test
+	public void testLZ4() throws Exception {
+		for (byte[] data : createData()) {
+			byte[] compressed = LZ4Utils.compress(data);
+			assertTrue(compressed.length <= LZ4Utils.maxCompressedLength(data.length));
+			assertArrayEquals(data, LZ4Utils.decompress(compressed, 0, data.length));
+			// with an offset
+			byte[] shifted = new byte[compressed.length + 3];
+			System.arraycopy(compressed, 0, shifted, 3, compressed.length);
+			assertArrayEquals(data, LZ4Utils.decompress(shifted, 3, data.length));
+		}
+	}
+
+	@Test
+	public void testLZ4Corrupt() {
+		byte[] data = createData().get(4);
+		byte[] compressed = LZ4Utils.compress(data);
+		try {
+			LZ4Utils.decompress(compressed, 0, data.length / 2);
+			fail("the block is longer than the given length");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	private List<Serializable> createValues() {
+		List<Serializable> result = new ArrayList<Serializable>();
+		result.add("a string with umlauts äöü");
+		result.add(42);
+		result.add(-4200000000L);
+		result.add(3.14);
+		result.add(Boolean.TRUE);
+		result.add(new Date(1234567890123L));
+		result.add(new String[] { "a", null, "c" });
+		Vector<Object> vector = new Vector<Object>();
+		vector.add("x");
+		vector.add(1);
+		vector.add(null);
+		result.add(vector);
+		Map<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("z", new TreeSet<String>(Arrays.asList("b", "a")));
+		map.put("a", 7);
+		StringBuilder large = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			large.append("value ").append(i % 10);
+		}
+		map.put("large", large.toString());
+		result.add((Serializable) map);
+		return result;
+	}
+
+	private void assertValueEquals(final Object expected, final Object actual) {
+		assertNotNull(actual);
+		assertEquals(expected.getClass(), actual.getClass());
+		if (expected instanceof Object[]) {
+			assertArrayEquals((Object[]) expected, (Object[]) actual);
+		} else {
+			assertEquals(expected, actual);
+		}
+	}
+
+	@Test
+	public void testCodecs() throws Exception {
+		for (String name : new String[] { StorageCodecs.JAVA_LZ4, StorageCodecs.COMPACT }) {
+			StorageCodec codec = StorageCodecs.getCodec(name);
+			assertEquals(name, codec.getName());
+			for (Serializable value : createValues()) {
+				byte[] data = codec.encode(value);
+				assertNotNull(name + " " + value, data);
+				assertValueEquals(value, codec.decode(data));
+			}
+		}
+	}
+
+	@Test
+	public void testUnsupportedValue() throws Exception {
+		Bean bean = new Bean();
+		bean.name = "bean";
+		assertNull(StorageCodecs.getCodec(StorageCodecs.COMPACT).encode(bean));
+		List<Object> list = new ArrayList<Object>();
+		list.add(bean);
+		assertNull(StorageCodecs.getCodec(StorageCodecs.COMPACT).encode((Serializable) list));
+		StorageCodec lz4 = StorageCodecs.getCodec(StorageCodecs.JAVA_LZ4);
+		assertEquals(bean, lz4.decode(lz4.encode(bean)));
+	}
+}
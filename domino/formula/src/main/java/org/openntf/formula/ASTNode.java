@@ -40,6 +40,17 @@ public interface ASTNode {
 	 */
 	public List<Object> solve(FormulaContext ctx) throws EvaluateException;
 
+	/**
+	 * Solves the formula for many documents at once. The AST-Tree is walked once for the whole batch, not once per document.
+	 * 
+	 * @param contexts
+	 *            one context per document (see {@link Formulas#createContexts(List, FormulaParser)})
+	 * @return the results, in the same order as the contexts. If the evaluation failed for a document, its result is a list with the
+	 *         {@link EvaluateException} that {@link #solve(FormulaContext)} would throw as only element. The other documents are not
+	 *         affected.
+	 */
+	public List<List<Object>> solveBatch(List<? extends FormulaContext> contexts);
+
 	/**
 	 * return a set of used functions (all function names are lowercase)
 	 * 
@@ -0,0 +1,309 @@
+/*
+ * © Copyright FOCONIS AG, 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ * 
+ */
+package org.openntf.formula;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A process wide cache for parsed formulas. The cache is shared by all parsers, so that a formula is parsed only once, even if it is used
+ * by many threads.
+ * 
+ * Lookups do not lock. If the cache exceeds its maximum weight, one thread evicts the entries that were used least frequently (and least
+ * recently) down to 3/4 of the maximum weight, while the other threads continue. The weight of an entry depends on the length of the
+ * formula, so that long formulas are evicted earlier.
+ * 
+ * @author Roland Praml, Foconis AG
+ * 
+ */
+public class FormulaCache {
+
+	/** default maximum weight of the cache */
+	public static final long DEFAULT_MAX_WEIGHT = 4096;
+
+	/** default formula length that counts as one additional weight unit */
+	public static final int DEFAULT_LENGTH_UNIT = 256;
+
+	/**
+	 * The key of a cached formula. A parsed formula depends on the formatter (numbers, dates, folded constants), the function factory, the
+	 * include provider and the folding mode of the parser, so these are part of the key (objects are compared by identity)
+	 */
+	static final class Key {
+		private final String formula;
+		private final boolean focFormula;
+		private final boolean folded;
+		private final Object formatter;
+		private final Object functionFactory;
+		private final Object includeProvider;
+		private final int hash;
+
+		Key(final String formula, final boolean focFormula, final boolean folded, final Object formatter, final Object functionFactory,
+				final Object includeProvider) {
+			this.formula = formula;
+			this.focFormula = focFormula;
+			this.folded = folded;
+			this.formatter = formatter;
+			this.functionFactory = functionFactory;
+			this.includeProvider = includeProvider;
+			int h = formula.hashCode();
+			h = h * 31 + (focFormula ? 1 : 0) + (folded ? 2 : 0);
+			h = h * 31 + System.identityHashCode(formatter);
+			h = h * 31 + System.identityHashCode(functionFactory);
+			h = h * 31 + System.identityHashCode(includeProvider);
+			hash = h;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return hash == other.hash && focFormula == other.focFormula && folded == other.folded && formatter == other.formatter
+					&& functionFactory == other.functionFactory && includeProvider == other.includeProvider
+					&& formula.equals(other.formula);
+		}
+	}
+
+	/**
+	 * A cache entry. Usage counters are updated without synchronization, so they are approximate only.
+	 */
+	static final class Entry {
+		final ASTNode node;
+		volatile ASTNode compiled;
+		final int weight;
+		/** the (lowercase) names of the functions the formula calls, they were bound when the formula was parsed */
+		final Set<String> functions;
+		volatile int frequency;
+		volatile long lastAccess;
+
+		Entry(final ASTNode node, final int weight, final long tick, final Set<String> functions) {
+			this.node = node;
+			this.weight = weight;
+			this.functions = functions;
+			this.frequency = 1;
+			this.lastAccess = tick;
+		}
+
+		/**
+		 * Entries with a lower score are evicted first
+		 */
+		double score() {
+			return (double) frequency / weight;
+		}
+	}
+
+	/**
+	 * A snapshot of an entry, taken for eviction. (The usage of the entries changes while sorting)
+	 */
+	private static final class Candidate implements Comparable<Candidate> {
+		final Key key;
+		final Entry entry;
+		final double score;
+		final long lastAccess;
+
+		Candidate(final Key key, final Entry entry) {
+			this.key = key;
+			this.entry = entry;
+			this.score = entry.score();
+			this.lastAccess = entry.lastAccess;
+		}
+
+		/**
+		 * evict entries with low score first, if score is equal, evict the older one
+		 */
+		@Override
+		public int compareTo(final Candidate o) {
+			int ret = Double.compare(score, o.score);
+			if (ret == 0)
+				ret = lastAccess < o.lastAccess ? -1 : (lastAccess > o.lastAccess ? 1 : 0);
+			return ret;
+		}
+	}
+
+	private static final FormulaCache instance = new FormulaCache(DEFAULT_MAX_WEIGHT, DEFAULT_LENGTH_UNIT);
+
+	private final ConcurrentMap<Key, Entry> cacheMap = new ConcurrentHashMap<Key, Entry>(256, 0.75f, 16);
+	private final ReentrantLock evictLock = new ReentrantLock();
+	private final AtomicLong tick = new AtomicLong();
+	private final AtomicLong weight = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	private volatile long maxWeight;
+	private volatile int lengthUnit;
+
+	/**
+	 * Creates a new cache
+	 * 
+	 * @param maxWeight
+	 *            the maximum weight of all entries
+	 * @param lengthUnit
+	 *            every <code>lengthUnit</code> characters of a formula add one to the weight of its entry (0 = every entry has weight 1)
+	 */
+	public FormulaCache(final long maxWeight, final int lengthUnit) {
+		this.maxWeight = maxWeight;
+		this.lengthUnit = lengthUnit;
+	}
+
+	/**
+	 * Returns the cache that is shared by all parsers
+	 */
+	public static FormulaCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Sets the maximum weight. Entries are evicted on the next insert if the cache is too big.
+	 */
+	public void setMaxWeight(final long maxWeight) {
+		this.maxWeight = maxWeight;
+	}
+
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	/**
+	 * Sets the formula length that counts as one weight unit. Affects only new entries.
+	 */
+	public void setLengthUnit(final int lengthUnit) {
+		this.lengthUnit = lengthUnit;
+	}
+
+	public int getLengthUnit() {
+		return lengthUnit;
+	}
+
+	/**
+	 * Returns the cached entry and updates its usage
+	 */
+	Entry get(final Key key) {
+		Entry entry = cacheMap.get(key);
+		if (entry == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		entry.frequency++;
+		entry.lastAccess = tick.incrementAndGet();
+		return entry;
+	}
+
+	/**
+	 * Puts a parsed formula in the cache. If an other thread has parsed the same formula meanwhile, the existing entry is returned.
+	 */
+	Entry put(final Key key, final ASTNode node, final Set<String> functions) {
+		int unit = lengthUnit;
+		int w = 1 + (unit > 0 ? key.formula.length() / unit : 0);
+		Entry entry = new Entry(node, w, tick.incrementAndGet(), functions);
+		Entry old = cacheMap.putIfAbsent(key, entry);
+		if (old != null)
+			return old;
+		if (weight.addAndGet(w) > maxWeight) {
+			evict();
+		}
+		return entry;
+	}
+
+	/**
+	 * Evicts entries until the cache is at 3/4 of its maximum weight. Only one thread evicts at a time, the others do not wait.
+	 */
+	private void evict() {
+		if (!evictLock.tryLock())
+			return;
+		try {
+			long target = maxWeight - maxWeight / 4;
+			List<Candidate> candidates = new ArrayList<Candidate>(cacheMap.size());
+			for (Map.Entry<Key, Entry> ent : cacheMap.entrySet()) {
+				candidates.add(new Candidate(ent.getKey(), ent.getValue()));
+			}
+			Collections.sort(candidates);
+			for (Candidate candidate : candidates) {
+				if (weight.get() <= target)
+					break;
+				if (cacheMap.remove(candidate.key, candidate.entry)) {
+					weight.addAndGet(-candidate.entry.weight);
+					evictions.incrementAndGet();
+				}
+			}
+			// age the remaining entries, so that formulas that were used often in the past do not stay forever
+			for (Entry entry : cacheMap.values()) {
+				entry.frequency = (entry.frequency + 1) / 2;
+			}
+		} finally {
+			evictLock.unlock();
+		}
+	}
+
+	/**
+	 * Removes all entries. The counters are not reset.
+	 */
+	public void clear() {
+		for (Key key : cacheMap.keySet()) {
+			Entry entry = cacheMap.remove(key);
+			if (entry != null)
+				weight.addAndGet(-entry.weight);
+		}
+	}
+
+	/**
+	 * Returns the number of cached formulas
+	 */
+	public int size() {
+		return cacheMap.size();
+	}
+
+	/**
+	 * Returns the current weight of all entries
+	 */
+	public long getWeight() {
+		return weight.get();
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	@Override
+	public String toString() {
+		return "FormulaCache [size=" + size() + ", weight=" + getWeight() + "/" + maxWeight + ", hits=" + getHitCount() + ", misses="
+				+ getMissCount() + ", evictions=" + getEvictionCount() + "]";
+	}
+}
@@ -42,13 +42,19 @@ public class FormulaContext {
 	private FormulaParser parser;
 	/** the parameterProvider for <code>{@literal @}FocParam</code> or <code>&lt;#...#&gt;</code> parameters */
 	private FormulaProvider<?> paramProvider;
+	/** the pool for intermediate results, may be null */
+	private ValueHolderPool valueHolderPool;
+	/** take the ValueHolders from the pool of the thread while solve() runs */
+	private boolean pooled;
 
 	public boolean useBooleans = true;
 
 	public ValueHolder TRUE;
 	public ValueHolder FALSE;
 
-	public ValueHolder NEWLINE = ValueHolder.valueOf(System.getProperty("line.separator", "\n"));
+	private static final ValueHolder NEWLINE_VALUE = ValueHolder.valueOf(System.getProperty("line.separator", "\n"));
+
+	public ValueHolder NEWLINE = NEWLINE_VALUE;
 
 	/**
 	 * @param dataMap
@@ -158,7 +164,7 @@ public class FormulaContext {
 		if (dataMap != null) {
 			Object o = dataMap.get(key);
 			if (o != null)
-				return ValueHolder.valueOf(o); // RPr here it is allowed to access the deprecate method
+				return ValueHolder.valueOf(o, valueHolderPool); // RPr here it is allowed to access the deprecate method
 		}
 		return ValueHolder.valueDefault();
 	}
@@ -240,6 +246,124 @@ public class FormulaContext {
 		System.setProperty(key, value);
 	}
 
+	//------------------------------------------------------
+	//
+	// ValueHolder support
+	//
+	// ------------------------------------------------------
+
+	/**
+	 * Sets the pool, where the ValueHolders for intermediate results are taken from. The pool may be shared by several contexts that
+	 * are evaluated one after the other in the same thread.
+	 * 
+	 * @param pool
+	 *            the pool or <code>null</code> to allocate new ValueHolders
+	 */
+	public void setValueHolderPool(final ValueHolderPool pool) {
+		valueHolderPool = pool;
+	}
+
+	/**
+	 * Returns the pool for intermediate results or <code>null</code> if none is set
+	 */
+	public ValueHolderPool getValueHolderPool() {
+		return valueHolderPool;
+	}
+
+	/**
+	 * Lets solve() take the ValueHolders for intermediate results from the pool of the current thread (see
+	 * {@link ValueHolderPool#getThreadPool()}). They are put back when solve() has returned, so the variables of the formula are not
+	 * kept in the context from one solve() to the next. Ignored if a pool was set with {@link #setValueHolderPool(ValueHolderPool)}.
+	 * 
+	 * @param pooled
+	 *            <code>true</code> to use the pool of the thread
+	 */
+	public void setPooled(final boolean pooled) {
+		this.pooled = pooled;
+	}
+
+	public boolean isPooled() {
+		return pooled;
+	}
+
+	/**
+	 * Called by solve() before the evaluation. Attaches the pool of the thread, if the context is pooled.
+	 * 
+	 * @return <code>true</code> if {@link #endSolve()} has to be called after the result is read
+	 */
+	public boolean beginSolve() {
+		if (!pooled || valueHolderPool != null)
+			return false;
+		valueHolderPool = ValueHolderPool.getThreadPool();
+		valueHolderPool.enter();
+		return true;
+	}
+
+	/**
+	 * Called by solve() after the result was converted to a list. Detaches the pool of the thread, the variables of the evaluation are
+	 * cleared.
+	 */
+	public void endSolve() {
+		ValueHolderPool pool = valueHolderPool;
+		valueHolderPool = null;
+		vars.clear();
+		pool.exit();
+	}
+
+	/**
+	 * Puts back all ValueHolders that were used in this evaluation to the pool. Call this after solve() has returned. The context and
+	 * all ValueHolders of the evaluation must not be used afterwards.
+	 */
+	public void releaseValueHolders() {
+		if (valueHolderPool != null) {
+			vars.clear();
+			valueHolderPool.release();
+		}
+	}
+
+	/**
+	 * Creates a ValueHolder for intermediate results. Functions should use this instead of
+	 * {@link ValueHolder#createValueHolder(Class, int)}
+	 */
+	public ValueHolder createValueHolder(final Class<?> clazz, final int size) {
+		if (valueHolderPool == null)
+			return ValueHolder.createValueHolder(clazz, size);
+		return valueHolderPool.createValueHolder(clazz, size);
+	}
+
+	/**
+	 * Creates a ValueHolder of the same type as <code>template</code>
+	 */
+	public ValueHolder newInstance(final ValueHolder template, final int size) {
+		if (valueHolderPool == null)
+			return template.newInstance(size);
+		return valueHolderPool.newInstance(template, size);
+	}
+
+	public ValueHolder valueOf(final int init) {
+		if (valueHolderPool == null)
+			return ValueHolder.valueOf(init);
+		return valueHolderPool.valueOf(init);
+	}
+
+	public ValueHolder valueOf(final double init) {
+		if (valueHolderPool == null)
+			return ValueHolder.valueOf(init);
+		return valueHolderPool.valueOf(init);
+	}
+
+	public ValueHolder valueOf(final String init) {
+		if (valueHolderPool == null)
+			return ValueHolder.valueOf(init);
+		return valueHolderPool.valueOf(init);
+	}
+
+	public ValueHolder valueOf(final DateTime init) {
+		if (valueHolderPool == null)
+			return ValueHolder.valueOf(init);
+		return valueHolderPool.valueOf(init);
+	}
+
 	//------------------------------------------------------
 	//
 	// Parameter support
@@ -19,12 +19,16 @@ package org.openntf.formula;
 import java.io.InputStream;
 import java.io.Reader;
 import java.io.StringReader;
-import java.util.Arrays;
-import java.util.Comparator;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import org.openntf.formula.ast.FormulaCompiler;
+import org.openntf.formula.ast.SimpleNode;
 import org.openntf.formula.parse.AtFormulaParserImpl;
 import org.openntf.formula.parse.ParseException;
 import org.openntf.formula.parse.TokenMgrError;
@@ -36,6 +40,10 @@ import org.openntf.formula.parse.TokenMgrError;
  * 
  */
 public abstract class FormulaParser {
+	private static final Logger log_ = Logger.getLogger(FormulaParser.class.getName());
+
+	/** false if javassist is not available or the runtime does not allow to define classes */
+	private static volatile boolean compilerAvailable = true;
 
 	/** the formatter to format/parse date time values while parsing the formula */
 	protected Formatter formatter;
@@ -48,74 +56,28 @@ public abstract class FormulaParser {
 
 	protected Map<String, Function> customFunc;
 	protected boolean parsing = false;
+	/** the names of the functions called by the formula that is parsed for the cache, <code>null</code> if nothing is recorded */
+	private Set<String> usedFunctions;
+	/** true if the formula that is parsed for the cache declares or calls a user defined function */
+	private boolean customFunctionsUsed;
+	/** evaluate constant subtrees after parsing */
+	protected boolean foldConstants = true;
 
-	public static final int MAX_FORMULA_CACHESIZE = 512;
-	public static final int REDUCE_FORMULA_CACHESIZE_TO = 256;
-
-	protected class FormulaCache {
-		class FormulaCacheEntry {
-			ASTNode node;
-			int usageCount;
-
-			FormulaCacheEntry(final ASTNode n) {
-				node = n;
-				usageCount = 1;
-			}
-		}
-
-		class FCMapEntryComparator implements Comparator<Object> {
-			@Override
-			public int compare(final Object ent1, final Object ent2) {
-				if (!(ent1 instanceof Map.Entry) || !(ent2 instanceof Map.Entry)) {
-					throw new IllegalArgumentException("FCMapEntryComparator");
-				}
-				@SuppressWarnings("unchecked")
-				int us1 = ((Map.Entry<String, FormulaCacheEntry>) ent1).getValue().usageCount;
-				@SuppressWarnings("unchecked")
-				int us2 = ((Map.Entry<String, FormulaCacheEntry>) ent2).getValue().usageCount;
-				return (us1 > us2) ? 1 : (us1 < us2) ? -1 : 0;
-			}
-		}
-
-		private Map<String, FormulaCacheEntry> cacheMap = new HashMap<String, FormulaCacheEntry>();
-
-		ASTNode get(final String key) {
-			FormulaCacheEntry fce = cacheMap.get(key);
-			if (fce == null) {
-				return null;
-			}
-			fce.usageCount++;
-			return fce.node;
-		}
-
-		void reset() {
-			cacheMap.clear();
-		}
+	/**
+	 * @deprecated the formulas are cached by weight, use {@link FormulaCache#DEFAULT_MAX_WEIGHT} and
+	 *             {@link FormulaCache#setMaxWeight(long)}
+	 */
+	@Deprecated
+	public static final int MAX_FORMULA_CACHESIZE = (int) FormulaCache.DEFAULT_MAX_WEIGHT;
 
-		@SuppressWarnings("unchecked")
-		void put(final String key, final ASTNode node) {
-			if (cacheMap.size() > MAX_FORMULA_CACHESIZE) {
-				Object[] arr = cacheMap.entrySet().toArray();
-				Arrays.sort(arr, new FCMapEntryComparator());
-				int numToThrow = cacheMap.size() - REDUCE_FORMULA_CACHESIZE_TO;
-				String[] toThrow = new String[numToThrow];
-				for (int i = 0; i < numToThrow; i++) {
-					toThrow[i] = ((Map.Entry<String, FormulaCacheEntry>) arr[i]).getKey();
-				}
-				for (int i = 0; i < numToThrow; i++) {
-					cacheMap.remove(toThrow[i]);
-				}
-				Set<Map.Entry<String, FormulaCacheEntry>> cacheSet = cacheMap.entrySet();
-				for (Map.Entry<String, FormulaCacheEntry> ent : cacheSet) {
-					ent.getValue().usageCount = 1;
-				}
-			}
-			cacheMap.put(key, new FormulaCacheEntry(node));
-		}
-	}
+	/**
+	 * @deprecated the cache evicts down to 3/4 of {@link FormulaCache#getMaxWeight()}
+	 */
+	@Deprecated
+	public static final int REDUCE_FORMULA_CACHESIZE_TO = MAX_FORMULA_CACHESIZE * 3 / 4;
 
-	protected FormulaCache ntfFormulaCache = new FormulaCache();
-	protected FormulaCache focFormulaCache = new FormulaCache();
+	/** the cache for parsed formulas, shared by all parsers */
+	protected FormulaCache formulaCache = FormulaCache.getInstance();
 
 	/**
 	 * Returns a the Formatter for this parser
@@ -131,8 +93,6 @@ public abstract class FormulaParser {
 	 */
 	public void reset() {
 		customFunc = new HashMap<String, Function>();
-		ntfFormulaCache.reset();
-		focFormulaCache.reset();
 	}
 
 	/**
@@ -144,8 +104,12 @@ public abstract class FormulaParser {
 	 * @return the function or null
 	 */
 	public Function getFunctionLC(final String funcName) {
+		if (usedFunctions != null) {
+			usedFunctions.add(funcName);
+		}
 		Function func = getCustomFunc().get(funcName);
 		if (func != null) {
+			customFunctionsUsed = true;
 			return func;
 		}
 		return getFunctionFactory().getFunction(funcName);
@@ -159,6 +123,7 @@ public abstract class FormulaParser {
 	 */
 	public void declareFunction(final Function func) {
 		String funcName = func.getImage();
+		customFunctionsUsed = true;
 		getCustomFunc().put(funcName.toLowerCase(), func);
 	}
 
@@ -175,16 +140,21 @@ public abstract class FormulaParser {
 	 */
 	final public ASTNode parse(final Reader reader, final boolean useFocFormula) throws FormulaParseException {
 		if (parsing) {
-			return getCopy().parse(reader, useFocFormula);
+			FormulaParser copy = getCopy();
+			try {
+				return copy.parse(reader, useFocFormula);
+			} finally {
+				customFunctionsUsed |= copy.customFunctionsUsed;
+			}
 		}
 
 		parsing = true;
 		try {
 			ReInit(reader);
 			if (useFocFormula) {
-				return parseFocFormula();
+				return fold(parseFocFormula());
 			} else {
-				return parseFormula();
+				return fold(parseFormula());
 			}
 		} catch (TokenMgrError e) {
 			throw new ParseException(e.getMessage(), e);
@@ -208,15 +178,20 @@ public abstract class FormulaParser {
 	 */
 	final public ASTNode parse(final InputStream sr, final String encoding, final boolean useFocFormula) throws FormulaParseException {
 		if (parsing) {
-			return getCopy().parse(sr, useFocFormula);
+			FormulaParser copy = getCopy();
+			try {
+				return copy.parse(sr, useFocFormula);
+			} finally {
+				customFunctionsUsed |= copy.customFunctionsUsed;
+			}
 		}
 		parsing = true;
 		try {
 			ReInit(sr, encoding);
 			if (useFocFormula) {
-				return parseFocFormula();
+				return fold(parseFocFormula());
 			} else {
-				return parseFormula();
+				return fold(parseFormula());
 			}
 		} catch (TokenMgrError e) {
 			throw new ParseException(e.getMessage());
@@ -226,6 +201,28 @@ public abstract class FormulaParser {
 		}
 	}
 
+	/**
+	 * Folds the constant subtrees of the parsed formula (see {@link SimpleNode#fold(FormulaContext)})
+	 * 
+	 * @param node
+	 *            the parsed formula
+	 * @return the optimized formula
+	 */
+	protected ASTNode fold(final ASTNode node) {
+		if (!foldConstants || !(node instanceof SimpleNode))
+			return node;
+		FormulaContext ctx = new FormulaContext();
+		ctx.init(null, formatter, this);
+		return ((SimpleNode) node).fold(ctx);
+	}
+
+	/**
+	 * Enables or disables constant folding (default: enabled)
+	 */
+	public void setFoldConstants(final boolean foldConstants) {
+		this.foldConstants = foldConstants;
+	}
+
 	/**
 	 * return a copy of the current parser. This is needed for include, because we cannot start a new parse task unless the old one is
 	 * terminated
@@ -239,8 +236,9 @@ public abstract class FormulaParser {
 		parser.functionFactory = getFunctionFactory();
 		parser.includeProvider = includeProvider;
 		parser.customFunc = getCustomFunc();
-		parser.focFormulaCache = focFormulaCache;
-		parser.ntfFormulaCache = ntfFormulaCache;
+		parser.formulaCache = formulaCache;
+		parser.foldConstants = foldConstants;
+		((FormulaParser) parser).usedFunctions = usedFunctions;
 		return parser;
 	}
 
@@ -271,17 +269,120 @@ public abstract class FormulaParser {
 	 *             see: {@link #parse(Reader, boolean)}
 	 */
 	final public ASTNode parse(final String formula, final boolean useFocFormula) throws FormulaParseException {
-		FormulaCache formulaCache = useFocFormula ? focFormulaCache : ntfFormulaCache;
-		ASTNode node = formulaCache.get(formula);
-		if (node == null) {
-			StringReader sr = new java.io.StringReader(formula);
-			node = parse(sr, useFocFormula);
-			node.setFormula(formula);
-			formulaCache.put(formula, node);
+		return getCacheEntry(formula, useFocFormula).node;
+	}
+
+	/**
+	 * Parses the given formula and compiles it to bytecode. The compiled formula is cached next to the AST-tree, so it is generated only
+	 * once. If the formula cannot be compiled (e.g. javassist is not available or the runtime does not allow to define classes) the
+	 * interpreted AST-tree is returned.
+	 * 
+	 * @param formula
+	 *            String with formula
+	 * @param useFocFormula
+	 *            see: {@link #parse(Reader, boolean)}
+	 * @return an ASTNode that returns the same results as the one returned by {@link #parse(String, boolean)}
+	 * @throws ParseException
+	 *             see: {@link #parse(Reader, boolean)}
+	 */
+	final public ASTNode compile(final String formula, final boolean useFocFormula) throws FormulaParseException {
+		FormulaCache.Entry entry = getCacheEntry(formula, useFocFormula);
+		ASTNode compiled = entry.compiled;
+		if (compiled == null) {
+			compiled = entry.node;
+			if (compilerAvailable) {
+				try {
+					compiled = FormulaCompiler.compile(entry.node);
+				} catch (UnsupportedOperationException e) {
+					// the runtime does not allow to define classes - do not try again
+					compilerAvailable = false;
+					log_.log(Level.WARNING, "Cannot define classes in this runtime. All formulas will be interpreted", e.getCause());
+				} catch (RuntimeException e) {
+					log_.log(Level.WARNING, "Formula will be interpreted: " + e.getMessage(), e);
+				} catch (LinkageError e) {
+					compilerAvailable = false;
+					log_.log(Level.WARNING, "Formulas will be interpreted, javassist is not available", e);
+				}
+			}
+			entry.compiled = compiled;
+		}
+		return compiled;
+	}
+
+	/**
+	 * Returns the cache entry for the given formula. The formula is parsed if it is not in the cache.
+	 * 
+	 * User defined functions (declared with {@literal @}Function) belong to this parser and are bound at parse time. So a formula that
+	 * declares or calls such a function gets an own entry that is not cached, and a cached formula is parsed again if it calls a function
+	 * that this parser has declared meanwhile. Other formulas are shared, even if the parser has declared functions.
+	 */
+	private FormulaCache.Entry getCacheEntry(final String formula, final boolean useFocFormula) throws FormulaParseException {
+		if (formulaCache == null) {
+			return new FormulaCache.Entry(parseUncached(formula, useFocFormula), 1, 0, Collections.<String> emptySet());
+		}
+		FormulaCache.Key key = new FormulaCache.Key(formula, useFocFormula, foldConstants, formatter, getFunctionFactory(),
+				includeProvider);
+		FormulaCache.Entry entry = formulaCache.get(key);
+		if (entry != null && !callsCustomFunction(entry)) {
+			return entry;
+		}
+		Set<String> outerFunctions = usedFunctions;
+		boolean outerCustomFunctionsUsed = customFunctionsUsed;
+		Set<String> functions = new HashSet<String>();
+		usedFunctions = functions;
+		customFunctionsUsed = false;
+		try {
+			ASTNode node = parseUncached(formula, useFocFormula);
+			if (customFunctionsUsed || entry != null) {
+				// the formula depends on the functions of this parser. These must be declared again, if the formula is parsed again
+				return new FormulaCache.Entry(node, 1, 0, functions);
+			}
+			return formulaCache.put(key, node, functions);
+		} finally {
+			// a formula that is parsed while an other one is parsed (e.g. an include) is part of the other one
+			if (outerFunctions != null) {
+				outerFunctions.addAll(functions);
+			}
+			usedFunctions = outerFunctions;
+			customFunctionsUsed |= outerCustomFunctionsUsed;
+		}
+	}
+
+	/**
+	 * Returns true if the cached formula calls a function that is declared by this parser
+	 */
+	private boolean callsCustomFunction(final FormulaCache.Entry entry) {
+		if (customFunc == null || customFunc.isEmpty())
+			return false;
+		for (String funcName : entry.functions) {
+			if (customFunc.containsKey(funcName))
+				return true;
 		}
+		return false;
+	}
+
+	private ASTNode parseUncached(final String formula, final boolean useFocFormula) throws FormulaParseException {
+		StringReader sr = new java.io.StringReader(formula);
+		ASTNode node = parse(sr, useFocFormula);
+		node.setFormula(formula);
 		return node;
 	}
 
+	/**
+	 * Sets the cache for parsed formulas. By default, all parsers share {@link FormulaCache#getInstance()}. <code>null</code> disables
+	 * caching.
+	 */
+	public void setFormulaCache(final FormulaCache formulaCache) {
+		this.formulaCache = formulaCache;
+	}
+
+	/**
+	 * Returns the cache for parsed formulas
+	 */
+	public FormulaCache getFormulaCache() {
+		return formulaCache;
+	}
+
 	/**
 	 * Parses the given formula from an inputStream
 	 * 
@@ -292,9 +393,7 @@ public abstract class FormulaParser {
 	 *             see: {@link #parse(Reader, boolean)}
 	 */
 	final public ASTNode parse(final String formula) throws FormulaParseException {
-		ASTNode node = parse(formula, false);
-		node.setFormula(formula);
-		return node;
+		return parse(formula, false);
 	}
 
 	/**
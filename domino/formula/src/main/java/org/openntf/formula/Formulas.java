@@ -1,5 +1,6 @@
 package org.openntf.formula;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -62,6 +63,13 @@ public enum Formulas {
 		return parser;
 	}
 
+	/**
+	 * Returns the cache for parsed formulas. It is shared by all parsers, the parser itself is kept per thread, as it is not thread safe.
+	 */
+	public static FormulaCache getFormulaCache() {
+		return FormulaCache.getInstance();
+	}
+
 	public static FormulaParser getParser() {
 		FormulaParser parser = parserCache.get();
 		if (parser == null) {
@@ -88,6 +96,20 @@ public enum Formulas {
 		return createContext(document, parser == null ? null : parser.getFormatter(), parser);
 	}
 
+	/**
+	 * Creates one context per document, e.g. for {@link ASTNode#solveBatch(List)}. The contexts are pooled (see
+	 * {@link FormulaContext#setPooled(boolean)}), so the intermediate results are reused from batch to batch.
+	 */
+	public static List<FormulaContext> createContexts(final List<? extends Map<String, Object>> documents, final FormulaParser parser) {
+		List<FormulaContext> ret = new ArrayList<FormulaContext>(documents.size());
+		for (Map<String, Object> document : documents) {
+			FormulaContext ctx = createContext(document, parser);
+			ctx.setPooled(true);
+			ret.add(ctx);
+		}
+		return ret;
+	}
+
 	@SuppressWarnings("unchecked")
 	public static FormulaContext createContext(final Map<String, Object> document, final Formatter formatter, final FormulaParser parser) {
 		Class<FormulaContext> ctxClass = contextClassCache.get();
@@ -27,9 +27,12 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.openntf.formula.impl.AtFunction;
 import org.openntf.formula.impl.AtFunctionGeneric;
+import org.openntf.formula.impl.AtFunctionInvoker;
 import org.openntf.formula.impl.AtFunctionSimple;
 import org.openntf.service.IServiceLocator;
 import org.openntf.service.ServiceLocatorFinder;
@@ -42,6 +45,10 @@ import org.openntf.service.ServiceLocatorFinder;
 public class FunctionFactory {
 	private static ThreadLocal<IServiceLocator> currentServiceLocator_ = new ThreadLocal<IServiceLocator>();
 
+	/** the factories by their FunctionSet classes. There are only a few different combinations (one per application) */
+	private static final ConcurrentMap<List<Class<?>>, FunctionFactory> sharedInstances = //
+	new ConcurrentHashMap<List<Class<?>>, FunctionFactory>();
+
 	private final Map<String, Function> functions = new HashMap<String, Function>();
 	@SuppressWarnings("unused")
 	private boolean immutable;
@@ -53,12 +60,16 @@ public class FunctionFactory {
 		super();
 	}
 
+	/**
+	 * Returns a FunctionFactory with all FunctionSets that are visible for the current application. Factories with the same FunctionSets
+	 * are shared, so that parsed formulas can be shared too (see {@link FormulaCache})
+	 */
 	public static FunctionFactory createInstance() {
 
-		FunctionFactory instance = new FunctionFactory();
 		//		ServiceLoader<FunctionSet> loader = ServiceLoader.load(FunctionSet.class);
 
-		List<FunctionSet> loaderList = findApplicationServices(FunctionSet.class);
+		// the list is cached by the service locator, so we must not sort it in place
+		List<FunctionSet> loaderList = new ArrayList<FunctionSet>(findApplicationServices(FunctionSet.class));
 
 		//		if (loader.iterator().hasNext()) {
 		//			System.out.println("FunctionSet Service found.");
@@ -86,13 +97,22 @@ public class FunctionFactory {
 			}
 		});
 
+		List<Class<?>> signature = new ArrayList<Class<?>>(loaderList.size());
+		for (FunctionSet fact : loaderList) {
+			signature.add(fact.getClass());
+		}
+		FunctionFactory instance = sharedInstances.get(signature);
+		if (instance != null)
+			return instance;
+
+		instance = new FunctionFactory();
 		for (FunctionSet fact : loaderList) {
 			instance.functions.putAll(fact.getFunctions());
 		}
 
 		instance.setImmutable();
-
-		return instance;
+		FunctionFactory old = sharedInstances.putIfAbsent(signature, instance);
+		return old == null ? instance : old;
 	}
 
 	public static <T> List<T> findApplicationServices(final Class<T> serviceClazz) {
@@ -153,11 +173,14 @@ public class FunctionFactory {
 								// here the magic happens. If the return type of the implemented function is
 								// a ValueHolder then we create an AtFunctionGeneric. You have to do multi value handling
 								// otherwise an AtFunctionSimple is created that does multi value handling for you.
+								// The invoker that calls the method is generated once here, so that no reflection is needed
+								// when the function is evaluated.
+								AtFunctionInvoker invoker = AtFunctionInvoker.create(method);
 								Function f;
 								if (ValueHolder.class.isAssignableFrom(method.getReturnType())) {
-									f = new AtFunctionGeneric(methodName, method);
+									f = new AtFunctionGeneric(methodName, method, invoker);
 								} else {
-									f = new AtFunctionSimple(methodName, method);
+									f = new AtFunctionSimple(methodName, method, invoker);
 								}
 								ret.put(f.getImage().toLowerCase(), f);
 							} else {
@@ -66,6 +66,9 @@ public abstract class ValueHolder implements Serializable {
 
 	private EvaluateException currentError;
 
+	/** the capacity class, if this ValueHolder was created by a {@link ValueHolderPool} */
+	transient int poolClass;
+
 	// Caches
 	protected static final ValueHolder TRUE;
 	protected static final ValueHolder FALSE;
@@ -189,17 +192,24 @@ public abstract class ValueHolder implements Serializable {
 	 * 
 	 */
 	public static ValueHolder valueOf(final Object init) {
+		return valueOf(init, null);
+	}
+
+	/**
+	 * Init a ValueHolder based on a single value or a collection. The ValueHolders are taken from the pool, if one is given
+	 */
+	static ValueHolder valueOf(final Object init, final ValueHolderPool pool) {
 		if (init == null)
 			return valueDefault();
 
 		if (init instanceof String)
-			return valueOf((String) init);
+			return pool == null ? valueOf((String) init) : pool.valueOf((String) init);
 
 		if (init instanceof Integer)
-			return valueOf(((Integer) init).intValue());
+			return pool == null ? valueOf(((Integer) init).intValue()) : pool.valueOf(((Integer) init).intValue());
 
 		if (init instanceof Number)
-			return valueOf(((Number) init).doubleValue());
+			return pool == null ? valueOf(((Number) init).doubleValue()) : pool.valueOf(((Number) init).doubleValue());
 
 		if (init instanceof Boolean)
 			return valueOf(((Boolean) init).booleanValue());
@@ -211,13 +221,13 @@ public abstract class ValueHolder implements Serializable {
 			if (lh == 0)
 				return valueDefault();
 			if (lh == 1)
-				return valueOf(Array.get(init, 0));
+				return valueOf(Array.get(init, 0), pool);
 
 			for (int i = 0; i < lh; i++) {
 				Object o = Array.get(init, i);
 				if (o != null) {
 					if (vh == null) {
-						vh = createValueHolder(o.getClass(), lh);
+						vh = pool == null ? createValueHolder(o.getClass(), lh) : pool.createValueHolder(o.getClass(), lh);
 					}
 					vh.add(o);
 				}
@@ -229,19 +239,19 @@ public abstract class ValueHolder implements Serializable {
 			if (lh == 0)
 				return valueDefault();
 			if (lh == 1)
-				return valueOf(c.iterator().next());
+				return valueOf(c.iterator().next(), pool);
 
 			for (Object o : c) {
 				if (o != null) {
 					if (vh == null) {
-						vh = createValueHolder(o.getClass(), lh);
+						vh = pool == null ? createValueHolder(o.getClass(), lh) : pool.createValueHolder(o.getClass(), lh);
 					}
 					vh.add(o);
 				}
 			}
 
 		} else {
-			vh = createValueHolder(init.getClass(), 1);
+			vh = pool == null ? createValueHolder(init.getClass(), 1) : pool.createValueHolder(init.getClass(), 1);
 			vh.add(init);
 		}
 		if (vh == null)
@@ -528,6 +538,23 @@ public abstract class ValueHolder implements Serializable {
 			throw new UnsupportedOperationException("ValueHolder is immutable.");
 	}
 
+	/**
+	 * Marks this ValueHolder as immutable, so that it can be shared between evaluations (e.g. as folded constant)
+	 */
+	public void setImmutable() {
+		immutable = true;
+	}
+
+	/**
+	 * Clears this ValueHolder, so that it can be reused by the {@link ValueHolderPool}
+	 */
+	void reset() {
+		size = 0;
+		dataType = DataType._UNSET;
+		currentError = null;
+		immutable = false;
+	}
+
 	/**
 	 * Add anything as value. Better use the apropriate "add" method. it is faster
 	 */
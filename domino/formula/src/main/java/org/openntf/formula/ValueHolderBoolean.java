@@ -135,7 +135,7 @@ public class ValueHolderBoolean extends ValueHolder implements Serializable {
 		StringBuilder sb = new StringBuilder();
 
 		sb.append(values[0] ? "1" : "0");
-		for (int i = 1; i < values.length; i++) {
+		for (int i = 1; i < size; i++) {
 			sb.append(':');
 			sb.append(values[i] ? "1" : "0");
 		}
@@ -245,7 +245,7 @@ public class ValueHolderNumber extends ValueHolder implements Serializable {
 			throw new UnsupportedOperationException("This is not yet locale compatible. So it is not implemented.");
 		}
 		sb.append(getInt(0));
-		for (int i = 1; i < valuesD.length; i++) {
+		for (int i = 1; i < size; i++) {
 			sb.append(':');
 			sb.append(getInt(i));
 		}
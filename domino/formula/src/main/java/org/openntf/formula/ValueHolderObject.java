@@ -18,6 +18,7 @@ package org.openntf.formula;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -204,6 +205,13 @@ public class ValueHolderObject<T> extends ValueHolder implements Serializable {
 		return new ValueHolderObject<Object>(size);
 	}
 
+	@Override
+	void reset() {
+		// do not keep references to the old values
+		Arrays.fill(values, 0, size, null);
+		super.reset();
+	}
+
 	@Override
 	public void swap(final int i, final int j) {
 		Object tmp = values[i];
@@ -217,13 +225,13 @@ public class ValueHolderObject<T> extends ValueHolder implements Serializable {
 
 		if (dataType == DataType.KEYWORD_STRING) {
 			sb.append(getString(0));
-			for (int i = 1; i < values.length; i++) {
+			for (int i = 1; i < size; i++) {
 				sb.append(':');
 				sb.append(getString(i));
 			}
 		} else {
 			sb.append(quote(getString(0)));
-			for (int i = 1; i < values.length; i++) {
+			for (int i = 1; i < size; i++) {
 				sb.append(':');
 				sb.append(quote(getString(i)));
 			}
@@ -0,0 +1,274 @@
+/*
+ * © Copyright FOCONIS AG, 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ * 
+ */
+package org.openntf.formula;
+
+import java.util.Arrays;
+
+/**
+ * A pool of {@link ValueHolder}s that are used for intermediate results while evaluating a formula.
+ * 
+ * Assign the pool to a {@link FormulaContext} with {@link FormulaContext#setValueHolderPool(ValueHolderPool)}. Every ValueHolder that is
+ * created by the context is taken from the pool and remembered. After the result of solve() is read (solve returns a list, so no
+ * ValueHolder escapes), call {@link FormulaContext#releaseValueHolders()}: all remembered ValueHolders are cleared and put back, so that
+ * the next evaluation does not need to allocate them again.
+ * 
+ * ValueHolders are pooled by type (number/boolean/object) and by capacity (the next power of two). Large ValueHolders are not pooled.
+ * 
+ * The pool is NOT thread safe. Use one pool per thread and do not touch the context or a ValueHolder of the evaluation after release.
+ * 
+ * Instead of managing a pool yourself, you can mark a context as pooled ({@link FormulaContext#setPooled(boolean)}). solve() then takes
+ * the ValueHolders from the pool of the current thread ({@link #getThreadPool()}) and puts them back when the outermost solve() of the
+ * thread returns.
+ * 
+ * @author Roland Praml, Foconis AG
+ * 
+ */
+public class ValueHolderPool {
+
+	private static final int NUMBER = 0;
+	private static final int BOOLEAN = 1;
+	private static final int OBJECT = 2;
+
+	/** capacities are 1, 2, 4 ... 2^MAX_CLASS */
+	private static final int MAX_CLASS = 10;
+
+	/** the free ValueHolders, indexed by [type][capacity class] */
+	private final ValueHolder[][][] free = new ValueHolder[3][MAX_CLASS + 1][];
+	private final int[][] freeCount = new int[3][MAX_CLASS + 1];
+
+	/** the ValueHolders that were taken from the pool since the last release */
+	private ValueHolder[] used = new ValueHolder[64];
+	private int usedCount;
+
+	/** counters */
+	private long created;
+	private long reused;
+
+	/** the number of running solve() calls that use this pool as thread pool */
+	private int depth;
+
+	private static final ThreadLocal<ValueHolderPool> threadPool = new ThreadLocal<ValueHolderPool>() {
+		@Override
+		protected ValueHolderPool initialValue() {
+			return new ValueHolderPool();
+		}
+	};
+
+	/**
+	 * Returns the pool of the current thread, that is used for pooled contexts
+	 */
+	public static ValueHolderPool getThreadPool() {
+		return threadPool.get();
+	}
+
+	/**
+	 * Called when a solve() with a pooled context starts
+	 */
+	void enter() {
+		depth++;
+	}
+
+	/**
+	 * Called when a solve() with a pooled context has returned. The ValueHolders are released when no other solve() of this thread uses
+	 * them anymore (e.g. an outer formula that evaluates another one).
+	 */
+	void exit() {
+		if (--depth == 0) {
+			release();
+		}
+	}
+
+	/**
+	 * Returns a new (empty) ValueHolder that can hold <code>size</code> values of the given class.
+	 * 
+	 * @see ValueHolder#createValueHolder(Class, int)
+	 */
+	public ValueHolder createValueHolder(final Class<?> clazz, final int size) {
+		if (size > (1 << MAX_CLASS))
+			return ValueHolder.createValueHolder(clazz, size);
+		return take(getType(clazz), size);
+	}
+
+	/**
+	 * Returns a new (empty) ValueHolder of the same type as <code>template</code>
+	 * 
+	 * @see ValueHolder#newInstance(int)
+	 */
+	public ValueHolder newInstance(final ValueHolder template, final int size) {
+		if (size > (1 << MAX_CLASS))
+			return template.newInstance(size);
+		if (template instanceof ValueHolderNumber)
+			return take(NUMBER, size);
+		if (template instanceof ValueHolderBoolean)
+			return take(BOOLEAN, size);
+		if (template instanceof ValueHolderObject)
+			return take(OBJECT, size);
+		return template.newInstance(size);
+	}
+
+	/**
+	 * Returns a ValueHolder for an int value. Cached values are shared as in {@link ValueHolder#valueOf(int)}
+	 */
+	public ValueHolder valueOf(final int init) {
+		if (-128 <= init && init < 128)
+			return ValueHolder.valueOf(init);
+		ValueHolder vh = take(NUMBER, 1);
+		vh.add(init);
+		vh.immutable = true;
+		return vh;
+	}
+
+	/**
+	 * Returns a ValueHolder for a double value
+	 */
+	public ValueHolder valueOf(final double init) {
+		ValueHolder vh = take(NUMBER, 1);
+		vh.add(init);
+		vh.immutable = true;
+		return vh;
+	}
+
+	/**
+	 * Returns a ValueHolder for a String value. Cached values are shared as in {@link ValueHolder#valueOf(String)}
+	 */
+	public ValueHolder valueOf(final String init) {
+		if (init == null || init.length() < 2)
+			return ValueHolder.valueOf(init);
+		ValueHolder vh = take(OBJECT, 1);
+		vh.add(init);
+		vh.immutable = true;
+		return vh;
+	}
+
+	/**
+	 * Returns a ValueHolder for a DateTime value
+	 */
+	public ValueHolder valueOf(final DateTime init) {
+		ValueHolder vh = take(OBJECT, 1);
+		vh.add(init);
+		vh.immutable = true;
+		return vh;
+	}
+
+	/**
+	 * Returns a ValueHolder for a single value or a collection
+	 * 
+	 * @see ValueHolder#valueOf(Object)
+	 */
+	public ValueHolder valueOf(final Object init) {
+		return ValueHolder.valueOf(init, this);
+	}
+
+	/**
+	 * Puts back all ValueHolders that were taken since the last release.
+	 */
+	public void release() {
+		for (int i = 0; i < usedCount; i++) {
+			ValueHolder vh = used[i];
+			used[i] = null;
+			vh.reset();
+			int type = vh instanceof ValueHolderNumber ? NUMBER : vh instanceof ValueHolderBoolean ? BOOLEAN : OBJECT;
+			int sizeClass = vh.poolClass;
+			ValueHolder[] stack = free[type][sizeClass];
+			int n = freeCount[type][sizeClass];
+			if (stack == null) {
+				stack = free[type][sizeClass] = new ValueHolder[16];
+			} else if (n == stack.length) {
+				stack = free[type][sizeClass] = Arrays.copyOf(stack, n * 2);
+			}
+			stack[n] = vh;
+			freeCount[type][sizeClass] = n + 1;
+		}
+		usedCount = 0;
+	}
+
+	/**
+	 * Returns the number of ValueHolders that had to be allocated
+	 */
+	public long getCreated() {
+		return created;
+	}
+
+	/**
+	 * Returns the number of ValueHolders that were reused
+	 */
+	public long getReused() {
+		return reused;
+	}
+
+	@Override
+	public String toString() {
+		return "ValueHolderPool [created=" + created + ", reused=" + reused + ", inUse=" + usedCount + "]";
+	}
+
+	private ValueHolder take(final int type, final int size) {
+		int sizeClass = sizeClass(size);
+		ValueHolder vh;
+		int n = freeCount[type][sizeClass];
+		if (n > 0) {
+			n--;
+			ValueHolder[] stack = free[type][sizeClass];
+			vh = stack[n];
+			stack[n] = null;
+			freeCount[type][sizeClass] = n;
+			reused++;
+		} else {
+			int capacity = 1 << sizeClass;
+			switch (type) {
+			case NUMBER:
+				vh = new ValueHolderNumber(capacity);
+				break;
+			case BOOLEAN:
+				vh = new ValueHolderBoolean(capacity);
+				break;
+			default:
+				vh = new ValueHolderObject<Object>(capacity);
+				break;
+			}
+			vh.poolClass = sizeClass;
+			created++;
+		}
+		if (usedCount == used.length) {
+			used = Arrays.copyOf(used, usedCount * 2);
+		}
+		used[usedCount++] = vh;
+		return vh;
+	}
+
+	/**
+	 * Returns the capacity class (the exponent of the next power of two) for the given size
+	 */
+	private static int sizeClass(final int size) {
+		if (size <= 1)
+			return 0;
+		return 32 - Integer.numberOfLeadingZeros(size - 1);
+	}
+
+	/**
+	 * Returns the type of ValueHolder that {@link ValueHolder#createValueHolder(Class, int)} would create for this class
+	 */
+	private static int getType(final Class<?> clazz) {
+		if (boolean.class.equals(clazz) || Boolean.class.isAssignableFrom(clazz))
+			return BOOLEAN;
+		if (clazz.isPrimitive() || Number.class.isAssignableFrom(clazz) || Character.class.isAssignableFrom(clazz)) {
+			if (void.class.equals(clazz))
+				throw new UnsupportedOperationException("Cannot return objectholder for " + clazz);
+			return NUMBER;
+		}
+		return OBJECT;
+	}
+}
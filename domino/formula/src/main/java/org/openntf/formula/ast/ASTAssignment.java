@@ -55,6 +55,18 @@ public class ASTAssignment extends SimpleNode {
 
 	}
 
+	int getType() {
+		return type;
+	}
+
+	String getVarName() {
+		return varName;
+	}
+
+	String getVarNameLC() {
+		return varNameLC;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see org.openntf.formula.ast.SimpleNode#toString()
@@ -84,7 +96,24 @@ public class ASTAssignment extends SimpleNode {
 	public ValueHolder evaluate(final FormulaContext ctx) throws FormulaReturnException {
 		ValueHolder value;
 		value = children[0].evaluate(ctx);
+		assign(ctx, value);
+		return value;
+	}
 
+	/**
+	 * Evaluates the value for all rows, then assigns it row by row
+	 */
+	@Override
+	protected void evaluateBatch(final FormulaBatch batch, final int[] rows, final int count, final ValueHolder[] result) {
+		((SimpleNode) children[0]).evaluateBatch(batch, rows, count, result);
+		for (int k = 0; k < count; k++) {
+			int row = rows[k];
+			if (!batch.hasReturned(row))
+				assign(batch.ctx[row], result[row]);
+		}
+	}
+
+	private void assign(final FormulaContext ctx, final ValueHolder value) {
 		switch (type) {
 		case FIELD:
 			ctx.setField(varName, value);
@@ -102,7 +131,6 @@ public class ASTAssignment extends SimpleNode {
 			ctx.setDefaultLC(varNameLC, varName, value);
 			break;
 		}
-		return value;
 	}
 
 	/*
@@ -46,6 +46,26 @@ public class ASTAtDo extends SimpleNode {
 		return ret;
 	}
 
+	/**
+	 * Evaluates the children one after the other for all rows
+	 */
+	@Override
+	protected void evaluateBatch(final FormulaBatch batch, final int[] rows, final int count, final ValueHolder[] result) {
+		if (children == null) {
+			for (int k = 0; k < count; k++) {
+				result[rows[k]] = null;
+			}
+			return;
+		}
+		int[] live = batch.copyRows(rows, count);
+		int n = count;
+		for (int i = 0; i < children.length && n > 0; ++i) {
+			((SimpleNode) children[i]).evaluateBatch(batch, live, n, result);
+			n = batch.retainActive(live, n);
+		}
+		batch.releaseRows(live);
+	}
+
 	/**
 	 * add {@literal @}Do to the functions list (if it is not virtual)
 	 */
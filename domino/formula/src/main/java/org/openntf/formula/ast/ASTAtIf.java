@@ -19,6 +19,7 @@ package org.openntf.formula.ast;
 
 import java.util.Set;
 
+import org.openntf.formula.Formatter;
 import org.openntf.formula.FormulaContext;
 import org.openntf.formula.FormulaReturnException;
 import org.openntf.formula.ValueHolder;
@@ -32,6 +33,10 @@ import org.openntf.formula.parse.AtFormulaParserImpl;
  * 
  */
 public class ASTAtIf extends SimpleNode {
+	/** set by {@link #foldThis(FormulaContext)}: the branch that is always taken and the first condition that must be evaluated */
+	private Node foldedBranch;
+	private int foldedStart;
+	private Formatter foldedFormatter;
 
 	public ASTAtIf(final AtFormulaParserImpl p, final int id) {
 		super(p, id);
@@ -44,6 +49,11 @@ public class ASTAtIf extends SimpleNode {
 	public ValueHolder evaluate(final FormulaContext ctx) throws FormulaReturnException {
 		ValueHolder nIf;
 		int i = 0;
+		if (foldedFormatter != null && ctx.useBooleans && ctx.getFormatter() == foldedFormatter) {
+			if (foldedBranch != null)
+				return foldedBranch.evaluate(ctx);
+			i = foldedStart;
+		}
 		nIf = children[i++].evaluate(ctx);
 
 		while (i < children.length) {
@@ -62,6 +72,93 @@ public class ASTAtIf extends SimpleNode {
 
 	}
 
+	/**
+	 * Evaluates the conditions for all rows and the branches for the rows where the condition is true.
+	 */
+	@Override
+	protected void evaluateBatch(final FormulaBatch batch, final int[] rows, final int count, final ValueHolder[] result) {
+		int[] live = batch.copyRows(rows, count);
+		int[] branchRows = batch.copyRows(rows, 0);
+		ValueHolder[] nIf = batch.getColumn();
+		int n = count;
+		int i = 0;
+		((SimpleNode) children[i++]).evaluateBatch(batch, live, n, nIf);
+
+		while (i < children.length) {
+			// rows with an error in the condition return the error
+			n = batch.retainValid(live, n, nIf, result);
+
+			int branchCount = 0;
+			int remaining = 0;
+			for (int k = 0; k < n; k++) {
+				int row = live[k];
+				if (nIf[row].isTrue(batch.ctx[row])) {
+					branchRows[branchCount++] = row;
+				} else {
+					live[remaining++] = row;
+				}
+			}
+			n = remaining;
+			if (branchCount > 0)
+				((SimpleNode) children[i]).evaluateBatch(batch, branchRows, branchCount, result);
+			i++;
+			if (n > 0)
+				((SimpleNode) children[i]).evaluateBatch(batch, live, n, nIf);
+			i++;
+		}
+
+		n = batch.retainActive(live, n);
+		for (int k = 0; k < n; k++) {
+			result[live[k]] = nIf[live[k]];
+		}
+		batch.releaseColumn(nIf);
+		batch.releaseRows(branchRows);
+		batch.releaseRows(live);
+	}
+
+	/**
+	 * Skips the branches, where the condition is a constant <code>false</code>. If the first remaining condition is a constant
+	 * <code>true</code>, that branch is evaluated directly. The children are kept, as the conditions were evaluated with the formatter of
+	 * the parser and with booleans enabled.
+	 */
+	@Override
+	protected SimpleNode foldThis(final FormulaContext ctx) {
+		int i = 0;
+		while (i < children.length - 1) {
+			Boolean cond = getConstantCondition(children[i]);
+			if (cond == null)
+				break;
+			if (cond.booleanValue()) {
+				foldedBranch = children[i + 1];
+				break;
+			}
+			i += 2; // skip the dead branch
+		}
+		if (i == children.length - 1) // all conditions are false, only the else branch remains
+			foldedBranch = children[i];
+		if (i > 0 || foldedBranch != null) {
+			foldedStart = i;
+			foldedFormatter = ctx.getFormatter();
+		}
+		return this;
+	}
+
+	/**
+	 * Returns TRUE/FALSE if the condition is a boolean constant, <code>null</code> otherwise.
+	 */
+	private Boolean getConstantCondition(final Node cond) {
+		if (!(cond instanceof ASTValueConstant))
+			return null;
+		ValueHolder vh = ((ASTValueConstant) cond).getFoldedValue();
+		if (vh.dataType != DataType.BOOLEAN)
+			return null;
+		for (int i = 0; i < vh.size; i++) {
+			if (vh.getBoolean(i))
+				return Boolean.TRUE;
+		}
+		return Boolean.FALSE;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see org.openntf.formula.ast.SimpleNode#analyzeThis(java.util.Set, java.util.Set, java.util.Set, java.util.Set)
@@ -10,6 +10,7 @@ import org.openntf.formula.FormulaReturnException;
 import org.openntf.formula.Function;
 import org.openntf.formula.ValueHolder;
 import org.openntf.formula.ValueHolder.DataType;
+import org.openntf.formula.impl.AtFunction;
 import org.openntf.formula.parse.AtFormulaParserImpl;
 
 public class ASTAtText extends SimpleNode {
@@ -44,6 +45,65 @@ public class ASTAtText extends SimpleNode {
 		return ret;
 	}
 
+	/**
+	 * Evaluates the parameters for all rows, then calls {@literal @}Text row by row. Errors are converted to text, like in
+	 * {@link #evaluate(FormulaContext)}
+	 */
+	@Override
+	protected void evaluateBatch(final FormulaBatch batch, final int[] rows, final int count, final ValueHolder[] result) {
+		ValueHolder[][] columns = new ValueHolder[children.length][];
+		int[] live = batch.copyRows(rows, count);
+		int n = count;
+		for (int i = 0; i < children.length; i++) {
+			columns[i] = batch.getColumn();
+			((SimpleNode) children[i]).evaluateBatch(batch, live, n, columns[i]);
+			int remaining = 0;
+			for (int k = 0; k < n; k++) {
+				int row = live[k];
+				if (batch.hasReturned(row))
+					continue;
+				ValueHolder vh = columns[i][row];
+				if (vh.dataType == DataType.ERROR) {
+					result[row] = ValueHolder.valueOf(vh.getError().getMessage());
+				} else {
+					live[remaining++] = row;
+				}
+			}
+			n = remaining;
+		}
+
+		ValueHolder params[] = new ValueHolder[children.length];
+		for (int k = 0; k < n; k++) {
+			int row = live[k];
+			for (int i = 0; i < children.length; i++) {
+				params[i] = columns[i][row];
+			}
+			try {
+				ValueHolder ret = function.evaluate(batch.ctx[row], params);
+				if (ret.dataType == DataType.ERROR)
+					ret = ValueHolder.valueOf(ret.getError().getMessage());
+				result[row] = ret;
+			} catch (FormulaReturnException e) {
+				batch.setReturned(row, e.getValue());
+			} catch (RuntimeException e) {
+				result[row] = ValueHolder.valueOf(new EvaluateException(codeLine, codeColumn, e));
+			}
+		}
+
+		for (int i = 0; i < children.length; i++) {
+			batch.releaseColumn(columns[i]);
+		}
+		batch.releaseRows(live);
+	}
+
+	@Override
+	protected SimpleNode foldThis(final FormulaContext ctx) {
+		if (function instanceof AtFunction && ((AtFunction) function).isPure() && hasConstantChildren()) {
+			return foldToConstant(ctx);
+		}
+		return this;
+	}
+
 	@Override
 	protected void analyzeThis(final Set<String> readFields, final Set<String> modifiedFields, final Set<String> variables,
 			final Set<String> functions) {
@@ -25,6 +25,7 @@ import org.openntf.formula.FormulaReturnException;
 import org.openntf.formula.Function;
 import org.openntf.formula.ValueHolder;
 import org.openntf.formula.ValueHolder.DataType;
+import org.openntf.formula.impl.AtFunction;
 import org.openntf.formula.impl.UserDefinedFunction;
 import org.openntf.formula.parse.AtFormulaParserImpl;
 import org.openntf.formula.parse.ParseException;
@@ -74,6 +75,55 @@ public class ASTFunction extends SimpleNode {
 		}
 	}
 
+	/**
+	 * Evaluates the parameters for all rows, then calls the function row by row. Like in {@link #evaluate(FormulaContext)}, a parameter
+	 * is evaluated only in rows where the previous parameters have no error.
+	 */
+	@Override
+	protected void evaluateBatch(final FormulaBatch batch, final int[] rows, final int count, final ValueHolder[] result) {
+		int paramCount = children == null ? 0 : children.length;
+		ValueHolder[][] columns = new ValueHolder[paramCount][];
+		int[] live = batch.copyRows(rows, count);
+		int n = count;
+		for (int i = 0; i < paramCount; i++) {
+			columns[i] = batch.getColumn();
+			((SimpleNode) children[i]).evaluateBatch(batch, live, n, columns[i]);
+			n = batch.retainValid(live, n, columns[i], result);
+		}
+
+		// the params array is reused for every row
+		ValueHolder params[] = new ValueHolder[paramCount];
+		for (int k = 0; k < n; k++) {
+			int row = live[k];
+			for (int i = 0; i < paramCount; i++) {
+				params[i] = columns[i][row];
+			}
+			try {
+				result[row] = function.evaluate(batch.ctx[row], params);
+			} catch (FormulaReturnException e) {
+				batch.setReturned(row, e.getValue());
+			} catch (RuntimeException cause) {
+				result[row] = ValueHolder.valueOf(new EvaluateException(codeLine, codeColumn, cause));
+			}
+		}
+
+		for (int i = 0; i < paramCount; i++) {
+			batch.releaseColumn(columns[i]);
+		}
+		batch.releaseRows(live);
+	}
+
+	/**
+	 * A function can be folded, if it is pure and all parameters are constant
+	 */
+	@Override
+	protected SimpleNode foldThis(final FormulaContext ctx) {
+		if (function instanceof AtFunction && ((AtFunction) function).isPure() && hasConstantChildren()) {
+			return foldToConstant(ctx);
+		}
+		return this;
+	}
+
 	@Override
 	protected void analyzeThis(final Set<String> readFields, final Set<String> modifiedFields, final Set<String> variables,
 			final Set<String> functions) {
@@ -0,0 +1,86 @@
+/*
+ * © Copyright FOCONIS AG, 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package org.openntf.formula.ast;
+
+import java.util.Set;
+
+import org.openntf.formula.EvaluateException;
+import org.openntf.formula.Formatter;
+import org.openntf.formula.FormulaContext;
+import org.openntf.formula.FormulaReturnException;
+import org.openntf.formula.ValueHolder;
+
+/**
+ * A constant value that was computed at parse time. It replaces a pure subtree (see {@link SimpleNode#fold(FormulaContext)}).
+ * 
+ * The original subtree is kept for inspection and for evaluations that do not use booleans or use an other formatter, because the value
+ * was computed with booleans enabled and the formatter of the parser.
+ * 
+ * @author Roland Praml, Foconis AG
+ * 
+ */
+public class ASTValueConstant extends SimpleNode {
+	private final ValueHolder value;
+	private final SimpleNode original;
+	private final Formatter formatter;
+
+	public ASTValueConstant(final SimpleNode original, final ValueHolder value, final Formatter formatter) {
+		super(original);
+		this.original = original;
+		this.value = value;
+		this.formatter = formatter;
+	}
+
+	@Override
+	public String toString() {
+		try {
+			return "Constant: " + value.toList() + " (" + original + ")";
+		} catch (EvaluateException e) {
+			return "Constant: " + value.dataType + " (" + original + ")";
+		}
+	}
+
+	@Override
+	public ValueHolder evaluate(final FormulaContext ctx) throws FormulaReturnException {
+		if (!ctx.useBooleans || ctx.getFormatter() != formatter)
+			return original.evaluate(ctx);
+		return value;
+	}
+
+	/**
+	 * A folded constant is not returned here, as it is only valid, if the formula is evaluated with booleans
+	 */
+	@Override
+	public ValueHolder getConstantValue() {
+		return null;
+	}
+
+	/**
+	 * Returns the folded value
+	 */
+	public ValueHolder getFoldedValue() {
+		return value;
+	}
+
+	/**
+	 * the original subtree is inspected, so that the functions/fields used in the formula are still reported
+	 */
+	@Override
+	public void inspect(final Set<String> readFields, final Set<String> modifiedFields, final Set<String> variables,
+			final Set<String> functions) {
+		original.inspect(readFields, modifiedFields, variables, functions);
+	}
+}
@@ -43,5 +43,10 @@ public class ASTValueDouble extends SimpleNode {
 		return value;
 	}
 
+	@Override
+	public ValueHolder getConstantValue() {
+		return value;
+	}
+
 }
 /* JavaCC - OriginalChecksum=9b835a55bffc1c99424d097a944b0fac (do not edit this line) */
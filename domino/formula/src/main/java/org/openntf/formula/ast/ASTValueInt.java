@@ -46,5 +46,10 @@ public class ASTValueInt extends SimpleNode {
 		return value;
 	}
 
+	@Override
+	public ValueHolder getConstantValue() {
+		return value;
+	}
+
 }
 /* JavaCC - OriginalChecksum=19609d291368534191c28631651790db (do not edit this line) */
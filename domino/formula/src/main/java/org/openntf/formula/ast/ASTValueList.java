@@ -50,12 +50,20 @@ public class ASTValueList extends SimpleNode {
 		if (holders == 0)
 			return null;
 
-		ValueHolder vhRet = tmpHolders[0].newInstance(valueSize);
+		ValueHolder vhRet = ctx.newInstance(tmpHolders[0], valueSize);
 		for (int i = 0; i < holders; i++) {
 			vhRet.addAll(tmpHolders[i]);
 		}
 		return vhRet;
 	}
 
+	@Override
+	protected SimpleNode foldThis(final FormulaContext ctx) {
+		if (hasConstantChildren()) {
+			return foldToConstant(ctx);
+		}
+		return this;
+	}
+
 }
 /* JavaCC - OriginalChecksum=25778e343d16cbffbc665da744c998c5 (do not edit this line) */
@@ -64,5 +64,10 @@ public class ASTValueString extends SimpleNode {
 		return value;
 	}
 
+	@Override
+	public ValueHolder getConstantValue() {
+		return value;
+	}
+
 }
 /* JavaCC - OriginalChecksum=bbf33130d016e7ec065687da9b85c8fd (do not edit this line) */
@@ -0,0 +1,191 @@
+/*
+ * © Copyright FOCONIS AG, 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package org.openntf.formula.ast;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.openntf.formula.ASTNode;
+import org.openntf.formula.EvaluateException;
+import org.openntf.formula.FormulaContext;
+import org.openntf.formula.FormulaReturnException;
+import org.openntf.formula.Function;
+import org.openntf.formula.ValueHolder;
+import org.openntf.formula.ValueHolder.DataType;
+
+/**
+ * Base class for formulas that are compiled to bytecode by the {@link FormulaCompiler}. The generated subclass implements
+ * {@link #evaluate(FormulaContext)}, all inspection methods are delegated to the AST-tree the formula was compiled from.
+ *
+ * The tables below are indexed by the node number the compiler has assigned to each node in the AST-tree.
+ *
+ * @author Roland Praml, Foconis AG
+ *
+ */
+public abstract class CompiledFormula implements ASTNode {
+
+	/** the AST-tree this formula was compiled from */
+	protected SimpleNode source;
+
+	/** values of constant nodes */
+	protected ValueHolder[] constants;
+
+	/** the functions of function and operator nodes */
+	protected Function[] functions;
+
+	/** nodes that are not compiled and must be evaluated by the interpreter */
+	protected Node[] nodes;
+
+	/** variable names (propercase and lowercase) */
+	protected String[] names;
+	protected String[] namesLC;
+
+	/** position of the node in the formula, needed for error messages */
+	protected int[] codeLines;
+	protected int[] codeColumns;
+
+	/**
+	 * Initializes the tables. Called by the compiler only
+	 *
+	 * @param root
+	 *            the root of the compiled AST-tree
+	 * @param nodeCount
+	 *            the number of nodes in the tree
+	 */
+	void init(final SimpleNode root, final int nodeCount) {
+		source = root;
+		constants = new ValueHolder[nodeCount];
+		functions = new Function[nodeCount];
+		nodes = new Node[nodeCount];
+		names = new String[nodeCount];
+		namesLC = new String[nodeCount];
+		codeLines = new int[nodeCount];
+		codeColumns = new int[nodeCount];
+	}
+
+	/**
+	 * Evaluates the compiled formula. This is the entry point of the generated code
+	 *
+	 * @param ctx
+	 *            the context
+	 * @return the result
+	 * @throws FormulaReturnException
+	 *             if a {@literal @}Return statement was executed
+	 */
+	public abstract ValueHolder evaluate(FormulaContext ctx) throws FormulaReturnException;
+
+	/**
+	 * Helper for the generated code: Checks if the ValueHolder contains an error
+	 */
+	protected static boolean isError(final ValueHolder vh) {
+		return vh.dataType == DataType.ERROR;
+	}
+
+	/**
+	 * Helper for the generated code: Calls the function of node <code>nodeNo</code>. RuntimeExceptions are wrapped in an error
+	 * ValueHolder, the same way as {@link ASTFunction} does.
+	 */
+	protected final ValueHolder call(final int nodeNo, final FormulaContext ctx, final ValueHolder[] params) throws FormulaReturnException {
+		try {
+			return functions[nodeNo].evaluate(ctx, params);
+		} catch (RuntimeException cause) {
+			return ValueHolder.valueOf(new EvaluateException(codeLines[nodeNo], codeColumns[nodeNo], cause));
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.openntf.formula.ASTNode#solve(org.openntf.formula.FormulaContext)
+	 */
+	@Override
+	public final List<Object> solve(final FormulaContext ctx) throws EvaluateException {
+		boolean pooled = ctx.beginSolve();
+		try {
+			ValueHolder vh;
+			try {
+				vh = evaluate(ctx);
+			} catch (FormulaReturnException e) {
+				vh = e.getValue();
+			}
+			if (vh.dataType == DataType.ERROR)
+				throw vh.getError();
+			return vh.toList();
+		} finally {
+			if (pooled)
+				ctx.endSolve();
+		}
+	}
+
+	/**
+	 * The compiled code evaluates one document after the other, as there is no tree to walk.
+	 */
+	@Override
+	public final List<List<Object>> solveBatch(final List<? extends FormulaContext> contexts) {
+		List<List<Object>> ret = new ArrayList<List<Object>>(contexts.size());
+		for (FormulaContext ctx : contexts) {
+			try {
+				ret.add(solve(ctx));
+			} catch (EvaluateException e) {
+				ret.add(Collections.<Object> singletonList(e));
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Returns the AST-tree this formula was compiled from
+	 */
+	public ASTNode getSource() {
+		return source;
+	}
+
+	@Override
+	public void dump(final String prefix) {
+		System.out.println(prefix + "Compiled: " + getClass().getName());
+		source.dump(prefix + " ");
+	}
+
+	@Override
+	public Set<String> getFunctions() {
+		return source.getFunctions();
+	}
+
+	@Override
+	public Set<String> getVariables() {
+		return source.getVariables();
+	}
+
+	@Override
+	public Set<String> getReadFields() {
+		return source.getReadFields();
+	}
+
+	@Override
+	public Set<String> getModifiedFields() {
+		return source.getModifiedFields();
+	}
+
+	@Override
+	public void setFormula(final String formula) {
+		source.setFormula(formula);
+	}
+
+	@Override
+	public String getFormula() {
+		return source.getFormula();
+	}
+}
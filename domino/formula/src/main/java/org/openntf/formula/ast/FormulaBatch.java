@@ -0,0 +1,209 @@
+/*
+ * © Copyright FOCONIS AG, 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ * 
+ */
+package org.openntf.formula.ast;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.openntf.formula.EvaluateException;
+import org.openntf.formula.FormulaContext;
+import org.openntf.formula.ValueHolder;
+import org.openntf.formula.ValueHolder.DataType;
+
+/**
+ * Holds the state of a batch evaluation (see {@link SimpleNode#solveBatch(List)}). Every document of the batch is a "row" with its own
+ * {@link FormulaContext}. The nodes evaluate their children for all rows, before they compute their own value, so the tree is walked
+ * once per batch and not once per document. Values are stored in "columns", arrays indexed by the row number.
+ * 
+ * Columns and row lists are reused during the evaluation, so only a few arrays are allocated per batch.
+ * 
+ * @author Roland Praml, Foconis AG
+ * 
+ */
+public final class FormulaBatch {
+	/** the contexts, one per row */
+	final FormulaContext[] ctx;
+
+	/** the value of a {@literal @}Return statement per row. Rows that have returned are not evaluated any further */
+	private final ValueHolder[] returned;
+	private boolean anyReturned;
+
+	private final List<ValueHolder[]> freeColumns = new ArrayList<ValueHolder[]>();
+	private final List<int[]> freeRows = new ArrayList<int[]>();
+
+	FormulaBatch(final List<? extends FormulaContext> contexts) {
+		ctx = contexts.toArray(new FormulaContext[contexts.size()]);
+		returned = new ValueHolder[ctx.length];
+	}
+
+	/**
+	 * Returns the number of rows
+	 */
+	public int size() {
+		return ctx.length;
+	}
+
+	/**
+	 * Returns the context of the given row
+	 */
+	public FormulaContext getContext(final int row) {
+		return ctx[row];
+	}
+
+	/**
+	 * Attaches the pool of the thread to the pooled contexts (see {@link FormulaContext#beginSolve()})
+	 * 
+	 * @return the rows where {@link #endSolve(boolean[])} has to detach the pool
+	 */
+	boolean[] beginSolve() {
+		boolean[] ret = new boolean[ctx.length];
+		for (int row = 0; row < ctx.length; row++) {
+			ret[row] = ctx[row].beginSolve();
+		}
+		return ret;
+	}
+
+	/**
+	 * Detaches the pool of the thread after the results were converted
+	 */
+	void endSolve(final boolean[] pooled) {
+		for (int row = ctx.length - 1; row >= 0; row--) {
+			if (pooled[row])
+				ctx[row].endSolve();
+		}
+	}
+
+	/**
+	 * Returns a column from the pool. The content is undefined, only the rows that are evaluated are written.
+	 */
+	ValueHolder[] getColumn() {
+		int sz = freeColumns.size();
+		if (sz > 0)
+			return freeColumns.remove(sz - 1);
+		return new ValueHolder[ctx.length];
+	}
+
+	/**
+	 * Returns the column to the pool
+	 */
+	void releaseColumn(final ValueHolder[] column) {
+		freeColumns.add(column);
+	}
+
+	/**
+	 * Returns a copy of the first <code>count</code> entries of <code>rows</code> (a row list from the pool)
+	 */
+	int[] copyRows(final int[] rows, final int count) {
+		int[] ret;
+		int sz = freeRows.size();
+		if (sz > 0) {
+			ret = freeRows.remove(sz - 1);
+		} else {
+			ret = new int[ctx.length];
+		}
+		System.arraycopy(rows, 0, ret, 0, count);
+		return ret;
+	}
+
+	/**
+	 * Returns a list with all rows
+	 */
+	int[] allRows() {
+		int[] ret = new int[ctx.length];
+		for (int i = 0; i < ret.length; i++) {
+			ret[i] = i;
+		}
+		return ret;
+	}
+
+	/**
+	 * Returns the row list to the pool
+	 */
+	void releaseRows(final int[] rows) {
+		freeRows.add(rows);
+	}
+
+	/**
+	 * Called if a {@literal @}Return statement was executed in the given row
+	 */
+	void setReturned(final int row, final ValueHolder value) {
+		returned[row] = value;
+		anyReturned = true;
+	}
+
+	boolean hasReturned(final int row) {
+		return anyReturned && returned[row] != null;
+	}
+
+	/**
+	 * Removes the rows that have returned from the row list
+	 * 
+	 * @return the new number of rows
+	 */
+	int retainActive(final int[] rows, final int count) {
+		if (!anyReturned)
+			return count;
+		int n = 0;
+		for (int i = 0; i < count; i++) {
+			if (returned[rows[i]] == null)
+				rows[n++] = rows[i];
+		}
+		return n;
+	}
+
+	/**
+	 * Removes the rows that have returned or where <code>values</code> contains an error from the row list. The errors are copied to
+	 * <code>result</code>.
+	 * 
+	 * @return the new number of rows
+	 */
+	int retainValid(final int[] rows, final int count, final ValueHolder[] values, final ValueHolder[] result) {
+		int n = 0;
+		for (int i = 0; i < count; i++) {
+			int row = rows[i];
+			if (anyReturned && returned[row] != null)
+				continue;
+			ValueHolder vh = values[row];
+			if (vh != null && vh.dataType == DataType.ERROR) {
+				result[row] = vh;
+			} else {
+				rows[n++] = row;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Converts the result column to a list of results. A row that failed gets a list with the error that
+	 * {@link SimpleNode#solve(FormulaContext)} would throw for it, so one bad document does not fail the whole batch.
+	 */
+	List<List<Object>> toList(final ValueHolder[] result) {
+		List<List<Object>> ret = new ArrayList<List<Object>>(ctx.length);
+		for (int row = 0; row < ctx.length; row++) {
+			ValueHolder vh = returned[row] != null ? returned[row] : result[row];
+			try {
+				if (vh.dataType == DataType.ERROR)
+					throw vh.getError();
+				ret.add(vh.toList());
+			} catch (EvaluateException e) {
+				ret.add(Collections.<Object> singletonList(e));
+			}
+		}
+		return ret;
+	}
+}
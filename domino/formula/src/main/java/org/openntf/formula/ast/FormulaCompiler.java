@@ -0,0 +1,215 @@
+/*
+ * © Copyright FOCONIS AG, 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ */
+package org.openntf.formula.ast;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+import javassist.NotFoundException;
+
+import org.openntf.formula.ASTNode;
+
+/**
+ * Compiles an AST-tree to a {@link CompiledFormula} with javassist.
+ *
+ * Every node of the tree becomes a method in the generated class, so that the evaluation does not need to walk the tree. Constants are
+ * inlined, function-, operator-, {@literal @}If-, {@literal @}Do-nodes and variable access/assignments are compiled. All other nodes
+ * (loops, {@literal @}Transform, user defined functions...) are evaluated by the interpreter as before.
+ *
+ * @author Roland Praml, Foconis AG
+ *
+ */
+public class FormulaCompiler {
+
+	private static final String BASE_CLASS = CompiledFormula.class.getName();
+
+	private static ClassPool pool;
+	private static int classCounter;
+
+	/**
+	 * Collects the generated code for one formula
+	 */
+	private static class Unit {
+		final List<SimpleNode> nodes = new ArrayList<SimpleNode>();
+		final List<String> methods = new ArrayList<String>();
+	}
+
+	private FormulaCompiler() {
+	}
+
+	/**
+	 * Returns the class pool. The pool must see the classes of this bundle, so we add our classloader
+	 */
+	private static ClassPool getPool() {
+		if (pool == null) {
+			pool = new ClassPool(true);
+			pool.appendClassPath(new LoaderClassPath(CompiledFormula.class.getClassLoader()));
+			pool.importPackage("org.openntf.formula");
+			pool.importPackage("org.openntf.formula.ast");
+		}
+		return pool;
+	}
+
+	/**
+	 * Compiles the given AST-tree
+	 *
+	 * @param node
+	 *            the root node returned by the parser
+	 * @return the compiled formula. The formula returns the same results as the AST-tree.
+	 * @throws IllegalArgumentException
+	 *             if the node was not created by the parser
+	 * @throws IllegalStateException
+	 *             if the code could not be generated
+	 * @throws UnsupportedOperationException
+	 *             if the runtime does not allow to define classes (e.g. Java 9+ without <code>--add-opens java.base/java.lang</code>)
+	 */
+	public static synchronized CompiledFormula compile(final ASTNode node) {
+		if (node instanceof CompiledFormula)
+			return (CompiledFormula) node;
+		if (!(node instanceof SimpleNode))
+			throw new IllegalArgumentException("Cannot compile " + node);
+
+		SimpleNode root = (SimpleNode) node;
+		Unit unit = new Unit();
+		String rootExpr = generate(unit, root);
+
+		ClassPool cp = getPool();
+		CtClass cc = cp.makeClass(BASE_CLASS + "$Gen" + (++classCounter));
+		try {
+			cc.setSuperclass(cp.get(BASE_CLASS));
+			for (String method : unit.methods) {
+				cc.addMethod(CtNewMethod.make(method, cc));
+			}
+			cc.addMethod(CtNewMethod.make("public ValueHolder evaluate(FormulaContext ctx) throws FormulaReturnException { return "
+					+ rootExpr + "; }", cc));
+
+			Class<?> clazz;
+			try {
+				clazz = cc.toClass(CompiledFormula.class.getClassLoader(), CompiledFormula.class.getProtectionDomain());
+			} catch (RuntimeException e) {
+				// InaccessibleObjectException on Java 9+, SecurityException with a security manager
+				throw new UnsupportedOperationException(e);
+			} catch (LinkageError e) {
+				throw new UnsupportedOperationException(e);
+			}
+			CompiledFormula ret = (CompiledFormula) clazz.newInstance();
+			initTables(ret, root, unit);
+			return ret;
+		} catch (CannotCompileException e) {
+			throw new IllegalStateException("Cannot compile formula " + root.getFormula(), e);
+		} catch (NotFoundException e) {
+			throw new IllegalStateException("Cannot compile formula " + root.getFormula(), e);
+		} catch (InstantiationException e) {
+			throw new IllegalStateException("Cannot compile formula " + root.getFormula(), e);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException("Cannot compile formula " + root.getFormula(), e);
+		} catch (LinkageError e) {
+			throw new IllegalStateException("Cannot compile formula " + root.getFormula(), e);
+		} finally {
+			cc.detach();
+		}
+	}
+
+	/**
+	 * Fills the tables of the compiled formula, that are accessed by the generated code
+	 */
+	private static void initTables(final CompiledFormula ret, final SimpleNode root, final Unit unit) {
+		ret.init(root, unit.nodes.size());
+		for (int i = 0; i < unit.nodes.size(); i++) {
+			SimpleNode node = unit.nodes.get(i);
+			ret.nodes[i] = node;
+			ret.constants[i] = node.getConstantValue();
+			ret.codeLines[i] = node.codeLine;
+			ret.codeColumns[i] = node.codeColumn;
+			if (node instanceof ASTFunction) {
+				ret.functions[i] = ((ASTFunction) node).function;
+			} else if (node instanceof ASTGetVariable) {
+				ret.names[i] = ((ASTGetVariable) node).variableName;
+				ret.namesLC[i] = ((ASTGetVariable) node).variableNameLC;
+			} else if (node instanceof ASTAssignment) {
+				ret.names[i] = ((ASTAssignment) node).getVarName();
+				ret.namesLC[i] = ((ASTAssignment) node).getVarNameLC();
+			}
+		}
+	}
+
+	/**
+	 * Generates the code for the given node. The children are generated first, as javassist needs to know the methods that are called.
+	 *
+	 * @return an expression that evaluates the node
+	 */
+	private static String generate(final Unit unit, final SimpleNode node) {
+		int nodeNo = unit.nodes.size();
+		unit.nodes.add(node);
+
+		if (node.getConstantValue() != null) {
+			return "constants[" + nodeNo + "]";
+		}
+
+		int childCount = node.jjtGetNumChildren();
+		StringBuilder sb = new StringBuilder();
+		sb.append("private ValueHolder n").append(nodeNo).append("(FormulaContext ctx) throws FormulaReturnException {\n");
+
+		if (node instanceof ASTFunction) {
+			// ASTFunction and ASTOperator: errors are not passed to the function
+			sb.append("ValueHolder[] p = new ValueHolder[").append(childCount).append("];\n");
+			for (int i = 0; i < childCount; i++) {
+				String child = generate(unit, (SimpleNode) node.jjtGetChild(i));
+				sb.append("p[").append(i).append("] = ").append(child).append(";\n");
+				sb.append("if (isError(p[").append(i).append("])) return p[").append(i).append("];\n");
+			}
+			sb.append("return call(").append(nodeNo).append(", ctx, p);\n");
+
+		} else if (node instanceof ASTAtIf) {
+			sb.append("ValueHolder cond = ").append(generate(unit, (SimpleNode) node.jjtGetChild(0))).append(";\n");
+			int i = 1;
+			while (i < childCount) {
+				String branch = generate(unit, (SimpleNode) node.jjtGetChild(i++));
+				sb.append("if (isError(cond)) return cond;\n");
+				sb.append("if (cond.isTrue(ctx)) return ").append(branch).append(";\n");
+				sb.append("cond = ").append(generate(unit, (SimpleNode) node.jjtGetChild(i++))).append(";\n");
+			}
+			sb.append("return cond;\n");
+
+		} else if (node instanceof ASTAtDo && childCount > 0) {
+			sb.append("ValueHolder ret = null;\n");
+			for (int i = 0; i < childCount; i++) {
+				sb.append("ret = ").append(generate(unit, (SimpleNode) node.jjtGetChild(i))).append(";\n");
+			}
+			sb.append("return ret;\n");
+
+		} else if (node instanceof ASTGetVariable) {
+			sb.append("return ctx.getVarLC(namesLC[").append(nodeNo).append("], names[").append(nodeNo).append("]);\n");
+
+		} else if (node instanceof ASTAssignment && ((ASTAssignment) node).getType() == ASTAssignment.VAR) {
+			sb.append("ValueHolder value = ").append(generate(unit, (SimpleNode) node.jjtGetChild(0))).append(";\n");
+			sb.append("ctx.setVarLC(namesLC[").append(nodeNo).append("], value);\n");
+			sb.append("return value;\n");
+
+		} else {
+			// fallback: use the interpreter
+			sb.append("return nodes[").append(nodeNo).append("].evaluate(ctx);\n");
+		}
+		sb.append("}");
+		unit.methods.add(sb.toString());
+		return "n" + nodeNo + "(ctx)";
+	}
+}
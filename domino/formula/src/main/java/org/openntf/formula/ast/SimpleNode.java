@@ -38,10 +38,8 @@ public abstract class SimpleNode implements Node {
 	protected int codeColumn;
 	// these need not to be serialized!
 	protected transient AtFormulaParserImpl parser;
-	private transient Set<String> functions;
-	private transient Set<String> variables;
-	private transient Set<String> readFields;
-	private transient Set<String> modifiedFields;
+	// the result of the inspection. Parsed formulas are shared between threads, so this is published at once
+	private transient volatile Inspection inspection;
 	private String formula;
 
 	/**
@@ -55,6 +53,17 @@ public abstract class SimpleNode implements Node {
 		codeColumn = t.beginColumn;
 	}
 
+	/**
+	 * create a new node, that replaces the given node (at the same position)
+	 */
+	protected SimpleNode(final SimpleNode original) {
+		id = original.id;
+		parser = original.parser;
+		parent = original.parent;
+		codeLine = original.codeLine;
+		codeColumn = original.codeColumn;
+	}
+
 	/* (non-Javadoc)
 	 * @see org.openntf.formula.ASTNode#setFormula(java.lang.String)
 	 */
@@ -175,11 +184,21 @@ public abstract class SimpleNode implements Node {
 	 */
 	public abstract ValueHolder evaluate(FormulaContext ctx) throws FormulaReturnException;
 
+	/**
+	 * Returns the value of this node, if it is a constant that does not depend on the context (e.g. a string or number literal)
+	 * 
+	 * @return the (immutable) value or <code>null</code> if this node must be evaluated
+	 */
+	public ValueHolder getConstantValue() {
+		return null;
+	}
+
 	/* (non-Javadoc)
 	 * @see org.openntf.formula.ast.Node#solve(org.openntf.formula.FormulaContext)
 	 */
 	@Override
 	public final List<Object> solve(final FormulaContext ctx) throws EvaluateException {
+		boolean pooled = ctx.beginSolve();
 		try {
 			ValueHolder vh;
 			try {
@@ -190,9 +209,123 @@ public abstract class SimpleNode implements Node {
 			if (vh.dataType == DataType.ERROR)
 				throw vh.getError();
 			return vh.toList();
-		} catch (EvaluateException ev) {
-			throw ev;
+		} finally {
+			if (pooled)
+				ctx.endSolve();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.openntf.formula.ASTNode#solveBatch(java.util.List)
+	 */
+	@Override
+	public final List<List<Object>> solveBatch(final List<? extends FormulaContext> contexts) {
+		FormulaBatch batch = new FormulaBatch(contexts);
+		boolean[] pooled = batch.beginSolve();
+		try {
+			ValueHolder[] result = batch.getColumn();
+			evaluateBatch(batch, batch.allRows(), batch.size(), result);
+			return batch.toList(result);
+		} finally {
+			batch.endSolve(pooled);
+		}
+	}
+
+	/**
+	 * Evaluates this node for the given rows of the batch. The default implementation evaluates the node row by row. Nodes that are
+	 * used often (functions, operators, {@literal @}If...) override this and evaluate their children for all rows first.
+	 * 
+	 * @param batch
+	 *            the batch
+	 * @param rows
+	 *            the rows to evaluate. The array must not be modified.
+	 * @param count
+	 *            the number of valid entries in <code>rows</code>
+	 * @param result
+	 *            receives the value of each evaluated row (indexed by row number)
+	 */
+	protected void evaluateBatch(final FormulaBatch batch, final int[] rows, final int count, final ValueHolder[] result) {
+		for (int i = 0; i < count; i++) {
+			int row = rows[i];
+			try {
+				result[row] = evaluate(batch.ctx[row]);
+			} catch (FormulaReturnException e) {
+				batch.setReturned(row, e.getValue());
+			}
+		}
+	}
+
+	// =================== constant folding ===============================
+
+	/**
+	 * Folds constant subtrees of this node. Pure functions (see {@link org.openntf.formula.annotation.Pure}) with constant parameters are
+	 * evaluated once and replaced by an {@link ASTValueConstant}, dead branches of {@literal @}If are removed.
+	 * 
+	 * @param ctx
+	 *            the context that is used to evaluate the constant subtrees (without document)
+	 * @return the node that replaces this node (or this node, if nothing could be folded)
+	 */
+	public SimpleNode fold(final FormulaContext ctx) {
+		if (children != null) {
+			for (int i = 0; i < children.length; i++) {
+				SimpleNode child = ((SimpleNode) children[i]).fold(ctx);
+				if (child != children[i]) {
+					child.jjtSetParent(this);
+					children[i] = child;
+				}
+			}
+		}
+		return foldThis(ctx);
+	}
+
+	/**
+	 * Override this method in nodes that can be folded. The children are already folded.
+	 * 
+	 * @param ctx
+	 *            the context
+	 * @return the node that replaces this node
+	 */
+	protected SimpleNode foldThis(final FormulaContext ctx) {
+		return this;
+	}
+
+	/**
+	 * Returns <code>true</code> if the node is a literal or a folded constant
+	 */
+	protected static boolean isConstant(final Node node) {
+		return node instanceof ASTValueConstant || ((SimpleNode) node).getConstantValue() != null;
+	}
+
+	/**
+	 * Returns <code>true</code> if all children are constant
+	 */
+	protected boolean hasConstantChildren() {
+		if (children != null) {
+			for (int i = 0; i < children.length; i++) {
+				if (!isConstant(children[i]))
+					return false;
+			}
 		}
+		return true;
+	}
+
+	/**
+	 * Evaluates this node and returns a constant node. If the evaluation fails, the node is not folded, so that the error occurs at
+	 * runtime.
+	 */
+	protected SimpleNode foldToConstant(final FormulaContext ctx) {
+		ValueHolder vh;
+		try {
+			vh = evaluate(ctx);
+		} catch (FormulaReturnException e) {
+			return this;
+		} catch (RuntimeException e) {
+			return this;
+		}
+		if (vh == null || vh.dataType == DataType.ERROR)
+			return this;
+		vh.setImmutable();
+		return new ASTValueConstant(this, vh, ctx.getFormatter());
 	}
 
 	// =================== formula inspection ===============================
@@ -229,16 +362,26 @@ public abstract class SimpleNode implements Node {
 	}
 
 	/**
-	 * Initializion of inspection is done once
+	 * Holds the result of the inspection
 	 */
-	private void initInspection() {
-		if (readFields != null)
-			return;
-		readFields = new HashSet<String>();
-		functions = new HashSet<String>();
-		variables = new HashSet<String>();
-		modifiedFields = new HashSet<String>();
-		inspect(readFields, modifiedFields, variables, functions);
+	private static class Inspection {
+		final Set<String> readFields = new HashSet<String>();
+		final Set<String> modifiedFields = new HashSet<String>();
+		final Set<String> variables = new HashSet<String>();
+		final Set<String> functions = new HashSet<String>();
+	}
+
+	/**
+	 * Initializion of inspection is done once. Concurrent threads may inspect twice, but they see a completely filled result.
+	 */
+	private Inspection initInspection() {
+		Inspection ret = inspection;
+		if (ret == null) {
+			ret = new Inspection();
+			inspect(ret.readFields, ret.modifiedFields, ret.variables, ret.functions);
+			inspection = ret;
+		}
+		return ret;
 	}
 
 	/*
@@ -246,9 +389,7 @@ public abstract class SimpleNode implements Node {
 	 * @see org.openntf.formula.ast.Node#getFunctions()
 	 */
 	public Set<String> getFunctions() {
-		initInspection();
-		return functions;
-
+		return initInspection().functions;
 	}
 
 	/*
@@ -256,9 +397,7 @@ public abstract class SimpleNode implements Node {
 	 * @see org.openntf.formula.ast.Node#getVariables()
 	 */
 	public Set<String> getVariables() {
-		initInspection();
-		return variables;
-
+		return initInspection().variables;
 	}
 
 	/*
@@ -266,9 +405,7 @@ public abstract class SimpleNode implements Node {
 	 * @see org.openntf.formula.ast.Node#getReadFields()
 	 */
 	public Set<String> getReadFields() {
-		initInspection();
-		return readFields;
-
+		return initInspection().readFields;
 	}
 
 	/*
@@ -276,9 +413,7 @@ public abstract class SimpleNode implements Node {
 	 * @see org.openntf.formula.ast.Node#getModifiedFields()
 	 */
 	public Set<String> getModifiedFields() {
-		initInspection();
-		return modifiedFields;
-
+		return initInspection().modifiedFields;
 	}
 
 }
@@ -24,6 +24,7 @@ import org.openntf.formula.FunctionSet;
 import org.openntf.formula.ValueHolder;
 import org.openntf.formula.annotation.OpenNTF;
 import org.openntf.formula.annotation.ParamCount;
+import org.openntf.formula.annotation.Pure;
 import org.openntf.formula.impl.ParameterCollectionDouble;
 
 public enum MathFunctions {
@@ -39,64 +40,76 @@ public enum MathFunctions {
 	}
 
 	@ParamCount(1)
+	@Pure
 	public static Number atAbs(final Number arg) {
 		return Math.abs(arg.doubleValue());
 	}
 
 	@ParamCount(1)
+	@Pure
 	public static Number atACos(final Number arg) {
 		return Math.acos(arg.doubleValue());
 	}
 
 	@ParamCount(1)
+	@Pure
 	public static Number atASin(final Number arg) {
 		return Math.asin(arg.doubleValue());
 	}
 
 	@ParamCount(1)
+	@Pure
 	public static Number atATan(final Number arg) {
 		return Math.atan(arg.doubleValue());
 	}
 
 	@ParamCount(2)
+	@Pure
 	public static Number atATan2(final Number arg1, final Number arg2) {
 		// pay attention. Formula language expects the arguments in different order
 		return Math.atan2(arg2.doubleValue(), arg1.doubleValue());
 	}
 
 	@ParamCount(1)
+	@Pure
 	public static Number atCos(final Number arg) {
 		return Math.cos(arg.doubleValue());
 	}
 
 	@ParamCount(1)
+	@Pure
 	public static Number atExp(final Number arg) {
 		return Math.exp(arg.doubleValue());
 	}
 
 	@ParamCount({ 2, 3 })
+	@Pure
 	public static Number atFloatEq(final Number... args) {
 		double epsilon = (args.length == 3) ? args[2].doubleValue() : 0.0001;
 		return Math.abs(args[0].doubleValue() - args[1].doubleValue()) < epsilon ? 1 : 0;
 	}
 
 	@ParamCount(1)
+	@Pure
 	public static Number atInteger(final Number arg) {
 		return arg.intValue();
 	}
 
 	@ParamCount(1)
+	@Pure
 	public static Number atLog(final Number arg) {
 		return Math.log10(arg.doubleValue());
 	}
 
 	@ParamCount(1)
+	@Pure
 	public static Number atLn(final Number arg) {
 		return Math.log(arg.doubleValue());
 	}
 
 	// Max returns either the largest number in a single list, or the larger of two numbers or number lists.
 	@ParamCount({ 1, 2 })
+	@Pure
 	public static ValueHolder atMax(final ValueHolder[] params) {
 
 		if (params.length == 1) {
@@ -125,6 +138,7 @@ public enum MathFunctions {
 
 	//... the same for Min
 	@ParamCount({ 1, 2 })
+	@Pure
 	public static ValueHolder atMin(final ValueHolder[] params) {
 
 		if (params.length == 1) {
@@ -152,6 +166,7 @@ public enum MathFunctions {
 	}
 
 	@ParamCount(2)
+	@Pure
 	public static Number atModulo(final Number arg1, final Number arg2) {
 		// how I would do it
 		// return arg1.longValue() % arg2.longValue();
@@ -167,11 +182,13 @@ public enum MathFunctions {
 	private static ValueHolder PI = ValueHolder.valueOf(Math.PI);
 
 	@ParamCount(0)
+	@Pure
 	public static ValueHolder atPi() {
 		return PI;
 	}
 
 	@ParamCount(2)
+	@Pure
 	public static Number atPower(final Number arg1, final Number arg2) {
 		return Math.pow(arg1.doubleValue(), arg2.doubleValue());
 	}
@@ -182,21 +199,25 @@ public enum MathFunctions {
 	}
 
 	@ParamCount(1)
+	@Pure
 	public static Number atRound(final Number arg) {
 		return Math.round(arg.doubleValue());
 	}
 
 	@ParamCount(1)
+	@Pure
 	public static Number atSin(final Number arg) {
 		return Math.sin(arg.doubleValue());
 	}
 
 	@ParamCount(1)
+	@Pure
 	public static Number atSqrt(final Number arg) {
 		return Math.sqrt(arg.doubleValue());
 	}
 
 	@ParamCount({ 1, Integer.MAX_VALUE })
+	@Pure
 	public static ValueHolder atSum(final ValueHolder[] params) {
 		double ret = 0;
 
@@ -209,11 +230,13 @@ public enum MathFunctions {
 	}
 
 	@ParamCount(1)
+	@Pure
 	public static Number atTan(final Number arg) {
 		return Math.tan(arg.doubleValue());
 	}
 
 	@ParamCount(1)
+	@Pure
 	public static Number atSign(final Number arg) {
 		int i = (arg instanceof Integer) ? arg.intValue() : Double.compare(arg.doubleValue(), 0.0);
 		return (i == 0) ? 0 : (i < 0) ? -1 : 1;
@@ -227,18 +250,21 @@ public enum MathFunctions {
 	 */
 	@ParamCount(1)
 	@OpenNTF
+	@Pure
 	public static Number atCbrt(final Number arg) {
 		return Math.cbrt(arg.doubleValue());
 	}
 
 	@ParamCount(1)
 	@OpenNTF
+	@Pure
 	public static Number atCeil(final Number arg) {
 		return Math.ceil(arg.doubleValue());
 	}
 
 	@ParamCount(1)
 	@OpenNTF
+	@Pure
 	public static Number atFloor(final Number arg) {
 		return Math.floor(arg.doubleValue());
 	}
@@ -99,6 +99,14 @@ public abstract class Negators extends AtFunction {
 		super(image);
 	}
 
+	/**
+	 * Negators depend only on their operand
+	 */
+	@Override
+	public boolean isPure() {
+		return true;
+	}
+
 	/**
 	 * Evaluates the operator
 	 */
@@ -109,7 +117,7 @@ public abstract class Negators extends AtFunction {
 			return v1;
 		}
 
-		ValueHolder ret = v1.newInstance(v1.size);
+		ValueHolder ret = ctx.newInstance(v1, v1.size);
 		switch (v1.dataType) {
 
 		case INTEGER:
@@ -191,7 +191,7 @@ public class Operators extends OperatorsAbstract {
 	@Override
 	protected ValueHolder evaluateString(final FormulaContext ctx, final ValueHolder[] params) {
 		Collection<String[]> values = new ParameterCollectionObject<String>(params, String.class, isPermutative);
-		ValueHolder ret = ValueHolder.createValueHolder(String.class, values.size());
+		ValueHolder ret = ctx.createValueHolder(String.class, values.size());
 		for (String[] value : values) {
 			ret.add(computer.compute(value[0], value[1]));
 		}
@@ -201,7 +201,7 @@ public class Operators extends OperatorsAbstract {
 
 	@Override
 	protected ValueHolder evaluateString(final FormulaContext ctx, final String s1, final String s2) {
-		return ValueHolder.valueOf(computer.compute(s1, s2));
+		return ctx.valueOf(computer.compute(s1, s2));
 	}
 
 	// ----------- Numbers
@@ -209,7 +209,7 @@ public class Operators extends OperatorsAbstract {
 	protected ValueHolder evaluateNumber(final FormulaContext ctx, final ValueHolder[] params) {
 
 		Collection<double[]> values = new ParameterCollectionDouble(params, isPermutative);
-		ValueHolder ret = ValueHolder.createValueHolder(double.class, values.size());
+		ValueHolder ret = ctx.createValueHolder(double.class, values.size());
 
 		for (double[] value : values) {
 			ret.add(computer.compute(value[0], value[1]));
@@ -220,7 +220,7 @@ public class Operators extends OperatorsAbstract {
 
 	@Override
 	protected ValueHolder evaluateNumber(final FormulaContext ctx, final double d1, final double d2) {
-		return ValueHolder.valueOf(computer.compute(d1, d2));
+		return ctx.valueOf(computer.compute(d1, d2));
 	}
 
 	// ----------- Integers
@@ -228,7 +228,7 @@ public class Operators extends OperatorsAbstract {
 	protected ValueHolder evaluateInt(final FormulaContext ctx, final ValueHolder[] params) {
 
 		Collection<int[]> values = new ParameterCollectionInt(params, isPermutative);
-		ValueHolder ret = ValueHolder.createValueHolder(int.class, values.size());
+		ValueHolder ret = ctx.createValueHolder(int.class, values.size());
 
 		for (int[] value : values) {
 			try {
@@ -243,9 +243,9 @@ public class Operators extends OperatorsAbstract {
 	@Override
 	protected ValueHolder evaluateInt(final FormulaContext ctx, final int i1, final int i2) {
 		try {
-			return ValueHolder.valueOf(computer.compute(i1, i2));
+			return ctx.valueOf(computer.compute(i1, i2));
 		} catch (IntegerOverflowException e) {
-			return ValueHolder.valueOf(computer.compute((double) i1, (double) i2));
+			return ctx.valueOf(computer.compute((double) i1, (double) i2));
 		}
 	}
 
@@ -253,7 +253,7 @@ public class Operators extends OperatorsAbstract {
 	@Override
 	protected ValueHolder evaluateDateTime(final FormulaContext ctx, final ValueHolder[] params) {
 		Collection<DateTime[]> values = new ParameterCollectionObject<DateTime>(params, DateTime.class, isPermutative);
-		ValueHolder ret = ValueHolder.createValueHolder(DateTime.class, values.size());
+		ValueHolder ret = ctx.createValueHolder(DateTime.class, values.size());
 
 		for (DateTime[] value : values) {
 			ret.add(computer.compute(value[0], value[1]));
@@ -263,7 +263,7 @@ public class Operators extends OperatorsAbstract {
 
 	@Override
 	protected ValueHolder evaluateDateTime(final FormulaContext ctx, final DateTime dt1, final DateTime dt2) {
-		return ValueHolder.valueOf(computer.compute(dt1, dt2));
+		return ctx.valueOf(computer.compute(dt1, dt2));
 	}
 
 	// ----------- Numbers
@@ -271,7 +271,7 @@ public class Operators extends OperatorsAbstract {
 	protected ValueHolder evaluateBoolean(final FormulaContext ctx, final ValueHolder[] params) {
 
 		Collection<boolean[]> values = new ParameterCollectionBoolean(params, isPermutative);
-		ValueHolder ret = ValueHolder.createValueHolder(boolean.class, values.size());
+		ValueHolder ret = ctx.createValueHolder(boolean.class, values.size());
 
 		for (boolean[] value : values) {
 			ret.add(computer.compute(value[0], value[1]));
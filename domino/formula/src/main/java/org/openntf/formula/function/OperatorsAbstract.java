@@ -44,6 +44,14 @@ public abstract class OperatorsAbstract extends AtFunction {
 		this.isPermutative = (image.charAt(0) == '*' && image.length() > 1);
 	}
 
+	/**
+	 * Operators depend only on their operands
+	 */
+	@Override
+	public boolean isPure() {
+		return true;
+	}
+
 	/**
 	 * Evaluates the operator
 	 */
@@ -0,0 +1,128 @@
+/*
+ * © Copyright FOCONIS AG, 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ * 
+ */
+package org.openntf.formula.function;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * Caches the compiled patterns of {@literal @}Matches, {@literal @}Like and the RegExp functions. Patterns are often literals of a
+ * formula that is evaluated for many documents, so compiling them once saves a lot of time.
+ * 
+ * The cache is shared by all threads (TextMatchLotus and Pattern are immutable) and holds at most {@link #MAX_SIZE} patterns. If it
+ * grows beyond, a quarter of the entries is dropped.
+ * 
+ * @author Roland Praml, Foconis AG
+ * 
+ */
+class PatternCache {
+
+	static final int MAX_SIZE = 1024;
+
+	private static final int MODE_MATCHES = 0;
+	private static final int MODE_LIKE = 1;
+	private static final int MODE_REGEXP = 2;
+
+	private static final ConcurrentMap<Key, Object> cache = new ConcurrentHashMap<Key, Object>(64, 0.75f, 4);
+
+	/**
+	 * Key of the cache: the pattern, the mode and the escape char for {@literal @}Like
+	 */
+	private static class Key {
+		private final String pattern;
+		private final int mode;
+		private final char escape;
+		private final int hash;
+
+		Key(final String pattern, final int mode, final char escape) {
+			this.pattern = pattern;
+			this.mode = mode;
+			this.escape = escape;
+			this.hash = (pattern.hashCode() * 31 + mode) * 31 + escape;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return hash == other.hash && mode == other.mode && escape == other.escape && pattern.equals(other.pattern);
+		}
+	}
+
+	private PatternCache() {
+	}
+
+	/**
+	 * Returns the compiled pattern for {@literal @}Matches
+	 */
+	static TextMatchLotus getMatches(final String pattern) {
+		Key key = new Key(pattern, MODE_MATCHES, (char) 0);
+		TextMatchLotus ret = (TextMatchLotus) cache.get(key);
+		if (ret == null) {
+			ret = new TextMatchLotus(pattern);
+			put(key, ret);
+		}
+		return ret;
+	}
+
+	/**
+	 * Returns the compiled pattern for {@literal @}Like
+	 */
+	static TextMatchLotus getLike(final String pattern, final char escape) {
+		Key key = new Key(pattern, MODE_LIKE, escape);
+		TextMatchLotus ret = (TextMatchLotus) cache.get(key);
+		if (ret == null) {
+			ret = new TextMatchLotus(pattern, escape);
+			put(key, ret);
+		}
+		return ret;
+	}
+
+	/**
+	 * Returns the compiled regular expression
+	 */
+	static Pattern getRegExp(final String pattern) {
+		Key key = new Key(pattern, MODE_REGEXP, (char) 0);
+		Pattern ret = (Pattern) cache.get(key);
+		if (ret == null) {
+			ret = Pattern.compile(pattern);
+			put(key, ret);
+		}
+		return ret;
+	}
+
+	private static void put(final Key key, final Object value) {
+		// it does not matter, if two threads compile the same pattern, both results are equal
+		cache.put(key, value);
+		if (cache.size() > MAX_SIZE) {
+			int remove = MAX_SIZE / 4;
+			Iterator<Key> it = cache.keySet().iterator();
+			while (remove-- > 0 && it.hasNext()) {
+				it.next();
+				it.remove();
+			}
+		}
+	}
+}
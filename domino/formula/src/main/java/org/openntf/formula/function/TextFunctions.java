@@ -44,6 +44,7 @@ import org.openntf.formula.ValueHolder.DataType;
 import org.openntf.formula.annotation.DiffersFromLotus;
 import org.openntf.formula.annotation.OpenNTF;
 import org.openntf.formula.annotation.ParamCount;
+import org.openntf.formula.annotation.Pure;
 
 public enum TextFunctions {
 	;
@@ -100,24 +101,28 @@ public enum TextFunctions {
 
 	/*----------------------------------------------------------------------------*/
 	@ParamCount(2)
+	@Pure
 	public static String atLeft(final String whose, final Object what) {
 		return leftRight(whose, what, true, false);
 	}
 
 	/*----------------------------------------------------------------------------*/
 	@ParamCount(2)
+	@Pure
 	public static String atLeftBack(final String whose, final Object what) {
 		return leftRight(whose, what, true, true);
 	}
 
 	/*----------------------------------------------------------------------------*/
 	@ParamCount(2)
+	@Pure
 	public static String atRight(final String whose, final Object what) {
 		return leftRight(whose, what, false, false);
 	}
 
 	/*----------------------------------------------------------------------------*/
 	@ParamCount(2)
+	@Pure
 	public static String atRightBack(final String whose, final Object what) {
 		return leftRight(whose, what, false, true);
 	}
@@ -217,12 +222,14 @@ public enum TextFunctions {
 
 	/*----------------------------------------------------------------------------*/
 	@ParamCount(3)
+	@Pure
 	public static String atMiddle(final String whose, final Object what1, final Object what2) {
 		return middle(whose, what1, what2, false);
 	}
 
 	/*----------------------------------------------------------------------------*/
 	@ParamCount(3)
+	@Pure
 	public static String atMiddleBack(final String whose, final Object what1, final Object what2) {
 		return middle(whose, what1, what2, true);
 	}
@@ -252,18 +259,21 @@ public enum TextFunctions {
 
 	/*----------------------------------------------------------------------------*/
 	@ParamCount(2)
+	@Pure
 	public static ValueHolder atBegins(final FormulaContext ctx, final ValueHolder[] params) {
 		return begEndCont(ctx, params, 'b');
 	}
 
 	/*----------------------------------------------------------------------------*/
 	@ParamCount(2)
+	@Pure
 	public static ValueHolder atEnds(final FormulaContext ctx, final ValueHolder[] params) {
 		return begEndCont(ctx, params, 'e');
 	}
 
 	/*----------------------------------------------------------------------------*/
 	@ParamCount(2)
+	@Pure
 	public static ValueHolder atContains(final FormulaContext ctx, final ValueHolder[] params) {
 		return begEndCont(ctx, params, 'c');
 	}
@@ -274,18 +284,21 @@ public enum TextFunctions {
 	 */
 	/*----------------------------------------------------------------------------*/
 	@ParamCount(1)
+	@Pure
 	public static String atLowerCase(final String what) {
 		return what.toLowerCase();
 	}
 
 	/*----------------------------------------------------------------------------*/
 	@ParamCount(1)
+	@Pure
 	public static String atUpperCase(final String what) {
 		return what.toUpperCase();
 	}
 
 	/*----------------------------------------------------------------------------*/
 	@ParamCount(1)
+	@Pure
 	public static String atProperCase(final String what) {
 		int lh = what.length();
 		if (lh == 0)
@@ -310,6 +323,7 @@ public enum TextFunctions {
 	 */
 	/*----------------------------------------------------------------------------*/
 	@ParamCount(1)
+	@Pure
 	public static String atChar(final Number n) {
 		int what = n.intValue();
 		if (what < 0 || what > 255)
@@ -330,12 +344,14 @@ public enum TextFunctions {
 	 */
 	/*----------------------------------------------------------------------------*/
 	@ParamCount(1)
+	@Pure
 	public static ValueHolder atCount(final ValueHolder[] params) {
 		return ValueHolder.valueOf(params[0].size);
 	}
 
 	/*----------------------------------------------------------------------------*/
 	@ParamCount(1)
+	@Pure
 	public static ValueHolder atElements(final ValueHolder[] params) {
 		int res = params[0].size;
 		if (res == 1 && params[0].dataType == DataType.STRING && params[0].getString(0).isEmpty())
@@ -345,6 +361,7 @@ public enum TextFunctions {
 
 	/*----------------------------------------------------------------------------*/
 	@ParamCount(1)
+	@Pure
 	public static int atLength(final String whose) {
 		return whose.length();
 	}
@@ -352,6 +369,7 @@ public enum TextFunctions {
 	/*----------------------------------------------------------------------------*/
 	@DiffersFromLotus("Lotus doesn't trim tabs")
 	@ParamCount(1)
+	@Pure
 	public static String atTrim(final String whom) {
 		int lh = whom.length();
 		char[] buff = new char[lh + 1];
@@ -377,6 +395,7 @@ public enum TextFunctions {
 	 */
 	/*----------------------------------------------------------------------------*/
 	@ParamCount({ 1, 4 })
+	@Pure
 	public static ValueHolder atExplode(final FormulaContext ctx, final ValueHolder[] params) {
 		ValueHolder vh = params[0];
 
@@ -425,6 +444,7 @@ public enum TextFunctions {
 
 	/*----------------------------------------------------------------------------*/
 	@ParamCount({ 1, 2 })
+	@Pure
 	public static ValueHolder atImplode(final ValueHolder[] params) {
 		String sep = (params.length == 1) ? " " : params[1].getString(0);
 		ValueHolder vh = params[0];
@@ -449,6 +469,7 @@ public enum TextFunctions {
 	 */
 	/*----------------------------------------------------------------------------*/
 	@ParamCount(3)
+	@Pure
 	public static ValueHolder atWord(final ValueHolder[] params) {
 		ValueHolder vhSep = ValueHolder.valueOf(params[1].getString(0));
 		int which = params[2].getInt(0);
@@ -491,6 +512,7 @@ public enum TextFunctions {
 	 */
 	@OpenNTF
 	@ParamCount({ 2, 3 })
+	@Pure
 	public static ValueHolder atSplitSimple(final ValueHolder[] params) {
 		boolean noEmpties = false;
 		if (params.length == 3) {
@@ -551,6 +573,7 @@ public enum TextFunctions {
 	 */
 	@OpenNTF
 	@ParamCount({ 2, 3 })
+	@Pure
 	public static ValueHolder atSplitRegExp(final ValueHolder[] params) {
 		boolean noEmpties = false;
 		if (params.length == 3) {
@@ -582,7 +605,7 @@ public enum TextFunctions {
 
 	/*----------------------------------------------------------------------------*/
 	private static void regExpSplitOne(final Vector<String> res, final String which, final String reg, final boolean includeEmpties) {
-		String[] splits = which.split(reg);
+		String[] splits = PatternCache.getRegExp(reg).split(which);
 		for (int j = 0; j < splits.length; j++)
 			if (!splits[j].isEmpty() || includeEmpties)
 				res.add(splits[j]);
@@ -594,6 +617,7 @@ public enum TextFunctions {
 	 */
 	/*----------------------------------------------------------------------------*/
 	@ParamCount(1)
+	@Pure
 	public static ValueHolder atIsNull(final FormulaContext ctx, final ValueHolder[] params) {
 		Integer i = atElements(params).getInt(0);
 		return (i == 0) ? ctx.TRUE : ctx.FALSE;
@@ -601,18 +625,21 @@ public enum TextFunctions {
 
 	/*----------------------------------------------------------------------------*/
 	@ParamCount(1)
+	@Pure
 	public static ValueHolder atIsNumber(final FormulaContext ctx, final ValueHolder[] params) {
 		return params[0].dataType.numeric ? ctx.TRUE : ctx.FALSE;
 	}
 
 	/*----------------------------------------------------------------------------*/
 	@ParamCount(1)
+	@Pure
 	public static ValueHolder atIsText(final FormulaContext ctx, final ValueHolder[] params) {
 		return (params[0].dataType == DataType.STRING) ? ctx.TRUE : ctx.FALSE;
 	}
 
 	/*----------------------------------------------------------------------------*/
 	@ParamCount(1)
+	@Pure
 	public static ValueHolder atIsTime(final FormulaContext ctx, final ValueHolder[] params) {
 		return (params[0].dataType == DataType.DATETIME) ? ctx.TRUE : ctx.FALSE;
 	}
@@ -633,6 +660,7 @@ public enum TextFunctions {
 	 */
 	/*----------------------------------------------------------------------------*/
 	@ParamCount(1)
+	@Pure
 	public static ValueHolder atToNumber(final FormulaContext ctx, final ValueHolder[] params) {
 		ValueHolder vh = params[0];
 		if (vh.dataType.numeric)
@@ -645,6 +673,7 @@ public enum TextFunctions {
 	/*----------------------------------------------------------------------------*/
 	@DiffersFromLotus("Lotus gives e.g. @TextToNumber(\"1\":\"a\":\"2\")=1:@ERROR:2")
 	@ParamCount(1)
+	@Pure
 	public static ValueHolder atTextToNumber(final FormulaContext ctx, final ValueHolder[] params) {
 		return strToNumber(ctx, params[0], false);
 	}
@@ -776,11 +805,12 @@ public enum TextFunctions {
 	/*----------------------------------------------------------------------------*/
 	@DiffersFromLotus("Logical operations on patterns using &,|,! aren't yet supported")
 	@ParamCount(2)
+	@Pure
 	public static ValueHolder atMatches(final FormulaContext ctx, final ValueHolder[] params) {
 		ValueHolder vhTester = params[0];
 		ValueHolder vhPatterns = params[1];
 		for (int ip = 0; ip < vhPatterns.size; ip++) {
-			TextMatchLotus tml = new TextMatchLotus(vhPatterns.getString(ip));
+			TextMatchLotus tml = PatternCache.getMatches(vhPatterns.getString(ip));
 			for (int it = 0; it < vhTester.size; it++)
 				if (tml.matches(vhTester.getString(it)))
 					return ctx.TRUE;
@@ -790,6 +820,7 @@ public enum TextFunctions {
 
 	/*----------------------------------------------------------------------------*/
 	@ParamCount({ 2, 3 })
+	@Pure
 	public static ValueHolder atLike(final FormulaContext ctx, final ValueHolder[] params) {
 		char escape = 0;
 		if (params.length == 3) {
@@ -800,7 +831,7 @@ public enum TextFunctions {
 		ValueHolder vhTester = params[0];
 		ValueHolder vhPatterns = params[1];
 		for (int ip = 0; ip < vhPatterns.size; ip++) {
-			TextMatchLotus tml = new TextMatchLotus(vhPatterns.getString(ip), escape);
+			TextMatchLotus tml = PatternCache.getLike(vhPatterns.getString(ip), escape);
 			for (int it = 0; it < vhTester.size; it++)
 				if (tml.matches(vhTester.getString(it)))
 					return ctx.TRUE;
@@ -811,11 +842,12 @@ public enum TextFunctions {
 	/*----------------------------------------------------------------------------*/
 	@OpenNTF
 	@ParamCount(2)
+	@Pure
 	public static ValueHolder atMatchesRegExp(final FormulaContext ctx, final ValueHolder[] params) {
 		ValueHolder vhTester = params[0];
 		ValueHolder vhPatterns = params[1];
 		for (int ip = 0; ip < vhPatterns.size; ip++) {
-			Pattern regPatt = Pattern.compile(vhPatterns.getString(ip));
+			Pattern regPatt = PatternCache.getRegExp(vhPatterns.getString(ip));
 			for (int it = 0; it < vhTester.size; it++)
 				if (regPatt.matcher(vhTester.getString(it)).matches())
 					return ctx.TRUE;
@@ -830,7 +862,7 @@ public enum TextFunctions {
 		String tester = params[0].getString(0);
 		String pattern = params[1].getString(0);
 		String resName = params[2].getString(0);
-		Pattern regPatt = Pattern.compile(pattern);
+		Pattern regPatt = PatternCache.getRegExp(pattern);
 		Matcher matsch = regPatt.matcher(tester);
 		if (!matsch.matches())
 			return ValueHolder.valueOf(0);
@@ -852,6 +884,7 @@ public enum TextFunctions {
 	 */
 	/*----------------------------------------------------------------------------*/
 	@ParamCount(3)
+	@Pure
 	public static ValueHolder atReplace(final ValueHolder[] params) {
 		Map<String, String> replacer = getReplaceMap(params[1], params[2]);
 		ValueHolder vh = params[0];
@@ -878,6 +911,7 @@ public enum TextFunctions {
 
 	/*----------------------------------------------------------------------------*/
 	@ParamCount(3)
+	@Pure
 	public static ValueHolder atReplaceSubstring(final ValueHolder[] params) {
 		ValueHolder tests = params[0];
 		ValueHolder ret = ValueHolder.createValueHolder(String.class, tests.size);
@@ -908,6 +942,7 @@ public enum TextFunctions {
 	/*----------------------------------------------------------------------------*/
 	@DiffersFromLotus("@Select with only one parameter isn't supported")
 	@ParamCount({ 2, 99 })
+	@Pure
 	public static ValueHolder atSelect(final ValueHolder[] params) {
 		int which = params[0].getInt(0);
 		if (which <= 1)
@@ -920,6 +955,7 @@ public enum TextFunctions {
 	/*----------------------------------------------------------------------------*/
 	@SuppressWarnings("deprecation")
 	@ParamCount(2)
+	@Pure
 	public static ValueHolder atSubset(final ValueHolder[] params) {
 		int count = params[1].getInt(0);
 		if (count == 0)
@@ -966,6 +1002,7 @@ public enum TextFunctions {
 	 */
 	/*----------------------------------------------------------------------------*/
 	@ParamCount(2)
+	@Pure
 	public static ValueHolder atIsMember(final FormulaContext ctx, final ValueHolder[] params) {
 		ValueHolder whos = params[0];
 		ValueHolder where = params[1];
@@ -983,6 +1020,7 @@ public enum TextFunctions {
 
 	/*----------------------------------------------------------------------------*/
 	@ParamCount(2)
+	@Pure
 	public static ValueHolder atIsNotMember(final FormulaContext ctx, final ValueHolder[] params) {
 		ValueHolder whos = params[0];
 		ValueHolder where = params[1];
@@ -997,6 +1035,7 @@ public enum TextFunctions {
 
 	/*----------------------------------------------------------------------------*/
 	@ParamCount(2)
+	@Pure
 	public static ValueHolder atMember(final FormulaContext ctx, final ValueHolder[] params) {
 		String who = params[0].getString(0);	// Notes accepts a list of Strings here, but ignores all but the first entry
 		ValueHolder where = params[1];
@@ -1032,6 +1071,7 @@ public enum TextFunctions {
 
 	/*----------------------------------------------------------------------------*/
 	@ParamCount({ 2, 3 })
+	@Pure
 	public static ValueHolder atRepeat(final FormulaContext ctx, final ValueHolder[] params) {
 		ValueHolder vh = params[0];
 		int repeator = params[1].getInt(0);
@@ -1122,6 +1162,7 @@ public enum TextFunctions {
 	 */
 	/*----------------------------------------------------------------------------*/
 	@ParamCount(1)
+	@Pure
 	public static String atFileDir(final String fileName) {
 		int indSlash = fileName.lastIndexOf('/');
 		int indBackSlash = -1;
@@ -1142,6 +1183,7 @@ public enum TextFunctions {
 	@DiffersFromLotus("Not all Lotus formats are yet supported")
 	@SuppressWarnings("deprecation")
 	@ParamCount({ 1, 2 })
+	@Pure
 	public static ValueHolder atText(final FormulaContext ctx, final ValueHolder params[]) {
 		ValueHolder vh = params[0];
 		String format = null;
@@ -1349,11 +1391,13 @@ public enum TextFunctions {
 	 */
 	/*----------------------------------------------------------------------------*/
 	@ParamCount(2)
+	@Pure
 	public static ValueHolder atURLDecode(final ValueHolder params[]) {
 		return urlDecEnc(params, false);
 	}
 
 	@ParamCount(2)
+	@Pure
 	public static ValueHolder atURLEncode(final ValueHolder params[]) {
 		return urlDecEnc(params, true);
 	}
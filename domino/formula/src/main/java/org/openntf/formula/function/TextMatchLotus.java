@@ -1,5 +1,7 @@
 package org.openntf.formula.function;
 
+import java.util.Arrays;
+
 public class TextMatchLotus {
 	/*----------------------------------------------------------------------------*/
 	private static final char BACK_SLASH = '\\';
@@ -22,12 +24,14 @@ public class TextMatchLotus {
 	public TextMatchLotus(final String pattern) {
 		init(pattern, true);
 		compileMatches(pattern);
+		compileTokens();
 	}
 
 	/*----------------------------------------------------------------------------*/
 	public TextMatchLotus(final String pattern, final char escape) {
 		init(pattern, false);
 		compileLike(pattern, escape);
+		compileTokens();
 	}
 
 	/*----------------------------------------------------------------------------*/
@@ -155,65 +159,171 @@ public class TextMatchLotus {
 	}
 
 	/*----------------------------------------------------------------------------*/
-	public boolean matches(final String what) {
-		iTestStr = what;
-		iTestStrLh = iTestStr.length();
-		return matches(0, 0);
-	}
-
+	/*
+	 * The normalized pattern is translated into a sequence of tokens, each matching exactly one char. A token may be repeated
+	 * (zero or more times), '*' is a repeated '?'. Matching is done by a simulation of the resulting automaton: The state is the set of
+	 * token positions, that are reachable after reading the chars so far. So the test string is read only once, there is no
+	 * backtracking. For up to 63 tokens, the state is held in a long and the token masks of the chars 0..255 are precomputed.
+	 * 
+	 * The TextMatchLotus is immutable after construction and can be shared between threads.
+	 */
 	/*----------------------------------------------------------------------------*/
-	private String iTestStr;
-	private int iTestStrLh;
-	private int iNextNPPos;
+	private static final byte TOKEN_CHAR = 0;
+	private static final byte TOKEN_ANY = 1;
+	private static final byte TOKEN_ALTER = 2;
+
+	private static final int TABLE_SIZE = 256;
+
+	private int iTokenCount;
+	private byte[] iTokenType;
+	private int[] iTokenPos;		// position in iNormalPattern
+	private boolean[] iTokenRepeat;
+
+	private long iRepeatMask;
+	private long iStartState;
+	private long[] iCharMasks;
 
 	/*----------------------------------------------------------------------------*/
-	private boolean matches(int testStrPos, int npPos) {
+	private void compileTokens() {
+		iTokenType = new byte[iNPLength / 2];
+		iTokenPos = new int[iNPLength / 2];
+		iTokenRepeat = new boolean[iNPLength / 2];
+		int npPos = 0;
 		while (npPos < iNPLength) {
+			boolean repeat = false;
 			if (iNormalPattern[npPos] == FLAG_SPECIAL && iNormalPattern[npPos + 1] == ARB_STRING) {
+				iTokenType[iTokenCount] = TOKEN_ANY;
+				iTokenPos[iTokenCount] = npPos;
+				iTokenRepeat[iTokenCount++] = true;
+				npPos += 2;
+				continue;
+			}
+			while (iNormalPattern[npPos] == FLAG_SPECIAL && iNormalPattern[npPos + 1] == ARB_REPEAT) {
+				repeat = true;
 				npPos += 2;
 				if (npPos == iNPLength)
-					return true;
-				for (; testStrPos < iTestStrLh; testStrPos++)
-					if (matches(testStrPos, npPos))
-						return true;
-				return false;
+					throwPatternException(new String(iNormalPattern, 0, iNPLength));
 			}
-			if (iNormalPattern[npPos] != FLAG_SPECIAL || iNormalPattern[npPos + 1] != ARB_REPEAT) {
-				if (testStrPos >= iTestStrLh)
-					return false;
-				if (!matchesChar(iTestStr.charAt(testStrPos++), npPos))
-					return false;
-				npPos = iNextNPPos;
-				continue;
+			iTokenPos[iTokenCount] = npPos;
+			iTokenRepeat[iTokenCount] = repeat;
+			if (iNormalPattern[npPos] == FLAG_NONSPEC) {
+				iTokenType[iTokenCount++] = TOKEN_CHAR;
+				npPos += 2;
+			} else if (iNormalPattern[npPos + 1] == ARB_CHAR || iNormalPattern[npPos + 1] == ARB_STRING) {
+				iTokenType[iTokenCount++] = TOKEN_ANY;
+				npPos += 2;
+			} else {
+				iTokenType[iTokenCount++] = TOKEN_ALTER;
+				for (npPos += 2;;) {
+					if (iNormalPattern[npPos] == FLAG_NONSPEC) {
+						npPos += 2;
+					} else if (iNormalPattern[npPos] == FLAG_SPECIAL) {	// must be END_ALTER
+						npPos += 2;
+						break;
+					} else {
+						npPos += 3;
+					}
+				}
 			}
-			npPos += 2;
-			matchesChar('1', npPos);
-			int newNPPos = iNextNPPos;
-			if (matches(testStrPos, iNextNPPos))
-				return true;
-			while (testStrPos < iTestStrLh) {
-				if (!matchesChar(iTestStr.charAt(testStrPos), npPos))
-					break;
-				if (matches(++testStrPos, iNextNPPos))
-					return true;
+		}
+		if (iTokenCount >= 64)
+			return;
+		for (int i = 0; i < iTokenCount; i++) {
+			if (iTokenRepeat[i])
+				iRepeatMask |= 1L << i;
+		}
+		iStartState = closure(1L);
+		iCharMasks = new long[TABLE_SIZE];
+		for (char c = 0; c < TABLE_SIZE; c++) {
+			iCharMasks[c] = charMask(c);
+		}
+	}
+
+	/*----------------------------------------------------------------------------*/
+	public boolean matches(final String what) {
+		if (iCharMasks == null)
+			return matchesLarge(what);
+		long state = iStartState;
+		int lh = what.length();
+		for (int i = 0; i < lh; i++) {
+			char c = what.charAt(i);
+			long hit = state & (c < TABLE_SIZE ? iCharMasks[c] : charMask(c));
+			if (hit == 0)
+				return false;
+			state = closure(((hit & ~iRepeatMask) << 1) | (hit & iRepeatMask));
+		}
+		return (state & (1L << iTokenCount)) != 0;
+	}
+
+	/*----------------------------------------------------------------------------*/
+	private long closure(long state) {
+		// a repeated token may be skipped
+		long prev;
+		do {
+			prev = state;
+			state |= (state & iRepeatMask) << 1;
+		} while (state != prev);
+		return state;
+	}
+
+	/*----------------------------------------------------------------------------*/
+	private long charMask(final char which) {
+		long mask = 0;
+		for (int i = 0; i < iTokenCount; i++) {
+			if (matchesToken(which, i))
+				mask |= 1L << i;
+		}
+		return mask;
+	}
+
+	/*----------------------------------------------------------------------------*/
+	private boolean matchesLarge(final String what) {
+		boolean[] state = new boolean[iTokenCount + 1];
+		boolean[] next = new boolean[iTokenCount + 1];
+		state[0] = true;
+		closure(state);
+		int lh = what.length();
+		for (int i = 0; i < lh; i++) {
+			char c = what.charAt(i);
+			boolean any = false;
+			for (int t = 0; t < iTokenCount; t++) {
+				if (state[t] && matchesToken(c, t)) {
+					next[iTokenRepeat[t] ? t : t + 1] = true;
+					any = true;
+				}
 			}
-			npPos = newNPPos;
+			if (!any)
+				return false;
+			closure(next);
+			boolean[] tmp = state;
+			state = next;
+			next = tmp;
+			Arrays.fill(next, false);
+		}
+		return state[iTokenCount];
+	}
+
+	/*----------------------------------------------------------------------------*/
+	private void closure(final boolean[] state) {
+		for (int t = 0; t < iTokenCount; t++) {
+			if (state[t] && iTokenRepeat[t])
+				state[t + 1] = true;
 		}
-		return testStrPos == iTestStrLh;
 	}
 
 	/*----------------------------------------------------------------------------*/
-	private boolean matchesChar(final char which, int npPos) {
-		if (iNormalPattern[npPos] == FLAG_NONSPEC) {
-			iNextNPPos = npPos + 2;
+	private boolean matchesToken(final char which, final int token) {
+		int npPos = iTokenPos[token];
+		switch (iTokenType[token]) {
+		case TOKEN_ANY:
+			return true;
+		case TOKEN_CHAR:
 			if (iCaseMatches)
 				return Character.toLowerCase(which) == iNormalPattern[npPos + 1];
 			else
 				return (which == iNormalPattern[npPos + 1]);
-		}
-		if (iNormalPattern[npPos + 1] == ARB_CHAR) {
-			iNextNPPos = npPos + 2;
-			return true;
+		default:
+			break;
 		}
 		boolean notAlter = (iNormalPattern[npPos + 1] == BEGIN_NOT_ALTER);
 		boolean treffer = false;
@@ -225,14 +335,12 @@ public class TextMatchLotus {
 				continue;
 			}
 			if (iNormalPattern[npPos] == FLAG_SPECIAL) {	// must be END_ALTER
-				npPos += 2;
 				break;
 			}
 			if (!treffer)
 				treffer = (which >= iNormalPattern[npPos + 1] && which <= iNormalPattern[npPos + 2]);
 			npPos += 3;
 		}
-		iNextNPPos = npPos;
 		return notAlter ? !treffer : treffer;
 	}
 	/*----------------------------------------------------------------------------*/
@@ -34,6 +34,16 @@ public abstract class AtFunction implements org.openntf.formula.Function {
 		return image;
 	}
 
+	/**
+	 * Returns <code>true</code> if this function is side-effect-free and deterministic, so that it can be evaluated at parse time, if all
+	 * parameters are constant.
+	 * 
+	 * @return <code>false</code> by default
+	 */
+	public boolean isPure() {
+		return false;
+	}
+
 	protected String getPrefix() {
 		return this.getClass().getSimpleName();
 	}
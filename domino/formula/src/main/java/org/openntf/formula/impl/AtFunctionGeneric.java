@@ -16,13 +16,13 @@
  */
 package org.openntf.formula.impl;
 
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
 import org.openntf.formula.FormulaContext;
 import org.openntf.formula.FormulaReturnException;
 import org.openntf.formula.ValueHolder;
 import org.openntf.formula.annotation.ParamCount;
+import org.openntf.formula.annotation.Pure;
 
 public class AtFunctionGeneric extends AtFunction {
 	// How this works:
@@ -35,15 +35,32 @@ public class AtFunctionGeneric extends AtFunction {
 	// 		you may specify a "FormulaContext ctx" as first parameter (optional) and the remaining parameter that the function needs
 	// 
 	protected Method method;
+	protected AtFunctionInvoker invoker;
 	protected int paramCount;
 	protected boolean useContext;
 	protected Class<?> varArgClass;
 	protected int minArgs = -1;
 	protected int maxArgs = -1;
+	protected boolean pure;
 
 	public AtFunctionGeneric(final String image, final Method method) {
+		this(image, method, AtFunctionInvoker.create(method));
+	}
+
+	/**
+	 * Creates a new function
+	 * 
+	 * @param image
+	 *            the function name
+	 * @param method
+	 *            the static method that implements the function
+	 * @param invoker
+	 *            the invoker that calls the method (see {@link AtFunctionInvoker#create(Method)}
+	 */
+	public AtFunctionGeneric(final String image, final Method method, final AtFunctionInvoker invoker) {
 		super(image);
 		this.method = method;
+		this.invoker = invoker;
 		Class<?>[] pt = method.getParameterTypes();
 		paramCount = pt.length;
 		if (method.isVarArgs()) {
@@ -56,6 +73,8 @@ public class AtFunctionGeneric extends AtFunction {
 			}
 		}
 
+		pure = method.getAnnotation(Pure.class) != null;
+
 		ParamCount pc = method.getAnnotation(ParamCount.class);
 		if (pc != null) {
 			minArgs = pc.value()[0];
@@ -63,6 +82,11 @@ public class AtFunctionGeneric extends AtFunction {
 		}
 	}
 
+	@Override
+	public boolean isPure() {
+		return pure;
+	}
+
 	public int getMinArgs() {
 		return minArgs;
 	}
@@ -72,30 +96,44 @@ public class AtFunctionGeneric extends AtFunction {
 	}
 
 	public ValueHolder evaluate(final FormulaContext ctx, final ValueHolder[] params) throws FormulaReturnException {
-		try {
-			switch (paramCount) {
-			case 0:
-				if (useContext) {
-					return (ValueHolder) method.invoke(null, new Object[] { ctx });
-				} else {
-					return (ValueHolder) method.invoke(null, (Object[]) null);
-				}
-			case 1:
-				if (useContext) {
-					return (ValueHolder) method.invoke(null, new Object[] { ctx, params });
-				} else {
-					return (ValueHolder) method.invoke(null, new Object[] { params });
-				}
-			default:
-				throw new IllegalArgumentException("Illegal parameter count: " + paramCount);
+		switch (paramCount) {
+		case 0:
+			if (useContext) {
+				return (ValueHolder) invoke(new Object[] { ctx });
+			} else {
+				return (ValueHolder) invoke(null);
+			}
+		case 1:
+			if (useContext) {
+				return (ValueHolder) invoke(new Object[] { ctx, params });
+			} else {
+				return (ValueHolder) invoke(new Object[] { params });
 			}
+		default:
+			throw new IllegalArgumentException("Illegal parameter count: " + paramCount);
+		}
+	}
+
+	/**
+	 * Calls the method with the invoker. RuntimeExceptions and FormulaReturnExceptions are passed to the caller, all other exceptions are
+	 * wrapped in a RuntimeException
+	 * 
+	 * @param args
+	 *            the arguments for the method
+	 * @return the result of the method
+	 * @throws FormulaReturnException
+	 *             if the method executes a {@literal @}Return
+	 */
+	protected final Object invoke(final Object[] args) throws FormulaReturnException {
+		try {
+			return invoker.invoke(args);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (FormulaReturnException e) {
+			throw e;
 		} catch (IllegalAccessException iax) {
 			throw new RuntimeException("Unexpected error while invoking method " + method.getName(), iax);
-		} catch (InvocationTargetException e) {
-			if (e.getCause() instanceof RuntimeException)
-				throw (RuntimeException) e.getCause();
-			if (e.getCause() instanceof FormulaReturnException)
-				throw (FormulaReturnException) e.getCause();
+		} catch (Exception e) {
 			throw new RuntimeException("Unexpected error occured in method " + method.getName(), e);
 		}
 	}
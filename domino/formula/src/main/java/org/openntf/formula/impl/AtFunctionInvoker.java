@@ -0,0 +1,103 @@
+/*
+ * © Copyright FOCONIS AG, 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ * 
+ */
+package org.openntf.formula.impl;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Calls the static method that implements an AtFunction. The invoker is created once, when the function is registered in the
+ * FunctionFactory. If possible, a class is generated that calls the method directly (no reflection, no InvocationTargetException). If
+ * javassist is not available or the runtime does not allow to define classes, <code>Method.invoke</code> is used.
+ * 
+ * @author Roland Praml, Foconis AG
+ * 
+ */
+public abstract class AtFunctionInvoker {
+	private static final Logger log_ = Logger.getLogger(AtFunctionInvoker.class.getName());
+
+	private static boolean generatorAvailable = true;
+
+	/**
+	 * Invokes the method
+	 * 
+	 * @param args
+	 *            the arguments. (The array may be reused by the caller after the call)
+	 * @return the return value of the method (primitives are boxed)
+	 * @throws Exception
+	 *             every exception that the method throws (not wrapped)
+	 */
+	public abstract Object invoke(Object[] args) throws Exception;
+
+	/**
+	 * Creates an invoker for the given static method
+	 * 
+	 * @param method
+	 *            the method
+	 * @return the invoker
+	 */
+	public static AtFunctionInvoker create(final Method method) {
+		if (generatorAvailable) {
+			try {
+				return InvokerGenerator.generate(method);
+			} catch (IllegalStateException e) {
+				log_.log(Level.WARNING, "Cannot generate invoker for " + method + ". Using reflection", e);
+			} catch (UnsupportedOperationException e) {
+				// the runtime does not allow to define classes - do not try again
+				generatorAvailable = false;
+				log_.log(Level.WARNING, "Cannot define invoker classes in this runtime. Using reflection for all @functions", e.getCause());
+			} catch (RuntimeException e) {
+				log_.log(Level.WARNING, "Cannot generate invoker for " + method + ". Using reflection", e);
+			} catch (LinkageError e) {
+				// javassist is not available (NoClassDefFoundError) or not compatible - do not try again
+				generatorAvailable = false;
+			}
+		}
+		return new Reflective(method);
+	}
+
+	/**
+	 * The fallback: Invokes the method with reflection
+	 */
+	static class Reflective extends AtFunctionInvoker {
+		private final Method method;
+
+		Reflective(final Method method) {
+			this.method = method;
+		}
+
+		@Override
+		public Object invoke(final Object[] args) throws Exception {
+			try {
+				return method.invoke(null, args);
+			} catch (InvocationTargetException e) {
+				if (e.getCause() instanceof Exception)
+					throw (Exception) e.getCause();
+				if (e.getCause() instanceof Error)
+					throw (Error) e.getCause();
+				throw e;
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "Reflective invoker: " + method;
+		}
+	}
+}
@@ -16,7 +16,6 @@
  */
 package org.openntf.formula.impl;
 
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Collection;
 
@@ -37,6 +36,10 @@ public class AtFunctionSimple extends AtFunctionGeneric {
 		super(image, method);
 	}
 
+	public AtFunctionSimple(final String image, final Method method, final AtFunctionInvoker invoker) {
+		super(image, method, invoker);
+	}
+
 	@SuppressWarnings({ "unchecked", "deprecation" })
 	@Override
 	public ValueHolder evaluate(final FormulaContext ctx, final ValueHolder[] params) throws FormulaReturnException {
@@ -50,71 +53,47 @@ public class AtFunctionSimple extends AtFunctionGeneric {
 			}
 		}
 
-		try {
-			if (varArgClass != null) {
+		Collection<Object[]> values;
+		if (varArgClass != null) {
+			values = new ParameterCollectionObject<Object>(params, (Class<Object>) varArgClass, false);
+		} else {
+			values = new ParameterCollectionObject<Object>(params, Object.class, false);
+		}
 
-				Collection<Object[]> values = new ParameterCollectionObject<Object>(params, (Class<Object>) varArgClass, false);
+		// the argument array is allocated once and reused for every element of a multi value parameter
+		Object[] tmpParams = null;
+		if (varArgClass != null || useContext) {
+			tmpParams = new Object[useContext ? paramCount + 1 : paramCount];
+			if (useContext) {
+				tmpParams[0] = ctx;
+			}
+		}
+		int offset = useContext ? 1 : 0;
 
+		for (Object[] value : values) {
+			if (varArgClass != null) {
 				// Our last parameter is a "varArg" this means, the LAST parameter is an array[]
-				Object[] tmpParams = new Object[paramCount];
-				for (Object[] value : values) {
-					int i = 0;
-					if (useContext) {
-						tmpParams[i++] = ctx;
-					}
-					if (i == paramCount) {
-						// that's not possible when useContext is true unless you specify FormulaContext... ctx
-					} else if (i == paramCount - 1) {
-						// exactly one parameter left. this is our vararg
-						tmpParams[i++] = value;
-					}
-					result = method.invoke(null, tmpParams);
-					if (result != null) {
-						if (ret == null) {
-							ret = ValueHolder.createValueHolder(result.getClass(), values.size());
-						}
-						ret.add(result);
-					}
+				if (paramCount > 0) {
+					tmpParams[offset] = value;
 				}
+				result = invoke(tmpParams);
+			} else if (useContext) {
+				if (value != null) {
+					System.arraycopy(value, 0, tmpParams, 1, value.length);
+				}
+				result = invoke(tmpParams);
 			} else {
-				Collection<Object[]> values = new ParameterCollectionObject<Object>(params, Object.class, false);
-
-				for (Object[] value : values) {
-
-					if (useContext) {
-						Object[] tmpParams;
-						if (value == null) {
-							tmpParams = new Object[1];
-						} else {
-							tmpParams = new Object[value.length + 1];
-							System.arraycopy(value, 0, tmpParams, 1, value.length);
-						}
-						tmpParams[0] = ctx;
-						result = method.invoke(null, tmpParams);
-					} else {
-						result = method.invoke(null, value);
-					}
-					if (result != null) {
-						if (ret == null) {
-							ret = ValueHolder.createValueHolder(result.getClass(), values.size());
-						}
-						ret.add(result);
-					}
+				result = invoke(value);
+			}
+			if (result != null) {
+				if (ret == null) {
+					ret = ctx.createValueHolder(result.getClass(), values.size());
 				}
+				ret.add(result);
 			}
-
-			return ret;
-
-		} catch (IllegalAccessException iax) {
-			throw new RuntimeException("Unexpected error while invoking method " + method.getName(), iax);
-		} catch (InvocationTargetException e) {
-			if (e.getCause() instanceof RuntimeException)
-				throw (RuntimeException) e.getCause();
-			if (e.getCause() instanceof FormulaReturnException)
-				throw (FormulaReturnException) e.getCause();
-			throw new RuntimeException("Unexpected error occured in method " + method.getName(), e);
 		}
 
+		return ret;
 	}
 
 	@Override
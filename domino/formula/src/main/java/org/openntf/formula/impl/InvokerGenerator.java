@@ -0,0 +1,150 @@
+/*
+ * © Copyright FOCONIS AG, 2014
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing 
+ * permissions and limitations under the License.
+ * 
+ */
+package org.openntf.formula.impl;
+
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.Set;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+import javassist.NotFoundException;
+
+/**
+ * Generates {@link AtFunctionInvoker}s with javassist. The generated class is defined in the same package and classloader as the class
+ * that declares the method, so that also package private methods can be called.
+ * 
+ * @author Roland Praml, Foconis AG
+ * 
+ */
+class InvokerGenerator {
+
+	private static ClassPool pool;
+	private static Set<ClassLoader> knownLoaders = new HashSet<ClassLoader>();
+	private static int classCounter;
+
+	private InvokerGenerator() {
+	}
+
+	/**
+	 * Generates the invoker for the static method
+	 * 
+	 * @throws IllegalStateException
+	 *             if the invoker cannot be generated
+	 * @throws UnsupportedOperationException
+	 *             if the runtime does not allow to define classes (e.g. Java 9+ without <code>--add-opens java.base/java.lang</code>)
+	 */
+	static synchronized AtFunctionInvoker generate(final Method method) {
+		Class<?> declaringClass = method.getDeclaringClass();
+		ClassLoader loader = declaringClass.getClassLoader();
+		ClassPool cp = getPool(loader);
+
+		CtClass cc = cp.makeClass(declaringClass.getName() + "$Invoker" + (++classCounter) + "_" + method.getName());
+		try {
+			cc.setSuperclass(cp.get(AtFunctionInvoker.class.getName()));
+			cc.addMethod(CtNewMethod.make(getSource(method), cc));
+			cc.addMethod(CtNewMethod.make("public String toString() { return \"Generated invoker: " + method.getName() + "\"; }", cc));
+			Class<?> clazz;
+			try {
+				clazz = cc.toClass(loader, declaringClass.getProtectionDomain());
+			} catch (RuntimeException e) {
+				// InaccessibleObjectException on Java 9+, SecurityException with a security manager
+				throw new UnsupportedOperationException(e);
+			} catch (LinkageError e) {
+				throw new UnsupportedOperationException(e);
+			}
+			return (AtFunctionInvoker) clazz.newInstance();
+		} catch (CannotCompileException e) {
+			throw new IllegalStateException(e);
+		} catch (NotFoundException e) {
+			throw new IllegalStateException(e);
+		} catch (InstantiationException e) {
+			throw new IllegalStateException(e);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		} catch (RuntimeException e) {
+			if (e instanceof UnsupportedOperationException)
+				throw e;
+			throw new IllegalStateException(e);
+		} catch (LinkageError e) {
+			throw new IllegalStateException(e);
+		} finally {
+			cc.detach();
+		}
+	}
+
+	/**
+	 * Returns the class pool. The classloader of every class that declares AtFunctions is added.
+	 */
+	private static ClassPool getPool(final ClassLoader loader) {
+		if (pool == null) {
+			pool = new ClassPool(true);
+			pool.appendClassPath(new LoaderClassPath(AtFunctionInvoker.class.getClassLoader()));
+			knownLoaders.add(AtFunctionInvoker.class.getClassLoader());
+		}
+		if (loader != null && knownLoaders.add(loader)) {
+			pool.appendClassPath(new LoaderClassPath(loader));
+		}
+		return pool;
+	}
+
+	/**
+	 * Generates the source of the invoke method. Boxing and widening is done the same way as <code>Method.invoke</code> would do.
+	 */
+	private static String getSource(final Method method) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("public Object invoke(Object[] args) throws Exception {\n");
+		String call = method.getDeclaringClass().getName() + "." + method.getName();
+		Class<?>[] pt = method.getParameterTypes();
+		if (method.getReturnType() == Void.TYPE) {
+			sb.append(call);
+		} else {
+			sb.append("return ($w) ").append(call);
+		}
+		sb.append('(');
+		for (int i = 0; i < pt.length; i++) {
+			if (i > 0)
+				sb.append(", ");
+			sb.append(getArgument(pt[i], "args[" + i + "]"));
+		}
+		sb.append(");\n");
+		if (method.getReturnType() == Void.TYPE) {
+			sb.append("return null;\n");
+		}
+		sb.append('}');
+		return sb.toString();
+	}
+
+	private static String getArgument(final Class<?> type, final String arg) {
+		if (type == Boolean.TYPE)
+			return "((Boolean) " + arg + ").booleanValue()";
+		if (type == Character.TYPE)
+			return "((Character) " + arg + ").charValue()";
+		if (type.isPrimitive())
+			return "((Number) " + arg + ")." + type.getName() + "Value()";
+		return "(" + getTypeName(type) + ") " + arg;
+	}
+
+	private static String getTypeName(final Class<?> type) {
+		if (type.isArray())
+			return getTypeName(type.getComponentType()) + "[]";
+		return type.getName();
+	}
+}
@@ -38,7 +38,6 @@ public enum ServiceLocatorFinder {
 					List<T> ret = nonOSGIServicesCache.get(serviceClazz);
 					if (ret == null) {
 						ret = new ArrayList<T>();
-						nonOSGIServicesCache.put(serviceClazz, ret);
 						final List<T> fret = ret;
 
 						AccessController.doPrivileged(new PrivilegedAction<Object>() {
@@ -57,7 +56,8 @@ public enum ServiceLocatorFinder {
 								return null;
 							}
 						});
-
+						// publish the list when it is complete, as the cache is shared by all threads
+						nonOSGIServicesCache.put(serviceClazz, ret);
 					}
 					return ret;
 				}
@@ -0,0 +1,59 @@
+package org.openntf.formula;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Checks that parsers share the cached formulas, unless a formula depends on a function declared with {@literal @}Function.
+ */
+public class FormulaCacheTest {
+
+	private FormulaParser createParser(final FormulaCache cache) {
+		FormulaParser parser = Formulas.getParser(Formulas.getFormatter(), Formulas.getFunctionFactory());
+		parser.setFormulaCache(cache);
+		return parser;
+	}
+
+	private Object solve(final FormulaParser parser, final String formula) throws Exception {
+		return parser.parse(formula, false).solve(Formulas.createContext(null, parser));
+	}
+
+	@Test
+	public void testSharedWithCustomFunctions() throws Exception {
+		FormulaCache cache = new FormulaCache(100, 0);
+		FormulaParser parser = createParser(cache);
+		FormulaParser other = createParser(cache);
+		ASTNode node = parser.parse("1 + 2", false);
+		assertEquals(1, cache.size());
+
+		// declaring and calling a function is not cached
+		assertEquals(Arrays.asList(0), solve(parser, "@Function(@Twice(x)) := x * 2; 0"));
+		assertEquals(Arrays.asList(8), solve(parser, "@Twice(4)"));
+		assertEquals(1, cache.size());
+
+		// the other formulas are still shared
+		assertSame(node, parser.parse("1 + 2", false));
+		assertSame(node, other.parse("1 + 2", false));
+	}
+
+	@Test
+	public void testCachedFormulaCallsDeclaredFunction() throws Exception {
+		FormulaCache cache = new FormulaCache(100, 0);
+		FormulaParser parser = createParser(cache);
+		FormulaParser other = createParser(cache);
+		String formula = "@UpperCase(\"a\")";
+		ASTNode node = other.parse(formula, false);
+
+		// the declared function overrides the cached one for this parser only
+		solve(parser, "@Function(@UpperCase(x)) := x + \"!\"; 0");
+		assertNotSame(node, parser.parse(formula, false));
+		assertEquals(Arrays.asList("a!"), solve(parser, formula));
+		assertSame(node, other.parse(formula, false));
+		assertEquals(Arrays.asList("A"), solve(other, formula));
+	}
+}
@@ -0,0 +1,99 @@
+package org.openntf.formula;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Checks that pooled contexts return the same results as unpooled ones and that the ValueHolders are reused.
+ */
+public class ValueHolderPoolTest {
+	private static final String[] FORMULAS = { //
+	"x * 2 + 1", //
+			"@Text(x) + \"-\" + @UpperCase(s)", //
+			"l := x : (x + 1) : (x + 2); @Sum(l) / 3", //
+			"@If(x > 2; s : s; @Implode(s : s; \",\"))", //
+			"n := 0; @For(i := 1; i <= x; i := i + 1; n := n + i); n" };
+
+	private Map<String, Object> createDocument(final int x) {
+		Map<String, Object> doc = new HashMap<String, Object>();
+		doc.put("x", x);
+		doc.put("s", "value" + x);
+		return doc;
+	}
+
+	@Test
+	public void testPooledSameAsUnpooled() throws Exception {
+		FormulaParser parser = Formulas.getParser();
+		for (String formula : FORMULAS) {
+			ASTNode node = parser.parse(formula, false);
+			for (int x = 0; x < 5; x++) {
+				FormulaContext plain = Formulas.createContext(createDocument(x), parser);
+				FormulaContext pooled = Formulas.createContext(createDocument(x), parser);
+				pooled.setPooled(true);
+				assertEquals(formula + " x=" + x, node.solve(plain), node.solve(pooled));
+				assertNull(pooled.getValueHolderPool());
+			}
+		}
+	}
+
+	@Test
+	public void testThreadPoolReused() throws Exception {
+		FormulaParser parser = Formulas.getParser();
+		ASTNode node = parser.parse("l := x : (x + 1000) : (x + 2000); @Sum(l * 2)", false);
+		ValueHolderPool pool = ValueHolderPool.getThreadPool();
+		FormulaContext ctx = Formulas.createContext(createDocument(1), parser);
+		ctx.setPooled(true);
+		node.solve(ctx);
+		long created = pool.getCreated();
+		long reused = pool.getReused();
+		for (int i = 0; i < 10; i++) {
+			assertEquals(1, node.solve(ctx).size());
+		}
+		assertEquals("no new ValueHolders after the first solve", created, pool.getCreated());
+		assertTrue(pool.getReused() > reused);
+		assertTrue(pool.toString(), pool.toString().contains("inUse=0"));
+	}
+
+	@Test
+	public void testExplicitPool() throws Exception {
+		FormulaParser parser = Formulas.getParser();
+		ASTNode node = parser.parse("x * 3000", false);
+		ValueHolderPool pool = new ValueHolderPool();
+		FormulaContext ctx = Formulas.createContext(createDocument(2), parser);
+		ctx.setValueHolderPool(pool);
+		ctx.setPooled(true);
+		assertEquals(6000, ((Number) node.solve(ctx).get(0)).intValue());
+		// an explicit pool is released by the caller
+		assertFalse(pool.toString().contains("inUse=0"));
+		ctx.releaseValueHolders();
+		assertTrue(pool.toString().contains("inUse=0"));
+	}
+
+	@Test
+	public void testBatchContextsPooled() throws Exception {
+		FormulaParser parser = Formulas.getParser();
+		List<Map<String, Object>> documents = new ArrayList<Map<String, Object>>();
+		for (int x = 0; x < 20; x++) {
+			documents.add(createDocument(x));
+		}
+		for (String formula : FORMULAS) {
+			ASTNode node = parser.parse(formula, false);
+			List<FormulaContext> contexts = Formulas.createContexts(documents, parser);
+			assertTrue(contexts.get(0).isPooled());
+			List<List<Object>> batch = node.solveBatch(contexts);
+			for (int x = 0; x < documents.size(); x++) {
+				assertEquals(formula + " x=" + x, node.solve(Formulas.createContext(documents.get(x), parser)), batch.get(x));
+			}
+		}
+		assertTrue(ValueHolderPool.getThreadPool().toString().contains("inUse=0"));
+	}
+}
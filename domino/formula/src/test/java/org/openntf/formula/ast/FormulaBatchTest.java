@@ -0,0 +1,80 @@
+package org.openntf.formula.ast;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.openntf.formula.ASTNode;
+import org.openntf.formula.EvaluateException;
+import org.openntf.formula.FormulaContext;
+import org.openntf.formula.FormulaParser;
+import org.openntf.formula.Formulas;
+
+/**
+ * Checks that a batch returns the same results as solving every document on its own, also if some documents fail.
+ */
+public class FormulaBatchTest {
+	private static final String[] FORMULAS = { //
+	"x * 2", //
+			"@If(x = 3; @Error; x + 1)", //
+			"@If(x > 5; @Return(\"big\"); \"\"); @Text(x)", //
+			"y := x; @For(i := 1; i < 3; i := i + 1; y := y * i); @If(@IsError(y); 0; y)" };
+
+	private List<Map<String, Object>> createDocuments(final int count) {
+		List<Map<String, Object>> ret = new ArrayList<Map<String, Object>>();
+		for (int i = 0; i < count; i++) {
+			Map<String, Object> doc = new HashMap<String, Object>();
+			doc.put("x", i);
+			ret.add(doc);
+		}
+		return ret;
+	}
+
+	@Test
+	public void testSameAsSolve() throws Exception {
+		FormulaParser parser = Formulas.getParser();
+		List<Map<String, Object>> documents = createDocuments(10);
+		for (String formula : FORMULAS) {
+			for (ASTNode node : new ASTNode[] { parser.parse(formula, false), parser.compile(formula, false) }) {
+				List<List<Object>> batch = node.solveBatch(Formulas.createContexts(documents, parser));
+				assertEquals(documents.size(), batch.size());
+				for (int row = 0; row < documents.size(); row++) {
+					FormulaContext ctx = Formulas.createContext(documents.get(row), parser);
+					List<Object> expected;
+					try {
+						expected = node.solve(ctx);
+					} catch (EvaluateException e) {
+						assertEquals(formula + " row " + row, 1, batch.get(row).size());
+						assertTrue(formula + " row " + row, batch.get(row).get(0) instanceof EvaluateException);
+						continue;
+					}
+					assertEquals(formula + " row " + row, expected, batch.get(row));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testErrorDoesNotFailBatch() throws Exception {
+		FormulaParser parser = Formulas.getParser();
+		List<Map<String, Object>> documents = createDocuments(5);
+		ASTNode node = parser.parse("@If(x = 0; @Error; x)", false);
+		try {
+			node.solve(Formulas.createContext(documents.get(0), parser));
+			fail("first document should fail");
+		} catch (EvaluateException e) {
+			// expected
+		}
+		List<List<Object>> batch = node.solveBatch(Formulas.createContexts(documents, parser));
+		assertTrue(batch.get(0).get(0) instanceof EvaluateException);
+		for (int row = 1; row < documents.size(); row++) {
+			assertEquals(row, ((Number) batch.get(row).get(0)).intValue());
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package org.openntf.formula.ast;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import org.junit.Test;
+import org.openntf.formula.ASTNode;
+import org.openntf.formula.FormulaContext;
+import org.openntf.formula.FormulaParser;
+import org.openntf.formula.Formulas;
+
+/**
+ * Checks that compiled formulas return the same results as the interpreted ones. If the runtime does not allow to define classes (Java 9+
+ * without <code>--add-opens java.base/java.lang=ALL-UNNAMED</code>) or javassist is missing, compile must return the interpreted formula.
+ */
+public class FormulaCompilerTest {
+	private static final String[] FORMULAS = { //
+	"1 + 2 * 3", //
+			"x := 5; y := x * 2; @If(y > 5; \"big\"; \"small\")", //
+			"@Sum(1 : 2 : 3; 4)", //
+			"@UpperCase(\"a\" : \"b\") + \"c\"", //
+			"@Word(\"a,b,c\"; \",\"; 2)", //
+			"n := 0; @For(i := 1; i <= 10; i := i + 1; n := n + i); n", //
+			"@Matches(\"abc\"; \"a?c\")" };
+
+	@Test
+	public void testCompile() throws Exception {
+		FormulaParser parser = Formulas.getParser();
+		for (String formula : FORMULAS) {
+			ASTNode interpreted = parser.parse(formula, false);
+			ASTNode compiled = parser.compile(formula, false);
+			assertNotNull(formula, compiled);
+			FormulaContext ctx1 = Formulas.createContext(null, parser);
+			FormulaContext ctx2 = Formulas.createContext(null, parser);
+			assertEquals(formula + " (" + compiled.getClass().getName() + ")", interpreted.solve(ctx1), compiled.solve(ctx2));
+		}
+	}
+
+	@Test
+	public void testCompiledOnce() throws Exception {
+		FormulaParser parser = Formulas.getParser();
+		assertEquals(parser.compile("1 + 1", false), parser.compile("1 + 1", false));
+	}
+}
@@ -0,0 +1,67 @@
+package org.openntf.formula.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.openntf.formula.FormulaParser;
+import org.openntf.formula.Formulas;
+
+/**
+ * Checks that the @functions can be called in every runtime. On Java 9+ javassist cannot define classes without
+ * <code>--add-opens java.base/java.lang=ALL-UNNAMED</code>, then the reflective invoker must be used.
+ */
+public class AtFunctionInvokerTest {
+
+	public static int add(final int a, final int b) {
+		return a + b;
+	}
+
+	public static String fail(final String message) {
+		throw new IllegalArgumentException(message);
+	}
+
+	@Test
+	public void testFunctionFactory() {
+		assertFalse(Formulas.getFunctionFactory().getFunctions().isEmpty());
+		assertNotNull(Formulas.getFunctionFactory().getFunction("@sum"));
+	}
+
+	@Test
+	public void testSolve() throws Exception {
+		FormulaParser parser = Formulas.getParser();
+		List<Object> result = parser.parse("@Sum(1;2;3)", false).solve(Formulas.createContext(null, parser));
+		assertEquals(1, result.size());
+		assertEquals(6, ((Number) result.get(0)).intValue());
+		result = parser.parse("@UpperCase(\"abc\" : \"def\")", false).solve(Formulas.createContext(null, parser));
+		assertEquals(Arrays.asList("ABC", "DEF"), result);
+	}
+
+	@Test
+	public void testInvoke() throws Exception {
+		Method method = AtFunctionInvokerTest.class.getMethod("add", Integer.TYPE, Integer.TYPE);
+		AtFunctionInvoker invoker = AtFunctionInvoker.create(method);
+		assertEquals(5, invoker.invoke(new Object[] { 2, 3 }));
+		assertEquals(5, new AtFunctionInvoker.Reflective(method).invoke(new Object[] { 2, 3 }));
+	}
+
+	@Test
+	public void testExceptionNotWrapped() throws Exception {
+		Method method = AtFunctionInvokerTest.class.getMethod("fail", String.class);
+		AtFunctionInvoker[] invokers = { AtFunctionInvoker.create(method), new AtFunctionInvoker.Reflective(method) };
+		for (AtFunctionInvoker invoker : invokers) {
+			try {
+				invoker.invoke(new Object[] { "expected" });
+				fail(invoker + " did not throw");
+			} catch (IllegalArgumentException e) {
+				assertEquals("expected", e.getMessage());
+			}
+		}
+	}
+}